@@ -0,0 +1,101 @@
+// Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.benchmark;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.testFramework.EdtTestUtil;
+import com.intellij.testFramework.LightProjectDescriptor;
+import com.intellij.testFramework.fixtures.CodeInsightTestFixture;
+import com.intellij.testFramework.fixtures.IdeaProjectTestFixture;
+import com.intellij.testFramework.fixtures.IdeaTestFixtureFactory;
+import com.intellij.testFramework.fixtures.TestFixtureBuilder;
+import com.vladsch.md.nav.psi.element.MdFile;
+import com.vladsch.md.nav.settings.MdParserSettings;
+import com.vladsch.md.nav.settings.MdProjectSettings;
+import com.vladsch.md.nav.settings.MdRenderingProfile;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Light test fixture with a markdown file from the performance test data and the project rendering profile
+ * set to the parser settings being measured.
+ * <p>
+ * Test data directory is {@code test-data/performance} or the value of the {@code md.benchmark.data} system property.
+ */
+@State(Scope.Benchmark)
+public abstract class MdBenchmarkState {
+    @Param({ "commonMarkSpec.md", "spec.md", "table.md", "slow-link-validation.md", "hang-pegdown.md", "hang-pegdown2.md" })
+    public String fileName;
+
+    @Param({ "DEFAULT", "GITHUB", "GITBOOK", "GITLAB", "FOR_SAMPLE_DOC" })
+    public String parserSettings;
+
+    protected CodeInsightTestFixture myFixture;
+    protected Project myProject;
+    protected MdRenderingProfile myRenderingProfile;
+    protected MdFile myFile;
+    protected String myText;
+
+    @Setup(Level.Trial)
+    public void setUpFixture() throws Exception {
+        IdeaTestFixtureFactory factory = IdeaTestFixtureFactory.getFixtureFactory();
+        TestFixtureBuilder<IdeaProjectTestFixture> builder = factory.createLightFixtureBuilder(LightProjectDescriptor.EMPTY_PROJECT_DESCRIPTOR);
+        myFixture = factory.createCodeInsightFixture(builder.getFixture());
+        EdtTestUtil.runInEdtAndWait(() -> myFixture.setUp());
+
+        myProject = myFixture.getProject();
+        myText = loadText(fileName);
+
+        myRenderingProfile = new MdRenderingProfile(MdRenderingProfile.getDEFAULT());
+        myRenderingProfile.setParserSettings(getParserSettings(parserSettings));
+        MdProjectSettings.getInstance(myProject).setRenderingProfile(myRenderingProfile);
+
+        EdtTestUtil.runInEdtAndWait(() -> myFile = (MdFile) myFixture.configureByText(fileName, myText));
+        setUp();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownFixture() throws Exception {
+        EdtTestUtil.runInEdtAndWait(() -> myFixture.tearDown());
+        myFixture = null;
+        myProject = null;
+        myFile = null;
+    }
+
+    /**
+     * Set up benchmark data after the fixture is set up
+     */
+    protected void setUp() {
+
+    }
+
+    @NotNull
+    static String loadText(@NotNull String fileName) throws IOException {
+        File dataDir = new File(System.getProperty("md.benchmark.data", "test-data/performance"));
+        return FileUtil.loadFile(new File(dataDir, fileName), "UTF-8");
+    }
+
+    @NotNull
+    static MdParserSettings getParserSettings(@NotNull String name) {
+        switch (name) {
+            case "GITHUB":
+                return MdParserSettings.getGITHUB();
+            case "GITBOOK":
+                return MdParserSettings.getGITBOOK();
+            case "GITLAB":
+                return MdParserSettings.getGITLAB();
+            case "FOR_SAMPLE_DOC":
+                return MdParserSettings.getFOR_SAMPLE_DOC();
+            default:
+                return MdParserSettings.getDEFAULT();
+        }
+    }
+}
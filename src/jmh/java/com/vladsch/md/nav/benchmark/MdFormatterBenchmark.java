@@ -0,0 +1,14 @@
+// Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.benchmark;
+
+import com.intellij.openapi.application.ReadAction;
+import com.vladsch.flexmark.util.sequence.builder.SequenceBuilder;
+import com.vladsch.md.nav.util.format.MdFormatter;
+import org.openjdk.jmh.annotations.Benchmark;
+
+public class MdFormatterBenchmark extends MdBenchmarkState {
+    @Benchmark
+    public SequenceBuilder formatFile() {
+        return ReadAction.compute(() -> MdFormatter.formatFile(myFile));
+    }
+}
@@ -0,0 +1,25 @@
+// Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.benchmark;
+
+import com.intellij.openapi.application.ReadAction;
+import com.vladsch.md.nav.editor.resources.JavaFxHtmlGenerator;
+import com.vladsch.md.nav.parser.api.HtmlPurpose;
+import com.vladsch.md.nav.vcs.GitHubLinkResolver;
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * Rendering the preview page of the file with the JavaFX HTML generator
+ */
+public class MdHtmlGeneratorBenchmark extends MdBenchmarkState {
+    private JavaFxHtmlGenerator myHtmlGenerator;
+
+    @Override
+    protected void setUp() {
+        myHtmlGenerator = ReadAction.compute(() -> new JavaFxHtmlGenerator(new GitHubLinkResolver(myFile), myRenderingProfile));
+    }
+
+    @Benchmark
+    public String toHtml() {
+        return ReadAction.compute(() -> myHtmlGenerator.toHtml(myFile, myText, HtmlPurpose.RENDER, null, null, null));
+    }
+}
@@ -0,0 +1,33 @@
+// Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.benchmark;
+
+import com.intellij.lexer.Lexer;
+import com.vladsch.md.nav.parser.MdLexer;
+import com.vladsch.md.nav.todo.MdIndexingLexer;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * Lexers used for id and todo indexing: the indexing lexer and the full markdown lexer
+ */
+public class MdIndexingLexerBenchmark extends MdBenchmarkState {
+    @Benchmark
+    public int indexingLexer() {
+        return lexTokens(new MdIndexingLexer(), myText);
+    }
+
+    @Benchmark
+    public int markdownLexer() {
+        return lexTokens(new MdLexer(myRenderingProfile), myText);
+    }
+
+    private static int lexTokens(@NotNull Lexer lexer, @NotNull CharSequence text) {
+        int count = 0;
+        lexer.start(text);
+        while (lexer.getTokenType() != null) {
+            count++;
+            lexer.advance();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,37 @@
+// Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.benchmark;
+
+import com.vladsch.flexmark.parser.Parser;
+import com.vladsch.flexmark.util.ast.Document;
+import com.vladsch.flexmark.util.data.DataHolder;
+import com.vladsch.flexmark.util.sequence.BasedSequence;
+import com.vladsch.md.nav.parser.LexerData;
+import com.vladsch.md.nav.parser.MdLexParser;
+import com.vladsch.md.nav.parser.MdLexParserManager;
+import com.vladsch.md.nav.parser.PegdownOptionsAdapter;
+import com.vladsch.md.nav.parser.api.HtmlPurpose;
+import com.vladsch.md.nav.parser.api.ParserPurpose;
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * Parsing markdown into lexer tokens and AST: complete parse and token generation from a parsed flexmark document
+ */
+public class MdParserBenchmark extends MdBenchmarkState {
+    private Document myDocument;
+
+    @Override
+    protected void setUp() {
+        DataHolder options = new PegdownOptionsAdapter().getFlexmarkOptions(ParserPurpose.PARSER, HtmlPurpose.RENDER, null, myRenderingProfile);
+        myDocument = Parser.builder(options).build().parse(BasedSequence.of(myText));
+    }
+
+    @Benchmark
+    public LexerData parseMarkdown() {
+        return MdLexParserManager.parseMarkdown(myRenderingProfile, myText);
+    }
+
+    @Benchmark
+    public LexerData lexParserTokens() {
+        return MdLexParser.parseFlexmarkMarkdown(myDocument);
+    }
+}
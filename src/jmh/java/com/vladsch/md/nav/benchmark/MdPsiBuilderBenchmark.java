@@ -0,0 +1,35 @@
+// Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.benchmark;
+
+import com.intellij.lang.ASTNode;
+import com.intellij.lang.PsiBuilder;
+import com.intellij.lang.PsiBuilderFactory;
+import com.vladsch.md.nav.parser.LexerData;
+import com.vladsch.md.nav.parser.MdLexer;
+import com.vladsch.md.nav.parser.MdParserDefinition;
+import com.vladsch.md.nav.parser.PsiBuilderFillingVisitor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+
+/**
+ * Filling the PSI builder from the markdown AST, lexing is done in per invocation set up
+ */
+public class MdPsiBuilderBenchmark extends MdBenchmarkState {
+    private final MdParserDefinition myParserDefinition = new MdParserDefinition();
+    private PsiBuilder myBuilder;
+    private LexerData myLexerData;
+
+    @Setup(Level.Invocation)
+    public void setUpBuilder() {
+        MdLexer lexer = new MdLexer(myRenderingProfile);
+        myBuilder = PsiBuilderFactory.getInstance().createBuilder(myParserDefinition, lexer, myText);
+        myLexerData = lexer.getLexerData();
+    }
+
+    @Benchmark
+    public ASTNode fillPsiBuilder() {
+        new PsiBuilderFillingVisitor(myBuilder).visitNode(myLexerData.rootNode);
+        return myBuilder.getTreeBuilt();
+    }
+}
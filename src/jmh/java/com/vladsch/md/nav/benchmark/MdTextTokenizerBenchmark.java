@@ -0,0 +1,83 @@
+// Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.benchmark;
+
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.spellchecker.inspections.Splitter;
+import com.intellij.spellchecker.tokenizer.TokenConsumer;
+import com.vladsch.md.nav.psi.util.MdLeafCursor;
+import com.vladsch.md.nav.psi.util.MdTypes;
+import com.vladsch.md.nav.spellchecking.MdTextTokenizer;
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * Spellchecking tokenizer on all text blocks of the file: tokenizing with the leaf cursor and
+ * walking the trimmed leaves with and without collecting them in a list
+ */
+public class MdTextTokenizerBenchmark extends MdBenchmarkState {
+    private static class CountingConsumer extends TokenConsumer {
+        int length;
+
+        @Override
+        public void consumeToken(PsiElement element, String text, boolean useRename, int offset, TextRange rangeToCheck, Splitter splitter) {
+            length += text.length();
+        }
+    }
+
+    private static class Tokenizer extends MdTextTokenizer {
+        int countLeaves(PsiElement element) {
+            int count = 0;
+            MdLeafCursor cursor = getSpellCheckableLeaves(element);
+            while (cursor.next() != null) count++;
+            return count;
+        }
+
+        int listLeaves(PsiElement element) {
+            return getSpellCheckableNodes(element).size();
+        }
+    }
+
+    private PsiElement[] myTextBlocks;
+    private Tokenizer myTokenizer;
+
+    @Override
+    protected void setUp() {
+        myTokenizer = ReadAction.compute(Tokenizer::new);
+        myTextBlocks = ReadAction.compute(() -> PsiTreeUtil.collectElements(myFile, element -> element.getNode() != null && element.getNode().getElementType() == MdTypes.TEXT_BLOCK));
+    }
+
+    @Benchmark
+    public int tokenize() {
+        return ReadAction.compute(() -> {
+            CountingConsumer consumer = new CountingConsumer();
+            for (PsiElement textBlock : myTextBlocks) {
+                myTokenizer.tokenize(textBlock, consumer);
+            }
+            return consumer.length;
+        });
+    }
+
+    @Benchmark
+    public int leafCursor() {
+        return ReadAction.compute(() -> {
+            int count = 0;
+            for (PsiElement textBlock : myTextBlocks) {
+                count += myTokenizer.countLeaves(textBlock);
+            }
+            return count;
+        });
+    }
+
+    @Benchmark
+    public int leafList() {
+        return ReadAction.compute(() -> {
+            int count = 0;
+            for (PsiElement textBlock : myTextBlocks) {
+                count += myTokenizer.listLeaves(textBlock);
+            }
+            return count;
+        });
+    }
+}
@@ -17,16 +17,38 @@ package com.vladsch.md.nav
 
 import com.intellij.openapi.Disposable
 import com.intellij.openapi.application.ApplicationManager
+import com.vladsch.md.nav.settings.MdApplicationSettings
 import com.vladsch.plugin.util.plus
 import com.vladsch.plugin.util.suffixWith
 import java.io.File
+import java.io.IOException
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.security.MessageDigest
+import java.util.*
 import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
 import java.util.function.Consumer
 
-class MdImageCache : Disposable {
+/**
+ * Content addressed cache of generated diagram images.
+ *
+ * Image file names are derived from the image key so an image is found under the same name after restart.
+ * The cache index, with image key, file name, size and last access time of each image, is saved in the cache
+ * directory and loaded at startup. Least recently used images are deleted when the cache exceeds its maximum size.
+ */
+class MdImageCache internal constructor(cacheDir: File, private val maxCacheSize: () -> Long) : Disposable {
+    constructor() : this(File(System.getProperty("user.home")).plus(".markdownNavigator").plus("image-cache"), {
+        MdApplicationSettings.instance.documentSettings.imageCacheMaxSize * 1024L * 1024L
+    })
+
     companion object {
         val LOG = com.intellij.openapi.diagnostic.Logger.getInstance("com.vladsch.md.nav.ImageCache")
 
+        const val IMAGE_FILE_PREFIX = "image_"
+        const val INDEX_FILE_NAME = "image-cache.index"
+
         var testInstance: MdImageCache? = null
 
         @JvmStatic
@@ -42,14 +64,39 @@ class MdImageCache : Disposable {
                         ?: throw IllegalStateException()
                 }
             }
+
+        @JvmStatic
+        fun imageFileName(key: String, extension: String): String {
+            val digest = MessageDigest.getInstance("MD5").digest(key.toByteArray(StandardCharsets.UTF_8))
+            val sb = StringBuilder(IMAGE_FILE_PREFIX.length + digest.size * 2 + extension.length)
+            sb.append(IMAGE_FILE_PREFIX)
+            for (b in digest) {
+                sb.append(Character.forDigit((b.toInt() shr 4) and 0xf, 16))
+                sb.append(Character.forDigit(b.toInt() and 0xf, 16))
+            }
+            sb.append(extension)
+            return sb.toString()
+        }
     }
 
-    val imageMD5PathMap = ConcurrentHashMap<String, String>()
-    val cachedImagesMap = ConcurrentHashMap<String, String>()
-    var tempDirPath: String = ""
-        private set
+    private class CacheEntry(val key: String, val file: File, val size: Long, var lastAccess: Long)
+
+    private val lock = Object()
 
-    val fileWriterLock: Any = Object();
+    // access ordered, eldest entries are evicted first
+    private val entries = LinkedHashMap<String, CacheEntry>(64, 0.75f, true)
+    private var totalSize = 0L
+    private var isIndexModified = false
+
+    private val cachedImagesMap = ConcurrentHashMap<String, String>()
+    private val fileWriterLocks = ConcurrentHashMap<String, Any>()
+
+    private val hitCount = AtomicLong()
+    private val missCount = AtomicLong()
+    private val evictionCount = AtomicLong()
+
+    val tempDirPath: String = cacheDir.absolutePath.suffixWith('/')
+    private val indexFile = File(cacheDir, INDEX_FILE_NAME)
 
     init {
         initComponent()
@@ -59,66 +106,231 @@ class MdImageCache : Disposable {
         return cachedImagesMap.containsKey(path)
     }
 
-    fun fileCount(): Int = imageMD5PathMap.size
+    fun fileCount(): Int = synchronized(lock) { entries.size }
+
+    fun fileSize(): Long = synchronized(lock) { totalSize }
+
+    /**
+     * Number of image requests satisfied from the cache
+     */
+    fun hits(): Long = hitCount.get()
+
+    /**
+     * Number of image requests which needed the image to be generated
+     */
+    fun misses(): Long = missCount.get()
+
+    /**
+     * Number of images deleted to keep the cache under its maximum size
+     */
+    fun evictions(): Long = evictionCount.get()
+
+    fun maxSize(): Long = maxCacheSize()
 
-    fun fileSize(): Long {
-        var size = 0L
-        for (file in imageMD5PathMap.values) {
-            val tempFile = File(file)
-            if (tempFile.exists() && tempFile.isFile) {
-                size += tempFile.totalSpace
+    fun clearCache() {
+        val files = ArrayList<File>()
+        synchronized(lock) {
+            for (entry in entries.values) {
+                files.add(entry.file)
             }
+            entries.clear()
+            cachedImagesMap.clear()
+            totalSize = 0L
+            isIndexModified = true
         }
-        return size
-    }
 
-    fun clearCache() {
-        val values = ArrayList(imageMD5PathMap.values)
-        imageMD5PathMap.clear()
-        cachedImagesMap.clear()
-
-        for (file in values) {
-            val tempFile = File(file)
-            if (tempFile.exists() && tempFile.isFile) {
-                tempFile.delete()
+        for (file in files) {
+            if (file.isFile) {
+                file.delete()
             }
         }
+
+        hitCount.set(0)
+        missCount.set(0)
+        evictionCount.set(0)
+        saveIndex()
     }
 
     private fun initComponent() {
-        val tempDir = File(System.getProperty("user.home")).plus(".markdownNavigator").plus("image-cache")
-        tempDirPath = tempDir.absolutePath.suffixWith('/')
+        val tempDir = File(tempDirPath)
 
         if (!tempDir.exists()) {
             tempDir.mkdirs()
         }
+
+        loadIndex()
     }
 
     override fun dispose() {
+        saveIndex()
     }
 
-    fun getImageFile(md5: String, extension: String, fileWriter: Consumer<File>): File {
-        var file: File
-        val path = imageMD5PathMap[md5 + extension]
-        if (path != null) {
-            file = File(path)
-            if (file.isFile && file.exists()) return file
+    private fun loadIndex() {
+        synchronized(lock) {
+            if (indexFile.isFile) {
+                try {
+                    val loaded = ArrayList<CacheEntry>()
+                    for (line in indexFile.readLines(StandardCharsets.UTF_8)) {
+                        // key, file name, size, last access
+                        val fields = line.split('\t')
+                        if (fields.size != 4) continue
+
+                        val file = File(tempDirPath, fields[1])
+                        val lastAccess = fields[3].toLongOrNull() ?: continue
+                        if (!file.isFile) continue
+
+                        loaded.add(CacheEntry(fields[0], file, file.length(), lastAccess))
+                    }
+
+                    loaded.sortBy { it.lastAccess }
+                    for (entry in loaded) {
+                        addEntry(entry)
+                    }
+                } catch (e: IOException) {
+                    LOG.warn(e)
+                }
+            }
+
+            // images not in the index were generated before the index was kept or left by an interrupted write
+            File(tempDirPath).listFiles()?.forEach { file ->
+                if (file.isFile && file.name.startsWith(IMAGE_FILE_PREFIX) && !cachedImagesMap.containsKey(file.path)) {
+                    file.delete()
+                }
+            }
+
+            isIndexModified = true
+            evictEntries(null)
         }
 
-        // does not exit, create it
-        // FIX: try to use the file name as is, if not conflict then save under the original file name else use temp file with prefix prefix
-        file = File.createTempFile("image_", extension, File(tempDirPath))
-        imageMD5PathMap[md5 + extension] = file.path
-        cachedImagesMap[file.path] = md5 + extension
+        saveIndex()
+    }
+
+    private fun saveIndex() {
+        val sb = StringBuilder()
+
+        synchronized(lock) {
+            if (!isIndexModified) return
+            isIndexModified = false
+
+            for (entry in entries.values) {
+                sb.append(entry.key).append('\t').append(entry.file.name).append('\t').append(entry.size).append('\t').append(entry.lastAccess).append('\n')
+            }
+        }
 
         try {
-            // Only one file writer at a time since a file writer can change user.dir setting while generating a file
-            synchronized(fileWriterLock) {
-                fileWriter.accept(file)
+            val tmpFile = File(indexFile.path + ".tmp")
+            tmpFile.writeText(sb.toString(), StandardCharsets.UTF_8)
+            Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+        } catch (e: IOException) {
+            LOG.warn(e)
+        }
+    }
+
+    private fun addEntry(entry: CacheEntry) {
+        val oldEntry = entries.put(entry.key, entry)
+        if (oldEntry != null) {
+            totalSize -= oldEntry.size
+            cachedImagesMap.remove(oldEntry.file.path)
+        }
+
+        totalSize += entry.size
+        cachedImagesMap[entry.file.path] = entry.key
+        isIndexModified = true
+    }
+
+    private fun removeEntry(entry: CacheEntry) {
+        entries.remove(entry.key)
+        cachedImagesMap.remove(entry.file.path)
+        totalSize -= entry.size
+        isIndexModified = true
+    }
+
+    private fun evictEntries(keepKey: String?) {
+        val maxSize = maxCacheSize()
+        if (totalSize <= maxSize) return
+
+        val iterator = entries.values.iterator()
+        while (totalSize > maxSize && iterator.hasNext()) {
+            val entry = iterator.next()
+            if (entry.key == keepKey) continue
+
+            iterator.remove()
+            cachedImagesMap.remove(entry.file.path)
+            totalSize -= entry.size
+            isIndexModified = true
+            evictionCount.incrementAndGet()
+            entry.file.delete()
+        }
+    }
+
+    /**
+     * Get image file if it was already generated
+     *
+     * @param md5       image key
+     * @param extension image file extension
+     * @return image file or null if not generated
+     */
+    fun getCachedImageFile(md5: String, extension: String): File? {
+        synchronized(lock) {
+            val entry = entries[md5 + extension] ?: return null
+            if (!entry.file.isFile) {
+                // deleted outside of the cache
+                removeEntry(entry)
+                return null
+            }
+
+            // last access is saved with the next index change
+            entry.lastAccess = System.currentTimeMillis()
+            hitCount.incrementAndGet()
+            return entry.file
+        }
+    }
+
+    /**
+     * Get image file, generating it if it is not cached
+     *
+     * @param md5        image key
+     * @param extension  image file extension
+     * @param fileWriter writes the image to the given file
+     * @return image file or null if the writer failed or wrote nothing
+     */
+    fun getImageFile(md5: String, extension: String, fileWriter: Consumer<File>): File? {
+        val cachedFile = getCachedImageFile(md5, extension)
+        if (cachedFile != null) return cachedFile
+
+        // only one writer per image, writers of different images run in parallel
+        val key = md5 + extension
+        synchronized(fileWriterLocks.computeIfAbsent(key) { Object() }) {
+            try {
+                val writtenFile = getCachedImageFile(md5, extension)
+                if (writtenFile != null) return writtenFile
+
+                missCount.incrementAndGet()
+                val file = File(tempDirPath, imageFileName(md5, extension))
+
+                try {
+                    fileWriter.accept(file)
+                } catch (e: Throwable) {
+                    LOG.error(e)
+                }
+
+                if (!file.isFile || file.length() == 0L) {
+                    // failed or partial write, not cached so it will be generated again on next request
+                    file.delete()
+                    return null
+                }
+
+                // added after it is written so other threads do not use a partial file
+                synchronized(lock) {
+                    addEntry(CacheEntry(key, file, file.length(), System.currentTimeMillis()))
+                    evictEntries(key)
+                }
+
+                saveIndex()
+                return file
+            } finally {
+                fileWriterLocks.remove(key)
             }
-        } catch (e: Throwable) {
-            LOG.error(e)
         }
-        return file
     }
 }
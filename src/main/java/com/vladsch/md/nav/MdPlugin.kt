@@ -49,6 +49,7 @@ import com.vladsch.md.nav.actions.ide.CopyFileNameProvider
 import com.vladsch.md.nav.actions.ide.CopyFilePathWithLineNumbersProvider
 import com.vladsch.md.nav.actions.ide.CopyUpsourceFilePathWithLineNumbersProvider
 import com.vladsch.md.nav.highlighter.MdSyntaxHighlighter
+import com.vladsch.md.nav.language.injection.LanguageGuesser
 import com.vladsch.md.nav.settings.MdApplicationSettings
 import com.vladsch.md.nav.settings.MdDocumentSettings
 import com.vladsch.md.nav.settings.SettingsChangedListener
@@ -150,6 +151,8 @@ class MdPlugin : BaseComponent, Disposable {
         val settingsConnection = ApplicationManager.getApplication().messageBus.connect(this as Disposable)
         settingsConnection.subscribe(SettingsChangedListener.TOPIC, settingsChangedListener)
 
+        LanguageGuesser.INSTANCE.listenForChanges(this)
+
         @Suppress("DEPRECATION")
         EditorColorsManager.getInstance().addEditorColorsListener(EditorColorsListener {
             MdSyntaxHighlighter.computeMergedAttributes(true)
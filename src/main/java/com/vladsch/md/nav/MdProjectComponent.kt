@@ -60,6 +60,7 @@ import com.vladsch.md.nav.settings.*
 import com.vladsch.md.nav.util.EditorWindowKey
 import com.vladsch.md.nav.util.MdCancelableJobScheduler
 import com.vladsch.md.nav.util.PathInfo
+import com.vladsch.md.nav.vcs.MdLinkGraph
 import com.vladsch.md.nav.vcs.MdLinkResolverManager
 import com.vladsch.plugin.util.AwtRunnable
 import com.vladsch.plugin.util.DelayedRunner
@@ -106,6 +107,8 @@ class MdProjectComponent(val project: Project) : ProjectComponent, Disposable {
     private val runWhenProjectClosed = DelayedRunner()
 
     private var reloadEditorsPending = false
+    private var updateHighlightersPending = false
+    private val linkGraph = MdLinkGraph()
     private var reopenChangedEditorsPending = false
     private var reopenRefusedByUser = HashSet<String>()
 
@@ -357,6 +360,7 @@ class MdProjectComponent(val project: Project) : ProjectComponent, Disposable {
     override fun projectClosed() {
         println("projectClosed $time")
         reinitializeEditorSettings.clear()
+        linkGraph.clear()
         runWhenProjectClosed.runAll()
     }
 
@@ -401,25 +405,32 @@ class MdProjectComponent(val project: Project) : ProjectComponent, Disposable {
             is VFileCopyEvent -> {
                 val copy = event.newParent.findChild(event.newChildName)
                 if (copy != null) {
-                    updateHighlighters()
+                    updateHighlighters(copy, copy.path)
                 }
             }
             is VFileCreateEvent -> {
                 val newChild = event.file
                 if (newChild != null) {
-                    updateHighlighters()
+                    updateHighlighters(newChild, newChild.path)
                     if (!newChild.isDirectory) fileContentChanged(newChild)
                 }
             }
             is VFileDeleteEvent -> {
-                updateHighlighters()
+                updateHighlighters(event.file, event.path)
                 if (!event.file.isDirectory) fileContentChanged(event.file)
             }
             is VFileMoveEvent -> {
-                updateHighlighters()
+                updateHighlighters(event.file, event.oldPath, event.newPath)
             }
             is VFilePropertyChangeEvent -> {
                 // NOTE: this also one fires often when document is modified with writeable property changing
+                if (event.propertyName == VirtualFile.PROP_NAME && event.oldValue != event.newValue) {
+                    val parentPath = event.file.parent?.path
+                    if (parentPath != null) {
+                        updateHighlighters(event.file, "$parentPath/${event.oldValue}", "$parentPath/${event.newValue}")
+                    }
+                }
+
                 if (!event.file.isDirectory) {
 //                    System.out.println("PropertyChanged: ${event.propertyName}: old: ${event.oldValue} new: ${event.newValue}")
                     if (event.propertyName == "name" && (event.oldValue == event.newValue || PathInfo(event.oldValue as String).ext != PathInfo(event.newValue as String).ext)) {
@@ -742,12 +753,67 @@ class MdProjectComponent(val project: Project) : ProjectComponent, Disposable {
         println("disposeComponent $time")
     }
 
-    private fun updateHighlighters(reparseFilePsi: Boolean = false) {
+    /**
+     * Restart analysis of open files whose links can resolve differently after files with given paths were
+     * created, deleted, moved or renamed. Directory changes restart all open markdown files.
+     *
+     * Events are accumulated and handled in one update after the current event dispatch.
+     */
+    private fun updateHighlighters(file: VirtualFile, vararg paths: String) {
+        if (project.isDisposed) return
+
         // project files have changed so we need to update the lists and then reparse for link validation
         // We get a call back when all have been updated.
-        ApplicationManager.getApplication().invokeLater {
-            if (!project.isDisposed) {
-                reparseMarkdown(reparseFilePsi)
+        linkGraph.pathsChanged(file.isDirectory || !MdApplicationSettings.instance.debugSettings.useTargetedHighlighterRestart, *paths)
+
+        if (!updateHighlightersPending) {
+            updateHighlightersPending = true
+
+            ApplicationManager.getApplication().invokeLater {
+                val changedPaths = linkGraph.takeChangedPaths()
+                updateHighlightersPending = false
+
+                if (!project.isDisposed) {
+                    if (changedPaths == null) {
+                        reparseMarkdown(false)
+                    } else {
+                        restartAffectedFiles(changedPaths)
+                    }
+                }
+            }
+        }
+    }
+
+    private fun restartAffectedFiles(paths: Collection<String>) {
+        if (DumbService.isDumb(project)) {
+            DumbService.getInstance(project).runWhenSmart {
+                if (!project.isDisposed) restartAffectedFiles(paths)
+            }
+            return
+        }
+
+        val psiManager = PsiManager.getInstance(project)
+        val files = ArrayList<MdFile>()
+        for (file in FileEditorManager.getInstance(project).openFiles) {
+            if (file.isValid) {
+                val psiFile = psiManager.findFile(file)
+                if (psiFile is MdFile) files.add(psiFile)
+            }
+        }
+
+        val affectedFiles = ApplicationManager.getApplication().runReadAction<Set<MdFile>> {
+            linkGraph.getAffectedFiles(files, paths)
+        }.toMutableSet()
+
+        // moved or renamed files have all their relative links changed
+        files.filterTo(affectedFiles) { paths.contains(it.virtualFile?.path) }
+
+        if (LOG.isDebugEnabled) LOG.debug("restart ${affectedFiles.size} of ${files.size} open files for ${paths.size} changed paths")
+
+        val instance = DaemonCodeAnalyzer.getInstance(project)
+        for (file in affectedFiles) {
+            if (file.isValid) {
+                instance.restart(file)
             }
         }
     }
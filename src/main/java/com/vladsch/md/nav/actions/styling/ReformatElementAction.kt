@@ -5,13 +5,18 @@ package com.vladsch.md.nav.actions.styling
 import com.intellij.openapi.actionSystem.AnAction
 import com.intellij.openapi.actionSystem.AnActionEvent
 import com.intellij.openapi.command.WriteCommandAction
+import com.vladsch.flexmark.util.format.TrackedOffset
 import com.vladsch.md.nav.MdBundle
 import com.vladsch.md.nav.actions.api.MdFormatElementHandler
 import com.vladsch.md.nav.actions.handlers.util.CaretContextInfo
 import com.vladsch.md.nav.actions.handlers.util.ParagraphContext
+import com.vladsch.md.nav.actions.handlers.util.getDiffInfo
 import com.vladsch.md.nav.actions.styling.util.MdActionUtil
 import com.vladsch.md.nav.language.MdCodeStyleSettings
+import com.vladsch.md.nav.psi.element.MdFile
+import com.vladsch.md.nav.settings.MdApplicationSettings
 import com.vladsch.md.nav.util.format.FormatControlProcessor
+import com.vladsch.md.nav.util.format.MdFormatter
 
 class ReformatElementAction : AnAction() {
     override fun isDumbAware(): Boolean {
@@ -41,6 +46,14 @@ class ReformatElementAction : AnAction() {
                     }
                 }
 
+                // format top level blocks of selection
+                if (editor.caretModel.caretCount == 1 && editor.selectionModel.hasSelection()
+                    && MdApplicationSettings.instance.debugSettings.useRangeFormatting
+                    && caretContext.isFormatRegion(editor.selectionModel.selectionStart)
+                ) {
+                    if (formatSelection(caretContext)) return@withContext
+                }
+
                 // fall back to default of formatting paragraph
                 val context = ParagraphContext.getContext(caretContext)
                 if (context != null) {
@@ -57,4 +70,30 @@ class ReformatElementAction : AnAction() {
             }
         }
     }
+
+    private fun formatSelection(caretContext: CaretContextInfo): Boolean {
+        val mdFile = caretContext.file as? MdFile ?: return false
+        val editor = caretContext.editor
+        val selectionModel = editor.selectionModel
+        val trackedOffset = TrackedOffset.track(editor.caretModel.offset, null, false)
+        val rangeFormat = MdFormatter.formatRange(mdFile, editor, selectionModel.selectionStart, selectionModel.selectionEnd, listOf(trackedOffset)) ?: return false
+
+        val document = editor.document
+        val originalChars = document.immutableCharSequence.subSequence(rangeFormat.startOffset, rangeFormat.endOffset)
+        val diffInfo = getDiffInfo(originalChars, rangeFormat.text, false)
+        if (diffInfo.isEqual || diffInfo.lastCharDiff) {
+            CaretContextInfo.showEditorTooltip(editor, MdBundle.message("tooltip.document.format.no-changes")) { }
+            return true
+        }
+
+        WriteCommandAction.runWriteCommandAction(mdFile.project) {
+            val replaceChars = rangeFormat.text.subSequence(diffInfo.firstDiff, rangeFormat.text.length - diffInfo.lastDiff)
+            document.replaceString(rangeFormat.startOffset + diffInfo.firstDiff, rangeFormat.endOffset - diffInfo.lastDiff, replaceChars)
+
+            if (trackedOffset.isResolved) {
+                editor.caretModel.currentCaret.moveToOffset(rangeFormat.startOffset + trackedOffset.index)
+            }
+        }
+        return true
+    }
 }
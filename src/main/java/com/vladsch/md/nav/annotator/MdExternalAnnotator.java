@@ -14,7 +14,7 @@ import com.intellij.psi.PsiFile;
 import com.vladsch.flexmark.util.sequence.BasedSequence;
 import com.vladsch.md.nav.highlighter.MdSyntaxHighlighter;
 import com.vladsch.md.nav.parser.LexerData;
-import com.vladsch.md.nav.parser.LexerToken;
+import com.vladsch.md.nav.parser.LexerTokenBuffer;
 import com.vladsch.md.nav.parser.MdLexParserManager;
 import com.vladsch.md.nav.parser.MdLexemeProcessor;
 import com.vladsch.md.nav.settings.MdApplicationSettings;
@@ -25,15 +25,13 @@ import com.vladsch.md.nav.settings.SyntaxHighlightingType;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.ArrayList;
-
 import static com.vladsch.flexmark.util.sequence.BasedSequence.EMPTY;
 
-public class MdExternalAnnotator extends ExternalAnnotator<MdExternalAnnotator.ProjectCharSequence, LexerToken[]> {
+public class MdExternalAnnotator extends ExternalAnnotator<MdExternalAnnotator.ProjectCharSequence, LexerTokenBuffer> {
     private static final Logger LOG = Logger.getInstance("com.vladsch.md.nav.annotator.external");
 
     private static final SyntaxHighlighter SYNTAX_HIGHLIGHTER = new MdSyntaxHighlighter();
-    private static final LexerToken[] LEXER_TOKENS = new LexerToken[0];
+    private static final LexerTokenBuffer LEXER_TOKENS = new LexerTokenBuffer(0);
 
     public MdExternalAnnotator() {
 
@@ -72,7 +70,7 @@ public class MdExternalAnnotator extends ExternalAnnotator<MdExternalAnnotator.P
     }
 
     @Override
-    public LexerToken[] doAnnotate(final ProjectCharSequence source) {
+    public LexerTokenBuffer doAnnotate(final ProjectCharSequence source) {
         LOG.debug("doAnnotate editor, hasErrors for " + source.mySource);
         if (MdApplicationSettings.getInstance().getDocumentSettings().getSyntaxHighlighting() == SyntaxHighlightingType.ANNOTATOR.getIntValue()) {
             final MdRenderingProfile renderingProfile = source.myRenderingProfile;
@@ -85,30 +83,25 @@ public class MdExternalAnnotator extends ExternalAnnotator<MdExternalAnnotator.P
                 lexerData[0] = MdLexParserManager.parseMarkdown(renderingProfile, source.myCharSequence);
             });
             if (lexerData[0] != null) {
-                LexerToken[] tokens = lexerData[0].lexerTokens;
+                LexerTokenBuffer tokens = lexerData[0].lexerTokens;
                 // parse whitespace and EOL as per lexer
                 CharSequence chars = source.myCharSequence;
                 MdLexemeProcessor processor = new MdLexemeProcessor(chars, tokens, 0, chars.length(), 0);
-                ArrayList<LexerToken> tokenList = new ArrayList<>();
-                while (true) {
-                    LexerToken token = processor.getLexerToken();
-                    if (token == null) break;
-                    tokenList.add(token);
-                    processor.advance();
-                }
-                LexerToken[] tokensWithWhiteSpace = tokenList.toArray(LEXER_TOKENS);
-                return tokensWithWhiteSpace;
+                return processor.collectTokens();
             }
         }
         return LEXER_TOKENS;
     }
 
     @Override
-    public void apply(final @NotNull PsiFile file, final LexerToken[] annotationResult, final @NotNull AnnotationHolder holder) {
-        for (final LexerToken token : annotationResult) {
-            final TextAttributesKey[] attrs = SYNTAX_HIGHLIGHTER.getTokenHighlights(token.getElementType());
-            TextRange range = token.getTextRange();
-            if (attrs.length > 0) holder.createInfoAnnotation(range, null).setTextAttributes(attrs[0]);
+    public void apply(final @NotNull PsiFile file, final LexerTokenBuffer annotationResult, final @NotNull AnnotationHolder holder) {
+        int iMax = annotationResult.size();
+        for (int i = 0; i < iMax; i++) {
+            final TextAttributesKey[] attrs = SYNTAX_HIGHLIGHTER.getTokenHighlights(annotationResult.getElementType(i));
+            if (attrs.length > 0) {
+                TextRange range = new TextRange(annotationResult.getStart(i), annotationResult.getEnd(i));
+                holder.createInfoAnnotation(range, null).setTextAttributes(attrs[0]);
+            }
         }
     }
 }
@@ -6,18 +6,19 @@ import com.intellij.openapi.vfs.VirtualFile
 import com.intellij.psi.PsiManager
 import com.vladsch.flexmark.html.HtmlRenderer
 import com.vladsch.flexmark.parser.Parser
+import com.vladsch.flexmark.util.data.MutableDataHolder
 import com.vladsch.flexmark.util.sequence.LineAppendable
 import com.vladsch.flexmark.util.sequence.Range
 import com.vladsch.md.nav.editor.resources.TextHtmlGeneratorProvider
 import com.vladsch.md.nav.editor.split.SplitFileEditor
 import com.vladsch.md.nav.editor.text.TextHtmlPanelProvider
 import com.vladsch.md.nav.editor.util.HtmlGeneratorProvider
+import com.vladsch.md.nav.parser.MdFlexmarkCache
 import com.vladsch.md.nav.parser.api.HtmlPurpose
 import com.vladsch.md.nav.parser.flexmark.MdNavigatorExtension
 import com.vladsch.md.nav.vcs.GitHubLinkResolver
 import com.vladsch.plugin.util.TimeIt
 import java.util.*
-import java.util.function.Consumer
 import java.util.regex.Pattern
 import kotlin.collections.LinkedHashMap
 
@@ -148,15 +149,23 @@ class MdPreviewFileEditor constructor(project: Project, file: VirtualFile) : Pre
 
         TimeIt.logTime(LOG, "MarkdownPreviewFileEditor::makeHtmlPage toHtml") {
             // diagnostic/2612  use immutableCharSequence
-            currentHtml = myHtmlGenerator.toHtml(psiFile, myDocument.immutableCharSequence, HtmlPurpose.RENDER, null, null, Consumer { it ->
-                if (!plainText) {
-                    if (rangeMap != null) {
-                        // add range list
-                        it.set(MdNavigatorExtension.HIGHLIGHT_RANGES, rangeMap)
-                        it.set(Parser.FENCED_CODE_CONTENT_BLOCK, true)
+            val highlightRanges = rangeMap
+            currentHtml = myHtmlGenerator.toHtml(psiFile, myDocument.immutableCharSequence, HtmlPurpose.RENDER, null, null, object : MdFlexmarkCache.VariantOptionsAdjuster {
+                // highlight ranges are per call values, only their presence changes the options
+                override fun getVariant(): Any = Pair(plainText, highlightRanges != null)
+
+                override fun accept(it: MutableDataHolder) {
+                    it.set(MdNavigatorExtension.ASYNC_IMAGE_RENDERING, true)
+
+                    if (!plainText) {
+                        if (highlightRanges != null) {
+                            // add range list
+                            it.set(MdNavigatorExtension.HIGHLIGHT_RANGES, highlightRanges)
+                            it.set(Parser.FENCED_CODE_CONTENT_BLOCK, true)
+                        }
+                        // fastest output possible
+                        it.set(HtmlRenderer.FORMAT_FLAGS, LineAppendable.F_PASS_THROUGH)
                     }
-                    // fastest output possible
-                    it.set(HtmlRenderer.FORMAT_FLAGS, LineAppendable.F_PASS_THROUGH)
                 }
             })
         }
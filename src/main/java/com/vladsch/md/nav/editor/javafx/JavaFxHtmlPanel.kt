@@ -31,14 +31,17 @@ import com.vladsch.md.nav.MdProjectComponent
 import com.vladsch.md.nav.editor.HtmlPanelHost
 import com.vladsch.md.nav.editor.PreviewEditorState
 import com.vladsch.md.nav.editor.api.MdPreviewCustomizationProvider
+import com.vladsch.md.nav.editor.util.HtmlBlockPatcher
 import com.vladsch.md.nav.editor.util.HtmlPanel
 import com.vladsch.md.nav.editor.util.HtmlResource
+import com.vladsch.md.nav.editor.util.TagRangeIndex
 import com.vladsch.md.nav.parser.flexmark.MdNavigatorExtension
 import com.vladsch.md.nav.settings.*
 import com.vladsch.md.nav.util.PathInfo
 import com.vladsch.plugin.util.*
 import com.vladsch.plugin.util.image.ImageUtils
 import javafx.application.Platform
+import javafx.concurrent.Worker
 import javafx.embed.swing.JFXPanel
 import javafx.print.PrinterJob
 import javafx.scene.Scene
@@ -48,6 +51,7 @@ import netscape.javascript.JSException
 import netscape.javascript.JSObject
 import org.intellij.lang.annotations.Language
 import org.jdom.Text
+import org.w3c.dom.Document
 import org.w3c.dom.Element
 import org.w3c.dom.Node
 import org.w3c.dom.events.EventListener
@@ -80,6 +84,7 @@ class JavaFxHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPane
     private var myScrollAttribute: String = ""
     private var myScrollReference: String = ""
     private val myWebViewFxRunner = WebViewFxRunner()
+    private val myBlockPatcher = HtmlBlockPatcher()
     private var myOnTypingUpdate = AtomicBoolean(false)
     private var myState = PreviewEditorState()
     private var myVerticalLocation: Float? = null
@@ -415,7 +420,24 @@ class JavaFxHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPane
         // so this is now done by creating a new preview
         myLastPageUrl = ""
 
-        LOG.debug { "[$myInstance] updating content, last page url $lastPageUrl" }
+        // debugger needs page reloads to re-inject its scripts
+        val page = if (HtmlBlockPatcher.isEnabled && !isDebugging() && lastPageUrl.isEmpty()) HtmlBlockPatcher.parsePage(html, scrollScriptUrl) else null
+        if (page != null && myBlockPatcher.canPatch(page)) {
+            LOG.debug { "[$myInstance] patching content" }
+            myWebViewFxRunner.schedule("JavaFxHtml::setHtml.patchContent", WebViewFxRunner.Type.PAGE_PATCH) {
+                if (!myProject.isDisposed) {
+                    patchContent(page, result)
+                }
+            }
+        } else {
+            LOG.debug { "[$myInstance] updating content, last page url $lastPageUrl" }
+            loadContent(result, page)
+        }
+
+        return true
+    }
+
+    private fun loadContent(result: String, page: HtmlBlockPatcher.Page?) {
         myWebViewFxRunner.schedule("JavaFxHtml::setHtml.loadContent", WebViewFxRunner.Type.LOADER) {
             if (!myProject.isDisposed) {
                 val htmlPanelHost = myHtmlPanelHost
@@ -441,13 +463,75 @@ class JavaFxHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPane
                     LOG.debug { "[$myInstance] updated content" }
                 }
 
+                myBlockPatcher.load(if (alternatePage) null else page)
+
                 myWebViewFxRunner.schedule("JavaFxHtml::setHtml.preparePage", WebViewFxRunner.Type.INITIALIZER) {
                     preparePage()
                 }
             }
         }
+    }
 
-        return true
+    private fun patchContent(page: HtmlBlockPatcher.Page, result: String) {
+        // a page still loading may not have its blocks or scripts yet
+        val isLoading = myWebView.engine.loadWorker.state in listOf(Worker.State.SCHEDULED, Worker.State.RUNNING)
+        val patch = if (isLoading) null else myBlockPatcher.patch(page)
+        if (patch == null) {
+            loadContent(result, page)
+            return
+        }
+
+        if (!patch.isEmpty) {
+            val insertCount = try {
+                (myWebView.engine.executeScript(patch.script) as? Number)?.toInt() ?: -1
+            } catch (ex: JSException) {
+                LOG.debug(ex)
+                -1
+            }
+
+            if (insertCount < 0) {
+                // page does not match the blocks it was loaded with
+                LOG.debug { "[$myInstance] patch failed, reloading content" }
+                myBlockPatcher.reset()
+                loadContent(result, page)
+                return
+            }
+
+            val doc = myWebView.engine.document
+            if (doc != null && insertCount > 0) {
+                prepareElements(articleBlocks(doc, patch.start, insertCount), myLastPageUrl)
+            }
+        }
+
+        LOG.debug { "[$myInstance] patched content $patch" }
+
+        val previewSettings = myHtmlPanelHost.getRenderingProfile().previewSettings
+        if (previewSettings.synchronizePreviewPosition) {
+            executeScrollScript(previewSettings)
+        }
+    }
+
+    private fun articleBlocks(doc: Document, start: Int, count: Int): List<Element> {
+        val articles = doc.getElementsByTagName("article")
+        for (i in 0 until articles.length) {
+            val article = articles.item(i) as Element
+            val articleClass = article.getAttribute("class")
+            if (articleClass != "markdown-body" && articleClass != "wiki-body") continue
+
+            // same blocks as HtmlBlockPatcher.parsePage(), skipping whitespace between them
+            val blocks = ArrayList<Element>()
+            var index = 0
+            val childNodes = article.childNodes
+            for (j in 0 until childNodes.length) {
+                val child = childNodes.item(j)
+                if (child.nodeType == Node.TEXT_NODE && child.textContent.isBlank()) continue
+                if (index >= start + count) break
+                if (index >= start && child is Element) blocks.add(child)
+                index++
+            }
+            return blocks
+        }
+        return listOf()
     }
 
     internal fun getJsBridgeHelperScriptUrl(): String = getInjectedScriptUrl("/com/vladsch/md/nav/markdown-navigator.js")
@@ -467,6 +551,7 @@ class JavaFxHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPane
 
         myLastRawHtml = ""
         myLastPageUrl = url
+        myBlockPatcher.reset()
 
         LOG.debug { "[$myInstance] updating url: $url" }
         myWebViewFxRunner.schedule("JavaFxHtml::setPageUrl", WebViewFxRunner.Type.LOADER) {
@@ -500,18 +585,7 @@ class JavaFxHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPane
                         myWebViewFxRunner.setInitialized()
                     }
 
-                    val highlightEnabled = myHtmlPanelHost.isHighlightEnabled()
-                    val onTypingUpdate = myOnTypingUpdate.get()
-                    myOnTypingUpdate.set(false)
-                    val highlightOnTyping = previewSettings.highlightOnTyping
-                    val highlightFadeOut = previewSettings.highlightFadeOut * 1000
-                    val s = "scrollToSourcePosition($myVerticalLocation,'$myScrollTag','$myScrollAttribute','$myScrollReference',$highlightEnabled,$onTypingUpdate,$highlightOnTyping,$highlightFadeOut);"
-                    LOG.debugOne(loggerScroll) { "[$myInstance] executing scroll: '$s'" }
-                    try {
-                        myWebView.engine.executeScript(s)
-                    } catch (ex: JSException) {
-                        LOG.debugOne(loggerScroll, e = ex) { "[$myInstance] JSException on script" }
-                    }
+                    executeScrollScript(previewSettings)
                 }
             }
         } else {
@@ -521,25 +595,24 @@ class JavaFxHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPane
         }
     }
 
+    private fun executeScrollScript(previewSettings: MdPreviewSettings) {
+        val highlightEnabled = myHtmlPanelHost.isHighlightEnabled()
+        val onTypingUpdate = myOnTypingUpdate.get()
+        myOnTypingUpdate.set(false)
+        val highlightOnTyping = previewSettings.highlightOnTyping
+        val highlightFadeOut = previewSettings.highlightFadeOut * 1000
+        val s = "scrollToSourcePosition($myVerticalLocation,'$myScrollTag','$myScrollAttribute','$myScrollReference',$highlightEnabled,$onTypingUpdate,$highlightOnTyping,$highlightFadeOut);"
+        LOG.debugOne(loggerScroll) { "[$myInstance] executing scroll: '$s'" }
+        try {
+            myWebView.engine.executeScript(s)
+        } catch (ex: JSException) {
+            LOG.debugOne(loggerScroll, e = ex) { "[$myInstance] JSException on script" }
+        }
+    }
+
     override fun scrollToMarkdownSrcOffset(offset: Int, lineOffsets: Range, verticalLocation: Float?, tagRanges: List<TagRange>, onLoadUpdate: Boolean, onTypingUpdate: Boolean) {
         // now we have the best possible match from all the elements, we can find the tag and scroll it into view
-        var bestTagRange: TagRange? = null
-        val tagPriorities = mapOf(
-            "a" to 1,
-            "span" to 2,
-            "img" to 3
-        )
-
-        for (tagRange in tagRanges) {
-            if (tagRange.doesContain(offset)) {
-                if (bestTagRange == null || tagRange.span < bestTagRange.span || tagRange.span <= bestTagRange.span && (tagPriorities[tagRange.tag]
-                        ?: 0) > (tagPriorities[bestTagRange.tag] ?: 0)) {
-                    bestTagRange = tagRange
-                }
-            } else if (bestTagRange == null && lineOffsets.doesOverlap(tagRange)) {
-                bestTagRange = tagRange
-            }
-        }
+        val bestTagRange = TagRangeIndex.of(tagRanges).findBestTagRange(offset, lineOffsets)
 
         LOG.debugOne(loggerScroll) { "scrollToMarkdownSrcOffset($offset, $lineOffsets, $verticalLocation, tagRanges, $onLoadUpdate, $onTypingUpdate) bestFit: ${bestTagRange?.tag} $bestTagRange" }
 
@@ -552,9 +625,14 @@ class JavaFxHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPane
         myVerticalLocation = verticalLocation
 
         if (onLoadUpdate) {
-            // we will get a page update so we cancel the current page first and then schedule the scroll
-            LOG.debugOne(loggerScroll) { "scrollToMarkdownSrcOffset: fxRunner cancelAll, prep for load" }
-            myWebViewFxRunner.cancelAll("scrollToMarkdownSrcOffset prep for load")
+            if (myBlockPatcher.hasLoadedPage) {
+                // page update may be a patch of the loaded page which scrolls after patching, a full load cancels all on its own
+                LOG.debugOne(loggerScroll) { "scrollToMarkdownSrcOffset: prep for patch or load" }
+            } else {
+                // we will get a page update so we cancel the current page first and then schedule the scroll
+                LOG.debugOne(loggerScroll) { "scrollToMarkdownSrcOffset: fxRunner cancelAll, prep for load" }
+                myWebViewFxRunner.cancelAll("scrollToMarkdownSrcOffset prep for load")
+            }
         } else {
             myPageReloadTriggered = false
             scrollToReference(onTypingUpdate)
@@ -619,27 +697,62 @@ class JavaFxHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPane
                 (doc.documentElement as EventTarget).addEventListener("contextmenu", { evt -> evt.preventDefault() }, false)
             }
 
-            val listener = EventListener { evt ->
-                if (myProject.isDisposed) return@EventListener
+            prepareElements(listOf(doc.documentElement), lastPageUrl)
+
+            if (myHtmlPanelHost.getRenderingProfile().previewSettings.synchronizeSourcePositionOnClick) {
+                val clickListener = EventListener { evt ->
+                    if (myProject.isDisposed) return@EventListener
 
-                val link = evt.currentTarget as Element
-                val href = link.getAttribute("href")
-                if (href[0] == '#') {
-                    if (!lastPageUrl.isEmpty()) {
-                        // we're on github, process as normal
+                    if (myJSBridge.jsEventHandledBy != null) {
+                        loggerScroll.debugOne(LOG) { "onClick: sync source to preview, default prevented by: ${myJSBridge.jsEventHandledBy}" }
+                        myJSBridge.clearJSEventHandledBy()
                         return@EventListener
+                    } else {
+                        loggerScroll.debugOne(LOG) { "onClick: sync source to preview" }
                     }
 
-                    evt.stopPropagation()
-                    evt.preventDefault()
+                    var element: Node? = evt.target as Node
+                    while (element != null) {
+                        val srcPos = element.attributes?.getNamedItem("md-pos")
+                        if (srcPos !== null) {
+                            val startPos = srcPos.nodeValue.split('-', limit = 2)[0].toInt()
+                            myHtmlPanelHost.synchronizeCaretPos(startPos)
+                            break
+                        }
+                        element = element.parentNode as? Element
+                    }
+                }
 
-                    if (href.length != 1) {
-                        // tries to go to an anchor
-                        val hrefName = href.substring(1)
-                        // scroll it into view
-                        try {
-                            @Language("JavaScript")
-                            val func = """
+                (doc as EventTarget).addEventListener("click", clickListener, false)
+            }
+        }
+    }
+
+    /**
+     * Add link, task item listeners and adjust image urls of elements, for the whole document on load and for patched blocks
+     */
+    private fun prepareElements(roots: List<Element>, lastPageUrl: String) {
+        val listener = EventListener { evt ->
+            if (myProject.isDisposed) return@EventListener
+
+            val link = evt.currentTarget as Element
+            val href = link.getAttribute("href")
+            if (href[0] == '#') {
+                if (!lastPageUrl.isEmpty()) {
+                    // we're on github, process as normal
+                    return@EventListener
+                }
+
+                evt.stopPropagation()
+                evt.preventDefault()
+
+                if (href.length != 1) {
+                    // tries to go to an anchor
+                    val hrefName = href.substring(1)
+                    // scroll it into view
+                    try {
+                        @Language("JavaScript")
+                        val func = """
 (function (hrefName) {
     let elemTop = 0;
     let elements = '';
@@ -665,104 +778,69 @@ class JavaFxHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPane
     return { elemTop: elemTop, elements: elements, found: !!elem };
 })
 """
-                            val result: JSObject = myWebView.engine.executeScript("$func('$hrefName');") as JSObject
-                            val elemTop = result.getMember("elemTop") as Int
-                            val elemFound = result.getMember("found") as Boolean
-
-                            if (elemFound) myWebView.engine.executeScript("window.scroll(0, $elemTop)")
-                        } catch (ex: JSException) {
-                            //                            val error = ex.toString()
-                            LOG.debugOne(loggerScroll, e = ex) { "[$myInstance] JSException on script" }
-                        }
-                    }
-                } else {
-                    // NOTE: some links can cause the JavaFx to crash so we disable this feature with bundled JVM on Mac, if they are missing the needed libraries
-                    if (launchExternalLink(href)) {
-                        evt.stopPropagation()
-                        evt.preventDefault()
+                        val result: JSObject = myWebView.engine.executeScript("$func('$hrefName');") as JSObject
+                        val elemTop = result.getMember("elemTop") as Int
+                        val elemFound = result.getMember("found") as Boolean
+
+                        if (elemFound) myWebView.engine.executeScript("window.scroll(0, $elemTop)")
+                    } catch (ex: JSException) {
+                        //                        val error = ex.toString()
+                        LOG.debugOne(loggerScroll, e = ex) { "[$myInstance] JSException on script" }
                     }
                 }
-            }
-
-            val documentPath = myHtmlPanelHost.getVirtualFile().parent?.path?.suffixWith('/')
-            val fileUriPrefix = if (documentPath != null && documentPath.length > 1 && documentPath[1] == ':') "file:/" else MdNavigatorExtension.FILE_URI_PREFIX
-            val projectComponent = if (documentPath != null) MdProjectComponent.getInstance(myProject) else null
-
-            val nodeList = doc.getElementsByTagName("a")
-            for (i in 0 until nodeList.length) {
-                val item = nodeList.item(i)
-                (item as EventTarget).addEventListener("click", listener, false)
-            }
-
-            val taskListener = EventListener { evt ->
-                if (myProject.isDisposed) return@EventListener
-
-                val span = evt.currentTarget as Element
-                val listItem = span.parentNode as Element
-                val taskOffset = listItem.getAttribute("task-offset")
-                if (taskOffset != null && taskOffset.isNotEmpty()) {
+            } else {
+                // NOTE: some links can cause the JavaFx to crash so we disable this feature with bundled JVM on Mac, if they are missing the needed libraries
+                if (launchExternalLink(href)) {
                     evt.stopPropagation()
                     evt.preventDefault()
-
-                    myHtmlPanelHost.toggleTask(taskOffset)
                 }
             }
+        }
 
-            val spanList = doc.getElementsByTagName("span")
-            for (i in 0 until spanList.length) {
-                val item = spanList.item(i) as Element
-                val spanClass = item.getAttribute("class")
-                if (spanClass == "task-item-closed" || spanClass == "task-item-open") {
-                    (item as EventTarget).addEventListener("click", taskListener, false)
-                }
-            }
+        val documentPath = myHtmlPanelHost.getVirtualFile().parent?.path?.suffixWith('/')
+        val fileUriPrefix = if (documentPath != null && documentPath.length > 1 && documentPath[1] == ':') "file:/" else MdNavigatorExtension.FILE_URI_PREFIX
+        val projectComponent = if (documentPath != null) MdProjectComponent.getInstance(myProject) else null
 
-            if (myHtmlPanelHost.getRenderingProfile().previewSettings.synchronizeSourcePositionOnClick) {
-                val clickListener = EventListener { evt ->
-                    if (myProject.isDisposed) return@EventListener
+        for (item in elementsByTagName(roots, "a")) {
+            (item as EventTarget).addEventListener("click", listener, false)
+        }
 
-                    if (myJSBridge.jsEventHandledBy != null) {
-                        loggerScroll.debugOne(LOG) { "onClick: sync source to preview, default prevented by: ${myJSBridge.jsEventHandledBy}" }
-                        myJSBridge.clearJSEventHandledBy()
-                        return@EventListener
-                    } else {
-                        loggerScroll.debugOne(LOG) { "onClick: sync source to preview" }
-                    }
+        val taskListener = EventListener { evt ->
+            if (myProject.isDisposed) return@EventListener
 
-                    var element: Node? = evt.target as Node
-                    while (element != null) {
-                        val srcPos = element.attributes?.getNamedItem("md-pos")
-                        if (srcPos !== null) {
-                            val startPos = srcPos.nodeValue.split('-', limit = 2)[0].toInt()
-                            myHtmlPanelHost.synchronizeCaretPos(startPos)
-                            break
-                        }
-                        element = element.parentNode as? Element
-                    }
-                }
+            val span = evt.currentTarget as Element
+            val listItem = span.parentNode as Element
+            val taskOffset = listItem.getAttribute("task-offset")
+            if (taskOffset != null && taskOffset.isNotEmpty()) {
+                evt.stopPropagation()
+                evt.preventDefault()
 
-                (doc as EventTarget).addEventListener("click", clickListener, false)
+                myHtmlPanelHost.toggleTask(taskOffset)
             }
+        }
 
-            if (documentPath != null && projectComponent != null) {
-                val images = doc.getElementsByTagName("img")
+        for (item in elementsByTagName(roots, "span")) {
+            val spanClass = item.getAttribute("class")
+            if (spanClass == "task-item-closed" || spanClass == "task-item-open") {
+                (item as EventTarget).addEventListener("click", taskListener, false)
+            }
+        }
 
-                for (i in 0 until images.length) {
-                    val item: Node = images.item(i)
-                    val src = item.attributes?.getNamedItem("src")
-                    if (src != null) {
-                        val imageSrc = src.nodeValue
-                        if (!PathInfo.isURI(imageSrc) && PathInfo.isRelative(imageSrc) && !ImageUtils.isEncodedImage(imageSrc)) {
-                            // change it to absolute
-                            val imagePath = documentPath + imageSrc
-                            val serial = projectComponent.getFileSerial(imagePath)
-                            val serialQuery = if (serial > 0) "?$serial" else ""
+        if (documentPath != null && projectComponent != null) {
+            for (item in elementsByTagName(roots, "img")) {
+                val src = item.attributes?.getNamedItem("src")
+                if (src != null) {
+                    val imageSrc = src.nodeValue
+                    if (!PathInfo.isURI(imageSrc) && PathInfo.isRelative(imageSrc) && !ImageUtils.isEncodedImage(imageSrc)) {
+                        // change it to absolute
+                        val imagePath = documentPath + imageSrc
+                        val serial = projectComponent.getFileSerial(imagePath)
+                        val serialQuery = if (serial > 0) "?$serial" else ""
 
-                            src.nodeValue = fileUriPrefix + imagePath + serialQuery
+                        src.nodeValue = fileUriPrefix + imagePath + serialQuery
 
-                            for (handler in MdPreviewCustomizationProvider.EXTENSIONS.value) {
-                                handler.adjustImageItem(item, serial)
-                            }
+                        for (handler in MdPreviewCustomizationProvider.EXTENSIONS.value) {
+                            handler.adjustImageItem(item, serial)
                         }
                     }
                 }
@@ -770,6 +848,18 @@ class JavaFxHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPane
         }
     }
 
+    private fun elementsByTagName(roots: List<Element>, tagName: String): List<Element> {
+        val elements = ArrayList<Element>()
+        for (root in roots) {
+            if (root.tagName.equals(tagName, ignoreCase = true)) elements.add(root)
+            val nodeList = root.getElementsByTagName(tagName)
+            for (i in 0 until nodeList.length) {
+                elements.add(nodeList.item(i) as Element)
+            }
+        }
+        return elements
+    }
+
     override fun debug(startStop: Boolean) {
         if (_myJSBridge != null && !ourDebuggerChangingState.getAndSet(true)) {
             var handled = false
@@ -25,8 +25,10 @@ import com.vladsch.md.nav.editor.HtmlPanelHost
 import com.vladsch.md.nav.editor.PreviewEditorState
 import com.vladsch.md.nav.editor.api.MdPreviewCustomizationProvider
 import com.vladsch.md.nav.editor.javafx.WebViewDocumentLoaded
+import com.vladsch.md.nav.editor.util.HtmlBlockPatcher
 import com.vladsch.md.nav.editor.util.HtmlPanel
 import com.vladsch.md.nav.editor.util.HtmlResource
+import com.vladsch.md.nav.editor.util.TagRangeIndex
 import com.vladsch.md.nav.parser.flexmark.MdNavigatorExtension
 import com.vladsch.md.nav.settings.*
 import com.vladsch.md.nav.util.PathInfo
@@ -71,6 +73,7 @@ class JBCefHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPanel
 
     private val myWebView: CefBrowser get() = myPanel.cefBrowser
     private val myWebViewFxRunner = JBCefRunner(myPanel)
+    private val myBlockPatcher = HtmlBlockPatcher()
     private var myInlineCss: String? = null
     private var myCssUris = ArrayUtil.EMPTY_STRING_ARRAY
     private var myLastRawHtml = ""
@@ -280,7 +283,23 @@ class JBCefHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPanel
         // so this is now done by creating a new preview
         myLastPageUrl = ""
 
-        LOG.debug { "[$myInstance] updating content, last page url $lastPageUrl" }
+        val page = if (HtmlBlockPatcher.isEnabled && !isDebugging() && lastPageUrl.isEmpty()) HtmlBlockPatcher.parsePage(html, scrollScriptUrl) else null
+        if (page != null && myBlockPatcher.canPatch(page)) {
+            LOG.debug { "[$myInstance] patching content" }
+            myWebViewFxRunner.schedule("JBCefHtmlPanel::setHtml.patchContent", JBCefRunner.Type.PAGE_PATCH) {
+                if (!myProject.isDisposed) {
+                    patchContent(page, result)
+                }
+            }
+        } else {
+            LOG.debug { "[$myInstance] updating content, last page url $lastPageUrl" }
+            loadContent(result, page)
+        }
+
+        return true
+    }
+
+    private fun loadContent(result: String, page: HtmlBlockPatcher.Page?) {
         myWebViewFxRunner.schedule("JBCefHtmlPanel::setHtml.loadContent", JBCefRunner.Type.LOADER) {
             if (!myProject.isDisposed) {
                 val htmlPanelHost = myHtmlPanelHost
@@ -302,18 +321,48 @@ class JBCefHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPanel
 
                 if (!alternatePage) {
                     pageReloading()
-                    val fileUri = fileUriPrefix + myHtmlPanelHost.getVirtualFile().path
+                    val documentPath = myHtmlPanelHost.getVirtualFile().parent?.path?.suffixWith('/')
+                    val fileUri = PathInfo.fileURIPrefix(documentPath) + myHtmlPanelHost.getVirtualFile().path
                     myPanel.loadHTML(result, fileUri)
                     LOG.debug { "[$myInstance] updated content" }
                 }
 
+                myBlockPatcher.load(if (alternatePage) null else page)
+
                 myWebViewFxRunner.schedule("JBCefHtmlPanel::setHtml.preparePage", JBCefRunner.Type.INITIALIZER) {
                     preparePage()
                 }
             }
         }
+    }
 
-        return true
+    private fun patchContent(page: HtmlBlockPatcher.Page, result: String) {
+        // a page still loading may not have its blocks or scripts yet
+        val patch = if (myWebView.isLoading) null else myBlockPatcher.patch(page)
+        if (patch == null) {
+            loadContent(result, page)
+            return
+        }
+
+        // page calls patchFailed() if it does not match the blocks it was loaded with
+        if (!patch.isEmpty) {
+            myWebView.executeJavaScript(patch.script, myWebView.url, 0)
+        }
+
+        LOG.debug { "[$myInstance] patched content $patch" }
+
+        val previewSettings = myHtmlPanelHost.getRenderingProfile().previewSettings
+        if (previewSettings.synchronizePreviewPosition) {
+            executeScrollScript(previewSettings)
+        }
+    }
+
+    internal fun patchFailed() {
+        LOG.debug { "[$myInstance] patch failed, reloading content" }
+        myBlockPatcher.reset()
+        if (myLastRawHtml.isNotEmpty()) {
+            loadContent(myLastRawHtml, null)
+        }
     }
 
     internal fun getJsBridgeHelperScriptUrl(): String {
@@ -335,6 +384,7 @@ class JBCefHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPanel
 
         myLastRawHtml = ""
         myLastPageUrl = url
+        myBlockPatcher.reset()
 
         LOG.debug { "[$myInstance] updating url: $url" }
         myWebViewFxRunner.schedule("JBCefHtmlPanel::setPageUrl", JBCefRunner.Type.LOADER) {
@@ -368,14 +418,7 @@ class JBCefHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPanel
                         myWebViewFxRunner.setInitialized()
                     }
 
-                    val highlightEnabled = myHtmlPanelHost.isHighlightEnabled()
-                    val onTypingUpdate = myOnTypingUpdate.get()
-                    myOnTypingUpdate.set(false)
-                    val highlightOnTyping = previewSettings.highlightOnTyping
-                    val highlightFadeOut = previewSettings.highlightFadeOut * 1000
-                    val s = "scrollToSourcePosition($myVerticalLocation,'$myScrollTag','$myScrollAttribute','$myScrollReference',$highlightEnabled,$onTypingUpdate,$highlightOnTyping,$highlightFadeOut);"
-                    LOG.debugOne(loggerScroll) { "[$myInstance] executing scroll: '$s'" }
-                    myWebView.executeJavaScript(s, myWebView.url, 0)
+                    executeScrollScript(previewSettings)
                 }
             }
         } else {
@@ -385,25 +428,20 @@ class JBCefHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPanel
         }
     }
 
+    private fun executeScrollScript(previewSettings: MdPreviewSettings) {
+        val highlightEnabled = myHtmlPanelHost.isHighlightEnabled()
+        val onTypingUpdate = myOnTypingUpdate.get()
+        myOnTypingUpdate.set(false)
+        val highlightOnTyping = previewSettings.highlightOnTyping
+        val highlightFadeOut = previewSettings.highlightFadeOut * 1000
+        val s = "scrollToSourcePosition($myVerticalLocation,'$myScrollTag','$myScrollAttribute','$myScrollReference',$highlightEnabled,$onTypingUpdate,$highlightOnTyping,$highlightFadeOut);"
+        LOG.debugOne(loggerScroll) { "[$myInstance] executing scroll: '$s'" }
+        myWebView.executeJavaScript(s, myWebView.url, 0)
+    }
+
     override fun scrollToMarkdownSrcOffset(offset: Int, lineOffsets: Range, verticalLocation: Float?, tagRanges: List<TagRange>, onLoadUpdate: Boolean, onTypingUpdate: Boolean) {
         // now we have the best possible match from all the elements, we can find the tag and scroll it into view
-        var bestTagRange: TagRange? = null
-        val tagPriorities = mapOf(
-            "a" to 1,
-            "span" to 2,
-            "img" to 3
-        )
-
-        for (tagRange in tagRanges) {
-            if (tagRange.doesContain(offset)) {
-                if (bestTagRange == null || tagRange.span < bestTagRange.span || tagRange.span <= bestTagRange.span && (tagPriorities[tagRange.tag]
-                        ?: 0) > (tagPriorities[bestTagRange.tag] ?: 0)) {
-                    bestTagRange = tagRange
-                }
-            } else if (bestTagRange == null && lineOffsets.doesOverlap(tagRange)) {
-                bestTagRange = tagRange
-            }
-        }
+        val bestTagRange = TagRangeIndex.of(tagRanges).findBestTagRange(offset, lineOffsets)
 
         LOG.debugOne(loggerScroll) { "scrollToMarkdownSrcOffset($offset, $lineOffsets, $verticalLocation, tagRanges, $onLoadUpdate, $onTypingUpdate) bestFit: ${bestTagRange?.tag} $bestTagRange" }
 
@@ -416,9 +454,14 @@ class JBCefHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPanel
         myVerticalLocation = verticalLocation
 
         if (onLoadUpdate) {
-            // we will get a page update so we cancel the current page first and then schedule the scroll
-            LOG.debugOne(loggerScroll) { "scrollToMarkdownSrcOffset: fxRunner cancelAll, prep for load" }
-            myWebViewFxRunner.cancelAll("scrollToMarkdownSrcOffset prep for load")
+            if (myBlockPatcher.hasLoadedPage) {
+                // page update may be a patch of the loaded page which scrolls after patching, a full load cancels all on its own
+                LOG.debugOne(loggerScroll) { "scrollToMarkdownSrcOffset: prep for patch or load" }
+            } else {
+                // we will get a page update so we cancel the current page first and then schedule the scroll
+                LOG.debugOne(loggerScroll) { "scrollToMarkdownSrcOffset: fxRunner cancelAll, prep for load" }
+                myWebViewFxRunner.cancelAll("scrollToMarkdownSrcOffset prep for load")
+            }
         } else {
             myPageReloadTriggered = false
             scrollToReference(onTypingUpdate)
@@ -506,6 +549,7 @@ class JBCefHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPanel
         private val myJSQueryOpenInBrowser: JBCefJSQuery = JBCefJSQuery.create(panel.myPanel)
         private val myJSQueryToggleTask: JBCefJSQuery = JBCefJSQuery.create(panel.myPanel)
         private val myJSQuerySyncSource: JBCefJSQuery = JBCefJSQuery.create(panel.myPanel)
+        private val myJSQueryPatchFailed: JBCefJSQuery = JBCefJSQuery.create(panel.myPanel)
 
         init {
             myJSQuerySetState.addHandler { state: String ->
@@ -560,6 +604,11 @@ class JBCefHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPanel
                 }
                 null
             }
+
+            myJSQueryPatchFailed.addHandler {
+                panel.patchFailed()
+                null
+            }
         }
 
         fun getCefBrowser(): CefBrowser = panel.myWebView
@@ -570,6 +619,7 @@ class JBCefHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPanel
             Disposer.dispose(myJSQueryOpenInBrowser);
             Disposer.dispose(myJSQueryToggleTask);
             Disposer.dispose(myJSQuerySyncSource);
+            Disposer.dispose(myJSQueryPatchFailed);
         }
 
         override fun onLoadingStateChange(browser: CefBrowser?, isLoading: Boolean, canGoBack: Boolean, canGoForward: Boolean) {
@@ -600,6 +650,7 @@ class JBCefHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPanel
     markdownNavigator.openLinkInBrowser = function(link) {${myJSQueryOpenInBrowser.inject("link")}};
     markdownNavigator.toggleTask = function(taskOffset) {${myJSQueryToggleTask.inject("taskOffset")}};
     markdownNavigator.synchronizeCaretPos = function(sourceOffset) {${myJSQuerySyncSource.inject("sourceOffset")}};
+    markdownNavigator.patchFailed = function() {${myJSQueryPatchFailed.inject("''")}};
     
     markdownNavigator.runJsBridge();
 })();
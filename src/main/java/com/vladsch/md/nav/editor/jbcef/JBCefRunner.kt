@@ -29,6 +29,9 @@ import org.cef.handler.CefLoadHandlerAdapter
  *
  * PageInteractions are also cancelable by other interactions but not interruptible, they will simply run after the last one has completed
  *
+ * PagePatches run before page interactions once the document is ready, so an interaction does not replace a pending patch.
+ * A patch is cancelled by a newer patch or a document loader but not by a page reload, it is applied to the page once it is ready.
+ *
  * On failing or cancelling, DocumentState will:
  * Document Loader -> NONE
  * Initializer  -> LOADED
@@ -43,6 +46,7 @@ class JBCefRunner(jbCefBrowser: JBCefBrowser) : Disposable {
     enum class Type {
         LOADER,
         INITIALIZER,
+        PAGE_PATCH,
         PAGE_INTERACTION;
     }
 
@@ -70,6 +74,7 @@ class JBCefRunner(jbCefBrowser: JBCefBrowser) : Disposable {
 
     private var myLoader = CancellableRunnable.NULL
     private var myInitializer = CancellableRunnable.NULL
+    private var myPagePatch = CancellableRunnable.NULL
     private var myPageInteraction = CancellableRunnable.NULL
     private val REQUESTS_LOCK = Object()
     private var myDocumentState: DocumentState = DocumentState.NONE
@@ -150,10 +155,12 @@ class JBCefRunner(jbCefBrowser: JBCefBrowser) : Disposable {
 
                 if (myLoader.cancel()) LOG.debug { "cancelled by $id: ${myLoader.id}" }
                 if (myInitializer.cancel()) LOG.debug { "cancelled by $id: ${myInitializer.id}" }
+                if (myPagePatch.cancel()) LOG.debug { "cancelled by $id: ${myPagePatch.id}, docState: $myDocumentState" }
                 if (myPageInteraction.cancel()) LOG.debug { "cancelled by $id: ${myPageInteraction.id}, docState: $myDocumentState" }
 
                 myLoader = CancellableRunnable.NULL
                 myInitializer = CancellableRunnable.NULL
+                myPagePatch = CancellableRunnable.NULL
                 myPageInteraction = CancellableRunnable.NULL
                 myDocumentState = DocumentState.CANCELLED
 
@@ -180,6 +187,13 @@ class JBCefRunner(jbCefBrowser: JBCefBrowser) : Disposable {
                 }
             }
 
+            Type.PAGE_PATCH -> {
+                synchronized(REQUESTS_LOCK) {
+                    if (myPagePatch.cancel()) LOG.debug { "cancelled by $id: ${myPagePatch.id}, docState: $myDocumentState" }
+                    myPagePatch = CancellableRunnable.NULL
+                }
+            }
+
             Type.PAGE_INTERACTION -> {
                 synchronized(REQUESTS_LOCK) {
                     if (myPageInteraction.cancel()) LOG.debug { "cancelled by $id: ${myPageInteraction.id}, docState: $myDocumentState" }
@@ -241,6 +255,29 @@ class JBCefRunner(jbCefBrowser: JBCefBrowser) : Disposable {
                         }
                     }
                 }
+                Type.PAGE_PATCH -> {
+                    if (myPagePatch.cancel()) LOG.debug { "cancelled by $id: ${myPagePatch.id}" }
+                    myPagePatch = OneTimeRunnable(id) {
+                        synchronized(REQUESTS_LOCK) {
+                            myDocumentState = DocumentState.INTERACTING
+                            myPagePatch = CancellableRunnable.NULL
+                        }
+                        try {
+                            profile.timeIt({ "running patch: ${id}" }, runnable)
+                        } catch (e: Throwable) {
+                            LOG.debug(e)
+                        }
+                        synchronized(REQUESTS_LOCK) {
+                            // patch falls back to a loader when it cannot be applied, which resets the state
+                            if (myDocumentState == DocumentState.INTERACTING) {
+                                myDocumentState = DocumentState.READY
+                            }
+                        }
+                        if (myWorker.cefBrowser.isLoading == false) {
+                            scheduleWorkRaw()
+                        }
+                    }
+                }
                 Type.PAGE_INTERACTION -> {
                     myPageInteraction = OneTimeRunnable(id) {
                         synchronized(REQUESTS_LOCK) {
@@ -336,8 +373,13 @@ class JBCefRunner(jbCefBrowser: JBCefBrowser) : Disposable {
                                 doneLooping = false
                             }
                             DocumentState.READY -> {
-                                nextRunner = myPageInteraction
-                                nextType = Type.PAGE_INTERACTION
+                                if (myPagePatch.isNotNull) {
+                                    nextRunner = myPagePatch
+                                    nextType = Type.PAGE_PATCH
+                                } else {
+                                    nextRunner = myPageInteraction
+                                    nextType = Type.PAGE_INTERACTION
+                                }
                                 doneLooping = true
                             }
                             DocumentState.INTERACTING -> {
@@ -7,11 +7,14 @@ import com.intellij.psi.PsiFile
 import com.vladsch.flexmark.html.HtmlRenderer
 import com.vladsch.flexmark.parser.Parser
 import com.vladsch.flexmark.util.ast.Document
+import com.vladsch.flexmark.util.data.DataHolder
 import com.vladsch.flexmark.util.data.MutableDataHolder
+import com.vladsch.flexmark.util.data.MutableDataSet
 import com.vladsch.flexmark.util.sequence.BasedSequence
 import com.vladsch.flexmark.util.sequence.TagRange
 import com.vladsch.md.nav.editor.PreviewFileEditorBase
 import com.vladsch.md.nav.editor.util.HtmlGenerator
+import com.vladsch.md.nav.editor.util.TagRangeIndex
 import com.vladsch.md.nav.parser.PegdownOptionsAdapter
 import com.vladsch.md.nav.parser.api.HtmlPurpose
 import com.vladsch.md.nav.parser.api.ParserPurpose
@@ -40,27 +43,38 @@ class TextHtmlGenerator(linkResolver: MdLinkResolver, renderingProfile: MdRender
 
         @Suppress("NAME_SHADOWING")
         var dataContext = dataContext
-        val optionAdapter = PegdownOptionsAdapter()
-        val options = optionAdapter.getFlexmarkOptions(ParserPurpose.HTML, htmlPurpose, linkResolver, renderingProfile).toMutable()
         val project = linkResolver.project ?: ProjectManager.getInstance().defaultProject
 
-        options.set(MdNavigatorExtension.RENDERING_PROFILE, Supplier { renderingProfile })
-
-        if (renderingProfile.htmlSettings.noParaTags) {
-            options.set(HtmlRenderer.NO_P_TAGS_USE_BR, true)
-        }
+        // per call values, set on the document when the parser and renderer are cached
+        val callOptions = MutableDataSet()
+        callOptions.set(MdNavigatorExtension.LINK_RESOLVER, Supplier { linkResolver })
+        callOptions.set(MdNavigatorExtension.RENDERING_PROFILE, Supplier { renderingProfile })
 
         if (forHtmlExport && dataContext != null) {
-            dataContext = addHtmlExportData(project, options, dataContext, exportMap)
+            dataContext = addHtmlExportData(project, callOptions, dataContext, exportMap)
         }
 
-        optionsAdjuster?.accept(options)
+        optionsAdjuster?.accept(callOptions)
+
+        val optionsSupplier = Supplier<DataHolder> {
+            val optionAdapter = PegdownOptionsAdapter()
+            val options = optionAdapter.getFlexmarkOptions(ParserPurpose.HTML, htmlPurpose, linkResolver, renderingProfile).toMutable()
+
+            if (renderingProfile.htmlSettings.noParaTags) {
+                options.set(HtmlRenderer.NO_P_TAGS_USE_BR, true)
+            }
+
+            options.setAll(callOptions)
+            options
+        }
 
-        val parser = Parser.builder(options).build()
-        val renderer = HtmlRenderer.builder(options).build()
+        val cacheEntry = cachedFlexmarkEntry(ParserPurpose.HTML, htmlPurpose, optionsAdjuster, optionsSupplier)
+        val options = cacheEntry?.options ?: optionsSupplier.get()
+        val parser = cacheEntry?.parser ?: Parser.builder(options).build()
+        val renderer = cacheEntry?.renderer ?: HtmlRenderer.builder(options).build()
 
         val document: Document = TimeIt.logTimedValue(PreviewFileEditorBase.LOG, "TextHtmlGenerator::toHtml - parse document") {
-            parser.parse(BasedSequence.of(charSequence))
+            cacheEntry?.parse(BasedSequence.of(charSequence), callOptions, blockRenderCache) ?: parser.parse(BasedSequence.of(charSequence))
         }
 
         // see if document has includes
@@ -80,7 +94,7 @@ class TextHtmlGenerator(linkResolver: MdLinkResolver, renderingProfile: MdRender
 
         val postProcessedHtml = postProcessHtml(html)
 
-        tagRanges = HtmlRenderer.TAG_RANGES[useDocument]
+        tagRanges = TagRangeIndex.of(HtmlRenderer.TAG_RANGES[useDocument])
 
         return makeHtmlPage(postProcessedHtml, forHtmlExport, dataContext, exportMap)
     }
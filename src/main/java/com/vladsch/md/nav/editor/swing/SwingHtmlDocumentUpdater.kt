@@ -0,0 +1,236 @@
+// Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.editor.swing
+
+import javax.swing.text.Element
+import javax.swing.text.html.HTMLDocument
+
+/**
+ * Updates a Swing [HTMLDocument] by replacing only the top level body blocks which changed between two pages.
+ *
+ * Blocks are the child elements of the body, or of the innermost `div` when the body has a single `div` wrapper.
+ * The update is only done when the document's elements match the blocks of the old page, otherwise the caller
+ * has to set the complete page text.
+ */
+internal object SwingHtmlDocumentUpdater {
+    private val BLOCK_TAGS = setOf("address", "blockquote", "center", "div", "dl", "form", "h1", "h2", "h3", "h4", "h5", "h6", "hr", "ol", "p", "pre", "table", "ul")
+    private val VOID_TAGS = setOf("area", "base", "br", "col", "embed", "hr", "img", "input", "link", "meta", "param", "source", "track", "wbr")
+
+    class Block(val tag: String, val start: Int, val end: Int, val html: String)
+
+    class PageBlocks(val prefix: String, val blocks: List<Block>, val suffix: String, val wrappers: Int)
+
+    /**
+     * Split page into top level body blocks
+     *
+     * @param html page html
+     * @return page blocks or null if the body has content other than block elements
+     */
+    fun splitPage(html: String): PageBlocks? {
+        val bodyStart = html.indexOf("<body")
+        if (bodyStart < 0) return null
+        val contentStart = tagEnd(html, bodyStart)
+        val contentEnd = html.lastIndexOf("</body>")
+        if (contentStart < 0 || contentEnd < contentStart) return null
+
+        var start = contentStart
+        var end = contentEnd
+        var wrappers = 0
+
+        while (true) {
+            val blocks = splitBlocks(html, start, end) ?: return null
+            if (blocks.isEmpty()) return null
+
+            val single = blocks[0]
+            if (blocks.size == 1 && single.tag == "div") {
+                // descend into wrapper div
+                val innerStart = tagEnd(html, single.start)
+                val innerEnd = single.end - "</div>".length
+                if (innerStart < 0 || innerEnd < innerStart) return null
+                start = innerStart
+                end = innerEnd
+                wrappers++
+                continue
+            }
+
+            return PageBlocks(html.substring(0, blocks[0].start), blocks, html.substring(blocks[blocks.size - 1].end), wrappers)
+        }
+    }
+
+    /**
+     * Update document from old to new page
+     *
+     * @param document document showing old page
+     * @param oldHtml  html of old page
+     * @param newHtml  html of new page
+     * @return true if document was updated, false if new page text needs to be set
+     */
+    fun update(document: HTMLDocument, oldHtml: String, newHtml: String): Boolean {
+        val oldPage = splitPage(oldHtml) ?: return false
+        val newPage = splitPage(newHtml) ?: return false
+
+        if (oldPage.prefix != newPage.prefix || oldPage.suffix != newPage.suffix || oldPage.wrappers != newPage.wrappers) return false
+
+        val container = containerElement(document, oldPage.wrappers) ?: return false
+        if (!matchesBlocks(container, oldPage.blocks)) return false
+
+        val oldBlocks = oldPage.blocks
+        val newBlocks = newPage.blocks
+        val maxCommon = minOf(oldBlocks.size, newBlocks.size)
+
+        var prefixCount = 0
+        while (prefixCount < maxCommon && oldBlocks[prefixCount].html == newBlocks[prefixCount].html) prefixCount++
+
+        var suffixCount = 0
+        while (suffixCount < maxCommon - prefixCount && oldBlocks[oldBlocks.size - 1 - suffixCount].html == newBlocks[newBlocks.size - 1 - suffixCount].html) suffixCount++
+
+        val oldEnd = oldBlocks.size - suffixCount
+        val newEnd = newBlocks.size - suffixCount
+        if (prefixCount == oldEnd && prefixCount == newEnd) return true
+
+        val replacement = StringBuilder()
+        for (i in prefixCount until newEnd) {
+            replacement.append(newBlocks[i].html).append('\n')
+        }
+
+        try {
+            val elements = (0 until container.elementCount).map { container.getElement(it) }
+
+            if (prefixCount < oldEnd) {
+                for (i in prefixCount + 1 until oldEnd) {
+                    document.removeElement(elements[i])
+                }
+
+                if (replacement.isEmpty()) {
+                    document.removeElement(elements[prefixCount])
+                } else {
+                    document.setOuterHTML(elements[prefixCount], replacement.toString())
+                }
+            } else if (prefixCount > 0) {
+                document.insertAfterEnd(elements[prefixCount - 1], replacement.toString())
+            } else {
+                document.insertBeforeStart(elements[prefixCount], replacement.toString())
+            }
+        } catch (e: Exception) {
+            return false
+        }
+
+        val updatedContainer = containerElement(document, newPage.wrappers) ?: return false
+        return matchesBlocks(updatedContainer, newBlocks)
+    }
+
+    private fun containerElement(document: HTMLDocument, wrappers: Int): Element? {
+        val root = document.defaultRootElement
+        var container: Element? = null
+
+        for (i in 0 until root.elementCount) {
+            val element = root.getElement(i)
+            if (element.name == "body") {
+                container = element
+                break
+            }
+        }
+
+        for (i in 0 until wrappers) {
+            val element = container ?: return null
+            if (element.elementCount != 1 || element.getElement(0).name != "div") return null
+            container = element.getElement(0)
+        }
+        return container
+    }
+
+    private fun matchesBlocks(container: Element, blocks: List<Block>): Boolean {
+        if (container.elementCount != blocks.size) return false
+
+        for (i in blocks.indices) {
+            if (container.getElement(i).name != blocks[i].tag) return false
+        }
+        return true
+    }
+
+    /**
+     * Split html into top level block elements
+     *
+     * @return blocks or null if there is content other than block elements and white space
+     */
+    private fun splitBlocks(html: String, start: Int, end: Int): List<Block>? {
+        val blocks = ArrayList<Block>()
+        var pos = start
+        var blockStart = -1
+        var blockTag = ""
+        var depth = 0
+
+        while (pos < end) {
+            val c = html[pos]
+            if (c != '<') {
+                if (depth == 0 && !c.isWhitespace()) return null
+                pos++
+                continue
+            }
+
+            if (html.startsWith("<!--", pos)) {
+                if (depth == 0) return null
+                val commentEnd = html.indexOf("-->", pos + 4)
+                if (commentEnd < 0 || commentEnd >= end) return null
+                pos = commentEnd + 3
+                continue
+            }
+
+            val tagEnd = tagEnd(html, pos)
+            if (tagEnd < 0 || tagEnd > end) return null
+
+            val isClose = pos + 1 < end && html[pos + 1] == '/'
+            val name = tagName(html, if (isClose) pos + 2 else pos + 1)
+            val isVoid = VOID_TAGS.contains(name) || html[tagEnd - 2] == '/'
+
+            if (isClose) {
+                depth--
+                if (depth < 0) return null
+                if (depth == 0) {
+                    blocks.add(Block(blockTag, blockStart, tagEnd, html.substring(blockStart, tagEnd)))
+                }
+            } else {
+                if (depth == 0) {
+                    if (!BLOCK_TAGS.contains(name)) return null
+                    blockStart = pos
+                    blockTag = name
+                    if (isVoid) {
+                        blocks.add(Block(blockTag, blockStart, tagEnd, html.substring(blockStart, tagEnd)))
+                    }
+                }
+                if (!isVoid) depth++
+            }
+            pos = tagEnd
+        }
+
+        return if (depth == 0) blocks else null
+    }
+
+    private fun tagName(html: String, start: Int): String {
+        var pos = start
+        while (pos < html.length && html[pos].isLetterOrDigit()) pos++
+        return html.substring(start, pos).toLowerCase()
+    }
+
+    /**
+     * End of tag, after its closing &gt;
+     *
+     * @return end of tag or -1 if the tag is not closed
+     */
+    private fun tagEnd(html: String, start: Int): Int {
+        var pos = start + 1
+        var quote = '\u0000'
+
+        while (pos < html.length) {
+            val c = html[pos]
+            if (quote != '\u0000') {
+                if (c == quote) quote = '\u0000'
+            } else if (c == '"' || c == '\'') {
+                quote = c
+            } else if (c == '>') {
+                return pos + 1
+            }
+            pos++
+        }
+        return -1
+    }
+}
@@ -19,7 +19,6 @@ import com.vladsch.md.nav.settings.HighlightPreviewType
 import com.vladsch.md.nav.settings.MdApplicationSettings
 import com.vladsch.md.nav.util.PathInfo
 import com.vladsch.plugin.util.debug
-import com.vladsch.plugin.util.image.ImageUtils
 import com.vladsch.plugin.util.max
 import com.vladsch.plugin.util.min
 import com.vladsch.plugin.util.minLimit
@@ -32,16 +31,17 @@ import java.io.IOException
 import java.io.StringReader
 import java.net.URL
 import java.util.*
-import java.util.regex.Pattern
 import javax.swing.JComponent
 import javax.swing.JEditorPane
 import javax.swing.text.DefaultCaret
+import javax.swing.text.html.HTMLDocument
 import javax.swing.text.html.HTMLEditorKit
 import javax.swing.text.html.StyleSheet
 import kotlin.text.startsWith
 
 internal class SwingHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : HtmlPanel(project, htmlPanelHost), ExternalLinkLauncher {
     private var myLastRenderedHtml = ""
+    private var myLastRenderedHead: String? = null
     private var myCssFileUris: Array<String> = arrayOf()
     private var myCssInlineText: String? = null
     private val jEditorPane: JEditorPane = JEditorPane()
@@ -109,83 +109,54 @@ internal class SwingHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) :
     }
 
     override fun setHtml(html: String): Boolean {
-        var useHtml = html
-
-        if (myCssFileUris.isNotEmpty()) {
-            setStyleSheet()
-        } else {
-            // have to fish them out of the html
-            val documentPath = myHtmlPanelHost.getVirtualFile().parent?.path?.suffixWith('/')
-            val systemPath = if (documentPath != null) FileUtil.toSystemDependentName(documentPath) else null
-            val FILE_URI_PREFIX = if (documentPath != null && documentPath.length > 1 && documentPath[1] == ':') "file:/" else MdNavigatorExtension.FILE_URI_PREFIX
-            val cssURLs = ArrayList<String>()
-
-            // don't change links, they are resolved on link click
-            useHtml = LINK_REPLACE_PATTERN.replace(useHtml) { matchResult ->
-                val values = matchResult.groupValues
-                val url: String
-
-                if (!PathInfo.isURI(values[2]) && PathInfo.isRelative(values[2])) {
-                    // change it to absolute
-                    if (values[2].startsWith('#')) {
-                        // local, no change
-                        url = values[2]
-                        values[1] + url + values[3]
+        // style sheet is only changed with the page head, replacing the editor kit creates a new document
+        val headEnd = html.indexOf("</head>")
+        val head = if (headEnd < 0) "" else html.substring(0, headEnd)
+        val headChanged = head != myLastRenderedHead
+        myLastRenderedHead = head
+
+        if (headChanged) {
+            if (myCssFileUris.isNotEmpty()) {
+                setStyleSheet()
+            } else {
+                // have to fish them out of the head, image urls are made absolute by the link resolver
+                val documentPath = myHtmlPanelHost.getVirtualFile().parent?.path?.suffixWith('/')
+                val systemPath = if (documentPath != null) FileUtil.toSystemDependentName(documentPath) else null
+                val FILE_URI_PREFIX = if (documentPath != null && documentPath.length > 1 && documentPath[1] == ':') "file:/" else MdNavigatorExtension.FILE_URI_PREFIX
+                val cssURLs = ArrayList<String>()
+
+                for (matchResult in CSS_LINK_PATTERN.findAll(head)) {
+                    val href = matchResult.groupValues[1]
+                    if (!PathInfo.isURI(href) && PathInfo.isRelative(href) && !href.startsWith('#')) {
+                        // change it to absolute
+                        cssURLs.add(FILE_URI_PREFIX + systemPath + href)
                     } else {
-                        url = FILE_URI_PREFIX + systemPath + values[2]
-                        values[1] + url + values[3]
+                        cssURLs.add(href)
                     }
-                } else {
-                    url = values[2]
-                    matchResult.value
                 }
 
-                if (values[1].startsWith("link")) {
-                    cssURLs.add(url)
-                }
-
-                // result
-                matchResult.value
-            }
-
-            useHtml = IMAGE_REPLACE_PATTERN.replace(useHtml) { matchResult ->
-                val values = matchResult.groupValues
-                val url: String
-
-                val result = if (!ImageUtils.isPossiblyEncodedImage(values[2]) && !PathInfo.isURI(values[2]) && PathInfo.isRelative(values[2])) {
-                    // change it to absolute
-                    if (values[2].startsWith('#')) {
-                        // local, no change
-                        url = values[2]
-                        values[1] + url + values[3]
-                    } else {
-                        url = FILE_URI_PREFIX + systemPath + values[2]
-                        values[1] + url + values[3]
-                    }
+                myCssFileUris = cssURLs.toTypedArray()
+                if (!myCssFileUris.isEmpty()) {
+                    setStyleSheet()
                 } else {
-//                    url = values[2]
-                    matchResult.value
+                    Companion.setStyleSheet(jEditorPane, MdEditorKit(myProject, this))
                 }
-                result
-            }
-
-            if (MdApplicationSettings.instance.documentSettings.disableGifImages) {
-                useHtml = PAGE_GIF_REPLACE_PATTERN.matcher(useHtml).replaceAll("$1_gif_$2")
-            }
-
-            myCssFileUris = cssURLs.toTypedArray()
-            if (!myCssFileUris.isEmpty()) {
-                setStyleSheet()
-            } else {
-                Companion.setStyleSheet(jEditorPane, MdEditorKit(myProject, this))
             }
         }
 
-        myLastRenderedHtml = useHtml
+        val document = jEditorPane.document as? HTMLDocument
+        val lastRenderedHtml = myLastRenderedHtml
+        myLastRenderedHtml = html
+
         try {
-            jEditorPane.text = useHtml
+            val updated = !headChanged && document != null && MdApplicationSettings.instance.debugSettings.useIncrementalSwingPreview
+                && SwingHtmlDocumentUpdater.update(document, lastRenderedHtml, html)
+
+            if (!updated) {
+                jEditorPane.text = html
+            }
         } catch (e: Throwable) {
-            MdPreviewCustomizationProvider.textErrorReport("Swing browser exception", e, "HTML", useHtml)
+            MdPreviewCustomizationProvider.textErrorReport("Swing browser exception", e, "HTML", html)
         }
 
         if (myHavePendingScroll) {
@@ -362,10 +333,7 @@ internal class SwingHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) :
 
     companion object {
         private val FOCUS_ELEMENT_DY = 100
-        val LINK_REPLACE_PATTERN = "(<(?:a|link)[^>]+href=\")([^\"]*)(\"[^>]*>)".toRegex()
-        val IMAGE_REPLACE_PATTERN = "(<img[^>]+src=\")([^\"]*)(\"[^>]*>)".toRegex()
-        val COMMENT_REPLACE_PATTERN = "<style>/\\*.*\\*/".toRegex()
-        val PAGE_GIF_REPLACE_PATTERN: Pattern = Pattern.compile("(<img[^>]+src=\"[^\"]+\\.)gif([^\"]*\"[^>]*>)")
+        val CSS_LINK_PATTERN = "<link[^>]+href=\"([^\"]*)\"[^>]*>".toRegex()
 
         // used to display notices html text
         fun setStyleSheet(jEditorPane: JEditorPane, htmlEditorKit: MdEditorKit?) {
@@ -19,6 +19,7 @@ import com.vladsch.md.nav.editor.ExternalLinkLauncher
 import com.vladsch.md.nav.editor.HtmlPanelHost
 import com.vladsch.md.nav.editor.PreviewEditorState
 import com.vladsch.md.nav.editor.util.HtmlPanel
+import com.vladsch.md.nav.editor.util.TagRangeIndex
 import com.vladsch.md.nav.parser.flexmark.MdNavigatorExtension
 import javax.swing.JComponent
 
@@ -123,17 +124,7 @@ internal class TextHtmlPanel(project: Project, htmlPanelHost: HtmlPanelHost) : H
 
     override fun scrollToMarkdownSrcOffset(offset: Int, lineOffsets: Range, verticalLocation: Float?, tagRanges: List<TagRange>, onLoadUpdate: Boolean, onTypingUpdate: Boolean) {
         // first we find the tag of interest and its range
-        var bestTagRange: TagRange? = null
-
-        for (tagRange in tagRanges) {
-            if (tagRange.doesContain(offset)) {
-                if (bestTagRange == null || tagRange.span < bestTagRange.span) {
-                    bestTagRange = tagRange
-                }
-            }
-        }
-
-        val findBestTagRange = bestTagRange ?: return
+        val findBestTagRange = TagRangeIndex.of(tagRanges).findBestTagRange(offset, null) ?: return
 
         // now we have the best possible match from all the elements, we can find the tag and scroll it into view
         myScrollTag = findBestTagRange.tag
@@ -0,0 +1,207 @@
+// Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.editor.util
+
+import com.vladsch.md.nav.parser.flexmark.FlexmarkAttributeProvider
+import com.vladsch.md.nav.parser.flexmark.MdNavigatorExtension
+import com.vladsch.md.nav.settings.MdApplicationSettings
+import org.jsoup.Jsoup
+import org.jsoup.nodes.TextNode
+
+/**
+ * Diff of preview pages by top level blocks of the markdown article element.
+ *
+ * A page is split into its shell: the page with the article content removed, and the list of
+ * top level article blocks. When the shell of a new page is the same as the shell of the page
+ * shown in the browser, only the changed run of blocks is replaced in the page instead of
+ * reloading it. Blocks after the change whose source offsets all moved by the same amount are
+ * kept and only their md-pos and task-offset attributes are shifted.
+ *
+ * [load] and [patch] are called from the browser thread, [canPatch] from the EDT.
+ */
+class HtmlBlockPatcher {
+    class Block(val html: String) {
+        val normalized: String
+        val offsets: IntArray
+
+        init {
+            val offsets = ArrayList<Int>()
+            normalized = OFFSET_ATTRIBUTE_PATTERN.replace(html) { matchResult ->
+                for (number in NUMBER_PATTERN.findAll(matchResult.groupValues[2])) {
+                    offsets.add(number.value.toInt())
+                }
+                matchResult.groupValues[1] + "=\"\""
+            }
+            this.offsets = offsets.toIntArray()
+        }
+
+        fun isShiftedFrom(other: Block, delta: Int): Boolean {
+            if (offsets.size != other.offsets.size || normalized != other.normalized) return false
+            for (i in offsets.indices) {
+                if (offsets[i] != other.offsets[i] + delta) return false
+            }
+            return true
+        }
+    }
+
+    class Page(val shell: String, val blocks: List<Block>)
+
+    /**
+     * Replace [removeCount] blocks at [start] with [blocks] and shift source offsets of all blocks after them by [shiftDelta]
+     */
+    class Patch(val start: Int, val removeCount: Int, val blocks: List<Block>, val shiftDelta: Int) {
+        val isEmpty: Boolean get() = removeCount == 0 && blocks.isEmpty() && shiftDelta == 0
+
+        val script: String
+            get() {
+                val html = StringBuilder()
+                for (block in blocks) {
+                    html.append(block.html)
+                }
+                return "markdownNavigator.patchBlocks($start,$removeCount,${jsStringLiteral(html)},$shiftDelta);"
+            }
+
+        override fun toString(): String {
+            return "Patch(start=$start, removeCount=$removeCount, insertCount=${blocks.size}, shiftDelta=$shiftDelta)"
+        }
+    }
+
+    private var myLoadedPage: Page? = null
+
+    val hasLoadedPage: Boolean
+        @Synchronized get() = myLoadedPage != null
+
+    /**
+     * @param page page about to be shown, null if it cannot be patched
+     * @return true if page can be shown by patching the loaded page
+     */
+    @Synchronized
+    fun canPatch(page: Page?): Boolean {
+        val loadedPage = myLoadedPage
+        return page != null && loadedPage != null && loadedPage.shell == page.shell
+    }
+
+    /**
+     * Page was loaded into the browser
+     */
+    @Synchronized
+    fun load(page: Page?) {
+        myLoadedPage = page
+    }
+
+    @Synchronized
+    fun reset() {
+        myLoadedPage = null
+    }
+
+    /**
+     * Compute patch from loaded page to given page and make it the loaded page
+     *
+     * @return patch or null if page shell changed since [canPatch] and needs a full load
+     */
+    @Synchronized
+    fun patch(page: Page): Patch? {
+        val loadedPage = myLoadedPage
+        if (loadedPage == null || loadedPage.shell != page.shell) return null
+
+        val patch = diff(loadedPage.blocks, page.blocks)
+        myLoadedPage = page
+        return patch
+    }
+
+    companion object {
+        private val OFFSET_ATTRIBUTE_PATTERN = "\\b(${MdNavigatorExtension.SOURCE_POSITION_ATTRIBUTE_NAME}|${FlexmarkAttributeProvider.TASK_ITEM_OFFSET_ATTRIBUTE})=\"([^\"]*)\"".toRegex()
+        private val NUMBER_PATTERN = "\\d+".toRegex()
+        private const val ARTICLE_SELECTOR = "article.markdown-body, article.wiki-body"
+
+        @JvmStatic
+        val isEnabled: Boolean
+            get() = MdApplicationSettings.instance.debugSettings.usePreviewBlockPatching
+
+        /**
+         * Split page into shell and article blocks
+         *
+         * @param html     page html
+         * @param shellKey text identifying parts of the page added by the panel which require a full load when changed
+         * @return page or null if page has no markdown article element
+         */
+        @JvmStatic
+        fun parsePage(html: String, shellKey: String): Page? {
+            val document = Jsoup.parse(html)
+            document.outputSettings().prettyPrint(false)
+
+            val article = document.selectFirst(ARTICLE_SELECTOR) ?: return null
+            val blocks = ArrayList<Block>()
+            for (node in article.childNodes()) {
+                // whitespace between blocks is skipped here and by patchBlocks() in the page
+                if (node is TextNode && node.isBlank) continue
+                blocks.add(Block(node.outerHtml()))
+            }
+
+            article.empty()
+            return Page(shellKey + document.outerHtml(), blocks)
+        }
+
+        /**
+         * Diff block lists by common prefix and common suffix with shifted source offsets
+         */
+        @JvmStatic
+        fun diff(oldBlocks: List<Block>, newBlocks: List<Block>): Patch {
+            val oldSize = oldBlocks.size
+            val newSize = newBlocks.size
+
+            var prefix = 0
+            while (prefix < oldSize && prefix < newSize && newBlocks[prefix].isShiftedFrom(oldBlocks[prefix], 0)) {
+                prefix++
+            }
+
+            // delta is taken from the last matching blocks with offsets, all source offsets after the edit move by the same amount
+            var shiftDelta = 0
+            var i = 1
+            while (i <= oldSize - prefix && i <= newSize - prefix) {
+                val oldBlock = oldBlocks[oldSize - i]
+                val newBlock = newBlocks[newSize - i]
+                if (newBlock.normalized != oldBlock.normalized) break
+
+                if (oldBlock.offsets.isNotEmpty() && oldBlock.offsets.size == newBlock.offsets.size) {
+                    shiftDelta = newBlock.offsets[0] - oldBlock.offsets[0]
+                    break
+                }
+                i++
+            }
+
+            var suffix = 0
+            while (suffix < oldSize - prefix && suffix < newSize - prefix && newBlocks[newSize - 1 - suffix].isShiftedFrom(oldBlocks[oldSize - 1 - suffix], shiftDelta)) {
+                suffix++
+            }
+
+            if (suffix == 0) shiftDelta = 0
+            return Patch(prefix, oldSize - prefix - suffix, newBlocks.subList(prefix, newSize - suffix), shiftDelta)
+        }
+
+        @JvmStatic
+        fun jsStringLiteral(text: CharSequence): String {
+            val sb = StringBuilder(text.length + text.length / 8 + 2)
+            sb.append('"')
+            for (c in text) {
+                when (c) {
+                    '"' -> sb.append("\\\"")
+                    '\\' -> sb.append("\\\\")
+                    '\n' -> sb.append("\\n")
+                    '\r' -> sb.append("\\r")
+                    '\t' -> sb.append("\\t")
+                    '\u2028' -> sb.append("\\u2028")
+                    '\u2029' -> sb.append("\\u2029")
+                    else -> {
+                        if (c < ' ') {
+                            sb.append(String.format("\\u%04x", c.toInt()))
+                        } else {
+                            sb.append(c)
+                        }
+                    }
+                }
+            }
+            sb.append('"')
+            return sb.toString()
+        }
+    }
+}
@@ -7,15 +7,20 @@ import com.intellij.psi.PsiFile
 import com.vladsch.flexmark.html.HtmlRenderer
 import com.vladsch.flexmark.parser.Parser
 import com.vladsch.flexmark.util.ast.Document
+import com.vladsch.flexmark.util.data.DataHolder
 import com.vladsch.flexmark.util.data.MutableDataHolder
 import com.vladsch.flexmark.util.sequence.TagRange
 import com.vladsch.md.nav.editor.api.MdHtmlGeneratorExtension
+import com.vladsch.md.nav.parser.MdFlexmarkCache
 import com.vladsch.md.nav.parser.api.HtmlPurpose
+import com.vladsch.md.nav.parser.api.ParserPurpose
+import com.vladsch.md.nav.parser.flexmark.MdBlockRenderCache
 import com.vladsch.md.nav.settings.MdRenderingProfile
 import com.vladsch.md.nav.vcs.MdLinkResolver
 import com.vladsch.plugin.util.plusAssign
 import java.util.*
 import java.util.function.Consumer
+import java.util.function.Supplier
 
 abstract class HtmlGenerator(val linkResolver: MdLinkResolver, val renderingProfile: MdRenderingProfile) {
 
@@ -99,6 +104,25 @@ abstract class HtmlGenerator(val linkResolver: MdLinkResolver, val renderingProf
         addHtmlInjections(result, isByScript, HtmlPlacement.BODY_BOTTOMS, forHtmlExport, dataContext, exportMap)
     }
 
+    /**
+     * Rendered blocks of the previous rendering of the file, kept here because cached entries are shared by files
+     */
+    protected val blockRenderCache = MdBlockRenderCache()
+
+    /**
+     * Get cached parser and renderer, null if the options cannot be cached.
+     *
+     * Options adjusters without a variant are specific to the call, as are export options unless
+     * they come from an adjuster with a variant. Otherwise options depend only on the rendering profile settings,
+     * whether the file is a wiki page or injected and the adjuster variant, so entries are shared by all files and options
+     * are only built when there is no entry for them.
+     */
+    protected fun cachedFlexmarkEntry(parserPurpose: ParserPurpose, htmlPurpose: HtmlPurpose, optionsAdjuster: Consumer<MutableDataHolder>?, options: Supplier<DataHolder>): MdFlexmarkCache.Entry? {
+        if (htmlPurpose.isExport && optionsAdjuster == null) return null
+        val variant = if (optionsAdjuster == null) null else (optionsAdjuster as? MdFlexmarkCache.VariantOptionsAdjuster ?: return null).variant
+        return MdFlexmarkCache.getInstance(renderingProfile).getEntry(renderingProfile, parserPurpose, htmlPurpose, listOf(linkResolver.containingFile.isWikiPage, MdFlexmarkCache.isInjectedFile(linkResolver), variant), options)
+    }
+
     protected fun processIncludes(parser: Parser, renderer: HtmlRenderer, document: Document, file: PsiFile?): Document {
         for (handler in MdHtmlGeneratorExtension.EXTENSIONS.value) {
             val processed = handler.processIncludes(parser, renderer, document, file)
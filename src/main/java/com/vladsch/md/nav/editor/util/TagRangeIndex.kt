@@ -0,0 +1,148 @@
+// Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.editor.util
+
+import com.vladsch.flexmark.util.sequence.Range
+import com.vladsch.flexmark.util.sequence.TagRange
+import java.util.*
+
+/**
+ * Tag ranges of a rendered page indexed for preview scroll synchronization.
+ *
+ * Ranges are sorted by start offset and searched as an implicit interval tree: the middle of each
+ * sub-list is its root and [maxEnds] holds the largest end offset of the sub-list, so finding
+ * ranges containing an offset is logarithmic in the number of ranges. The list itself keeps the
+ * renderer's order and the result of the last lookup is kept until the next render creates a new index.
+ */
+class TagRangeIndex private constructor(private val tagRanges: List<TagRange>) : AbstractList<TagRange>() {
+    private class Lookup(val offset: Int, val lineStart: Int, val lineEnd: Int, val tagRange: TagRange?)
+
+    private val order: IntArray
+    private val starts: IntArray
+    private val ends: IntArray
+    private val maxEnds: IntArray
+
+    @Volatile
+    private var lastLookup: Lookup? = null
+
+    init {
+        val size = tagRanges.size
+        order = (0 until size).sortedWith(Comparator { a, b ->
+            val result = tagRanges[a].start.compareTo(tagRanges[b].start)
+            if (result != 0) result else a.compareTo(b)
+        }).toIntArray()
+
+        starts = IntArray(size) { tagRanges[order[it]].start }
+        ends = IntArray(size) { tagRanges[order[it]].end }
+        maxEnds = IntArray(size)
+        computeMaxEnds(0, size)
+    }
+
+    override val size: Int get() = tagRanges.size
+
+    override fun get(index: Int): TagRange = tagRanges[index]
+
+    /**
+     * Find best tag range for source offset
+     *
+     * The smallest range containing the offset is used, with ties resolved by [TAG_PRIORITIES] and
+     * then by the renderer's order. If no range contains the offset then the first range overlapping
+     * the line is used.
+     *
+     * @param offset      source offset
+     * @param lineOffsets source range of the line containing the offset or null if only ranges containing the offset are used
+     * @return best tag range or null if none
+     */
+    fun findBestTagRange(offset: Int, lineOffsets: Range?): TagRange? {
+        val lineStart = lineOffsets?.start ?: -1
+        val lineEnd = lineOffsets?.end ?: -1
+
+        val cached = lastLookup
+        if (cached != null && cached.offset == offset && cached.lineStart == lineStart && cached.lineEnd == lineEnd) {
+            return cached.tagRange
+        }
+
+        var best = findContaining(offset, 0, size, -1)
+        if (best < 0 && lineOffsets != null) {
+            best = findOverlapping(lineStart, lineEnd, 0, size, -1)
+        }
+
+        val tagRange = if (best < 0) null else tagRanges[order[best]]
+        lastLookup = Lookup(offset, lineStart, lineEnd, tagRange)
+        return tagRange
+    }
+
+    private fun computeMaxEnds(from: Int, to: Int): Int {
+        if (from >= to) return Int.MIN_VALUE
+        val mid = (from + to) ushr 1
+        val maxEnd = maxOf(ends[mid], computeMaxEnds(from, mid), computeMaxEnds(mid + 1, to))
+        maxEnds[mid] = maxEnd
+        return maxEnd
+    }
+
+    private fun findContaining(offset: Int, from: Int, to: Int, best: Int): Int {
+        if (from >= to) return best
+        val mid = (from + to) ushr 1
+        if (maxEnds[mid] <= offset) return best
+
+        var result = findContaining(offset, from, mid, best)
+        if (starts[mid] <= offset) {
+            if (ends[mid] > offset && isBetterFit(mid, result)) result = mid
+            result = findContaining(offset, mid + 1, to, result)
+        }
+        return result
+    }
+
+    private fun findOverlapping(lineStart: Int, lineEnd: Int, from: Int, to: Int, best: Int): Int {
+        if (from >= to) return best
+        val mid = (from + to) ushr 1
+        if (maxEnds[mid] <= lineStart) return best
+
+        var result = findOverlapping(lineStart, lineEnd, from, mid, best)
+        if (starts[mid] < lineEnd) {
+            if (ends[mid] > lineStart && (result < 0 || order[mid] < order[result])) result = mid
+            result = findOverlapping(lineStart, lineEnd, mid + 1, to, result)
+        }
+        return result
+    }
+
+    private fun isBetterFit(index: Int, best: Int): Boolean {
+        if (best < 0) return true
+
+        val span = ends[index] - starts[index]
+        val bestSpan = ends[best] - starts[best]
+        if (span != bestSpan) return span < bestSpan
+
+        val priority = TAG_PRIORITIES[tagRanges[order[index]].tag] ?: 0
+        val bestPriority = TAG_PRIORITIES[tagRanges[order[best]].tag] ?: 0
+        if (priority != bestPriority) return priority > bestPriority
+
+        return order[index] < order[best]
+    }
+
+    companion object {
+        @JvmField
+        val EMPTY = TagRangeIndex(listOf())
+
+        @JvmField
+        val TAG_PRIORITIES = mapOf(
+            "a" to 1,
+            "span" to 2,
+            "img" to 3
+        )
+
+        /**
+         * Get index for tag ranges
+         *
+         * @param tagRanges tag ranges, returned as is if already an index
+         * @return index
+         */
+        @JvmStatic
+        fun of(tagRanges: List<TagRange>?): TagRangeIndex {
+            return when {
+                tagRanges is TagRangeIndex -> tagRanges
+                tagRanges == null || tagRanges.isEmpty() -> EMPTY
+                else -> TagRangeIndex(ArrayList(tagRanges))
+            }
+        }
+    }
+}
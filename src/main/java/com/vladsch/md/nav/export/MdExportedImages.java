@@ -0,0 +1,140 @@
+// Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+
+package com.vladsch.md.nav.export;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
+
+/**
+ * Images of a batch HTML export, maps an image file path to its exported path and copies each image once.
+ * <p>
+ * Images under the source directory keep their relative path in the export directory. Other images are
+ * copied to {@link #IMAGES_DIRECTORY} with the digest of their content added to the file name, images with
+ * the same content share one copy.
+ * <p>
+ * Safe for concurrent use by files rendered in parallel.
+ */
+public class MdExportedImages implements Function<String, String> {
+    public static final String IMAGES_DIRECTORY = "images";
+    private static final String NOT_EXPORTED = "";
+
+    private final @NotNull Path mySourceDirectory;
+    private final @NotNull Path myExportDirectory;
+    private final ConcurrentHashMap<String, String> myExportedPaths = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Path, Boolean> myCopiedFiles = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<String> myErrors = new ConcurrentLinkedQueue<>();
+
+    public MdExportedImages(@NotNull Path sourceDirectory, @NotNull Path exportDirectory) {
+        mySourceDirectory = sourceDirectory.toAbsolutePath().normalize();
+        myExportDirectory = exportDirectory.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Get exported path of image, copying the image if it was not copied yet
+     *
+     * @param filePath image file path
+     * @return system independent exported path or null if the image is not a file or could not be copied
+     */
+    @Nullable
+    @Override
+    public String apply(@NotNull String filePath) {
+        String exportedPath = myExportedPaths.computeIfAbsent(filePath, this::exportImage);
+        return exportedPath.equals(NOT_EXPORTED) ? null : exportedPath;
+    }
+
+    public int getCopiedCount() {
+        return myCopiedFiles.size();
+    }
+
+    @NotNull
+    public List<String> getErrors() {
+        return new ArrayList<>(myErrors);
+    }
+
+    @NotNull
+    private String exportImage(@NotNull String filePath) {
+        Path source;
+        try {
+            source = Paths.get(filePath).toAbsolutePath().normalize();
+        } catch (IllegalArgumentException e) {
+            return NOT_EXPORTED;
+        }
+
+        if (!Files.isRegularFile(source)) return NOT_EXPORTED;
+
+        try {
+            Path target;
+            if (source.startsWith(mySourceDirectory)) {
+                target = myExportDirectory.resolve(mySourceDirectory.relativize(source));
+            } else {
+                target = myExportDirectory.resolve(IMAGES_DIRECTORY).resolve(digestFileName(source));
+            }
+
+            // different paths can have the same target when images are outside the source directory
+            myCopiedFiles.computeIfAbsent(target, path -> {
+                try {
+                    Files.createDirectories(path.getParent());
+                    Files.copy(source, path, StandardCopyOption.REPLACE_EXISTING);
+                } catch (IOException e) {
+                    myErrors.add("Failed to copy image " + source + " to " + path + ": " + e.getMessage());
+                    return null;
+                }
+                return true;
+            });
+
+            return myCopiedFiles.containsKey(target) ? FileUtil.toSystemIndependentName(target.toString()) : NOT_EXPORTED;
+        } catch (IOException e) {
+            myErrors.add("Failed to read image " + source + ": " + e.getMessage());
+            return NOT_EXPORTED;
+        }
+    }
+
+    @NotNull
+    static String digestFileName(@NotNull Path source) throws IOException {
+        String fileName = source.getFileName().toString();
+        int pos = fileName.lastIndexOf('.');
+        String name = pos > 0 ? fileName.substring(0, pos) : fileName;
+        String extension = pos > 0 ? fileName.substring(pos) : "";
+        return name + "-" + contentDigest(source) + extension;
+    }
+
+    @NotNull
+    static String contentDigest(@NotNull Path source) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        byte[] buffer = new byte[8192];
+        try (InputStream inputStream = Files.newInputStream(source)) {
+            int read;
+            while ((read = inputStream.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        byte[] bytes = digest.digest();
+        for (int i = 0; i < 4; i++) {
+            sb.append(String.format("%02x", bytes[i] & 0xff));
+        }
+        return sb.toString();
+    }
+}
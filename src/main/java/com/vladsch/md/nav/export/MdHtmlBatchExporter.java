@@ -0,0 +1,238 @@
+// Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+
+package com.vladsch.md.nav.export;
+
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.fileTypes.FileTypeManager;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.vladsch.flexmark.util.data.MutableDataHolder;
+import com.vladsch.md.nav.MdFileType;
+import com.vladsch.md.nav.editor.util.HtmlGenerator;
+import com.vladsch.md.nav.parser.MdFlexmarkCache;
+import com.vladsch.md.nav.parser.api.HtmlPurpose;
+import com.vladsch.md.nav.parser.flexmark.MdNavigatorExtension;
+import com.vladsch.md.nav.psi.element.MdFile;
+import com.vladsch.md.nav.settings.MdRenderingProfile;
+import com.vladsch.md.nav.settings.MdRenderingProfileManager;
+import com.vladsch.md.nav.vcs.GitHubLinkResolver;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Exports all markdown files of a directory tree to HTML files in an export directory.
+ * <p>
+ * Files are rendered in parallel on a fork join pool with the HTML generator of their rendering profile.
+ * Export options are given by a variant options adjuster so all files of a profile share its cached parser
+ * and renderer. Links to exported markdown files are changed to links to their HTML files and linked
+ * images are copied once, see {@link MdExportedImages}. A file which fails to export is added to the errors
+ * of the result and the export continues with the next file.
+ */
+public class MdHtmlBatchExporter {
+    private static final Logger LOG = Logger.getInstance("com.vladsch.md.nav.export");
+
+    public static final String HTML_EXTENSION = "html";
+
+    private static final Object EXPORT_VARIANT = "batch-export";
+
+    private final @NotNull Project myProject;
+    private final @NotNull VirtualFile mySourceDirectory;
+    private final @NotNull Path myExportDirectory;
+    private final int myParallelism;
+
+    public static class Result {
+        public final int exportedFiles;
+        public final int copiedImages;
+        public final @NotNull List<String> errors;
+
+        Result(int exportedFiles, int copiedImages, @NotNull List<String> errors) {
+            this.exportedFiles = exportedFiles;
+            this.copiedImages = copiedImages;
+            this.errors = errors;
+        }
+    }
+
+    /**
+     * @param project         project containing the files
+     * @param sourceDirectory directory with markdown files to export
+     * @param exportDirectory directory for exported files
+     * @param parallelism     number of files rendered in parallel
+     */
+    public MdHtmlBatchExporter(@NotNull Project project, @NotNull VirtualFile sourceDirectory, @NotNull Path exportDirectory, int parallelism) {
+        myProject = project;
+        mySourceDirectory = sourceDirectory;
+        myExportDirectory = exportDirectory.toAbsolutePath().normalize();
+        myParallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Export files, must not be called from the event dispatch thread
+     *
+     * @param indicator progress indicator
+     * @return export result
+     */
+    @NotNull
+    public Result export(@NotNull ProgressIndicator indicator) {
+        indicator.setIndeterminate(false);
+        indicator.setText("Collecting markdown files");
+
+        List<VirtualFile> files = ReadAction.compute(this::collectFiles);
+        Map<String, String> exportFileMap = Collections.unmodifiableMap(getExportFileMap(files));
+        MdExportedImages exportedImages = new MdExportedImages(Paths.get(mySourceDirectory.getPath()), myExportDirectory);
+
+        ConcurrentLinkedQueue<String> errors = new ConcurrentLinkedQueue<>();
+        AtomicInteger exportedFiles = new AtomicInteger();
+        AtomicInteger processedFiles = new AtomicInteger();
+
+        indicator.setText("Exporting markdown files");
+
+        ForkJoinPool pool = new ForkJoinPool(myParallelism);
+        try {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>(files.size());
+            for (VirtualFile file : files) {
+                tasks.add(pool.submit(() -> {
+                    if (indicator.isCanceled()) return;
+
+                    try {
+                        if (exportFile(file, exportFileMap, exportedImages)) {
+                            exportedFiles.incrementAndGet();
+                        }
+                    } catch (ProcessCanceledException e) {
+                        throw e;
+                    } catch (IOException e) {
+                        errors.add("Failed to export " + file.getPath() + ": " + e.getMessage());
+                    } catch (RuntimeException e) {
+                        LOG.warn("Failed to export " + file.getPath(), e);
+                        errors.add("Failed to export " + file.getPath() + ": " + e);
+                    }
+
+                    indicator.setFraction((double) processedFiles.incrementAndGet() / files.size());
+                }));
+            }
+
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        indicator.checkCanceled();
+
+        errors.addAll(exportedImages.getErrors());
+        return new Result(exportedFiles.get(), exportedImages.getCopiedCount(), new ArrayList<>(errors));
+    }
+
+    @NotNull
+    private List<VirtualFile> collectFiles() {
+        ProjectFileIndex fileIndex = ProjectFileIndex.getInstance(myProject);
+        FileTypeManager fileTypeManager = FileTypeManager.getInstance();
+        List<VirtualFile> files = new ArrayList<>();
+
+        VfsUtilCore.iterateChildrenRecursively(mySourceDirectory, file -> !fileTypeManager.isFileIgnored(file) && !fileIndex.isExcluded(file), file -> {
+            if (!file.isDirectory() && file.getFileType() == MdFileType.INSTANCE) {
+                files.add(file);
+            }
+            return true;
+        });
+        return files;
+    }
+
+    /**
+     * Exported HTML path of markdown files, keeping their path relative to the source directory
+     *
+     * @param files markdown files
+     * @return map of markdown file path to system independent exported path
+     */
+    @NotNull
+    Map<String, String> getExportFileMap(@NotNull List<VirtualFile> files) {
+        Map<String, String> exportFileMap = new LinkedHashMap<>();
+        for (VirtualFile file : files) {
+            String relativePath = VfsUtilCore.getRelativePath(file, mySourceDirectory, '/');
+            if (relativePath == null) continue;
+
+            String exportedName = file.getNameWithoutExtension() + "." + HTML_EXTENSION;
+            String exportedPath = myExportDirectory.resolve(relativePath).resolveSibling(exportedName).toString();
+            exportFileMap.put(file.getPath(), FileUtil.toSystemIndependentName(exportedPath));
+        }
+        return exportFileMap;
+    }
+
+    private boolean exportFile(@NotNull VirtualFile file, @NotNull Map<String, String> exportFileMap, @NotNull MdExportedImages exportedImages) throws IOException {
+        String exportedPath = exportFileMap.get(file.getPath());
+        if (exportedPath == null) return false;
+
+        String html = ReadAction.compute(() -> renderFile(file, exportedPath, exportFileMap, exportedImages));
+        if (html == null) return false;
+
+        Path target = Paths.get(exportedPath);
+        Files.createDirectories(target.getParent());
+        try (BufferedWriter writer = Files.newBufferedWriter(target, StandardCharsets.UTF_8)) {
+            writer.write(html);
+        }
+        return true;
+    }
+
+    /**
+     * Render markdown file for export, must be called in a read action
+     *
+     * @param file           markdown file
+     * @param exportedPath   exported path of the file
+     * @param exportFileMap  map of markdown file path to exported path
+     * @param exportedImages map of image file path to exported path, null if the image is not exported
+     * @return html or null if file is not a markdown file
+     */
+    @Nullable
+    String renderFile(@NotNull VirtualFile file, @NotNull String exportedPath, @NotNull Map<String, String> exportFileMap, @NotNull Function<String, String> exportedImages) {
+        if (!file.isValid()) return null;
+
+        PsiFile psiFile = PsiManager.getInstance(myProject).findFile(file);
+        if (!(psiFile instanceof MdFile)) return null;
+
+        MdRenderingProfile renderingProfile = MdRenderingProfileManager.getProfile(psiFile);
+        HtmlGenerator htmlGenerator = renderingProfile.getHtmlSettings().getHtmlGeneratorProvider().createHtmlGenerator(new GitHubLinkResolver(psiFile), renderingProfile);
+
+        return htmlGenerator.toHtml(psiFile, psiFile.getViewProvider().getContents(), HtmlPurpose.EXPORT, null, null, new MdFlexmarkCache.VariantOptionsAdjuster() {
+            // export path and maps are set on the document, not in cached options
+            @NotNull
+            @Override
+            public Object getVariant() {
+                return EXPORT_VARIANT;
+            }
+
+            @Override
+            public void accept(MutableDataHolder options) {
+                options.set(MdNavigatorExtension.HTML_EXPORT, true);
+                options.set(MdNavigatorExtension.LINK_TO_EXPORTED_HTML, true);
+                options.set(MdNavigatorExtension.HTML_EXPORT_PATH, exportedPath);
+                options.set(MdNavigatorExtension.HTML_EXPORT_FILE_MAP, exportFileMap);
+                options.set(MdNavigatorExtension.HTML_EXPORT_IMAGE_MAPPER, exportedImages);
+            }
+        });
+    }
+}
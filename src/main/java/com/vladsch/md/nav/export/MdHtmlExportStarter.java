@@ -0,0 +1,121 @@
+// Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+
+package com.vladsch.md.nav.export;
+
+import com.intellij.ide.impl.ProjectUtil;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ApplicationStarter;
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ex.ProjectManagerEx;
+import com.intellij.openapi.util.Ref;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Headless HTML export of a markdown directory tree:
+ * <p>
+ * {@code idea markdown-export <project directory> <source directory> <export directory> [-j <parallelism>]}
+ * <p>
+ * Opens the project for its rendering profiles and link resolution, waits for indexing and exports
+ * with {@link MdHtmlBatchExporter}. Exits with 1 if there were errors.
+ */
+public class MdHtmlExportStarter implements ApplicationStarter {
+    public static final String COMMAND_NAME = "markdown-export";
+
+    @Override
+    public String getCommandName() {
+        return COMMAND_NAME;
+    }
+
+    @Override
+    public boolean isHeadless() {
+        return true;
+    }
+
+    @Override
+    public void main(@NotNull List<String> args) {
+        // first argument is the command name
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        String[] paths = new String[3];
+        int pathCount = 0;
+
+        for (int i = 1; i < args.size(); i++) {
+            String arg = args.get(i);
+            if (arg.equals("-j") && i + 1 < args.size()) {
+                try {
+                    parallelism = Integer.parseInt(args.get(++i));
+                } catch (NumberFormatException e) {
+                    printUsage();
+                    System.exit(2);
+                }
+            } else if (pathCount < paths.length) {
+                paths[pathCount++] = arg;
+            } else {
+                printUsage();
+                System.exit(2);
+            }
+        }
+
+        if (pathCount != paths.length) {
+            printUsage();
+            System.exit(2);
+        }
+
+        int finalParallelism = parallelism;
+        ApplicationManager.getApplication().executeOnPooledThread(() -> {
+            int exitCode;
+            try {
+                exitCode = export(paths[0], paths[1], paths[2], finalParallelism);
+            } catch (Throwable e) {
+                System.err.println("Markdown export failed: " + e);
+                exitCode = 1;
+            }
+            System.exit(exitCode);
+        });
+    }
+
+    private static int export(@NotNull String projectPath, @NotNull String sourcePath, @NotNull String exportPath, int parallelism) {
+        Ref<Project> projectRef = Ref.create();
+        ApplicationManager.getApplication().invokeAndWait(() -> projectRef.set(ProjectUtil.openOrImport(projectPath, null, false)));
+
+        Project project = projectRef.get();
+        if (project == null) {
+            System.err.println("Cannot open project " + projectPath);
+            return 1;
+        }
+
+        try {
+            DumbService.getInstance(project).waitForSmartMode();
+
+            VirtualFile sourceDirectory = LocalFileSystem.getInstance().refreshAndFindFileByPath(FileUtil.toSystemIndependentName(Paths.get(sourcePath).toAbsolutePath().normalize().toString()));
+            if (sourceDirectory == null || !sourceDirectory.isDirectory()) {
+                System.err.println("Source directory not found " + sourcePath);
+                return 1;
+            }
+            VfsUtil.markDirtyAndRefresh(false, true, true, sourceDirectory);
+
+            MdHtmlBatchExporter exporter = new MdHtmlBatchExporter(project, sourceDirectory, Paths.get(exportPath), parallelism);
+            MdHtmlBatchExporter.Result result = exporter.export(new EmptyProgressIndicator());
+
+            for (String error : result.errors) {
+                System.err.println(error);
+            }
+            System.out.println("Exported " + result.exportedFiles + " files, copied " + result.copiedImages + " images to " + exportPath);
+            return result.errors.isEmpty() ? 0 : 1;
+        } finally {
+            ApplicationManager.getApplication().invokeAndWait(() -> ProjectManagerEx.getInstanceEx().closeAndDispose(project));
+        }
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: " + COMMAND_NAME + " <project directory> <source directory> <export directory> [-j <parallelism>]");
+    }
+}
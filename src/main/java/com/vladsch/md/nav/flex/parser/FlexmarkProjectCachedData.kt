@@ -14,12 +14,14 @@ import com.intellij.psi.PsiJavaFile
 import com.intellij.psi.impl.java.stubs.index.JavaFieldNameIndex
 import com.intellij.psi.search.GlobalSearchScope
 import com.intellij.psi.util.PsiTreeUtil
+import com.vladsch.md.nav.MdFileType
 import com.vladsch.md.nav.flex.psi.util.FlexmarkPsiImplUtils
 import com.vladsch.md.nav.parser.cache.CachedData
 import com.vladsch.md.nav.parser.cache.PsiClassProcessor
 import com.vladsch.md.nav.parser.cache.PsiFileProcessor
 import com.vladsch.md.nav.parser.cache.data.CachedDataKey
 import com.vladsch.md.nav.parser.cache.data.ProjectCachedData
+import com.vladsch.md.nav.parser.cache.data.dependency.ProjectFileFilter
 import com.vladsch.md.nav.parser.cache.data.dependency.ProjectFilePredicate
 import com.vladsch.md.nav.parser.cache.data.transaction.CachedTransactionContext
 import com.vladsch.md.nav.psi.element.MdFile
@@ -114,6 +116,13 @@ class FlexmarkProjectCachedData {
                 }
                 return isValid
             }
+
+            /**
+             * Only java files and markdown spec files are tested
+             */
+            override fun getFileFilter(): ProjectFileFilter {
+                return ProjectFileFilter().addExtension("java").addFileType(MdFileType.INSTANCE)
+            }
         }
 
         /**
@@ -3,7 +3,6 @@
 package com.vladsch.md.nav.flex.parser;
 
 import com.intellij.openapi.application.ApplicationManager;
-import com.intellij.psi.PsiFile;
 import com.vladsch.flexmark.ext.jekyll.front.matter.JekyllFrontMatterBlock;
 import com.vladsch.flexmark.ext.jekyll.front.matter.JekyllFrontMatterExtension;
 import com.vladsch.flexmark.ext.jekyll.front.matter.JekyllFrontMatterVisitor;
@@ -19,6 +18,7 @@ import com.vladsch.flexmark.util.sequence.BasedSequence;
 import com.vladsch.md.nav.flex.psi.FlexmarkOptionInfo;
 import com.vladsch.md.nav.flex.psi.FlexmarkPsi;
 import com.vladsch.md.nav.flex.settings.FlexmarkHtmlSettings;
+import com.vladsch.md.nav.parser.MdFlexmarkCache;
 import com.vladsch.md.nav.parser.MdLexParser;
 import com.vladsch.md.nav.parser.MdParserOptions;
 import com.vladsch.md.nav.parser.SyntheticFlexmarkNodes;
@@ -26,10 +26,8 @@ import com.vladsch.md.nav.parser.api.MdParser;
 import com.vladsch.md.nav.parser.api.MdParserExtension;
 import com.vladsch.md.nav.parser.flexmark.MdNavigatorExtension;
 import com.vladsch.md.nav.parser.parserExtensions.MdParserHandlerBase;
-import com.vladsch.md.nav.psi.util.MdPsiImplUtil;
 import com.vladsch.md.nav.settings.MdRenderingProfile;
 import com.vladsch.md.nav.settings.ParserOptions;
-import com.vladsch.md.nav.util.ProjectFileRef;
 import com.vladsch.md.nav.vcs.MdLinkResolver;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -72,14 +70,9 @@ public class MdSpecExampleParserExtension implements MdParserExtension {
                 boolean productionSpecParserMode = renderingProfile.getParserSettings().anyOptions(MdLexParser.PRODUCTION_SPEC_PARSER);
                 boolean testSpecParserMode = !productionSpecParserMode && (ApplicationManager.getApplication().isUnitTestMode());
 
-                if (resolver != null && resolver.getContainingFile() instanceof ProjectFileRef) {
-                    PsiFile psiFile = ((ProjectFileRef) resolver.getContainingFile()).getPsiFile();
-                    if (psiFile != null) {
-                        boolean isInjected = MdPsiImplUtil.isInjectedMdElement(psiFile.getOriginalFile(), false, true);
-                        if (isInjected) {
-                            testSpecParserMode = true;
-                        }
-                    }
+                // NOTE: injected state is part of cached flexmark entry variants, see MdFlexmarkCache.isInjectedFile()
+                if (MdFlexmarkCache.isInjectedFile(resolver)) {
+                    testSpecParserMode = true;
                 }
 
                 if (testSpecParserMode) {
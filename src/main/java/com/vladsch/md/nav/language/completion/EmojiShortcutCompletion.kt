@@ -9,7 +9,7 @@ import com.intellij.codeInsight.lookup.LookupElement
 import com.intellij.codeInsight.lookup.LookupElementBuilder
 import com.intellij.psi.PsiElement
 import com.intellij.util.ProcessingContext
-import com.vladsch.flexmark.ext.emoji.internal.EmojiShortcuts
+import com.vladsch.md.nav.language.completion.util.EmojiShortcutIndex
 import com.vladsch.md.nav.language.completion.util.MdCompletionContext
 import com.vladsch.md.nav.language.completion.util.MoveCaretAfterCompletionDecorator
 import com.vladsch.md.nav.language.completion.util.TextContext
@@ -55,8 +55,11 @@ class EmojiShortcutCompletion : MdElementCompletion {
         @Suppress("NAME_SHADOWING")
         val resultSet = if (prefix.isNotEmpty()) resultSet.withPrefixMatcher(prefix) else resultSet
 
-        for ((emojiShortcut, shortcut) in EmojiShortcuts.getEmojiShortcuts()) {
-            shortcutsType.flexmarkType.getPreferred(shortcut.emojiCheatSheetFile, shortcut.githubFile) ?: continue // no file no completion
+        val prefixMatcher = resultSet.prefixMatcher
+
+        // only shortcuts with a word starting with the first character of the prefix can match, icons are loaded when shown
+        EmojiShortcutIndex.getIndex(shortcutsType).forPrefix(prefix) { emojiShortcut, shortcut ->
+            if (!prefixMatcher.prefixMatches(emojiShortcut)) return@forPrefix
 
             var lookupElement: LookupElement = LookupElementBuilder.create(emojiShortcut).withCaseSensitivity(true)
                 .withIcon(MdEmojiIcons.getEmojiIcon(emojiShortcut))
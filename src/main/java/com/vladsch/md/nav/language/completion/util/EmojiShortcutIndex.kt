@@ -0,0 +1,95 @@
+// Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+
+package com.vladsch.md.nav.language.completion.util
+
+import com.vladsch.flexmark.ext.emoji.internal.EmojiReference
+import com.vladsch.flexmark.ext.emoji.internal.EmojiShortcuts
+import com.vladsch.md.nav.settings.EmojiShortcutsType
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Index of emoji shortcuts which have an image for an emoji shortcuts type, by the first character of their words.
+ *
+ * A word starts at the start of the shortcut, after a separator such as `_` or `-` or at a lower to upper case change.
+ * The completion prefix matcher matches camel humps, `heye` matches `heart_eyes`, so its first character must match
+ * a word start but the rest of the prefix can span words. Only shortcuts which can match are looked up and
+ * the prefix matcher filters them. Indices are built once per shortcuts type.
+ */
+class EmojiShortcutIndex private constructor(shortcutsType: EmojiShortcutsType) {
+    private val shortcuts: Array<String>
+    private val emojis: Array<EmojiReference.Emoji>
+    private val wordStartShortcuts: Map<Char, IntArray>
+
+    init {
+        val shortcutList = ArrayList<String>()
+        val emojiList = ArrayList<EmojiReference.Emoji>()
+
+        for ((emojiShortcut, emoji) in EmojiShortcuts.getEmojiShortcuts()) {
+            shortcutsType.flexmarkType.getPreferred(emoji.emojiCheatSheetFile, emoji.githubFile) ?: continue // no file no completion
+            shortcutList.add(emojiShortcut)
+            emojiList.add(emoji)
+        }
+
+        // shortcut indices are added in order so a shortcut with several words starting with the same character is added once
+        val wordStarts = HashMap<Char, ArrayList<Int>>()
+        for ((index, shortcut) in shortcutList.withIndex()) {
+            for (i in shortcut.indices) {
+                if (isWordStart(shortcut, i)) {
+                    val indexList = wordStarts.computeIfAbsent(shortcut[i].toLowerCase()) { ArrayList() }
+                    if (indexList.isEmpty() || indexList[indexList.size - 1] != index) indexList.add(index)
+                }
+            }
+        }
+
+        shortcuts = shortcutList.toTypedArray()
+        emojis = emojiList.toTypedArray()
+        wordStartShortcuts = wordStarts.mapValues { it.value.toIntArray() }
+    }
+
+    val size: Int get() = shortcuts.size
+
+    /**
+     * Process shortcuts which can match prefix, ones with a word starting with the first character of prefix, ignoring case.
+     * Each shortcut is processed once, the caller's prefix matcher does the rest of the matching.
+     *
+     * @param prefix    prefix, empty for all shortcuts
+     * @param processor called with shortcut and its emoji
+     */
+    fun forPrefix(prefix: String, processor: (shortcut: String, emoji: EmojiReference.Emoji) -> Unit) {
+        if (prefix.isEmpty()) {
+            for (i in shortcuts.indices) {
+                processor(shortcuts[i], emojis[i])
+            }
+            return
+        }
+
+        val indices = wordStartShortcuts[prefix[0].toLowerCase()] ?: return
+        for (index in indices) {
+            processor(shortcuts[index], emojis[index])
+        }
+    }
+
+    companion object {
+        /**
+         * Test if a word of a shortcut starts at index: the start of the shortcut, a letter or digit after a separator
+         * or an upper case letter after a lower case one
+         */
+        @JvmStatic
+        fun isWordStart(shortcut: String, index: Int): Boolean {
+            if (index == 0) return true
+
+            val c = shortcut[index]
+            if (!c.isLetterOrDigit()) return false
+
+            val prev = shortcut[index - 1]
+            return !prev.isLetterOrDigit() || c.isUpperCase() && prev.isLowerCase()
+        }
+
+        private val indices = ConcurrentHashMap<EmojiShortcutsType, EmojiShortcutIndex>()
+
+        @JvmStatic
+        fun getIndex(shortcutsType: EmojiShortcutsType): EmojiShortcutIndex {
+            return indices.computeIfAbsent(shortcutsType) { EmojiShortcutIndex(it) }
+        }
+    }
+}
@@ -1,58 +1,150 @@
 // Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
 package com.vladsch.md.nav.language.injection;
 
+import com.intellij.ide.plugins.DynamicPluginListener;
+import com.intellij.ide.plugins.IdeaPluginDescriptor;
 import com.intellij.lang.Language;
 import com.intellij.lexer.EmbeddedTokenTypesProvider;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
 import com.vladsch.md.nav.language.api.MdLanguageProvider;
-import com.vladsch.plugin.util.LazyComputable;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
 
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicStampedReference;
 
 public enum LanguageGuesser {
     INSTANCE;
 
-    private final LazyComputable<List<EmbeddedTokenTypesProvider>> embeddedTokenTypeProviders =
-            new LazyComputable<>(() -> Arrays.asList(EmbeddedTokenTypesProvider.EXTENSION_POINT_NAME.getExtensions()));
+    static final int MAX_CACHED_LANGUAGES = 1024;
+
+    /**
+     * Languages adjusted by language providers and languages resolved for info strings
+     * <p>
+     * Discarded by {@link #clearCache()} when a plugin is loaded or unloaded, or embedded token types
+     * or language providers change, see {@link #listenForChanges(Disposable)}.
+     */
+    private static class ResolvedLanguages {
+        final @NotNull Map<String, Language> languageMap;
+        final @NotNull List<EmbeddedTokenTypesProvider> embeddedTokenTypeProviders;
+        final @NotNull List<MdLanguageProvider> languageProviders;
+        final ConcurrentHashMap<String, Optional<Language>> resolved = new ConcurrentHashMap<>();
+
+        ResolvedLanguages(@NotNull List<EmbeddedTokenTypesProvider> embeddedTokenTypeProviders, @NotNull List<MdLanguageProvider> languageProviders) {
+            this.embeddedTokenTypeProviders = embeddedTokenTypeProviders;
+            this.languageProviders = languageProviders;
+
+            HashMap<String, Language> languageMap = new HashMap<>();
+            for (Language language : Language.getRegisteredLanguages()) {
+                languageMap.put(language.getID().toLowerCase(Locale.US), language);
+            }
+
+            if (languageMap.containsKey("bash")) languageMap.put("shell", languageMap.get("bash"));
+            if (languageMap.containsKey("javascript")) languageMap.put("js", languageMap.get("javascript"));
+            if (languageMap.containsKey("markdown")) languageMap.put("multimarkdown", languageMap.get("markdown"));
+
+            for (MdLanguageProvider provider : languageProviders) {
+                provider.adjustLanguages(languageMap);
+            }
+
+            this.languageMap = Collections.unmodifiableMap(languageMap);
+        }
+    }
+
+    // stamp is incremented by each clear so languages computed before a clear are not stored after it
+    private final AtomicStampedReference<ResolvedLanguages> resolvedLanguages = new AtomicStampedReference<>(null, 0);
 
-    private final LazyComputable<Map<String, Language>> langIdToLanguage = new LazyComputable<>(() -> {
-        final HashMap<String, Language> result = new HashMap<>();
-        for (Language language : Language.getRegisteredLanguages()) {
-            result.put(language.getID().toLowerCase(Locale.US), language);
+    @NotNull
+    private ResolvedLanguages getResolvedLanguages() {
+        int[] stamp = new int[1];
+        ResolvedLanguages languages = resolvedLanguages.get(stamp);
+        if (languages == null) {
+            languages = new ResolvedLanguages(new ArrayList<>(EmbeddedTokenTypesProvider.EXTENSION_POINT_NAME.getExtensionList()), new ArrayList<>(MdLanguageProvider.EP_NAME.getExtensionList()));
+            if (!resolvedLanguages.compareAndSet(null, languages, stamp[0], stamp[0])) {
+                // cleared or computed by another thread, use the current languages if there are any
+                ResolvedLanguages current = resolvedLanguages.getReference();
+                if (current != null) languages = current;
+            }
         }
+        return languages;
+    }
+
+    /**
+     * Discard adjusted languages and resolved info strings, next request will recompute them
+     */
+    public void clearCache() {
+        int[] stamp = new int[1];
+        ResolvedLanguages languages;
+        do {
+            languages = resolvedLanguages.get(stamp);
+        } while (!resolvedLanguages.compareAndSet(languages, null, stamp[0], stamp[0] + 1));
+    }
+
+    /**
+     * Clear cache when plugins are loaded or unloaded and when embedded token types or language providers change
+     *
+     * @param parentDisposable disposable for the listeners
+     */
+    public void listenForChanges(@NotNull Disposable parentDisposable) {
+        ApplicationManager.getApplication().getMessageBus().connect(parentDisposable).subscribe(DynamicPluginListener.TOPIC, new DynamicPluginListener() {
+            @Override
+            public void pluginLoaded(@NotNull IdeaPluginDescriptor pluginDescriptor) {
+                clearCache();
+            }
 
-        if (result.containsKey("bash")) result.put("shell", result.get("bash"));
-        if (result.containsKey("javascript")) result.put("js", result.get("javascript"));
-        if (result.containsKey("markdown")) result.put("multimarkdown", result.get("markdown"));
+            @Override
+            public void pluginUnloaded(@NotNull IdeaPluginDescriptor pluginDescriptor, boolean isUpdate) {
+                clearCache();
+            }
+        });
+
+        EmbeddedTokenTypesProvider.EXTENSION_POINT_NAME.addChangeListener(this::clearCache, parentDisposable);
+        MdLanguageProvider.EP_NAME.addChangeListener(this::clearCache, parentDisposable);
+    }
 
-        return result;
-    });
+    @TestOnly
+    boolean isCached(@NotNull String languageName) {
+        ResolvedLanguages languages = resolvedLanguages.getReference();
+        return languages != null && languages.resolved.containsKey(languageName);
+    }
 
     @Nullable
     public Language guessLanguage(@NotNull String languageName) {
-        HashMap<String, Language> languageMap = new HashMap<>(langIdToLanguage.getValue());
-        for (MdLanguageProvider provider : MdLanguageProvider.EXTENSIONS.getValue()) {
-            provider.adjustLanguages(languageMap);
+        ResolvedLanguages languages = getResolvedLanguages();
+
+        Optional<Language> resolved = languages.resolved.get(languageName);
+        if (resolved == null) {
+            resolved = Optional.ofNullable(computeLanguage(languages, languageName));
+            if (languages.resolved.size() >= MAX_CACHED_LANGUAGES) languages.resolved.clear();
+            languages.resolved.put(languageName, resolved);
         }
+        return resolved.orElse(null);
+    }
 
-        final Language languageFromMap = languageMap.get(languageName.toLowerCase(Locale.US));
+    @Nullable
+    private static Language computeLanguage(@NotNull ResolvedLanguages languages, @NotNull String languageName) {
+        final Language languageFromMap = languages.languageMap.get(languageName.toLowerCase(Locale.US));
         if (languageFromMap != null) {
             return languageFromMap;
         }
 
-        for (MdLanguageProvider provider : MdLanguageProvider.EXTENSIONS.getValue()) {
-            Language language = provider.getLanguageFromInfo(languageName, languageMap, embeddedTokenTypeProviders.getValue());
+        for (MdLanguageProvider provider : languages.languageProviders) {
+            Language language = provider.getLanguageFromInfo(languageName, languages.languageMap, languages.embeddedTokenTypeProviders);
             if (language != null) return language;
         }
 
-        for (EmbeddedTokenTypesProvider provider : embeddedTokenTypeProviders.getValue()) {
+        for (EmbeddedTokenTypesProvider provider : languages.embeddedTokenTypeProviders) {
             if (provider.getName().equalsIgnoreCase(languageName)) {
                 return provider.getElementType().getLanguage();
             }
@@ -63,18 +155,14 @@ public enum LanguageGuesser {
 
     @NotNull
     public Set<String> getLanguageNames() {
-
-        Map<String, Language> result = langIdToLanguage.getValue();
-        for (MdLanguageProvider provider : MdLanguageProvider.EXTENSIONS.getValue()) {
-            provider.adjustLanguages(result);
-        }
+        ResolvedLanguages languages = getResolvedLanguages();
 
         HashSet<String> list = new HashSet<>();
-        for (String languageName : result.keySet()) {
+        for (String languageName : languages.languageMap.keySet()) {
             list.add(languageName.toLowerCase(Locale.US));
         }
 
-        for (EmbeddedTokenTypesProvider provider : embeddedTokenTypeProviders.getValue()) {
+        for (EmbeddedTokenTypesProvider provider : languages.embeddedTokenTypeProviders) {
             list.add(provider.getName().toLowerCase(Locale.US));
         }
 
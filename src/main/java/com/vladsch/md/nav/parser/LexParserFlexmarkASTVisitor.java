@@ -116,7 +116,7 @@ public class LexParserFlexmarkASTVisitor implements MdParser,
     boolean parseHtmlBlocks = !MdApplicationSettings.getInstance().getDocumentSettings().getHtmlLangInjections();
     private final int length;
 
-    protected final ArrayList<LexerToken> tokens = new ArrayList<>(100);
+    protected final LexerTokenBuffer tokens;
 
     final private Document myDocument;
 
@@ -130,6 +130,8 @@ public class LexParserFlexmarkASTVisitor implements MdParser,
     public LexParserFlexmarkASTVisitor(final Document document) {
         this.myDocument = document;
         this.length = document.getEndOffset();
+        // rough estimate of token count to avoid repeated growing of the buffer for large files
+        this.tokens = new LexerTokenBuffer(Math.max(100, this.length / 16));
         this.rootASTNode = new MdASTCompositeNode(MdParserDefinition.MARKDOWN_FILE, 0, this.length);
         this.currentASTNode = this.rootASTNode;
         myLexParserState = LexParserState.getInstance();
@@ -176,7 +178,7 @@ public class LexParserFlexmarkASTVisitor implements MdParser,
         return myDocument;
     }
 
-    public ArrayList<LexerToken> getTokens() {
+    public LexerTokenBuffer getTokens() {
         return tokens;
     }
 
@@ -1152,9 +1154,9 @@ public class LexParserFlexmarkASTVisitor implements MdParser,
                     } else {
                         combinedType = processCombinationAncestors(tokenType, tokenType);
                     }
-                    tokens.add(new LexerToken(range, combinedType, parentRanges.size()));
+                    tokens.add(range.getStart(), range.getEnd(), combinedType, parentRanges.size());
                 } else {
-                    tokens.add(new LexerToken(range, tokenType, parentRanges.size()));
+                    tokens.add(range.getStart(), range.getEnd(), tokenType, parentRanges.size());
                 }
             }
         }
@@ -1175,7 +1177,7 @@ public class LexParserFlexmarkASTVisitor implements MdParser,
             SegmentedRange range = processAncestors(new SegmentedRange(startIndex, endIndex, tokenType, originalTokenType));
             tokenType = range.getTokenType();
             for (Range subRange : range.getSegments()) {
-                if (!subRange.isEmpty()) tokens.add(new LexerToken(subRange, tokenType, parentRanges.size()));
+                if (!subRange.isEmpty()) tokens.add(subRange.getStart(), subRange.getEnd(), tokenType, parentRanges.size());
             }
         }
     }
@@ -34,15 +34,34 @@ class LexParserState {
     private val parentsNotExcludingChildrenMap = HashMap<IElementType, HashSet<IElementType>>()
 
     fun isExcludedByChild(parent: IElementType, child: IElementType): Boolean {
-        val childNotExcludingParents = childrenNotExcludingParentsMap[child] ?: return true
+        val childNotExcludingParents = indexedSet(state.CHILDREN_NOT_EXCLUDING_PARENTS, child) ?: return true
         return !childNotExcludingParents.contains(parent)
     }
 
     fun isExcludedByParent(parent: IElementType, child: IElementType): Boolean {
-        val parentNotExcludingChildren = parentsNotExcludingChildrenMap[parent] ?: return true
+        val parentNotExcludingChildren = indexedSet(state.PARENTS_NOT_EXCLUDING_CHILDREN, parent) ?: return true
         return !parentNotExcludingChildren.contains(child)
     }
 
+    private fun indexedSet(sets: Array<TokenSet?>, type: IElementType): TokenSet? {
+        val index = type.index.toInt()
+        return if (index < sets.size) sets[index] else null
+    }
+
+    /**
+     * Compile element type to element types map into token sets indexed by key type's index
+     *
+     * Token sets are bit sets of element type indices, so a lookup is an array access and a bit test
+     */
+    private fun indexedSets(map: Map<IElementType, Set<IElementType>>): Array<TokenSet?> {
+        val size = map.keys.fold(0) { acc, type -> maxOf(acc, type.index.toInt() + 1) }
+        val sets = arrayOfNulls<TokenSet>(size)
+        for ((type, types) in map) {
+            sets[type.index.toInt()] = TokenSet.create(*types.toTypedArray())
+        }
+        return sets
+    }
+
     private val COMBINATION_TYPES = HashMap<String, IElementType>()
 
     val state: State by lazy {
@@ -57,7 +76,12 @@ class LexParserState {
         @JvmField val COMBINATION_SPLITS: Map<IElementType, Map<IElementType, IElementType>>,
         @JvmField val INLINE_NON_PLAIN_TEXT: List<IElementType>,
         @JvmField val INLINE_SPECIAL_TEXT: List<IElementType>,
-        @JvmField val INLINE_PLAIN_TEXT: List<IElementType>
+        @JvmField val INLINE_PLAIN_TEXT: List<IElementType>,
+        @JvmField val INLINE_NON_PLAIN_TEXT_SET: TokenSet,
+        @JvmField val INLINE_SPECIAL_TEXT_SET: TokenSet,
+        @JvmField val INLINE_PLAIN_TEXT_SET: TokenSet,
+        @JvmField val CHILDREN_NOT_EXCLUDING_PARENTS: Array<TokenSet?>,
+        @JvmField val PARENTS_NOT_EXCLUDING_CHILDREN: Array<TokenSet?>
     )
 
     // @formatter:off
@@ -320,7 +344,12 @@ class LexParserState {
             COMBINATION_SPLITS.toMap(),
             INLINE_NON_PLAIN_TEXT.toList(),
             INLINE_SPECIAL_TEXT.toList(),
-            INLINE_PLAIN_TEXT.toList()
+            INLINE_PLAIN_TEXT.toList(),
+            TokenSet.create(*INLINE_NON_PLAIN_TEXT.toTypedArray()),
+            TokenSet.create(*INLINE_SPECIAL_TEXT.toTypedArray()),
+            TokenSet.create(*INLINE_PLAIN_TEXT.toTypedArray()),
+            indexedSets(childrenNotExcludingParentsMap),
+            indexedSets(parentsNotExcludingChildrenMap)
         )
     }
 
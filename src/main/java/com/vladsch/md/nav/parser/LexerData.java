@@ -6,11 +6,11 @@ import com.vladsch.md.nav.parser.ast.MdASTCompositeNode;
 import org.jetbrains.annotations.NotNull;
 
 public class LexerData {
-    @NotNull public final LexerToken[] lexerTokens;
+    @NotNull public final LexerTokenBuffer lexerTokens;
     //@NotNull public final Map<Integer, String> headerOffsetAnchorIds;
     @NotNull public final MdASTCompositeNode rootNode;
 
-    public LexerData(@NotNull LexerToken[] lexerTokens, /*@NotNull Map<Integer, String> headerOffsetAnchorIds,*/ @NotNull MdASTCompositeNode rootNode) {
+    public LexerData(@NotNull LexerTokenBuffer lexerTokens, /*@NotNull Map<Integer, String> headerOffsetAnchorIds,*/ @NotNull MdASTCompositeNode rootNode) {
         this.lexerTokens = lexerTokens;
         //this.headerOffsetAnchorIds = headerOffsetAnchorIds;
         this.rootNode = rootNode;
@@ -0,0 +1,199 @@
+// Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.parser;
+
+import com.intellij.psi.tree.IElementType;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Packed lexer token stream: parallel arrays of start, end, nesting and element type index.
+ * <p>
+ * Lexing a large file produces hundreds of thousands of tokens, keeping them in primitive arrays
+ * instead of {@link LexerToken} and {@link com.vladsch.flexmark.util.sequence.Range} instances
+ * avoids most of the lexer allocations. Tokens are accessed by index, element types are stored
+ * as {@link IElementType#getIndex()} and resolved with {@link IElementType#find(short)}.
+ */
+public class LexerTokenBuffer {
+    public static final int NO_NESTING = Integer.MAX_VALUE;
+
+    private int[] myStarts;
+    private int[] myEnds;
+    private int[] myNestings;
+    private short[] myTypes;
+    private int mySize;
+
+    public LexerTokenBuffer() {
+        this(16);
+    }
+
+    public LexerTokenBuffer(int capacity) {
+        int useCapacity = Math.max(capacity, 1);
+        myStarts = new int[useCapacity];
+        myEnds = new int[useCapacity];
+        myNestings = new int[useCapacity];
+        myTypes = new short[useCapacity];
+        mySize = 0;
+    }
+
+    public int size() {
+        return mySize;
+    }
+
+    public boolean isEmpty() {
+        return mySize == 0;
+    }
+
+    public int getStart(int index) {
+        return myStarts[index];
+    }
+
+    public int getEnd(int index) {
+        return myEnds[index];
+    }
+
+    public int getNesting(int index) {
+        return myNestings[index];
+    }
+
+    public short getTypeIndex(int index) {
+        return myTypes[index];
+    }
+
+    @NotNull
+    public IElementType getElementType(int index) {
+        return IElementType.find(myTypes[index]);
+    }
+
+    /**
+     * Get token as an object, allocates a new token so only for debugging and tests
+     *
+     * @param index token index
+     *
+     * @return lexer token
+     */
+    @NotNull
+    public LexerToken getToken(int index) {
+        return new LexerToken(myStarts[index], myEnds[index], getElementType(index), myNestings[index]);
+    }
+
+    public void add(int start, int end, @NotNull IElementType elementType) {
+        add(start, end, elementType.getIndex(), NO_NESTING);
+    }
+
+    public void add(int start, int end, @NotNull IElementType elementType, int nesting) {
+        add(start, end, elementType.getIndex(), nesting);
+    }
+
+    void add(int start, int end, short typeIndex, int nesting) {
+        if (mySize == myStarts.length) {
+            int capacity = mySize + (mySize >> 1) + 1;
+            myStarts = Arrays.copyOf(myStarts, capacity);
+            myEnds = Arrays.copyOf(myEnds, capacity);
+            myNestings = Arrays.copyOf(myNestings, capacity);
+            myTypes = Arrays.copyOf(myTypes, capacity);
+        }
+
+        myStarts[mySize] = start;
+        myEnds[mySize] = end;
+        myNestings[mySize] = nesting;
+        myTypes[mySize] = typeIndex;
+        mySize++;
+    }
+
+    /**
+     * Add token from another buffer with its offsets shifted
+     *
+     * @param other buffer containing the token
+     * @param index index of token in other
+     * @param delta amount to add to start and end offsets
+     */
+    void add(@NotNull LexerTokenBuffer other, int index, int delta) {
+        add(other.myStarts[index] + delta, other.myEnds[index] + delta, other.myTypes[index], other.myNestings[index]);
+    }
+
+    void setRange(int index, int start, int end) {
+        myStarts[index] = start;
+        myEnds[index] = end;
+    }
+
+    /**
+     * Stable sort of tokens by start offset ascending, end offset descending then nesting ascending,
+     * which is the order of {@link LexerToken#compareTo(LexerToken)}
+     *
+     * @return new sorted buffer
+     */
+    @NotNull
+    public LexerTokenBuffer sorted() {
+        int[] indices = new int[mySize];
+        for (int i = 0; i < mySize; i++) indices[i] = i;
+
+        if (mySize > 1) {
+            mergeSort(indices.clone(), indices, 0, mySize);
+        }
+
+        LexerTokenBuffer result = new LexerTokenBuffer(mySize);
+        for (int index : indices) {
+            result.add(this, index, 0);
+        }
+        return result;
+    }
+
+    private int compare(int index1, int index2) {
+        int start1 = myStarts[index1];
+        int start2 = myStarts[index2];
+        if (start1 != start2) return start1 < start2 ? -1 : 1;
+
+        int end1 = myEnds[index1];
+        int end2 = myEnds[index2];
+        if (end1 != end2) return end1 > end2 ? -1 : 1;
+
+        return Integer.compare(myNestings[index1], myNestings[index2]);
+    }
+
+    // top down merge sort of indices in src[from, to) into dst, src and dst start with the same content
+    private void mergeSort(int[] src, int[] dst, int from, int to) {
+        int length = to - from;
+        if (length < 8) {
+            // insertion sort for small ranges
+            for (int i = from + 1; i < to; i++) {
+                int index = dst[i];
+                int j = i;
+                while (j > from && compare(dst[j - 1], index) > 0) {
+                    dst[j] = dst[j - 1];
+                    j--;
+                }
+                dst[j] = index;
+            }
+            return;
+        }
+
+        int mid = (from + to) >>> 1;
+        mergeSort(dst, src, from, mid);
+        mergeSort(dst, src, mid, to);
+
+        if (compare(src[mid - 1], src[mid]) <= 0) {
+            System.arraycopy(src, from, dst, from, length);
+            return;
+        }
+
+        for (int i = from, p = from, q = mid; i < to; i++) {
+            if (q >= to || p < mid && compare(src[p], src[q]) <= 0) {
+                dst[i] = src[p++];
+            } else {
+                dst[i] = src[q++];
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        out.append("LexerTokenBuffer{size=").append(mySize);
+        for (int i = 0; i < mySize; i++) {
+            out.append(", [").append(myStarts[i]).append(", ").append(myEnds[i]).append(") ").append(getElementType(i));
+        }
+        out.append("}");
+        return out.toString();
+    }
+}
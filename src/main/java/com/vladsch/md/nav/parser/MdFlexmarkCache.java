@@ -0,0 +1,362 @@
+// Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.parser;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ProjectManager;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.psi.PsiFile;
+import com.intellij.util.messages.MessageBusConnection;
+import com.vladsch.flexmark.html.HtmlRenderer;
+import com.vladsch.flexmark.parser.Parser;
+import com.vladsch.flexmark.util.ast.Document;
+import com.vladsch.flexmark.util.data.DataHolder;
+import com.vladsch.flexmark.util.data.MutableDataHolder;
+import com.vladsch.flexmark.util.data.MutableDataSet;
+import com.vladsch.flexmark.util.sequence.BasedSequence;
+import com.vladsch.md.nav.parser.api.HtmlPurpose;
+import com.vladsch.md.nav.parser.api.ParserPurpose;
+import com.vladsch.md.nav.parser.flexmark.MdBlockRenderCache;
+import com.vladsch.md.nav.parser.flexmark.MdNavigatorExtension;
+import com.vladsch.md.nav.psi.util.MdPsiImplUtil;
+import com.vladsch.md.nav.settings.MdApplicationSettings;
+import com.vladsch.md.nav.settings.MdCssSettings;
+import com.vladsch.md.nav.settings.MdHtmlSettings;
+import com.vladsch.md.nav.settings.MdParserSettings;
+import com.vladsch.md.nav.settings.MdPreviewSettings;
+import com.vladsch.md.nav.settings.MdRenderingProfile;
+import com.vladsch.md.nav.settings.ProfileManagerChangeListener;
+import com.vladsch.md.nav.settings.ProjectSettingsChangedListener;
+import com.vladsch.md.nav.settings.RenderingProfileManager;
+import com.vladsch.md.nav.settings.SettingsChangedListener;
+import com.vladsch.md.nav.util.ProjectFileRef;
+import com.vladsch.md.nav.vcs.MdLinkResolver;
+import com.vladsch.plugin.util.LazyFunction;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Reusable flexmark Parser and HtmlRenderer instances for a project.
+ * <p>
+ * Building a parser or renderer resolves all extensions and their processor dependencies, which
+ * costs more than parsing a typical document. Both are thread-safe once built so they are kept
+ * here keyed by the rendering profile settings used for their options, parser and html purpose,
+ * and an optional caller variant for options which do not come from the profile.
+ * <p>
+ * Options which hold per call objects: link resolver, rendering profile, highlight ranges and
+ * export paths are removed from cached options and set on the parsed document, from where they are
+ * picked up by the navigator extensions during rendering. Entries are shared by all files rendered
+ * with the same settings, a caller rendering the same file repeatedly keeps its own block render cache.
+ * <p>
+ * The cache is cleared on application settings, project settings and rendering profile changes.
+ */
+public class MdFlexmarkCache implements Disposable {
+    final private static LazyFunction<Project, MdFlexmarkCache> NULL = new LazyFunction<>(MdFlexmarkCache::new);
+
+    public static final int MAX_CACHED_ENTRIES = 32;
+
+    @NotNull
+    public static MdFlexmarkCache getInstance(@NotNull Project project) {
+        if (project.isDefault()) {
+            Project defaultProject = ProjectManager.getInstance().getDefaultProject();
+            return NULL.getValue(defaultProject);
+        } else {
+            return project.getService(MdFlexmarkCache.class);
+        }
+    }
+
+    @NotNull
+    public static MdFlexmarkCache getInstance(@NotNull MdRenderingProfile renderingProfile) {
+        Project project = renderingProfile.getProject();
+        return getInstance(project == null || project.isDisposed() ? ProjectManager.getInstance().getDefaultProject() : project);
+    }
+
+    /**
+     * Options adjuster whose changes to options are fully identified by its variant.
+     * Only generators using such adjusters, or none, can use cached parsers and renderers.
+     */
+    public interface VariantOptionsAdjuster extends Consumer<MutableDataHolder> {
+        @NotNull
+        Object getVariant();
+    }
+
+    public static class Entry {
+        final private @NotNull DataHolder myOptions;
+        private @Nullable Parser myParser;
+        private @Nullable HtmlRenderer myRenderer;
+        final private boolean myUseBlockRenderCache;
+
+        Entry(@NotNull DataHolder options, boolean useBlockRenderCache) {
+            MutableDataSet cachedOptions = options.toMutable();
+            myUseBlockRenderCache = useBlockRenderCache;
+
+            if (MdNavigatorExtension.HIGHLIGHT_RANGES.get(options) != null) {
+                cachedOptions.set(MdNavigatorExtension.USE_HIGHLIGHT_RANGES, true);
+            }
+
+            cachedOptions.remove(MdNavigatorExtension.LINK_RESOLVER);
+            cachedOptions.remove(MdNavigatorExtension.RENDERING_PROFILE);
+            cachedOptions.remove(MdNavigatorExtension.HIGHLIGHT_RANGES);
+            cachedOptions.remove(MdNavigatorExtension.HTML_EXPORT_PATH);
+            cachedOptions.remove(MdNavigatorExtension.HTML_IMAGE_FILE_MAP);
+            cachedOptions.remove(MdNavigatorExtension.HTML_EXPORT_FILE_MAP);
+            cachedOptions.remove(MdNavigatorExtension.HTML_EXPORT_IMAGE_MAPPER);
+
+            myOptions = cachedOptions.toImmutable();
+        }
+
+        @NotNull
+        public DataHolder getOptions() {
+            return myOptions;
+        }
+
+        @NotNull
+        public synchronized Parser getParser() {
+            if (myParser == null) {
+                myParser = Parser.builder(myOptions).build();
+            }
+            return myParser;
+        }
+
+        @NotNull
+        public synchronized HtmlRenderer getRenderer() {
+            if (myRenderer == null) {
+                myRenderer = HtmlRenderer.builder(myOptions).build();
+            }
+            return myRenderer;
+        }
+
+        /**
+         * Parse input with the cached parser and set per call options on the resulting document
+         *
+         * @param input       input to parse
+         * @param callOptions options for this call, only per call values are taken from them
+         *
+         * @return document
+         */
+        @NotNull
+        public Document parse(@NotNull BasedSequence input, @Nullable DataHolder callOptions) {
+            return parse(input, callOptions, null);
+        }
+
+        /**
+         * Parse input with the cached parser and set per call options on the resulting document
+         *
+         * @param input            input to parse
+         * @param callOptions      options for this call, only per call values are taken from them
+         * @param blockRenderCache rendered blocks of the previous rendering of the same file, or null
+         *
+         * @return document
+         */
+        @NotNull
+        public Document parse(@NotNull BasedSequence input, @Nullable DataHolder callOptions, @Nullable MdBlockRenderCache blockRenderCache) {
+            Document document = getParser().parse(input);
+            if (callOptions != null) {
+                setDocumentOptions(document, callOptions);
+            }
+
+            if (blockRenderCache != null && myUseBlockRenderCache && MdApplicationSettings.getInstance().getDebugSettings().getUseBlockRenderCache()) {
+                // blocks rendered with another entry's options cannot be reused
+                blockRenderCache.setRenderer(getRenderer());
+                document.set(MdBlockRenderCache.BLOCK_RENDER_CACHE, blockRenderCache);
+            }
+            return document;
+        }
+    }
+
+    /**
+     * Test if the link resolver's file is markdown injected into another file, options of some extensions depend on it
+     * so it has to be part of the variant of entries for options built with a link resolver
+     *
+     * @param resolver link resolver or null
+     *
+     * @return true if injected
+     */
+    public static boolean isInjectedFile(@Nullable MdLinkResolver resolver) {
+        if (resolver != null && resolver.getContainingFile() instanceof ProjectFileRef) {
+            PsiFile psiFile = ((ProjectFileRef) resolver.getContainingFile()).getPsiFile();
+            return psiFile != null && MdPsiImplUtil.isInjectedMdElement(psiFile.getOriginalFile(), false, true);
+        }
+        return false;
+    }
+
+    public static void setDocumentOptions(@NotNull MutableDataHolder document, @NotNull DataHolder callOptions) {
+        if (callOptions.contains(MdNavigatorExtension.LINK_RESOLVER)) {
+            document.set(MdNavigatorExtension.LINK_RESOLVER, MdNavigatorExtension.LINK_RESOLVER.get(callOptions));
+        }
+
+        if (callOptions.contains(MdNavigatorExtension.RENDERING_PROFILE)) {
+            document.set(MdNavigatorExtension.RENDERING_PROFILE, MdNavigatorExtension.RENDERING_PROFILE.get(callOptions));
+        }
+
+        if (callOptions.contains(MdNavigatorExtension.HIGHLIGHT_RANGES)) {
+            document.set(MdNavigatorExtension.HIGHLIGHT_RANGES, MdNavigatorExtension.HIGHLIGHT_RANGES.get(callOptions));
+        }
+
+        if (callOptions.contains(MdNavigatorExtension.HTML_EXPORT_PATH)) {
+            document.set(MdNavigatorExtension.HTML_EXPORT_PATH, MdNavigatorExtension.HTML_EXPORT_PATH.get(callOptions));
+        }
+
+        if (callOptions.contains(MdNavigatorExtension.HTML_IMAGE_FILE_MAP)) {
+            document.set(MdNavigatorExtension.HTML_IMAGE_FILE_MAP, MdNavigatorExtension.HTML_IMAGE_FILE_MAP.get(callOptions));
+        }
+
+        if (callOptions.contains(MdNavigatorExtension.HTML_EXPORT_FILE_MAP)) {
+            document.set(MdNavigatorExtension.HTML_EXPORT_FILE_MAP, MdNavigatorExtension.HTML_EXPORT_FILE_MAP.get(callOptions));
+        }
+
+        if (callOptions.contains(MdNavigatorExtension.HTML_EXPORT_IMAGE_MAPPER)) {
+            document.set(MdNavigatorExtension.HTML_EXPORT_IMAGE_MAPPER, MdNavigatorExtension.HTML_EXPORT_IMAGE_MAPPER.get(callOptions));
+        }
+    }
+
+    private static class CacheKey {
+        final @NotNull String profileName;
+        final @NotNull MdParserSettings parserSettings;
+        final @NotNull MdHtmlSettings htmlSettings;
+        final @NotNull MdPreviewSettings previewSettings;
+        final @NotNull MdCssSettings cssSettings;
+        final @NotNull ParserPurpose parserPurpose;
+        final @NotNull HtmlPurpose htmlPurpose;
+        final @Nullable Object variant;
+        final int hashCode;
+
+        CacheKey(@NotNull String profileName, @NotNull MdParserSettings parserSettings, @NotNull MdHtmlSettings htmlSettings, @NotNull MdPreviewSettings previewSettings, @NotNull MdCssSettings cssSettings, @NotNull ParserPurpose parserPurpose, @NotNull HtmlPurpose htmlPurpose, @Nullable Object variant) {
+            this.profileName = profileName;
+            this.parserSettings = parserSettings;
+            this.htmlSettings = htmlSettings;
+            this.previewSettings = previewSettings;
+            this.cssSettings = cssSettings;
+            this.parserPurpose = parserPurpose;
+            this.htmlPurpose = htmlPurpose;
+            this.variant = variant;
+
+            int result = profileName.hashCode();
+            result = 31 * result + parserSettings.hashCode();
+            result = 31 * result + htmlSettings.hashCode();
+            result = 31 * result + previewSettings.hashCode();
+            result = 31 * result + cssSettings.hashCode();
+            result = 31 * result + parserPurpose.hashCode();
+            result = 31 * result + htmlPurpose.hashCode();
+            result = 31 * result + Objects.hashCode(variant);
+            this.hashCode = result;
+        }
+
+        /**
+         * @return key with copies of settings, live settings of the profile can change after the entry is added
+         */
+        @NotNull
+        CacheKey snapshot() {
+            return new CacheKey(profileName, new MdParserSettings(parserSettings), new MdHtmlSettings(htmlSettings), new MdPreviewSettings(previewSettings), new MdCssSettings(cssSettings), parserPurpose, htmlPurpose, variant);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof CacheKey)) return false;
+
+            CacheKey other = (CacheKey) o;
+
+            if (hashCode != other.hashCode) return false;
+            if (parserPurpose != other.parserPurpose) return false;
+            if (htmlPurpose != other.htmlPurpose) return false;
+            if (!profileName.equals(other.profileName)) return false;
+            if (!Objects.equals(variant, other.variant)) return false;
+            if (!parserSettings.equals(other.parserSettings)) return false;
+            if (!htmlSettings.equals(other.htmlSettings)) return false;
+            if (!previewSettings.equals(other.previewSettings)) return false;
+            return cssSettings.equals(other.cssSettings);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    final private LinkedHashMap<CacheKey, Entry> myEntries = new LinkedHashMap<CacheKey, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<CacheKey, Entry> eldest) {
+            return size() > MAX_CACHED_ENTRIES;
+        }
+    };
+
+    public MdFlexmarkCache(@NotNull Project project) {
+        Disposer.register(project, this);
+
+        MessageBusConnection applicationBusConnection = ApplicationManager.getApplication().getMessageBus().connect(this);
+        applicationBusConnection.subscribe(SettingsChangedListener.TOPIC, settings -> clear());
+
+        MessageBusConnection projectBusConnection = project.getMessageBus().connect(this);
+        projectBusConnection.subscribe(ProjectSettingsChangedListener.TOPIC, (project1, settings) -> clear());
+        projectBusConnection.subscribe(ProfileManagerChangeListener.TOPIC, new ProfileManagerChangeListener() {
+            @Override
+            public void onSettingsChange(@NotNull RenderingProfileManager manager) {
+                clear();
+            }
+
+            @Override
+            public void onSettingsLoaded(@NotNull RenderingProfileManager manager) {
+                clear();
+            }
+        });
+    }
+
+    /**
+     * Usually not invoked directly, see class javadoc.
+     */
+    @Override
+    public void dispose() {
+        clear();
+    }
+
+    public void clear() {
+        synchronized (myEntries) {
+            myEntries.clear();
+        }
+    }
+
+    /**
+     * Get cached parser and renderer entry
+     *
+     * @param renderingProfile rendering profile
+     * @param parserPurpose    parser purpose
+     * @param htmlPurpose      html purpose
+     * @param variant          variant for options not determined by rendering profile settings, or null
+     * @param options          supplier of options, only invoked if entry is not cached
+     *
+     * @return cached entry
+     */
+    @NotNull
+    public Entry getEntry(@NotNull MdRenderingProfile renderingProfile, @NotNull ParserPurpose parserPurpose, @NotNull HtmlPurpose htmlPurpose, @Nullable Object variant, @NotNull Supplier<? extends DataHolder> options) {
+        Project project = renderingProfile.getProject();
+        if (project != null && project.isDisposed()) {
+            // options for disposed projects are incomplete, do not cache
+            return new Entry(options.get(), !htmlPurpose.isExport);
+        }
+
+        CacheKey key = new CacheKey(renderingProfile.getProfileName(), renderingProfile.getParserSettings(), renderingProfile.getHtmlSettings(), renderingProfile.getPreviewSettings(), renderingProfile.getCssSettings(), parserPurpose, htmlPurpose, variant);
+
+        synchronized (myEntries) {
+            Entry entry = myEntries.get(key);
+            if (entry != null) return entry;
+        }
+
+        // NOTE: options are computed outside the lock, a concurrent request for the same key will compute its own and one of them is kept
+        Entry entry = new Entry(options.get(), !htmlPurpose.isExport);
+
+        synchronized (myEntries) {
+            Entry cached = myEntries.get(key);
+            if (cached != null) return cached;
+            myEntries.put(key.snapshot(), entry);
+        }
+        return entry;
+    }
+}
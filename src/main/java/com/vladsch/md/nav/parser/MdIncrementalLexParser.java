@@ -0,0 +1,349 @@
+// Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.parser;
+
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.tree.TokenSet;
+import com.intellij.reference.SoftReference;
+import com.intellij.util.text.ImmutableCharSequence;
+import com.vladsch.flexmark.util.ast.Document;
+import com.vladsch.md.nav.parser.ast.MdASTCompositeNode;
+import com.vladsch.md.nav.parser.ast.MdASTLeafNode;
+import com.vladsch.md.nav.parser.ast.MdASTNode;
+import com.vladsch.md.nav.settings.MdApplicationSettings;
+import com.vladsch.md.nav.settings.MdParserSettings;
+import com.vladsch.md.nav.settings.MdRenderingProfile;
+import com.vladsch.plugin.util.psi.PsiUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.vladsch.md.nav.psi.util.MdTypes.ABBREVIATION;
+import static com.vladsch.md.nav.psi.util.MdTypes.ENUM_REF_FORMAT;
+import static com.vladsch.md.nav.psi.util.MdTypes.FOOTNOTE;
+import static com.vladsch.md.nav.psi.util.MdTypes.MACRO;
+import static com.vladsch.md.nav.psi.util.MdTypes.REFERENCE;
+
+/**
+ * Incremental lexer data computation for large files.
+ * <p>
+ * Keeps the previous text and lexer data, finds the top-level blocks affected by the edit and
+ * re-parses only those blocks, together with the unchanged block on each side of them. The result is accepted
+ * only if the unchanged neighbours come back with the same type and extent, otherwise a full parse is done.
+ * <p>
+ * Definitions from the rest of the file (references, abbreviations, footnotes, enumerated reference formats and macros) are
+ * appended after the re-parsed text so that elements in it resolve the same way as in a full parse. An edit which adds, removes
+ * or changes a definition always results in a full parse.
+ */
+public class MdIncrementalLexParser {
+    public static final int MIN_INCREMENTAL_LENGTH = 16 * 1024;
+
+    private static final Key<SoftReference<State>> INCREMENTAL_LEXER_STATE = Key.create("MD_INCREMENTAL_LEXER_STATE");
+
+    private static final TokenSet DEFINITION_SET = TokenSet.create(
+            REFERENCE,
+            ABBREVIATION,
+            FOOTNOTE,
+            ENUM_REF_FORMAT,
+            MACRO
+    );
+
+    public static class State {
+        final @NotNull MdParserSettings parserSettings;
+        final @NotNull CharSequence text;
+        final @NotNull LexerData lexerData;
+
+        State(@NotNull MdParserSettings parserSettings, @NotNull CharSequence text, @NotNull LexerData lexerData) {
+            this.parserSettings = parserSettings;
+            this.text = text;
+            this.lexerData = lexerData;
+        }
+
+        @NotNull
+        public LexerData getLexerData() {
+            return lexerData;
+        }
+    }
+
+    public static boolean isIncrementalLexing(@NotNull CharSequence text) {
+        return text.length() >= MIN_INCREMENTAL_LENGTH && MdApplicationSettings.getInstance().getDebugSettings().getUseIncrementalLexer();
+    }
+
+    @Nullable
+    public static State getState(@NotNull VirtualFile virtualFile) {
+        return SoftReference.dereference(virtualFile.getUserData(INCREMENTAL_LEXER_STATE));
+    }
+
+    public static void setState(@NotNull VirtualFile virtualFile, @Nullable State state) {
+        virtualFile.putUserData(INCREMENTAL_LEXER_STATE, state == null ? null : new SoftReference<>(state));
+    }
+
+    @NotNull
+    public static State parseMarkdown(@NotNull MdRenderingProfile renderingProfile, @NotNull CharSequence buffer, @Nullable State previous) {
+        MdParserSettings parserSettings = renderingProfile.getParserSettings();
+        CharSequence text = ImmutableCharSequence.asImmutable(buffer);
+        boolean sameSettings = previous != null && previous.parserSettings.equals(parserSettings);
+        LexerData lexerData = null;
+
+        if (sameSettings) {
+            lexerData = reparseMarkdown(renderingProfile, previous.text, previous.lexerData, text);
+        }
+
+        if (lexerData == null) {
+            lexerData = MdLexParserManager.parseMarkdown(renderingProfile, text);
+        }
+
+        return new State(sameSettings ? previous.parserSettings : new MdParserSettings(parserSettings), text, lexerData);
+    }
+
+    /**
+     * Re-parse only top-level blocks affected by the change from old to new text
+     *
+     * @param renderingProfile rendering profile
+     * @param oldText          text for which old lexer data was computed
+     * @param oldData          old lexer data
+     * @param newText          new text
+     * @return lexer data for new text or null if it needs to be fully parsed
+     */
+    @Nullable
+    static LexerData reparseMarkdown(@NotNull MdRenderingProfile renderingProfile, @NotNull CharSequence oldText, @NotNull LexerData oldData, @NotNull CharSequence newText) {
+        int oldLength = oldText.length();
+        int newLength = newText.length();
+        int maxCommon = Math.min(oldLength, newLength);
+
+        int prefix = 0;
+        while (prefix < maxCommon && oldText.charAt(prefix) == newText.charAt(prefix)) prefix++;
+
+        if (prefix == oldLength && prefix == newLength) return oldData;
+
+        int suffix = 0;
+        int maxSuffix = maxCommon - prefix;
+        while (suffix < maxSuffix && oldText.charAt(oldLength - suffix - 1) == newText.charAt(newLength - suffix - 1)) suffix++;
+
+        MdASTCompositeNode oldRoot = oldData.rootNode;
+        if (oldRoot.getElementType() != MdParserDefinition.MARKDOWN_FILE || oldRoot.getEndOffset() != oldLength) return null;
+
+        List<MdASTNode> oldBlocks = oldRoot.getChildren();
+        int blockCount = oldBlocks.size();
+        if (blockCount == 0) return null;
+
+        int oldChangeEnd = oldLength - suffix;
+        int delta = newLength - oldLength;
+
+        // first block ending at or after the change start and last block starting at or before the change end
+        int firstDirty = firstBlockEndingAtOrAfter(oldBlocks, prefix);
+        int lastDirty = firstBlockStartingAfter(oldBlocks, oldChangeEnd) - 1;
+
+        // unchanged blocks on each side which must be re-parsed with identical results
+        int before = Math.min(firstDirty, lastDirty + 1) - 1;
+        int after = Math.max(lastDirty, firstDirty - 1) + 1;
+
+        if (before < 0 && after >= blockCount) return null;
+
+        int sliceStart = before >= 0 ? oldBlocks.get(before).getStartOffset() : 0;
+        int oldSliceEnd = after < blockCount ? oldBlocks.get(after).getEndOffset() : oldLength;
+        int newSliceEnd = oldSliceEnd + delta;
+
+        if (sliceStart > prefix || oldSliceEnd < oldChangeEnd || newSliceEnd < sliceStart) return null;
+
+        // changes to definitions can affect elements anywhere in the file
+        for (int i = before + 1; i < after; i++) {
+            if (hasDefinitions(oldBlocks.get(i))) return null;
+        }
+
+        StringBuilder definitions = new StringBuilder();
+        for (int i = 0; i < before; i++) {
+            collectDefinitions(oldBlocks.get(i), oldText, definitions);
+        }
+
+        for (int i = after + 1; i < blockCount; i++) {
+            collectDefinitions(oldBlocks.get(i), oldText, definitions);
+        }
+
+        int sliceLength = newSliceEnd - sliceStart;
+        StringBuilder sliceText = new StringBuilder(sliceLength + definitions.length() + 2);
+        sliceText.append(newText, sliceStart, newSliceEnd);
+        if (definitions.length() > 0) {
+            sliceText.append("\n\n").append(definitions);
+        }
+
+        Document document = MdLexParserManager.parseFlexmarkDocument(renderingProfile, sliceText, true);
+        if (document == null) return null;
+
+        LexerData sliceData = MdLexParser.parseFlexmarkMarkdown(document);
+        List<MdASTNode> sliceAllBlocks = sliceData.rootNode.getChildren();
+        ArrayList<MdASTNode> sliceBlocks = new ArrayList<>(sliceAllBlocks.size());
+
+        for (MdASTNode node : sliceAllBlocks) {
+            if (node.getStartOffset() >= sliceLength) break;
+            if (node.getEndOffset() > sliceLength) return null;
+            sliceBlocks.add(node);
+        }
+
+        int sliceBlockCount = sliceBlocks.size();
+        int firstNew = 0;
+        int lastNew = sliceBlockCount;
+
+        if (before >= 0) {
+            MdASTNode oldBlock = oldBlocks.get(before);
+            if (sliceBlockCount == 0 || !isSameBlock(sliceBlocks.get(0), oldBlock, -sliceStart)) return null;
+            firstNew++;
+        }
+
+        if (after < blockCount) {
+            MdASTNode oldBlock = oldBlocks.get(after);
+            if (lastNew <= firstNew || !isSameBlock(sliceBlocks.get(lastNew - 1), oldBlock, delta - sliceStart)) return null;
+            lastNew--;
+        }
+
+        for (int i = firstNew; i < lastNew; i++) {
+            if (hasDefinitions(sliceBlocks.get(i))) return null;
+        }
+
+        LexerTokenBuffer lexerTokens = spliceTokens(oldData.lexerTokens, sliceData.lexerTokens, sliceStart, oldSliceEnd, sliceLength, delta);
+        if (lexerTokens == null) return null;
+
+        ArrayList<MdASTNode> children = new ArrayList<>(blockCount - (after - before) + sliceBlockCount);
+        for (int i = 0; i < before; i++) {
+            children.add(oldBlocks.get(i));
+        }
+
+        for (MdASTNode node : sliceBlocks) {
+            children.add(shiftNode(node, sliceStart));
+        }
+
+        for (int i = after + 1; i < blockCount; i++) {
+            children.add(shiftNode(oldBlocks.get(i), delta));
+        }
+
+        return new LexerData(lexerTokens, new MdASTCompositeNode(MdParserDefinition.MARKDOWN_FILE, 0, newLength, children));
+    }
+
+    private static int firstBlockEndingAtOrAfter(@NotNull List<MdASTNode> blocks, int offset) {
+        int lo = 0;
+        int hi = blocks.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (blocks.get(mid).getEndOffset() < offset) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private static int firstBlockStartingAfter(@NotNull List<MdASTNode> blocks, int offset) {
+        int lo = 0;
+        int hi = blocks.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (blocks.get(mid).getStartOffset() <= offset) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private static boolean isSameBlock(@NotNull MdASTNode node, @NotNull MdASTNode oldNode, int delta) {
+        return node.getElementType() == oldNode.getElementType()
+                && node.getStartOffset() == oldNode.getStartOffset() + delta
+                && node.getEndOffset() == oldNode.getEndOffset() + delta;
+    }
+
+    private static boolean hasDefinitions(@NotNull MdASTNode node) {
+        if (PsiUtils.isTypeOf(node.getElementType(), DEFINITION_SET)) return true;
+
+        for (MdASTNode child : node.getChildren()) {
+            if (child instanceof MdASTCompositeNode && hasDefinitions(child)) return true;
+        }
+        return false;
+    }
+
+    private static void collectDefinitions(@NotNull MdASTNode node, @NotNull CharSequence text, @NotNull StringBuilder out) {
+        if (PsiUtils.isTypeOf(node.getElementType(), DEFINITION_SET)) {
+            out.append(text, node.getStartOffset(), node.getEndOffset());
+            out.append("\n\n");
+            return;
+        }
+
+        for (MdASTNode child : node.getChildren()) {
+            if (child instanceof MdASTCompositeNode) collectDefinitions(child, text, out);
+        }
+    }
+
+    @NotNull
+    private static MdASTNode shiftNode(@NotNull MdASTNode node, int delta) {
+        if (delta == 0) return node;
+
+        IElementType elementType = node.getElementType();
+        if (node instanceof MdASTLeafNode) {
+            return new MdASTLeafNode(elementType, node.getStartOffset() + delta, node.getEndOffset() + delta);
+        }
+
+        List<MdASTNode> children = node.getChildren();
+        ArrayList<MdASTNode> shiftedChildren = new ArrayList<>(children.size());
+        for (MdASTNode child : children) {
+            shiftedChildren.add(shiftNode(child, delta));
+        }
+        return new MdASTCompositeNode(elementType, node.getStartOffset() + delta, node.getEndOffset() + delta, shiftedChildren);
+    }
+
+    /**
+     * Combine old tokens before and after the re-parsed slice with tokens of the slice
+     *
+     * @return combined tokens or null if tokens cross the slice boundaries
+     */
+    @Nullable
+    private static LexerTokenBuffer spliceTokens(@NotNull LexerTokenBuffer oldTokens, @NotNull LexerTokenBuffer sliceTokens, int sliceStart, int oldSliceEnd, int sliceLength, int delta) {
+        int oldCount = oldTokens.size();
+
+        int startIndex = 0;
+        while (startIndex < oldCount && oldTokens.getEnd(startIndex) <= sliceStart) startIndex++;
+        if (startIndex < oldCount && oldTokens.getStart(startIndex) < sliceStart) return null;
+
+        int endIndex = startIndex;
+        while (endIndex < oldCount && oldTokens.getStart(endIndex) < oldSliceEnd) endIndex++;
+        if (endIndex > startIndex && oldTokens.getEnd(endIndex - 1) > oldSliceEnd) return null;
+
+        int sliceTokenCount = sliceTokens.size();
+        int sliceCount = 0;
+        while (sliceCount < sliceTokenCount && sliceTokens.getStart(sliceCount) < sliceLength) sliceCount++;
+        if (sliceCount > 0 && sliceTokens.getEnd(sliceCount - 1) > sliceLength) return null;
+
+        LexerTokenBuffer tokens = new LexerTokenBuffer(startIndex + sliceCount + oldCount - endIndex);
+        for (int i = 0; i < startIndex; i++) {
+            tokens.add(oldTokens, i, 0);
+        }
+
+        for (int i = 0; i < sliceCount; i++) {
+            addMergedToken(tokens, sliceTokens, i, sliceStart);
+        }
+
+        if (endIndex < oldCount) {
+            addMergedToken(tokens, oldTokens, endIndex, delta);
+            for (int i = endIndex + 1; i < oldCount; i++) {
+                tokens.add(oldTokens, i, delta);
+            }
+        }
+
+        return tokens;
+    }
+
+    // merge adjacent tokens across the splice the same way as MdLexParser.getData()
+    private static void addMergedToken(@NotNull LexerTokenBuffer tokens, @NotNull LexerTokenBuffer source, int index, int delta) {
+        int lastIndex = tokens.size() - 1;
+        if (lastIndex >= 0) {
+            int start = source.getStart(index) + delta;
+            int end = source.getEnd(index) + delta;
+            int lastStart = tokens.getStart(lastIndex);
+            int lastEnd = tokens.getEnd(lastIndex);
+
+            if (source.getTypeIndex(index) == tokens.getTypeIndex(lastIndex) && (start == lastEnd || end == lastStart)
+                    && !PsiUtils.isTypeOf(tokens.getElementType(lastIndex), LexParserState.getInstance().getState().NON_MERGE_TOKEN_SET)) {
+                tokens.setRange(lastIndex, Math.min(start, lastStart), Math.max(end, lastEnd));
+                return;
+            }
+        }
+        tokens.add(source, index, delta);
+    }
+}
@@ -4,7 +4,6 @@ package com.vladsch.md.nav.parser;
 import com.intellij.openapi.project.Project;
 import com.intellij.psi.tree.TokenSet;
 import com.vladsch.flexmark.util.ast.Document;
-import com.vladsch.flexmark.util.sequence.Range;
 import com.vladsch.md.nav.parser.ast.MdASTCompositeNode;
 import com.vladsch.md.nav.psi.util.MdTypes;
 import com.vladsch.md.nav.settings.MdProjectSettings;
@@ -13,9 +12,6 @@ import com.vladsch.plugin.util.psi.PsiUtils;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-
 /**
  * Lexer/Parser Combination that uses pegdown behind the scenes to do the heavy lifting here we just fake everything.
  */
@@ -57,7 +53,7 @@ public class MdLexParser {
     public static final String EXAMPLE_TYPE_BREAK = ".";
     public static final String EXAMPLE_TEST_END = "````````````````";
 
-    public static final LexerToken[] EMPTY_TOKENS = new LexerToken[0];
+    public static final LexerTokenBuffer EMPTY_TOKENS = new LexerTokenBuffer(0);
     public static final LexerData EMPTY_DATA = new LexerData(EMPTY_TOKENS, new MdASTCompositeNode(MdTypes.WHITESPACE, 0, 0));
 
     public static MdLexer createLexer(Project project) {
@@ -71,131 +67,100 @@ public class MdLexParser {
 
         LexParserFlexmarkASTVisitor visitor = new LexParserFlexmarkASTVisitor(document);
         visitor.build();
-        ArrayList<LexerToken> lexerTokens = visitor.getTokens();
 
-        LexerToken[] tokens = getData(lexerTokens);
-        return tokens == null ? EMPTY_DATA : new LexerData(tokens, visitor.getRootASTNode());
+        LexerTokenBuffer tokens = getData(visitor.getTokens());
+        return new LexerData(tokens, visitor.getRootASTNode());
     }
 
-    @Nullable
-    public static LexerToken[] getData(ArrayList<LexerToken> lexerTokens) {
-        LexerToken[] tokens = new LexerToken[lexerTokens.size()];
-        tokens = lexerTokens.toArray(tokens);
-        TokenSet NON_MERGE_TOKEN_SET = LexParserState.getInstance().getState().NON_MERGE_TOKEN_SET;
-
-        if (tokens.length > 0) {
-            Arrays.sort(tokens);
-
-            // now need to step through and merge consecutive tokens
-            int iMax = tokens.length;
-            LexerToken thisToken = tokens[0];
-            lexerTokens = new ArrayList<LexerToken>(iMax);
-
-            for (int i = 1; i < iMax; i++) {
-                LexerToken thatToken = tokens[i];
+    @NotNull
+    public static LexerTokenBuffer getData(@NotNull LexerTokenBuffer lexerTokens) {
+        if (lexerTokens.isEmpty()) return EMPTY_TOKENS;
 
-                // same region, keep deepest child since it did not get excluded by the parent so it should survive
-                // QUERY: is this still valid?
-                // FIX: in reality here we only get exact duplicates, need to trace where they are generated
-                if (thisToken.getRange().equals(thatToken.getRange())) {
-                    if (thisToken.getNesting() < thatToken.getNesting()) thisToken = thatToken;
-                    continue;
-                }
+        LexerTokenBuffer tokens = lexerTokens.sorted();
+        TokenSet NON_MERGE_TOKEN_SET = LexParserState.getInstance().getState().NON_MERGE_TOKEN_SET;
 
-                if (!thatToken.doesExtend(thisToken) || PsiUtils.isTypeOf(thisToken.getElementType(), NON_MERGE_TOKEN_SET)) {
-                    lexerTokens.add(thisToken);
-                    thisToken = thatToken;
-                } else {
-                    thisToken.setRange(thisToken.getRange().expandToInclude(thatToken.getRange()));
+        // now need to step through and merge consecutive tokens
+        int iMax = tokens.size();
+        LexerTokenBuffer mergedTokens = new LexerTokenBuffer(iMax);
+        int thisIndex = 0;
+        int thisStart = tokens.getStart(0);
+        int thisEnd = tokens.getEnd(0);
+        short thisType = tokens.getTypeIndex(0);
+
+        for (int i = 1; i < iMax; i++) {
+            int thatStart = tokens.getStart(i);
+            int thatEnd = tokens.getEnd(i);
+            short thatType = tokens.getTypeIndex(i);
+
+            // same region, keep deepest child since it did not get excluded by the parent so it should survive
+            // QUERY: is this still valid?
+            // FIX: in reality here we only get exact duplicates, need to trace where they are generated
+            if (thisStart == thatStart && thisEnd == thatEnd) {
+                if (tokens.getNesting(thisIndex) < tokens.getNesting(i)) {
+                    thisIndex = i;
+                    thisType = thatType;
                 }
+                continue;
             }
-            lexerTokens.add(thisToken);
 
-            // now we generate lexemes from the combined optimized tokens
-            tokens = new LexerToken[lexerTokens.size()];
-            tokens = lexerTokens.toArray(tokens);
-
-            // we create a list of non-intersecting, sorted, ranges
-            tokens = splitLexerTokens(tokens);
+            boolean doesExtend = thisType == thatType && (thatStart == thisEnd || thatEnd == thisStart);
+            if (!doesExtend || PsiUtils.isTypeOf(tokens.getElementType(thisIndex), NON_MERGE_TOKEN_SET)) {
+                mergedTokens.add(thisStart, thisEnd, thisType, tokens.getNesting(thisIndex));
+                thisIndex = i;
+                thisStart = thatStart;
+                thisEnd = thatEnd;
+                thisType = thatType;
+            } else {
+                thisStart = Math.min(thisStart, thatStart);
+                thisEnd = Math.max(thisEnd, thatEnd);
+            }
         }
+        mergedTokens.add(thisStart, thisEnd, thisType, tokens.getNesting(thisIndex));
 
-        return tokens;
+        // we create a list of non-intersecting, sorted, ranges
+        return splitLexerTokens(mergedTokens);
     }
 
-    protected static
-    @Nullable
-    LexerToken[] splitLexerTokens(@NotNull LexerToken[] tokens) {
-        int end = tokens.length;
-
-        if (end > 0) {
-            ArrayList<LexerToken> lexemes = new ArrayList<LexerToken>(tokens.length);
-
-            // do all of them
-            splitLexemes(lexemes, tokens, 0, Integer.MAX_VALUE);
-            LexerToken[] lexerTokens = new LexerToken[lexemes.size()];
-            return lexemes.toArray(lexerTokens);
-        }
-        return null;
-    }
-
-    protected static int splitLexemes(@NotNull ArrayList<LexerToken> lexemes, @NotNull LexerToken[] tokens, int start, int rangeEnd) {
-        LexerToken token = tokens[start];
-        Range range = token.getRange();
-        com.vladsch.flexmark.util.sequence.Range range1;
-
-        if (range.getEnd() <= rangeEnd) {
-            int end = tokens.length;
-
-            start++;
-            for (; start < end && (range1 = tokens[start].getRange()).getEnd() <= rangeEnd; start++) {
-                if (range.compare(range1) <= 0 && (range.doesNotOverlap(range1) || range.equals(range1))) {
-                    // it comes before, add it, if it equals, then skip it
-                    if (!range.equals(range1)) {
-                        if (range.equals(token.getRange())) {
-                            lexemes.add(token);
-                        } else {
-                            LexerToken newToken = new LexerToken(range, token.getElementType());
-                            lexemes.add(newToken);
-                        }
-                        token = tokens[start];
-                        range = token.getRange();
-                    }
-                } else if (!range.doesContain(range1)) {
-                    lexemes.add(token);
-                    token = tokens[start];
-                    range = token.getRange();
-                } else {
-                    if (range.doesOverlap(range1) && !range.doesContain(range1)) {
-                        // split the range and continue if it contains it, then skip it
-                        com.vladsch.flexmark.util.sequence.Range newRange = range.withEnd(range1.getStart());
-                        if (newRange.isEmpty()) {
-                            token = tokens[start];
-                            range = token.getRange();
-                        } else {
-                            LexerToken newToken = new LexerToken(newRange, token.getElementType());
-                            lexemes.add(newToken);
-
-                            range = range.withStart(range1.getEnd());
-                            if (range.isEmpty()) {
-                                token = tokens[start];
-                                range = token.getRange();
-                            } else {
-                                start = splitLexemes(lexemes, tokens, start, range.getStart());
-                            }
-                        }
-                    }
-                }
+    /**
+     * Remove tokens contained in or equal to preceding tokens, tokens must be sorted
+     *
+     * @param tokens sorted tokens
+     *
+     * @return lexemes
+     */
+    @NotNull
+    protected static LexerTokenBuffer splitLexerTokens(@NotNull LexerTokenBuffer tokens) {
+        int end = tokens.size();
+        if (end == 0) return EMPTY_TOKENS;
+
+        LexerTokenBuffer lexemes = new LexerTokenBuffer(end);
+        int token = 0;
+        int tokenStart = tokens.getStart(0);
+        int tokenEnd = tokens.getEnd(0);
+
+        for (int i = 1; i < end; i++) {
+            int start1 = tokens.getStart(i);
+            int end1 = tokens.getEnd(i);
+
+            if (tokenStart == start1 && tokenEnd == end1) {
+                // same range, skip it
+                continue;
             }
 
-            if (!range.isEmpty()) {
-                if (range.equals(token.getRange())) {
-                    lexemes.add(token);
-                } else {
-                    LexerToken newToken = new LexerToken(range, token.getElementType());
-                    lexemes.add(newToken);
-                }
+            boolean doesNotOverlap = end1 <= tokenStart || start1 >= tokenEnd;
+            if (doesNotOverlap || !(tokenStart <= start1 && end1 <= tokenEnd)) {
+                // it comes after or only partially overlaps, add it
+                lexemes.add(tokens, token, 0);
+                token = i;
+                tokenStart = start1;
+                tokenEnd = end1;
             }
+            // otherwise it is contained in the current token and skipped
+        }
+
+        if (tokenStart < tokenEnd) {
+            lexemes.add(tokens, token, 0);
         }
-        return start;
+        return lexemes;
     }
 }
@@ -19,11 +19,13 @@ import org.jetbrains.annotations.Nullable;
 public class MdLexParserManager {
     @Nullable
     public static Document parseFlexmarkDocument(@NotNull MdRenderingProfile renderingProfile, @NotNull final CharSequence buffer, boolean forParser) {
-        PegdownOptionsAdapter optionsAdapter = new PegdownOptionsAdapter();
         Document rootNode = null;
 
-        DataHolder options = optionsAdapter.getFlexmarkOptions(forParser ? ParserPurpose.PARSER : ParserPurpose.HTML, HtmlPurpose.RENDER, null, renderingProfile);
-        Parser parser = Parser.builder(options).build();
+        ParserPurpose parserPurpose = forParser ? ParserPurpose.PARSER : ParserPurpose.HTML;
+        Parser parser = MdFlexmarkCache.getInstance(renderingProfile).getEntry(renderingProfile, parserPurpose, HtmlPurpose.RENDER, null, () -> {
+            PegdownOptionsAdapter optionsAdapter = new PegdownOptionsAdapter();
+            return optionsAdapter.getFlexmarkOptions(parserPurpose, HtmlPurpose.RENDER, null, renderingProfile);
+        }).getParser();
         String exceptionText = null;
         // use an immutable copy so it does not change in the process of being parsed
         final BasedSequence input = buffer instanceof BasedSequence ? (BasedSequence) buffer : BasedSequence.of(ImmutableCharSequence.asImmutable(buffer));
@@ -47,11 +49,14 @@ public class MdLexParserManager {
         int pegdownExtensions = renderingProfile.getParserSettings().getPegdownFlags();
         long parserOptions = renderingProfile.getParserSettings().getOptionsFlags();
 
-        PegdownOptionsAdapter optionsAdapter = new PegdownOptionsAdapter();
         Document rootNode = null;
 
-        DataHolder options = optionsAdapter.getFlexmarkOptions(ParserPurpose.PARSER, HtmlPurpose.RENDER, null, renderingProfile);
-        Parser parser = Parser.builder(options).build();
+        MdFlexmarkCache.Entry entry = MdFlexmarkCache.getInstance(renderingProfile).getEntry(renderingProfile, ParserPurpose.PARSER, HtmlPurpose.RENDER, null, () -> {
+            PegdownOptionsAdapter optionsAdapter = new PegdownOptionsAdapter();
+            return optionsAdapter.getFlexmarkOptions(ParserPurpose.PARSER, HtmlPurpose.RENDER, null, renderingProfile);
+        });
+        DataHolder options = entry.getOptions();
+        Parser parser = entry.getParser();
         // use an immutable copy so it does not change in the process of being parsed
         final BasedSequence input = BasedSequence.of(ImmutableCharSequence.asImmutable(buffer));
 
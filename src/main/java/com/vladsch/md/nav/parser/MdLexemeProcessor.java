@@ -4,8 +4,8 @@ package com.vladsch.md.nav.parser;
 import com.intellij.lexer.LexerPosition;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.psi.tree.IElementType;
-import com.vladsch.flexmark.util.sequence.Range;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import static com.intellij.openapi.diagnostic.Logger.getInstance;
 import static com.vladsch.md.nav.psi.util.MdTypes.ASIDE_BLOCK_WHITESPACE;
@@ -15,20 +15,28 @@ import static com.vladsch.md.nav.psi.util.MdTypes.EOL;
 import static com.vladsch.md.nav.psi.util.MdTypes.VERBATIM_CONTENT;
 import static com.vladsch.md.nav.psi.util.MdTypes.WHITESPACE;
 
+/**
+ * Cursor over lexer tokens which fills gaps between tokens with whitespace, EOL and blank line tokens.
+ * <p>
+ * The current token is kept in primitive fields, token start and end are relative to start offset.
+ */
 public class MdLexemeProcessor {
     private static final Logger LOG = getInstance("com.vladsch.md.nav.parser");
 
     final protected CharSequence buffer;
-    final protected LexerToken[] lexerTokens;
+    final protected @Nullable LexerTokenBuffer lexerTokens;
 
-    protected LexerToken lexerToken = null;
+    protected boolean hasToken = false;
+    protected int tokenStart = 0;
+    protected int tokenEnd = 0;
+    protected @Nullable IElementType tokenType = null;
     protected int startOffset = 0;
     protected int endOffset = 0;
     protected int lexemeIndex = 0;
     protected int currentOffset = 0;
-    protected LexerToken prevToken = null;
+    protected @Nullable IElementType prevTokenType = null;
 
-    public MdLexemeProcessor(final CharSequence buffer, final LexerToken[] lexerTokens, int startOffset, int endOffset, int initialState) {
+    public MdLexemeProcessor(final CharSequence buffer, final @Nullable LexerTokenBuffer lexerTokens, int startOffset, int endOffset, int initialState) {
         this.buffer = buffer;
         this.lexerTokens = lexerTokens;
         this.startOffset = startOffset;
@@ -66,71 +74,119 @@ public class MdLexemeProcessor {
         return currentOffset;
     }
 
-    public LexerToken getPrevToken() {
-        return prevToken;
+    /**
+     * @return true if there is a current token, false at end of tokens
+     */
+    public boolean hasToken() {
+        return hasToken;
+    }
+
+    /**
+     * @return start of current token relative to start offset
+     */
+    public int getTokenStart() {
+        return tokenStart;
+    }
+
+    /**
+     * @return end of current token relative to start offset
+     */
+    public int getTokenEnd() {
+        return tokenEnd;
+    }
+
+    @Nullable
+    public IElementType getTokenType() {
+        return tokenType;
+    }
+
+    @Nullable
+    public IElementType getPrevTokenType() {
+        return prevTokenType;
+    }
+
+    private void setToken(int start, int end, @NotNull IElementType type) {
+        hasToken = true;
+        tokenStart = start;
+        tokenEnd = end;
+        tokenType = type;
+    }
+
+    private void setToken(@NotNull LexerTokenBuffer tokens, int index) {
+        setToken(tokens.getStart(index), tokens.getEnd(index), tokens.getElementType(index));
+    }
+
+    private void clearToken() {
+        hasToken = false;
+        tokenType = null;
+    }
+
+    private void logToken(String message) {
+        LOG.debug(message + " " + currentOffset + " (" + (hasToken ? "[" + tokenStart + ", " + tokenEnd + ") " + tokenType : "null") + ") \"" + (hasToken ? buffer.subSequence(tokenStart + startOffset, tokenEnd + startOffset) : "") + "\"");
     }
 
     private void initialize() {
-        lexerToken = null;
-        LOG.debug(String.format("start lexer buffer end %d, start %d, end %d, state %d", buffer.length(), startOffset, endOffset, lexemeIndex));
+        clearToken();
+        if (LOG.isDebugEnabled()) LOG.debug(String.format("start lexer buffer end %d, start %d, end %d, state %d", buffer.length(), startOffset, endOffset, lexemeIndex));
 
         // prime the lexeme stream, if the first is white space we need to start with that
-        if (lexerTokens != null && lexerTokens.length > lexemeIndex) {
+        LexerTokenBuffer tokens = lexerTokens;
+        if (tokens != null && tokens.size() > lexemeIndex) {
             // lexemeIndex needs to be advanced if currentOffset > 0
             if (currentOffset > 0) {
-                while (lexemeIndex < lexerTokens.length) {
-                    LexerToken token = lexerTokens[lexemeIndex];
-                    Range range = token.getRange();
-                    if (range.getEnd() + startOffset > currentOffset) {
+                int iMax = tokens.size();
+                while (lexemeIndex < iMax) {
+                    if (tokens.getEnd(lexemeIndex) + startOffset > currentOffset) {
                         break;
                     }
 
                     lexemeIndex++;
                 }
 
-                if (lexemeIndex >= lexerTokens.length) {
+                if (lexemeIndex >= iMax) {
                     lexemeIndex = 0;
                 }
             }
 
-            LOG.debug(String.format("start lexer buffer end %d, start %d, end %d, index %d", buffer.length(), startOffset, endOffset, lexemeIndex));
+            if (LOG.isDebugEnabled()) LOG.debug(String.format("start lexer buffer end %d, start %d, end %d, index %d", buffer.length(), startOffset, endOffset, lexemeIndex));
 
-            lexerToken = lexerTokens[lexemeIndex];
-            if (currentOffset < lexerToken.getRange().getStart() + startOffset) {
-                lexerToken = getNextWhitespace(lexerToken.getRange().getStart() + startOffset);
+            int nextStart = tokens.getStart(lexemeIndex) + startOffset;
+            if (currentOffset < nextStart) {
+                setNextWhitespace(nextStart);
             } else {
+                setToken(tokens, lexemeIndex);
                 lexemeIndex++;
             }
         }
 
-        if (lexerToken == null) {
+        if (!hasToken) {
             // create a dummy whitespace token for the whole file
-            lexerToken = getNextWhitespace(endOffset);
+            setNextWhitespace(endOffset);
         }
 
-        currentOffset = lexerToken.getRange().getEnd() + startOffset;
+        currentOffset = tokenEnd + startOffset;
 
         //assert currentOffset <= endOffset;
         if (currentOffset > endOffset) {
             currentOffset = endOffset;
         }
 
-        LOG.debug("start advanced to " + currentOffset + " (" + (lexerToken == null ? "null" : lexerToken.toString()) + ") \"" + (lexerToken == null ? "" : (buffer.subSequence(lexerToken.getRange().getStart() + startOffset, lexerToken.getRange().getEnd() + startOffset))) + "\"");
+        if (LOG.isDebugEnabled()) logToken("start advanced to");
     }
 
-    private LexerToken getNextWhitespace(int offset) {
+    private void setNextWhitespace(int offset) {
         int pos = currentOffset;
-        IElementType tokenType = WHITESPACE;
+        IElementType whitespaceType = WHITESPACE;
 
-        IElementType prevTokenType = prevToken == null ? null : prevToken.getElementType();
+        IElementType prevTokenType = this.prevTokenType;
 
         // here we also split into block quote and aside whitespace
         while (pos < offset) {
             char c = buffer.charAt(pos);
             if (c == '\n') {
-                if (tokenType != WHITESPACE) break;
+                if (whitespaceType != WHITESPACE) break;
                 pos++;
-                tokenType = (prevTokenType == null
+                whitespaceType = (prevTokenType == null
                         || prevTokenType == BLANK_LINE
                         || prevTokenType == VERBATIM_CONTENT
                         || prevTokenType == EOL
@@ -139,20 +195,32 @@ public class MdLexemeProcessor {
                 ) ? BLANK_LINE : EOL;
                 break;
             } else if (c == '>') {
-                if (tokenType == ASIDE_BLOCK_WHITESPACE) break;
-                tokenType = BLOCK_QUOTE_WHITESPACE;
+                if (whitespaceType == ASIDE_BLOCK_WHITESPACE) break;
+                whitespaceType = BLOCK_QUOTE_WHITESPACE;
             } else if (c == '|') {
-                if (tokenType == BLOCK_QUOTE_WHITESPACE) break;
-                tokenType = ASIDE_BLOCK_WHITESPACE;
+                if (whitespaceType == BLOCK_QUOTE_WHITESPACE) break;
+                whitespaceType = ASIDE_BLOCK_WHITESPACE;
             }
             pos++;
         }
 
-        return new LexerToken(currentOffset - startOffset, pos - startOffset, tokenType);
+        setToken(currentOffset - startOffset, pos - startOffset, whitespaceType);
     }
 
-    public LexerToken getLexerToken() {
-        return lexerToken;
+    /**
+     * Collect this and all following tokens, including whitespace tokens between lexer tokens
+     *
+     * @return tokens
+     */
+    @NotNull
+    public LexerTokenBuffer collectTokens() {
+        LexerTokenBuffer tokens = new LexerTokenBuffer(lexerTokens == null ? 16 : lexerTokens.size() * 2);
+        while (hasToken) {
+            //noinspection ConstantConditions
+            tokens.add(tokenStart, tokenEnd, tokenType);
+            advance();
+        }
+        return tokens;
     }
 
     public int getLineColumn(int posOffset) {
@@ -167,47 +235,49 @@ public class MdLexemeProcessor {
     }
 
     public void advance() {
-        prevToken = lexerToken;
+        prevTokenType = tokenType;
         if (currentOffset < endOffset) {
+            LexerTokenBuffer tokens = lexerTokens;
             do {
-                if (lexerTokens != null && lexemeIndex >= 0 && lexemeIndex < lexerTokens.length) {
-                    if (lexerToken == null || currentOffset < lexerToken.getRange().getStart() + startOffset) {
-                        lexerToken = getNextWhitespace(lexerTokens[lexemeIndex].getRange().getStart() + startOffset);
+                if (tokens != null && lexemeIndex >= 0 && lexemeIndex < tokens.size()) {
+                    if (!hasToken || currentOffset < tokenStart + startOffset) {
+                        setNextWhitespace(tokens.getStart(lexemeIndex) + startOffset);
                     } else {
-                        lexerToken = lexerTokens[lexemeIndex];
-                        if (currentOffset < lexerToken.getRange().getStart() + startOffset) {
-                            lexerToken = getNextWhitespace(lexerToken.getRange().getStart() + startOffset);
+                        int nextStart = tokens.getStart(lexemeIndex) + startOffset;
+                        if (currentOffset < nextStart) {
+                            setNextWhitespace(nextStart);
                         } else {
+                            setToken(tokens, lexemeIndex);
                             lexemeIndex++;
                         }
                     }
                 } else {
                     if (currentOffset < endOffset) {
-                        lexerToken = getNextWhitespace(endOffset);
+                        setNextWhitespace(endOffset);
                     } else {
-                        lexerToken = null;
+                        clearToken();
                     }
                 }
-            } while (lexerToken != null && lexerToken.getRange().getEnd() + startOffset < currentOffset);
+            } while (hasToken && tokenEnd + startOffset < currentOffset);
 
-            currentOffset = lexerToken == null ? endOffset : lexerToken.getRange().getEnd() + startOffset;
+            currentOffset = !hasToken ? endOffset : tokenEnd + startOffset;
         } else {
-            lexerToken = null;
+            clearToken();
         }
 
         if (currentOffset > endOffset) {
-            lexerToken = null;
+            clearToken();
             currentOffset = endOffset;
         }
 
-        LOG.debug("advanced to " + currentOffset + " (" + (lexerToken == null ? "null" : lexerToken.toString()) + ") \"" + (lexerToken == null ? "" : (buffer.subSequence(lexerToken.getRange().getStart() + startOffset, lexerToken.getRange().getEnd() + startOffset))) + "\"");
+        if (LOG.isDebugEnabled()) logToken("advanced to");
     }
 
     public void restore(@NotNull LexerPosition lexerPosition) {
         currentOffset = lexerPosition.getOffset();
         lexemeIndex = lexerPosition.getState();
-        lexerToken = null;
-        prevToken = null;
+        clearToken();
+        prevTokenType = null;
         advance();
     }
 
@@ -6,6 +6,7 @@ import com.intellij.lexer.LexerPosition;
 import com.intellij.lexer.RestartableLexer;
 import com.intellij.lexer.TokenIterator;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.tree.IElementType;
 import com.vladsch.md.nav.parser.ast.MdASTNode;
 import com.vladsch.md.nav.settings.MdRenderingProfile;
@@ -27,15 +28,27 @@ public class MdLexer extends Lexer implements RestartableLexer {
     protected LexerData lexerData = null;
     protected final @NotNull MdRenderingProfile renderingProfile;
     protected HashSet<Integer> myFileLevelLexemeStarts = null;
+    protected final @Nullable VirtualFile myVirtualFile;
+    protected MdIncrementalLexParser.State myIncrementalState = null;
 
     public LexerData getLexerData() {
         return lexerData;
     }
 
     public MdLexer(final @NotNull MdRenderingProfile renderingProfile) {
+        this(renderingProfile, null);
+    }
+
+    /**
+     * @param renderingProfile rendering profile
+     * @param virtualFile      file being lexed, used to keep incremental lexer state between lexer instances,
+     *                         if null then incremental state is only kept by this lexer instance
+     */
+    public MdLexer(final @NotNull MdRenderingProfile renderingProfile, final @Nullable VirtualFile virtualFile) {
         super();
 
         this.renderingProfile = renderingProfile;
+        this.myVirtualFile = virtualFile;
     }
 
     protected void logStackTrace() {
@@ -63,10 +76,19 @@ public class MdLexer extends Lexer implements RestartableLexer {
 
     @Override
     public void start(@NotNull CharSequence buffer, int startOffset, int endOffset, int initialState) {
-        LexerToken[] lexerTokens = null;
+        LexerTokenBuffer lexerTokens = null;
 
         if (buffer.length() > 0) {
-            lexerData = MdLexParserManager.parseMarkdown(renderingProfile, buffer.subSequence(startOffset, endOffset));
+            CharSequence lexerText = buffer.subSequence(startOffset, endOffset);
+
+            if (MdIncrementalLexParser.isIncrementalLexing(lexerText)) {
+                MdIncrementalLexParser.State state = MdIncrementalLexParser.parseMarkdown(renderingProfile, lexerText, getIncrementalState());
+                setIncrementalState(state);
+                lexerData = state.getLexerData();
+            } else {
+                lexerData = MdLexParserManager.parseMarkdown(renderingProfile, lexerText);
+            }
+
             lexerTokens = lexerData.lexerTokens;
         }
 
@@ -74,6 +96,19 @@ public class MdLexer extends Lexer implements RestartableLexer {
         myFileLevelLexemeStarts = null;
     }
 
+    @Nullable
+    protected MdIncrementalLexParser.State getIncrementalState() {
+        return myVirtualFile == null ? myIncrementalState : MdIncrementalLexParser.getState(myVirtualFile);
+    }
+
+    protected void setIncrementalState(@NotNull MdIncrementalLexParser.State state) {
+        if (myVirtualFile == null) {
+            myIncrementalState = state;
+        } else {
+            MdIncrementalLexParser.setState(myVirtualFile, state);
+        }
+    }
+
     // this is only valid when parsing the whole file, for reparse highly depends on restart being respected which it is not
     // the IDE assumes that all needed information is stored in state
     boolean isFileLevelOffset(int lexemeStart) {
@@ -115,32 +150,24 @@ public class MdLexer extends Lexer implements RestartableLexer {
 
     @Override
     public int getState() {
-        LexerToken lexerToken = myLexemeProcessor.getLexerToken();
-
         // here we need to return 0 in low bit when the file can be re-parsed from this point, ie. file level elements
-        return (lexerToken != null && isFileLevelOffset(lexerToken.getRange().getStart()) ? 0 : 1);
+        return (myLexemeProcessor.hasToken() && isFileLevelOffset(myLexemeProcessor.getTokenStart()) ? 0 : 1);
     }
 
     @Nullable
     @Override
     public IElementType getTokenType() {
-        LexerToken lexerToken = myLexemeProcessor.getLexerToken();
-
-        return lexerToken != null ? lexerToken.getElementType() : null;
+        return myLexemeProcessor.getTokenType();
     }
 
     @Override
     public int getTokenStart() {
-        LexerToken lexerToken = myLexemeProcessor.getLexerToken();
-
-        return lexerToken != null ? lexerToken.getRange().getStart() + myLexemeProcessor.getStartOffset() : myLexemeProcessor.getEndOffset();
+        return myLexemeProcessor.hasToken() ? myLexemeProcessor.getTokenStart() + myLexemeProcessor.getStartOffset() : myLexemeProcessor.getEndOffset();
     }
 
     @Override
     public int getTokenEnd() {
-        LexerToken lexerToken = myLexemeProcessor.getLexerToken();
-
-        return lexerToken != null ? lexerToken.getRange().getEnd() + myLexemeProcessor.getStartOffset() : myLexemeProcessor.getEndOffset();
+        return myLexemeProcessor.hasToken() ? myLexemeProcessor.getTokenEnd() + myLexemeProcessor.getStartOffset() : myLexemeProcessor.getEndOffset();
     }
 
     @Override
@@ -31,7 +31,7 @@ public class MdParserAdapter implements PsiParser, LightPsiParser {
         if (lexerData != null) {
             final MdASTCompositeNode parsedTree = lexerData.rootNode;
 
-            //if (lexerData.lexerTokens.length > 0) assert builder.getCurrentOffset() == lexerData.lexerTokens[0].getRange().getStart();
+            //if (lexerData.lexerTokens.size() > 0) assert builder.getCurrentOffset() == lexerData.lexerTokens.getStart(0);
             assert builder.getCurrentOffset() == 0;
             new PsiBuilderFillingVisitor(builder).visitNode(parsedTree);
         } else {
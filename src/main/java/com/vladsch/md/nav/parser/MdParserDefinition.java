@@ -116,7 +116,7 @@ public class MdParserDefinition implements ParserDefinition {
                 int tmp = 0;
             }
         }
-        return new MdLexer(renderingProfile);
+        return new MdLexer(renderingProfile, myVirtualFile);
     }
 
     @NotNull
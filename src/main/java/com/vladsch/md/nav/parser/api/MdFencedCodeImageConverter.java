@@ -6,6 +6,7 @@ import com.intellij.openapi.extensions.ExtensionPointName;
 import com.vladsch.flexmark.ast.FencedCodeBlock;
 import com.vladsch.flexmark.html.HtmlWriter;
 import com.vladsch.flexmark.html.renderer.NodeRendererContext;
+import com.vladsch.flexmark.util.data.DataHolder;
 import com.vladsch.flexmark.util.data.MutableDataHolder;
 import com.vladsch.flexmark.util.html.Attributes;
 import com.vladsch.md.nav.editor.util.HtmlCssResourceProvider;
@@ -94,6 +95,23 @@ public interface MdFencedCodeImageConverter {
     @Nullable
     MdFencedCodeImage imageUrl(@NotNull String content, @NotNull String info, @NotNull String variant, @NotNull MdRenderingProfile renderingProfile, @NotNull MdLinkResolver resolver);
 
+    /**
+     * Convert fenced code to Image url if handled, else null
+     *
+     * @param content          fenced code content
+     * @param info             fenced code info string (one of strings reported by {@link #getInfoStrings()}()
+     * @param variant          variant (one of variants reported by {@link #getInfoStrings()}() for this info string
+     * @param renderingProfile rendering profile used for the file being converted
+     * @param resolver         link resolver used for rendering HTML, can be used to convert file references in content to full paths
+     * @param options          rendering options
+     *
+     * @return image url or null if not enabled
+     */
+    @Nullable
+    default MdFencedCodeImage imageUrl(@NotNull String content, @NotNull String info, @NotNull String variant, @NotNull MdRenderingProfile renderingProfile, @NotNull MdLinkResolver resolver, @NotNull DataHolder options) {
+        return imageUrl(content, info, variant, renderingProfile, resolver);
+    }
+
     /**
      * default rendering of code fence block, only called if {@link #imageUrl(String, String, String, MdRenderingProfile, MdLinkResolver)} returns null
      *
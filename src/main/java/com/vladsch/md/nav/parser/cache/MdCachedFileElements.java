@@ -16,14 +16,20 @@ import com.vladsch.flexmark.util.misc.Utils;
 import com.vladsch.md.nav.parser.MdParserDefinition;
 import com.vladsch.md.nav.parser.cache.data.CachedDataKey;
 import com.vladsch.md.nav.parser.cache.data.transaction.CachedTransactionContext;
+import com.vladsch.md.nav.psi.element.MdAnchorTarget;
+import com.vladsch.md.nav.psi.element.MdAttributeIdValue;
 import com.vladsch.md.nav.psi.element.MdFile;
+import com.vladsch.md.nav.psi.element.MdHeaderElement;
 import com.vladsch.md.nav.psi.element.MdJekyllIncludeLinkRef;
 import com.vladsch.md.nav.psi.element.MdPsiElement;
+import com.vladsch.md.nav.psi.element.MdRefAnchor;
 import com.vladsch.md.nav.psi.element.MdReferenceElement;
 import com.vladsch.md.nav.psi.element.MdReferenceElementIdentifier;
 import com.vladsch.md.nav.psi.element.MdReferencingElementReference;
+import com.vladsch.md.nav.psi.index.MdAnchorIdIndex;
 import com.vladsch.md.nav.psi.util.MdIndexUtil;
 import com.vladsch.md.nav.psi.util.MdNodeVisitor;
+import com.vladsch.md.nav.psi.util.MdPsiImplUtil;
 import com.vladsch.md.nav.psi.util.MdTypes;
 import com.vladsch.md.nav.psi.util.MdVisitor;
 import com.vladsch.md.nav.util.PsiSet;
@@ -32,6 +38,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -155,6 +162,93 @@ public class MdCachedFileElements {
                 }
             };
 
+    /**
+     * Anchor targets of the file by {@link MdAnchorIdIndex#anchorKey(String)} of their anchor id
+     * <p>
+     * Keys do not depend on the rendering profile's header id options so the map is valid until the file or its included files change.
+     * Headers whose id is set by an id attribute are not included.
+     */
+    static class AnchorTargetMapKey extends CachedDataKey<MdFile, Map<String, ? extends List<MdAnchorTarget>>> {
+        private final boolean myWantOuterElements;
+
+        AnchorTargetMapKey(@NotNull String id, boolean wantOuterElements) {
+            super(id);
+            myWantOuterElements = wantOuterElements;
+        }
+
+        @Override
+        public boolean isValid(@NotNull Map<String, ? extends List<MdAnchorTarget>> value) {
+            for (List<MdAnchorTarget> elements : value.values()) {
+                for (MdAnchorTarget element : elements) {
+                    if (!element.isValid()) return false;
+                }
+            }
+            return true;
+        }
+
+        @NotNull
+        @Override
+        public Map<String, ? extends List<MdAnchorTarget>> compute(@NotNull CachedTransactionContext<MdFile> context) {
+            MdFile file = context.getDataOwner();
+            ArrayList<MdAnchorTarget> anchorTargets = new ArrayList<>();
+            HashSet<PsiElement> overriddenHeaders = new HashSet<>();
+            final PsiFile[] lastFile = { null };
+
+            MdCachedFileElements.findChildrenOfAnyType(file, myWantOuterElements, true, false, arrayOf(MdAnchorTarget.class), (anchorTarget, source) -> {
+                if (anchorTarget instanceof MdAttributeIdValue) {
+                    // id attributes of the outer file are not anchor targets
+                    if (source.source == ElementSource.Source.OUTER_FILE) return Result.CONTINUE();
+
+                    // header whose id was overridden
+                    PsiElement ancestor = MdPsiImplUtil.findAncestorOfType(anchorTarget, MdHeaderElement.class);
+                    if (ancestor != null) overriddenHeaders.add(ancestor);
+                }
+
+                anchorTargets.add(anchorTarget);
+
+                if (lastFile[0] != source.file) {
+                    lastFile[0] = source.file;
+                    if (source.file != file) {
+                        context.addDependency(source.file);
+                    }
+                }
+                return Result.CONTINUE();
+            });
+
+            context.addDependency(file);
+
+            HashMap<String, ArrayList<MdAnchorTarget>> anchorTargetMap = new HashMap<>();
+            for (MdAnchorTarget anchorTarget : anchorTargets) {
+                String anchorId;
+                if (anchorTarget instanceof MdHeaderElement) {
+                    if (overriddenHeaders.contains(anchorTarget)) continue;
+                    anchorId = anchorTarget.getAnchorReferenceId();
+                } else if (anchorTarget instanceof MdAttributeIdValue) {
+                    anchorId = anchorTarget.getText();
+                } else if (anchorTarget instanceof MdRefAnchor) {
+                    anchorId = ((MdRefAnchor) anchorTarget).getReferenceId();
+                } else {
+                    continue;
+                }
+
+                if (anchorId != null) {
+                    anchorTargetMap.computeIfAbsent(MdAnchorIdIndex.anchorKey(anchorId), k -> new ArrayList<>(1)).add(anchorTarget);
+                }
+            }
+            return anchorTargetMap;
+        }
+    }
+
+    final private static AnchorTargetMapKey ANCHOR_TARGET_MAP = new AnchorTargetMapKey("FILE:ANCHOR_TARGET_MAP", false);
+    final private static AnchorTargetMapKey OUTER_ANCHOR_TARGET_MAP = new AnchorTargetMapKey("FILE:OUTER_ANCHOR_TARGET_MAP", true);
+
+    @NotNull
+    public static List<MdAnchorTarget> getAnchorTargets(@NotNull MdFile mdFile, @NotNull String anchorId, boolean wantOuterElements) {
+        Map<String, ? extends List<MdAnchorTarget>> anchorTargetMap = CachedData.get(mdFile, wantOuterElements ? OUTER_ANCHOR_TARGET_MAP : ANCHOR_TARGET_MAP);
+        List<MdAnchorTarget> anchorTargets = anchorTargetMap.get(MdAnchorIdIndex.anchorKey(anchorId));
+        return anchorTargets == null ? Collections.emptyList() : anchorTargets;
+    }
+
     @NotNull
     public static Map<String, ? extends Set<MdReferenceElement>> getReferencedElementMap(@NotNull MdFile mdFile) {
         return CachedData.get(mdFile, REFERENCED_ELEMENT_MAP);
@@ -3,6 +3,7 @@
 package com.vladsch.md.nav.parser.cache;
 
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.vfs.VirtualFileManager;
 import com.intellij.psi.PsiFile;
@@ -12,6 +13,7 @@ import com.vladsch.flexmark.util.sequence.Escaping;
 import com.vladsch.md.nav.MdFileType;
 import com.vladsch.md.nav.parser.cache.data.CachedDataKey;
 import com.vladsch.md.nav.parser.cache.data.ProjectCachedData;
+import com.vladsch.md.nav.parser.cache.data.dependency.ProjectFileFilter;
 import com.vladsch.md.nav.parser.cache.data.dependency.RestartableProjectFileDependency;
 import com.vladsch.md.nav.parser.cache.data.transaction.CachedTransactionContext;
 import com.vladsch.md.nav.parser.cache.data.transaction.IndentingLogger;
@@ -183,10 +185,23 @@ public class MdCachedResolvedLinks {
         boolean myHaveUndefinedMarkdown = false;
         boolean myIsValid = true;
         boolean myNextIsValid = true;
+        @Nullable LinkProjectFilePredicate myFilePredicate = null;     // not copied, only set for CACHED_LINKS
 
         CachedLinkData() {
         }
 
+        /**
+         * Update project file filter after links or validity change, must be called with CACHED_LINKS key lock held
+         *
+         * @param project project
+         */
+        void updateFileFilter(@NotNull Project project) {
+            LinkProjectFilePredicate filePredicate = myFilePredicate;
+            if (filePredicate != null) {
+                ProjectFileMonitor.getInstance(project).updateFileFilter(filePredicate);
+            }
+        }
+
         void copyFrom(@NotNull CachedLinkData other) {
             myFilePath = other.myFilePath;
             myHaveUndefinedMarkdown = other.myHaveUndefinedMarkdown;
@@ -492,7 +507,9 @@ public class MdCachedResolvedLinks {
                 }
 
                 // NOTE: always have dependency on project files since at any time an undefined link can become defined or dependency could be added or invalidated by content change
-                context.addDependency(new LinkProjectFilePredicate(file, cachedLinkData));
+                LinkProjectFilePredicate filePredicate = new LinkProjectFilePredicate(file, cachedLinkData);
+                cachedLinkData.myFilePredicate = filePredicate;
+                context.addDependency(filePredicate);
 
                 HelpersKt.debug(LOG_CACHE, () -> String.format("Kept CACHED_LINKS: links: %d, images: %d wikis: %d for %s@%x", cachedLinkData.myLinks.size(), cachedLinkData.myImages.size(), cachedLinkData.myWikis.size(), filePath, file.hashCode()));
             }
@@ -520,6 +537,29 @@ public class MdCachedResolvedLinks {
             this.cachedLinkData = cachedLinkData;
         }
 
+        /**
+         * Only files with extensions of undefined links and, if there are wiki links, markdown files can invalidate the links
+         *
+         * @return file filter
+         */
+        @NotNull
+        @Override
+        public ProjectFileFilter getFileFilter() {
+            if (!cachedLinkData.myIsValid || !cachedLinkData.myNextIsValid) return ProjectFileFilter.ANY_FILE;
+
+            ProjectFileFilter filter = new ProjectFileFilter();
+            if (cachedLinkData.hasUndefinedLinks()) {
+                for (String extension : cachedLinkData.myUndefinedExtensions) {
+                    filter.addExtension(extension);
+                }
+            }
+
+            if (!cachedLinkData.myWikis.isEmpty()) {
+                filter.addFileType(MdFileType.INSTANCE);
+            }
+            return filter;
+        }
+
         @Override
         public boolean test(@NotNull PsiFile psiFile) {
             boolean isValid = cachedLinkData.myIsValid;
@@ -586,6 +626,27 @@ public class MdCachedResolvedLinks {
         }
     }
 
+    /**
+     * Test if a link of the file was resolved to the target, cached links are not computed if they are not already cached
+     *
+     * @param containingFile file
+     * @param targetUrl      virtual file url of target
+     *
+     * @return true if a cached link resolves to the target
+     */
+    public static boolean hasCachedLinkTarget(@NotNull MdFile containingFile, @NotNull String targetUrl) {
+        CachedLinkData cachedLinkData = CachedData.getOrNull(containingFile, CACHED_LINKS);
+        if (cachedLinkData == null) return false;
+
+        ReentrantLock lock = ProjectCachedData.fileCachedData(containingFile).getKeyLock(CACHED_LINKS);
+        try {
+            lock.lock();
+            return cachedLinkData.myCachedLinkTargetIndexMap.containsKey(targetUrl);
+        } finally {
+            lock.unlock();
+        }
+    }
+
     public static boolean hasCachedLink(@NotNull MdFile containingFile, @NotNull LinkRef linkRef) {
         if (getDebugSettings().getUseFileLinkCache()) {
             String linkRefFilePath = linkRef.getFilePath();
@@ -685,6 +746,10 @@ public class MdCachedResolvedLinks {
                 lock.lock();
                 cachedLinkAdded = cachedLinkData.addCachedLink(cachedLink);
                 persistentLinks.addCachedLink(cachedLink);
+
+                if (cachedLinkAdded || !cachedLinkData.myNextIsValid) {
+                    cachedLinkData.updateFileFilter(containingFile.getProject());
+                }
             } finally {
                 lock.unlock();
             }
@@ -717,6 +782,10 @@ public class MdCachedResolvedLinks {
                     CachedLink cachedLink = CachedLink.cacheUndefinedLink(linkType, linkRefPathForCache, linkRef.isMarkdownExt());
                     cachedLinkAdded = cachedLinkData.addCachedLink(cachedLink);
                     persistentLinks.addCachedLink(cachedLink);
+
+                    if (cachedLinkAdded) {
+                        cachedLinkData.updateFileFilter(containingFile.getProject());
+                    }
                 } finally {
                     lock.unlock();
                 }
@@ -0,0 +1,155 @@
+// Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+
+package com.vladsch.md.nav.parser.cache;
+
+import com.vladsch.md.nav.parser.cache.data.dependency.ProjectFileDependency;
+import com.vladsch.md.nav.parser.cache.data.dependency.ProjectFileFilter;
+import com.vladsch.md.nav.parser.cache.data.dependency.ProjectFilePredicate;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Project file dependencies indexed by the keys of their predicate's {@link ProjectFileFilter}
+ */
+class ProjectFileDependencyIndex {
+    private final HashMap<ProjectFileDependency, ProjectFileDependency> myDependencies = new HashMap<>();
+    private final HashMap<ProjectFileDependency, ProjectFileFilter> myFilters = new HashMap<>();
+    private final IdentityHashMap<ProjectFilePredicate, ProjectFileDependency> myPredicates = new IdentityHashMap<>();
+    private final LinkedHashSet<ProjectFileDependency> myAnyFile = new LinkedHashSet<>();
+    private final HashMap<String, LinkedHashSet<ProjectFileDependency>> myPaths = new HashMap<>();
+    private final HashMap<String, LinkedHashSet<ProjectFileDependency>> myFileNames = new HashMap<>();
+    private final HashMap<String, LinkedHashSet<ProjectFileDependency>> myExtensions = new HashMap<>();
+    private final HashMap<String, LinkedHashSet<ProjectFileDependency>> myDirectories = new HashMap<>();
+    private final HashMap<String, LinkedHashSet<ProjectFileDependency>> myFileTypes = new HashMap<>();
+
+    /**
+     * Add dependency, replacing dependency for the same data key
+     *
+     * @param dependency dependency
+     */
+    synchronized void add(@NotNull ProjectFileDependency dependency) {
+        remove(dependency);
+
+        ProjectFileFilter filter = dependency.getFilePredicate().getFileFilter();
+        myDependencies.put(dependency, dependency);
+        myFilters.put(dependency, filter);
+        myPredicates.put(dependency.getFilePredicate(), dependency);
+
+        if (filter.isAnyFile()) {
+            myAnyFile.add(dependency);
+        } else {
+            addKeys(myPaths, filter.getPaths(), dependency);
+            addKeys(myFileNames, filter.getFileNames(), dependency);
+            addKeys(myExtensions, filter.getExtensions(), dependency);
+            addKeys(myDirectories, filter.getDirectories(), dependency);
+            addKeys(myFileTypes, filter.getFileTypes(), dependency);
+        }
+    }
+
+    synchronized boolean remove(@NotNull ProjectFileDependency dependency) {
+        // dependency for the same data key may have a different predicate
+        ProjectFileDependency indexed = myDependencies.remove(dependency);
+        if (indexed == null) return false;
+
+        ProjectFileFilter filter = myFilters.remove(indexed);
+        myPredicates.remove(indexed.getFilePredicate());
+
+        if (filter.isAnyFile()) {
+            myAnyFile.remove(indexed);
+        } else {
+            removeKeys(myPaths, filter.getPaths(), indexed);
+            removeKeys(myFileNames, filter.getFileNames(), indexed);
+            removeKeys(myExtensions, filter.getExtensions(), indexed);
+            removeKeys(myDirectories, filter.getDirectories(), indexed);
+            removeKeys(myFileTypes, filter.getFileTypes(), indexed);
+        }
+        return true;
+    }
+
+    /**
+     * Re-index dependency of predicate with its current file filter
+     *
+     * @param predicate predicate
+     * @return true if predicate's dependency was in the index
+     */
+    synchronized boolean update(@NotNull ProjectFilePredicate predicate) {
+        ProjectFileDependency dependency = myPredicates.get(predicate);
+        if (dependency == null) return false;
+
+        add(dependency);
+        return true;
+    }
+
+    /**
+     * Get dependencies whose filter matches the file
+     *
+     * @param path      file path
+     * @param extension file extension, null if none
+     * @param fileType  file type name
+     * @return dependencies which can be invalidated by the file
+     */
+    @NotNull
+    synchronized List<ProjectFileDependency> getDependencies(@NotNull String path, @Nullable String extension, @NotNull String fileType) {
+        LinkedHashSet<ProjectFileDependency> dependencies = new LinkedHashSet<>(myAnyFile);
+
+        addDependencies(dependencies, myPaths, path);
+        addDependencies(dependencies, myFileNames, path.substring(path.lastIndexOf('/') + 1));
+        addDependencies(dependencies, myExtensions, extension == null ? "" : extension);
+        addDependencies(dependencies, myFileTypes, fileType);
+
+        if (!myDirectories.isEmpty()) {
+            String directory = path;
+            int pos;
+            while ((pos = directory.lastIndexOf('/')) >= 0) {
+                directory = directory.substring(0, pos);
+                addDependencies(dependencies, myDirectories, directory);
+            }
+        }
+
+        return new ArrayList<>(dependencies);
+    }
+
+    synchronized int size() {
+        return myDependencies.size();
+    }
+
+    synchronized void clear() {
+        myDependencies.clear();
+        myFilters.clear();
+        myPredicates.clear();
+        myAnyFile.clear();
+        myPaths.clear();
+        myFileNames.clear();
+        myExtensions.clear();
+        myDirectories.clear();
+        myFileTypes.clear();
+    }
+
+    private static void addKeys(@NotNull HashMap<String, LinkedHashSet<ProjectFileDependency>> map, @NotNull Set<String> keys, @NotNull ProjectFileDependency dependency) {
+        for (String key : keys) {
+            map.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(dependency);
+        }
+    }
+
+    private static void removeKeys(@NotNull HashMap<String, LinkedHashSet<ProjectFileDependency>> map, @NotNull Set<String> keys, @NotNull ProjectFileDependency dependency) {
+        for (String key : keys) {
+            LinkedHashSet<ProjectFileDependency> dependencies = map.get(key);
+            if (dependencies != null) {
+                dependencies.remove(dependency);
+                if (dependencies.isEmpty()) map.remove(key);
+            }
+        }
+    }
+
+    private static void addDependencies(@NotNull Set<ProjectFileDependency> dependencies, @NotNull HashMap<String, LinkedHashSet<ProjectFileDependency>> map, @NotNull String key) {
+        LinkedHashSet<ProjectFileDependency> keyDependencies = map.get(key);
+        if (keyDependencies != null) dependencies.addAll(keyDependencies);
+    }
+}
@@ -30,7 +30,7 @@ import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 
 public class ProjectFileMonitor implements Disposable {
@@ -46,7 +46,8 @@ public class ProjectFileMonitor implements Disposable {
     }
 
     final @NotNull Project myProject;
-    final @NotNull HashSet<ProjectFileDependency> myDataKeyDependencies = new HashSet<>();
+    final @NotNull ProjectFileDependencyIndex myDataKeyDependencies = new ProjectFileDependencyIndex();
+    final @NotNull LinkedHashSet<PsiFile> myRestartFiles = new LinkedHashSet<>();
     final Alarm myAlarm;
 
     public ProjectFileMonitor(@NotNull Project project) {
@@ -82,7 +83,7 @@ public class ProjectFileMonitor implements Disposable {
         application.getMessageBus().connect(this).subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener() {
             @Override
             public void after(@NotNull List<? extends VFileEvent> events) {
-                ArrayList<VirtualFile> virtualFiles = new ArrayList<>();
+                LinkedHashSet<VirtualFile> virtualFiles = new LinkedHashSet<>();
                 PsiManager psiManager = PsiManagerEx.getInstance(myProject);
                 for (VFileEvent event : events) {
                     VirtualFile virtualFile = event.getFile();
@@ -117,14 +118,17 @@ public class ProjectFileMonitor implements Disposable {
     @Override
     public void dispose() {
         myDataKeyDependencies.clear();
+        synchronized (myRestartFiles) {
+            myRestartFiles.clear();
+        }
     }
 
     public void checkDependencies(boolean fromDaemonCodeAnalyzer, @NotNull PsiFile psiFile) {
-        HashSet<ProjectFileDependency> dependencies;
+        VirtualFile virtualFile = psiFile.getVirtualFile();
+        if (virtualFile == null) return;
 
-        synchronized (myDataKeyDependencies) {
-            dependencies = new HashSet<>(myDataKeyDependencies);
-        }
+        String onFilePath = virtualFile.getPath();
+        List<ProjectFileDependency> dependencies = myDataKeyDependencies.getDependencies(onFilePath, virtualFile.getExtension(), psiFile.getFileType().getName());
 
         for (ProjectFileDependency dependency : dependencies) {
             boolean isValid = false;
@@ -142,45 +146,71 @@ public class ProjectFileMonitor implements Disposable {
             }
 
             if (!isValid) {
-                synchronized (myDataKeyDependencies) {
-                    myDataKeyDependencies.remove(dependency);
-                }
+                myDataKeyDependencies.remove(dependency);
 
                 dependency.getDataKeyDependency().invalidateDependency();
 
                 PsiFile dependentFile = dependency.getFilePredicate().getDependentFile();
-                String onFilePath = psiFile.getVirtualFile().getPath();
 
                 if (dependentFile != null && dependentFile.isValid()) {
                     boolean selfInvalidation = dependentFile.equals(psiFile);
-                    if (selfInvalidation) onFilePath = "<self>";
-
-                    String finalOnFilePath = onFilePath;
+                    String finalOnFilePath = selfInvalidation ? "<self>" : onFilePath;
                     HelpersKt.debug(LOG_CACHE, () -> String.format("ProjectFileMonitor(%s): Removing project file cache monitor for %s on %s", fromDaemonCodeAnalyzer ? "analyzer" : "vfs", dependentFile.getVirtualFile().getPath(), finalOnFilePath));
 
-                    Project project = dependentFile.getProject();
-                    if (!project.isDisposed() && dependentFile.isValid() && !selfInvalidation) {
-                        ApplicationManager.getApplication().invokeLater(() -> {
-                            if (!project.isDisposed()) {
-                                DaemonCodeAnalyzer.getInstance(project).restart(dependentFile);
-                                HelpersKt.debug(LOG_CACHE, () -> String.format("ProjectFileMonitor(%s): Restarted code analyzer for %s on %s", fromDaemonCodeAnalyzer ? "analyzer" : "vfs", dependentFile.getVirtualFile().getPath(), finalOnFilePath));
-                            }
-                        });
+                    if (!selfInvalidation) {
+                        restartCodeAnalyzer(dependentFile);
                     }
                 } else {
-                    String finalOnFilePath1 = onFilePath;
-                    HelpersKt.debug(LOG_CACHE, () -> String.format("ProjectFileMonitor(%s): Removing project file cache monitor for %s on %s", fromDaemonCodeAnalyzer ? "analyzer" : "vfs", dependency.getDataKeyDependency(), finalOnFilePath1));
+                    HelpersKt.debug(LOG_CACHE, () -> String.format("ProjectFileMonitor(%s): Removing project file cache monitor for %s on %s", fromDaemonCodeAnalyzer ? "analyzer" : "vfs", dependency.getDataKeyDependency(), onFilePath));
                 }
             }
         }
     }
 
+    private void restartCodeAnalyzer(@NotNull PsiFile dependentFile) {
+        // all files invalidated before the restart runs are restarted by it
+        boolean schedule;
+        synchronized (myRestartFiles) {
+            schedule = myRestartFiles.isEmpty();
+            myRestartFiles.add(dependentFile);
+        }
+
+        if (schedule) {
+            ApplicationManager.getApplication().invokeLater(this::restartCodeAnalyzer);
+        }
+    }
+
+    private void restartCodeAnalyzer() {
+        ArrayList<PsiFile> restartFiles;
+        synchronized (myRestartFiles) {
+            restartFiles = new ArrayList<>(myRestartFiles);
+            myRestartFiles.clear();
+        }
+
+        if (myProject.isDisposed()) return;
+
+        DaemonCodeAnalyzer codeAnalyzer = DaemonCodeAnalyzer.getInstance(myProject);
+        for (PsiFile dependentFile : restartFiles) {
+            if (dependentFile.isValid()) {
+                codeAnalyzer.restart(dependentFile);
+                HelpersKt.debug(LOG_CACHE, () -> String.format("ProjectFileMonitor: Restarted code analyzer for %s", dependentFile.getVirtualFile().getPath()));
+            }
+        }
+    }
+
+    /**
+     * Update file filter of a predicate whose dependency was added
+     *
+     * @param predicate predicate whose {@link ProjectFilePredicate#getFileFilter()} changed
+     */
+    public void updateFileFilter(@NotNull ProjectFilePredicate predicate) {
+        myDataKeyDependencies.update(predicate);
+    }
+
     @NotNull
     public ProjectFileDependency getDependency(@NotNull DataKeyDependency dependency, @NotNull ProjectFilePredicate predicate) {
         ProjectFileDependency fileDependency = new ProjectFileDependency(dependency, predicate);
-        synchronized (myDataKeyDependencies) {
-            myDataKeyDependencies.add(fileDependency);
-        }
+        myDataKeyDependencies.add(fileDependency);
         return fileDependency;
     }
 }
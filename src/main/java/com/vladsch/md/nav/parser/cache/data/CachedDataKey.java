@@ -39,6 +39,20 @@ public abstract class CachedDataKey<H extends CachedDataOwner, T> {
         return isValid((T) value);
     }
 
+    /**
+     * Weight of value used to limit the size of cached data sets with a maximum weight
+     *
+     * @return weight of value, default 1 for all values
+     */
+    public int getWeight(@NotNull T value) {
+        return 1;
+    }
+
+    public int weigh(@NotNull Object value) {
+        //noinspection unchecked
+        return getWeight((T) value);
+    }
+
     @Override
     public String toString() {
         // factory applied to null in constructor, no sense doing it again here
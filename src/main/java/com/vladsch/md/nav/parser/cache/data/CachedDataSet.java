@@ -9,9 +9,18 @@ import com.vladsch.md.nav.parser.cache.data.dependency.VersionedData;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Cached data values by data key
+ * <p>
+ * Concurrent access to different keys does not contend on a shared lock, computation of a key's value is
+ * serialized by its key lock so only one thread computes a missing value. Values are held by soft references
+ * and optionally limited by total weight, see {@link CachedDataKey#getWeight(Object)}.
+ */
 public class CachedDataSet implements CachedDataHolder {
     @NotNull
     public String getDataKeyWithCacheDescription(@NotNull CachedDataKey<?, ?> dataKey) {
@@ -23,44 +32,86 @@ public class CachedDataSet implements CachedDataHolder {
         return dataKey.getName();
     }
 
+    private static class CachedEntry {
+        final @NotNull SoftReference<VersionedData> reference;
+        final int weight;
+        volatile long lastAccess;
+
+        CachedEntry(@NotNull VersionedData data, int weight, long lastAccess) {
+            this.reference = new SoftReference<>(data);
+            this.weight = weight;
+            this.lastAccess = lastAccess;
+        }
+    }
+
     private final @NotNull String myName;
-    private final @NotNull HashMap<CachedDataKey<?, ?>, SoftReference<VersionedData>> myCachedDataSet = new HashMap<>();
-    private final @NotNull HashMap<CachedDataKey<?, ?>, ReentrantLock> myComputingKeyLocks = new HashMap<>();
-    private long myTimeStamp = 0;
+    private final long myMaxWeight;
+    private final @NotNull ConcurrentHashMap<CachedDataKey<?, ?>, CachedEntry> myCachedDataSet = new ConcurrentHashMap<>();
+    private final @NotNull ConcurrentHashMap<CachedDataKey<?, ?>, ReentrantLock> myComputingKeyLocks = new ConcurrentHashMap<>();
+    private final @NotNull AtomicLong myTimeStamp = new AtomicLong();
+    private final @NotNull AtomicLong myAccessCount = new AtomicLong();
+    private final @NotNull AtomicLong myWeight = new AtomicLong();
 
     public CachedDataSet(@NotNull String name) {
+        this(name, 0);
+    }
+
+    /**
+     * Create cached data set
+     *
+     * @param name      name of data set
+     * @param maxWeight maximum total weight of cached values, least recently used values are removed
+     *                  when it is exceeded, 0 to only rely on soft references
+     */
+    public CachedDataSet(@NotNull String name, long maxWeight) {
         myName = name;
+        myMaxWeight = maxWeight;
     }
 
     public void clearCachedData() {
-        synchronized (myCachedDataSet) {
-            myTimeStamp++;
-            myCachedDataSet.clear();
-            myComputingKeyLocks.clear();
+        // computing key locks are kept, a computation in progress still holds its key's lock
+        myTimeStamp.incrementAndGet();
+        for (CachedDataKey<?, ?> dataKey : myCachedDataSet.keySet()) {
+            removeEntry(dataKey);
         }
     }
 
+    private boolean removeEntry(@NotNull CachedDataKey<?, ?> dataKey) {
+        CachedEntry entry = myCachedDataSet.remove(dataKey);
+        if (entry == null) return false;
+
+        myWeight.addAndGet(-entry.weight);
+        return true;
+    }
+
     @Override
     public boolean remove(@NotNull CachedDataKey<?, ?> dataKey) {
-        boolean removed;
+        myTimeStamp.incrementAndGet();
+        return removeEntry(dataKey);
+    }
 
-        synchronized (myCachedDataSet) {
-            myTimeStamp++;
-            removed = myCachedDataSet.remove(dataKey) != null;
+    @Nullable
+    private VersionedData getData(@NotNull CachedDataKey<?, ?> dataKey) {
+        CachedEntry entry = myCachedDataSet.get(dataKey);
+        if (entry == null) return null;
+
+        VersionedData data = entry.reference.get();
+        if (data == null) {
+            // collected, remove only if not replaced in the meantime
+            if (myCachedDataSet.remove(dataKey, entry)) {
+                myWeight.addAndGet(-entry.weight);
+            }
+            return null;
         }
 
-        return removed;
+        entry.lastAccess = myAccessCount.incrementAndGet();
+        return data;
     }
 
     @Override
     public boolean isDependent(@NotNull CachedDataKey<?, ?> dataKey, @Nullable DataDependency dependency) {
         if (dependency != null) {
-            VersionedData data;
-
-            synchronized (myCachedDataSet) {
-                SoftReference<VersionedData> reference = myCachedDataSet.get(dataKey);
-                data = reference != null ? reference.get() : null;
-            }
+            VersionedData data = getData(dataKey);
 
             if (data != null) {
                 return data.isDependent(dependency);
@@ -71,52 +122,37 @@ public class CachedDataSet implements CachedDataHolder {
 
     @Override
     public long getVersion(@NotNull CachedDataKey<?, ?> dataKey) {
-        VersionedData data;
-
-        Object value = getOrNull(dataKey);
-
-        if (value != null) {
-            synchronized (myCachedDataSet) {
-                SoftReference<VersionedData> reference = myCachedDataSet.get(dataKey);
-                data = reference != null ? reference.get() : null;
-            }
-
-            if (data != null) {
-                return data.version;
-            }
-        }
-
-        return -1;
+        VersionedData data = getData(dataKey);
+        return data != null && data.isValid() ? data.version : -1;
     }
 
     @Override
     public boolean isEmpty() {
-        synchronized (myCachedDataSet) {
-            return myCachedDataSet.isEmpty();
-        }
+        return myCachedDataSet.isEmpty();
     }
 
     @Override
     public ReentrantLock getKeyLock(@NotNull CachedDataKey<?, ?> dataKey) {
-        ReentrantLock lock = myComputingKeyLocks.get(dataKey);
-        if (lock == null) {
-            synchronized (myComputingKeyLocks) {
-                lock = myComputingKeyLocks.computeIfAbsent(dataKey, k -> new ReentrantLock());
-            }
-        }
-        return lock;
+        return myComputingKeyLocks.computeIfAbsent(dataKey, k -> new ReentrantLock());
     }
 
     @Nullable
     public Object getOrNull(@NotNull CachedDataKey<?, ?> dataKey) {
-        VersionedData data;
+        VersionedData data = getData(dataKey);
+        return data != null && data.isValid() ? data.value : null;
+    }
 
-        synchronized (myCachedDataSet) {
-            SoftReference<VersionedData> reference = myCachedDataSet.get(dataKey);
-            data = reference != null ? reference.get() : null;
-        }
+    /**
+     * Total weight of cached values
+     *
+     * @return weight
+     */
+    public long getWeight() {
+        return myWeight.get();
+    }
 
-        return data != null && data.isValid() ? data.value : null;
+    public long getMaxWeight() {
+        return myMaxWeight;
     }
 
     /**
@@ -142,9 +178,35 @@ public class CachedDataSet implements CachedDataHolder {
      * @param versions     versions
      */
     public void setValue(@NotNull CachedDataKey<?, ?> dataKey, @NotNull Object value, @NotNull DataDependency[] dependencies, @NotNull long[] versions) {
-        synchronized (myCachedDataSet) {
-            myTimeStamp++;
-            myCachedDataSet.put(dataKey, new SoftReference<>(new VersionedData(myTimeStamp, value, dependencies, versions)));
+        int weight = dataKey.weigh(value);
+        CachedEntry entry = new CachedEntry(new VersionedData(myTimeStamp.incrementAndGet(), value, dependencies, versions), weight, myAccessCount.incrementAndGet());
+        CachedEntry oldEntry = myCachedDataSet.put(dataKey, entry);
+
+        myWeight.addAndGet(oldEntry == null ? weight : weight - oldEntry.weight);
+
+        if (myMaxWeight > 0 && myWeight.get() > myMaxWeight) {
+            evictEntries(dataKey);
+        }
+    }
+
+    private void evictEntries(@NotNull CachedDataKey<?, ?> keepKey) {
+        // data sets are small, finding the least recently used entry by scanning is cheaper than keeping an access order
+        while (myWeight.get() > myMaxWeight) {
+            CachedDataKey<?, ?> eldestKey = null;
+            long eldestAccess = Long.MAX_VALUE;
+
+            for (Map.Entry<CachedDataKey<?, ?>, CachedEntry> entry : myCachedDataSet.entrySet()) {
+                if (entry.getKey() != keepKey && entry.getValue().lastAccess < eldestAccess) {
+                    eldestKey = entry.getKey();
+                    eldestAccess = entry.getValue().lastAccess;
+                }
+            }
+
+            if (eldestKey == null) break;
+
+            if (remove(eldestKey)) {
+                CachedDataStatistics.recordEviction(eldestKey);
+            }
         }
     }
 
@@ -154,9 +216,7 @@ public class CachedDataSet implements CachedDataHolder {
     }
 
     public boolean contains(@NotNull CachedDataKey<?, ?> key) {
-        synchronized (myCachedDataSet) {
-            return myCachedDataSet.containsKey(key);
-        }
+        return myCachedDataSet.containsKey(key);
     }
 
     @Override
@@ -0,0 +1,108 @@
+// Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+
+package com.vladsch.md.nav.parser.cache.data;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hit, compute and eviction counts of cached data keys, accumulated by key name over all cached data sets.
+ * <p>
+ * Compute time of a key includes the time of computing keys on which it depends.
+ */
+public class CachedDataStatistics {
+    public static class KeyStatistics {
+        final @NotNull String myName;
+        final LongAdder myHits = new LongAdder();
+        final LongAdder myComputes = new LongAdder();
+        final LongAdder myComputeNanos = new LongAdder();
+        final LongAdder myEvictions = new LongAdder();
+
+        KeyStatistics(@NotNull String name) {
+            myName = name;
+        }
+
+        @NotNull
+        public String getName() {
+            return myName;
+        }
+
+        public long getHits() {
+            return myHits.sum();
+        }
+
+        public long getComputes() {
+            return myComputes.sum();
+        }
+
+        public long getComputeNanos() {
+            return myComputeNanos.sum();
+        }
+
+        public long getEvictions() {
+            return myEvictions.sum();
+        }
+    }
+
+    private static final ConcurrentHashMap<String, KeyStatistics> ourStatistics = new ConcurrentHashMap<>();
+
+    private CachedDataStatistics() {
+
+    }
+
+    @NotNull
+    private static KeyStatistics getKeyStatistics(@NotNull CachedDataKey<?, ?> dataKey) {
+        return ourStatistics.computeIfAbsent(dataKey.getName(), KeyStatistics::new);
+    }
+
+    public static void recordHit(@NotNull CachedDataKey<?, ?> dataKey) {
+        getKeyStatistics(dataKey).myHits.increment();
+    }
+
+    public static void recordCompute(@NotNull CachedDataKey<?, ?> dataKey, long nanos) {
+        KeyStatistics statistics = getKeyStatistics(dataKey);
+        statistics.myComputes.increment();
+        statistics.myComputeNanos.add(nanos);
+    }
+
+    public static void recordEviction(@NotNull CachedDataKey<?, ?> dataKey) {
+        getKeyStatistics(dataKey).myEvictions.increment();
+    }
+
+    @NotNull
+    public static ArrayList<KeyStatistics> getStatistics() {
+        ArrayList<KeyStatistics> statistics = new ArrayList<>(ourStatistics.values());
+        statistics.sort(Comparator.comparing(KeyStatistics::getName));
+        return statistics;
+    }
+
+    public static void clear() {
+        ourStatistics.clear();
+    }
+
+    /**
+     * Statistics as text table, one line per key
+     *
+     * @return text of statistics
+     */
+    @NotNull
+    public static String getReport() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-40s %10s %10s %12s %10s\n", "Key", "Hits", "Computes", "Compute ms", "Evictions"));
+
+        for (KeyStatistics statistics : getStatistics()) {
+            sb.append(String.format("%-40s %,10d %,10d %,12.1f %,10d\n"
+                    , statistics.getName()
+                    , statistics.getHits()
+                    , statistics.getComputes()
+                    , statistics.getComputeNanos() / 1000000.0
+                    , statistics.getEvictions()
+            ));
+        }
+        return sb.toString();
+    }
+}
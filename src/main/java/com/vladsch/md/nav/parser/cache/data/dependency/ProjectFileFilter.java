@@ -0,0 +1,132 @@
+// Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+
+package com.vladsch.md.nav.parser.cache.data.dependency;
+
+import com.intellij.openapi.fileTypes.FileType;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Files whose change can invalidate a {@link ProjectFilePredicate}, used to test only predicates which can match a changed file.
+ * <p>
+ * A file matches if it has one of the paths, file names, extensions or file types, or is under one of the directories.
+ * An empty filter matches no files, {@link #ANY_FILE} matches all files.
+ */
+public class ProjectFileFilter {
+    public static final ProjectFileFilter ANY_FILE = new ProjectFileFilter(true);
+
+    private final boolean myAnyFile;
+    private final HashSet<String> myPaths = new HashSet<>();
+    private final HashSet<String> myFileNames = new HashSet<>();
+    private final HashSet<String> myExtensions = new HashSet<>();
+    private final HashSet<String> myDirectories = new HashSet<>();
+    private final HashSet<String> myFileTypes = new HashSet<>();
+
+    public ProjectFileFilter() {
+        this(false);
+    }
+
+    private ProjectFileFilter(boolean anyFile) {
+        myAnyFile = anyFile;
+    }
+
+    public boolean isAnyFile() {
+        return myAnyFile;
+    }
+
+    @NotNull
+    public ProjectFileFilter addPath(@NotNull String path) {
+        if (!myAnyFile) myPaths.add(path);
+        return this;
+    }
+
+    @NotNull
+    public ProjectFileFilter addFileName(@NotNull String fileName) {
+        if (!myAnyFile) myFileNames.add(fileName);
+        return this;
+    }
+
+    /**
+     * Add file extension
+     *
+     * @param extension extension without leading ., empty for files without extension
+     * @return this
+     */
+    @NotNull
+    public ProjectFileFilter addExtension(@NotNull String extension) {
+        if (!myAnyFile) myExtensions.add(extension);
+        return this;
+    }
+
+    /**
+     * Add directory, files in the directory and all its sub-directories match
+     *
+     * @param directory directory path
+     * @return this
+     */
+    @NotNull
+    public ProjectFileFilter addDirectory(@NotNull String directory) {
+        if (!myAnyFile) myDirectories.add(directoryKey(directory));
+        return this;
+    }
+
+    @NotNull
+    public ProjectFileFilter addFileType(@NotNull FileType fileType) {
+        if (!myAnyFile) myFileTypes.add(fileType.getName());
+        return this;
+    }
+
+    @NotNull
+    public Set<String> getPaths() {
+        return Collections.unmodifiableSet(myPaths);
+    }
+
+    @NotNull
+    public Set<String> getFileNames() {
+        return Collections.unmodifiableSet(myFileNames);
+    }
+
+    @NotNull
+    public Set<String> getExtensions() {
+        return Collections.unmodifiableSet(myExtensions);
+    }
+
+    @NotNull
+    public Set<String> getDirectories() {
+        return Collections.unmodifiableSet(myDirectories);
+    }
+
+    @NotNull
+    public Set<String> getFileTypes() {
+        return Collections.unmodifiableSet(myFileTypes);
+    }
+
+    /**
+     * Directory path without trailing /, root directory is the empty string
+     *
+     * @param directory directory path
+     * @return directory key
+     */
+    @NotNull
+    public static String directoryKey(@NotNull String directory) {
+        int length = directory.length();
+        while (length > 0 && directory.charAt(length - 1) == '/') length--;
+        return directory.substring(0, length);
+    }
+
+    @Override
+    public String toString() {
+        if (myAnyFile) return "ProjectFileFilter{ANY_FILE}";
+
+        return "ProjectFileFilter{" +
+                "paths=" + myPaths +
+                ", fileNames=" + myFileNames +
+                ", extensions=" + myExtensions +
+                ", directories=" + myDirectories +
+                ", fileTypes=" + myFileTypes +
+                '}';
+    }
+}
@@ -32,4 +32,16 @@ public interface ProjectFilePredicate extends Predicate<PsiFile> {
     default PsiFile getDependentFile() {
         return null;
     }
+
+    /**
+     * Files which can invalidate this predicate, only changes to matching files are tested
+     * <p>
+     * Predicates whose filter changes after the dependency is added must call {@link com.vladsch.md.nav.parser.cache.ProjectFileMonitor#updateFileFilter(ProjectFilePredicate)}
+     *
+     * @return file filter, default all files
+     */
+    @NotNull
+    default ProjectFileFilter getFileFilter() {
+        return ProjectFileFilter.ANY_FILE;
+    }
 }
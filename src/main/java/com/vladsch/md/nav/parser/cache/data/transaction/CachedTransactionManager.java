@@ -8,6 +8,7 @@ import com.vladsch.md.nav.parser.cache.ProjectFileMonitor;
 import com.vladsch.md.nav.parser.cache.data.CachedDataKey;
 import com.vladsch.md.nav.parser.cache.data.CachedDataOwner;
 import com.vladsch.md.nav.parser.cache.data.CachedDataSet;
+import com.vladsch.md.nav.parser.cache.data.CachedDataStatistics;
 import com.vladsch.md.nav.parser.cache.data.dependency.DataDependency;
 import com.vladsch.md.nav.parser.cache.data.dependency.DataDependencyManager;
 import com.vladsch.md.nav.parser.cache.data.dependency.ProjectFilePredicate;
@@ -154,6 +155,8 @@ public class CachedTransactionManager implements LogIndenter {
 
                 if (value != null) {
                     if (dataKey.isValid(value)) {
+                        CachedDataStatistics.recordHit(dataKey);
+
                         // need to add dependency to parent since it depends on this key, even if this time around the key is valid
                         if (myOpenTransactions.size() > 1) {
                             // this transaction is at size-1, parent at size-2
@@ -169,7 +172,9 @@ public class CachedTransactionManager implements LogIndenter {
                 }
 
                 if (LOG_COMPUTE.isDebugEnabled()) LOG_COMPUTE.debug("COMPUTING: " + cachedData.getDataKeyWithCacheDescription(dataKey));
+                long start = System.nanoTime();
                 value = dataKey.compute(transaction);
+                CachedDataStatistics.recordCompute(dataKey, System.nanoTime() - start);
                 assert dataKey.isValid(value);
 
                 DataDependency[] dependencies = new DataDependency[versionedDependencies.size()];
@@ -2,6 +2,7 @@
 
 package com.vladsch.md.nav.parser.flexmark;
 
+import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiManager;
@@ -20,6 +21,7 @@ import com.vladsch.md.nav.MdImageCache;
 import com.vladsch.md.nav.MdProjectComponent;
 import com.vladsch.md.nav.parser.api.MdLinkMapProvider;
 import com.vladsch.md.nav.psi.element.MdFile;
+import com.vladsch.md.nav.settings.MdApplicationSettings;
 import com.vladsch.md.nav.settings.MdRenderingProfile;
 import com.vladsch.md.nav.settings.MdRenderingProfileManager;
 import com.vladsch.md.nav.util.FileRef;
@@ -34,12 +36,14 @@ import com.vladsch.md.nav.vcs.GitHubLinkResolver;
 import com.vladsch.md.nav.vcs.GitHubVcsRoot;
 import com.vladsch.md.nav.vcs.MdLinkResolver;
 import com.vladsch.plugin.util.HelpersKt;
+import com.vladsch.plugin.util.image.ImageUtils;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 import static com.vladsch.flexmark.html.renderer.LinkType.IMAGE;
@@ -51,6 +55,8 @@ public class FlexmarkLinkResolver implements LinkResolver, Disposable {
     @Nullable public GitHubLinkResolver resolver;
     final private boolean useImageSerials;
     private Map<String, String> imageFileMap;
+    private Map<String, String> exportFileMap;
+    private Function<String, String> exportImageMapper;
     private String htmlExportPath;
     final private boolean linkToExportedHtml;
     @Nullable protected MdRenderingProfile renderingProfile;
@@ -59,12 +65,16 @@ public class FlexmarkLinkResolver implements LinkResolver, Disposable {
     final Want.Options.Locals localFormat;
     final boolean openRemoteLinks;
     final boolean showUnresolvedLinkRefs;
+    @Nullable final String swingDocumentUri;
+    final boolean disableGifImages;
 
     @Override
     public void dispose() {
         projectComponent = null;
         resolver = null;
         imageFileMap = null;
+        exportFileMap = null;
+        exportImageMapper = null;
         htmlExportPath = null;
         renderingProfile = null;
         file = null;
@@ -76,6 +86,8 @@ public class FlexmarkLinkResolver implements LinkResolver, Disposable {
         this.resolver = resolverSupplier == null ? null : (GitHubLinkResolver) resolverSupplier.get();
         this.projectComponent = this.resolver == null || this.resolver.getProject() == null ? null : MdProjectComponent.getInstance(resolver.getProject());
         this.imageFileMap = MdNavigatorExtension.HTML_IMAGE_FILE_MAP.get(options);
+        this.exportFileMap = MdNavigatorExtension.HTML_EXPORT_FILE_MAP.get(options);
+        this.exportImageMapper = MdNavigatorExtension.HTML_EXPORT_IMAGE_MAPPER.get(options);
         this.htmlExportPath = MdNavigatorExtension.HTML_EXPORT_PATH.get(options);
         this.linkToExportedHtml = MdNavigatorExtension.LINK_TO_EXPORTED_HTML.get(options);
         this.useImageSerials = MdNavigatorExtension.USE_IMAGE_SERIALS.get(options);
@@ -123,6 +135,66 @@ public class FlexmarkLinkResolver implements LinkResolver, Disposable {
         this.localFormat = localFormat;
         this.openRemoteLinks = openRemoteLinks != null ? openRemoteLinks : false;
         this.showUnresolvedLinkRefs = showUnresolvedLinkRefs != null ? showUnresolvedLinkRefs : false;
+
+        // Swing preview cannot resolve relative image urls, make them absolute to the document directory
+        if (MdNavigatorExtension.USE_SWING_ATTRIBUTES.get(options) && !MdNavigatorExtension.HTML_EXPORT.get(options) && htmlExportPath == null && resolver != null) {
+            this.swingDocumentUri = getSwingDocumentUri(resolver.getContainingFile().getPath());
+            this.disableGifImages = MdApplicationSettings.getInstance().getDocumentSettings().getDisableGifImages();
+        } else {
+            this.swingDocumentUri = null;
+            this.disableGifImages = false;
+        }
+    }
+
+    /**
+     * Get uri prefix for relative urls in the Swing preview
+     *
+     * @param documentPath path of the document directory, with trailing /
+     * @return uri of the directory or null if path is empty
+     */
+    @Nullable
+    static String getSwingDocumentUri(@NotNull String documentPath) {
+        if (documentPath.isEmpty()) return null;
+        String fileUriPrefix = documentPath.length() > 1 && documentPath.charAt(1) == ':' ? "file:/" : MdNavigatorExtension.FILE_URI_PREFIX;
+        return fileUriPrefix + FileUtil.toSystemDependentName(documentPath);
+    }
+
+    @NotNull
+    String getSwingImageUrl(@NotNull String url) {
+        return getSwingImageUrl(url, swingDocumentUri, disableGifImages);
+    }
+
+    /**
+     * Make relative image url absolute and disable gif images for the Swing preview
+     *
+     * @param url              image url
+     * @param documentUri      uri of the document directory, null to leave relative urls unchanged
+     * @param disableGifImages true to change gif image urls so they are not loaded
+     * @return url to use in Swing preview
+     */
+    @NotNull
+    static String getSwingImageUrl(@NotNull String url, @Nullable String documentUri, boolean disableGifImages) {
+        String useUrl = url;
+
+        if (documentUri != null && !url.startsWith("#") && !ImageUtils.isPossiblyEncodedImage(url) && !PathInfo.isURI(url) && PathInfo.isRelative(url)) {
+            useUrl = documentUri + url;
+        }
+
+        if (disableGifImages) {
+            int pos = useUrl.lastIndexOf(".gif");
+            if (pos > 0) {
+                useUrl = useUrl.substring(0, pos + 1) + "_gif_" + useUrl.substring(pos + ".gif".length());
+            }
+        }
+        return useUrl;
+    }
+
+    @Nullable
+    private String getExportedImagePath(@NotNull String filePath) {
+        if (imageFileMap != null && imageFileMap.containsKey(filePath)) {
+            return imageFileMap.get(filePath);
+        }
+        return exportImageMapper == null ? null : exportImageMapper.apply(filePath);
     }
 
     @Nullable
@@ -175,7 +247,7 @@ public class FlexmarkLinkResolver implements LinkResolver, Disposable {
 
                         localOnly[0] = false;
                         if (resolvedTarget != null) {
-                            boolean isImageForHtmlExport = imageFileMap != null && htmlExportPath != null && linkType == IMAGE;
+                            boolean isImageForHtmlExport = (imageFileMap != null || exportImageMapper != null) && htmlExportPath != null && linkType == IMAGE;
 
                             FileRef resolvedTargetRef = resolvedTarget instanceof LinkRef ? ((LinkRef) resolvedTarget).getTargetRef() : null;
 
@@ -199,8 +271,8 @@ public class FlexmarkLinkResolver implements LinkResolver, Disposable {
                                         return href + serialQuery;
                                     } else {
 
-                                        if (isImageForHtmlExport && resolvedTargetRef != null && imageFileMap.containsKey(resolvedTargetRef.getFilePath())) {
-                                            String toPath = imageFileMap.get(resolvedTargetRef.getFilePath());
+                                        String toPath = isImageForHtmlExport && resolvedTargetRef != null ? getExportedImagePath(resolvedTargetRef.getFilePath()) : null;
+                                        if (toPath != null) {
                                             href = LinkRef.urlEncode(PathInfo.relativePath(htmlExportPath, toPath, true, false), null);
                                             return href;
                                         } else {
@@ -208,7 +280,11 @@ public class FlexmarkLinkResolver implements LinkResolver, Disposable {
                                                 // see if the target is exportable
                                                 VirtualFile targetFile = resolvedTargetRef.getVirtualFile();
                                                 if (targetFile != null) {
-                                                    String exportedPath;
+                                                    String exportedPath = exportFileMap == null ? null : exportFileMap.get(targetFile.getPath());
+                                                    if (exportedPath != null) {
+                                                        href = LinkRef.urlEncode(PathInfo.relativePath(htmlExportPath, exportedPath, true, false), null);
+                                                        return href + ((LinkRef) resolvedTarget).getAnchorText();
+                                                    }
 
                                                     for (MdLinkMapProvider provider : MdLinkMapProvider.EXTENSIONS.getValue()) {
                                                         exportedPath = provider.mapTargetFilePath(resolver.getProject(), targetFile);
@@ -252,7 +328,7 @@ public class FlexmarkLinkResolver implements LinkResolver, Disposable {
                 }
             } else if (urlInfo.isFileURI()) {
                 // change file://X: to file:/X:
-                boolean isImageForHtmlExport = imageFileMap != null && htmlExportPath != null && linkType == IMAGE;
+                boolean isImageForHtmlExport = (imageFileMap != null || exportImageMapper != null) && htmlExportPath != null && linkType == IMAGE;
                 String key = PathInfo.removeFileUriPrefix(url);
 
                 if (linkType == IMAGE && projectComponent != null && renderingProfile != null && renderingProfile.getHtmlSettings().getImageUriSerials()) {
@@ -263,8 +339,8 @@ public class FlexmarkLinkResolver implements LinkResolver, Disposable {
                 }
 
                 if (isImageForHtmlExport) {
-                    if (imageFileMap.containsKey(key)) {
-                        String toPath = imageFileMap.get(key);
+                    String toPath = getExportedImagePath(key);
+                    if (toPath != null) {
                         return LinkRef.urlEncode(PathInfo.relativePath(htmlExportPath, toPath, true, false), null);
                     }
                 }
@@ -323,6 +399,10 @@ public class FlexmarkLinkResolver implements LinkResolver, Disposable {
                     result = result.withStatus(LinkStatus.NOT_FOUND);
                 }
             } else {
+                if (swingDocumentUri != null && link.getLinkType() == IMAGE) {
+                    href = getSwingImageUrl(href);
+                }
+
                 if (!href.equals(link.getUrl())) {
                     result = result.withStatus(LinkStatus.VALID).withUrl(href);
                 } else {
@@ -0,0 +1,263 @@
+// Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+
+package com.vladsch.md.nav.parser.flexmark;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.vladsch.flexmark.ast.AnchorRefTarget;
+import com.vladsch.flexmark.ext.enumerated.reference.EnumeratedReferenceLink;
+import com.vladsch.flexmark.ext.enumerated.reference.EnumeratedReferenceText;
+import com.vladsch.flexmark.ext.footnotes.Footnote;
+import com.vladsch.flexmark.ext.toc.SimTocBlock;
+import com.vladsch.flexmark.ext.toc.TocBlock;
+import com.vladsch.flexmark.html.HtmlRenderer;
+import com.vladsch.flexmark.html.HtmlWriter;
+import com.vladsch.flexmark.html.renderer.NodeRendererContext;
+import com.vladsch.flexmark.util.ast.Document;
+import com.vladsch.flexmark.util.ast.Node;
+import com.vladsch.flexmark.util.ast.ReferenceNode;
+import com.vladsch.flexmark.util.data.DataHolder;
+import com.vladsch.flexmark.util.data.NullableDataKey;
+import com.vladsch.flexmark.util.sequence.BasedSequence;
+import com.vladsch.flexmark.util.sequence.TagRange;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Rendered HTML of top level blocks from the previous rendering of a document.
+ * <p>
+ * Set on the document with {@link #BLOCK_RENDER_CACHE} and used by {@link MdBlockRenderCacheNodeRenderer}
+ * to render the document body. A block whose source text is the same as a block of the previous
+ * rendering reuses its HTML and tag ranges with source offsets shifted to the block's new position,
+ * only changed blocks are rendered.
+ * <p>
+ * Rendering of a block also depends on the document's reference, abbreviation, footnote, enumerated
+ * reference and macro definitions and on files of the project for link resolution. These make up the
+ * document signature and any change to the signature discards all cached blocks. Blocks whose
+ * rendering depends on their position in the document: headings and other anchor targets with
+ * generated ids, footnote and enumerated references with ordinals and table of contents are always
+ * rendered.
+ */
+public class MdBlockRenderCache {
+    private static final Logger LOG = Logger.getInstance("com.vladsch.md.nav.parser.flexmark.block-render-cache");
+
+    final static public NullableDataKey<MdBlockRenderCache> BLOCK_RENDER_CACHE = new NullableDataKey<>("BLOCK_RENDER_CACHE");
+
+    private static class CachedBlock {
+        final int startOffset;
+        final @NotNull String html;
+        final @NotNull List<TagRange> tagRanges;
+
+        CachedBlock(int startOffset, @NotNull String html, @NotNull List<TagRange> tagRanges) {
+            this.startOffset = startOffset;
+            this.html = html;
+            this.tagRanges = tagRanges;
+        }
+    }
+
+    private @Nullable Object myRenderer = null;
+    private @NotNull String mySignature = "";
+    private @NotNull Map<String, CachedBlock> myBlocks = Collections.emptyMap();
+    private int myHitCount = 0;
+    private int myMissCount = 0;
+
+    /**
+     * @return number of blocks of the last rendering which reused cached html
+     */
+    public synchronized int getHitCount() {
+        return myHitCount;
+    }
+
+    /**
+     * @return number of cacheable blocks of the last rendering which were rendered
+     */
+    public synchronized int getMissCount() {
+        return myMissCount;
+    }
+
+    public synchronized void clear() {
+        mySignature = "";
+        myBlocks = Collections.emptyMap();
+    }
+
+    /**
+     * Set renderer used for the next rendering, cached blocks are discarded if it is not the renderer of the previous rendering
+     *
+     * @param renderer renderer
+     */
+    public synchronized void setRenderer(@NotNull Object renderer) {
+        if (myRenderer != renderer) {
+            myRenderer = renderer;
+            clear();
+        }
+    }
+
+    /**
+     * Render children of the document reusing unchanged blocks of the previous rendering
+     *
+     * @param document document being rendered
+     * @param context  rendering context of the document
+     * @param html     html writer of the document
+     */
+    public void renderChildren(@NotNull Document document, @NotNull NodeRendererContext context, @NotNull HtmlWriter html) {
+        DataHolder options = context.getOptions();
+        String sourcePositionAttribute = HtmlRenderer.SOURCE_POSITION_ATTRIBUTE.get(options);
+        int maxBlankLines = HtmlRenderer.MAX_BLANK_LINES.get(options);
+        ArrayList<TagRange> documentTagRanges = HtmlRenderer.TAG_RANGES.get(document);
+
+        StringBuilder signature = new StringBuilder();
+        signature.append(VirtualFileManager.getInstance().getModificationCount()).append('\n');
+
+        ArrayList<Node> blocks = new ArrayList<>();
+        ArrayList<Boolean> cacheable = new ArrayList<>();
+        for (Node child = document.getFirstChild(); child != null; child = child.getNext()) {
+            blocks.add(child);
+            cacheable.add(isCacheable(child, sourcePositionAttribute, signature));
+        }
+
+        String documentSignature = signature.toString();
+        Map<String, CachedBlock> previousBlocks;
+        synchronized (this) {
+            previousBlocks = documentSignature.equals(mySignature) ? myBlocks : Collections.emptyMap();
+        }
+
+        HashMap<String, CachedBlock> blockMap = new HashMap<>();
+        int hitCount = 0;
+        int missCount = 0;
+        int iMax = blocks.size();
+
+        for (int i = 0; i < iMax; i++) {
+            Node block = blocks.get(i);
+
+            if (!cacheable.get(i)) {
+                context.render(block);
+                continue;
+            }
+
+            String blockText = block.getChars().toString();
+            CachedBlock cachedBlock = blockMap.get(blockText);
+            if (cachedBlock == null) cachedBlock = previousBlocks.get(blockText);
+
+            if (cachedBlock != null) {
+                hitCount++;
+            } else {
+                missCount++;
+
+                // render into a sub-context to get the block's html, tag ranges are added to the document by the html writer
+                int tagRangeCount = documentTagRanges.size();
+                NodeRendererContext subContext = context.getSubContext(false);
+                subContext.render(block);
+
+                ArrayList<TagRange> blockTagRanges = new ArrayList<>(documentTagRanges.subList(tagRangeCount, documentTagRanges.size()));
+                documentTagRanges.subList(tagRangeCount, documentTagRanges.size()).clear();
+                cachedBlock = new CachedBlock(block.getStartOffset(), subContext.getHtmlWriter().toString(maxBlankLines, 0), blockTagRanges);
+            }
+
+            // blocks with diagrams still being rendered have to be rendered again when the diagram is done
+            if (!MdPlantUmlRenderPool.isPlaceholder(cachedBlock.html)) {
+                blockMap.putIfAbsent(blockText, cachedBlock);
+            }
+
+            int delta = block.getStartOffset() - cachedBlock.startOffset;
+            for (TagRange tagRange : cachedBlock.tagRanges) {
+                documentTagRanges.add(delta == 0 ? tagRange : new TagRange(tagRange.getTag(), tagRange.getStart() + delta, tagRange.getEnd() + delta));
+            }
+
+            // output is complete html lines, keep them as is
+            html.line();
+            html.openPre();
+            html.raw(shiftOffsets(cachedBlock.html, sourcePositionAttribute, delta));
+            html.closePre();
+        }
+
+        synchronized (this) {
+            mySignature = documentSignature;
+            myBlocks = blockMap;
+            myHitCount = hitCount;
+            myMissCount = missCount;
+        }
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("rendered blocks, reused: " + hitCount + " rendered: " + missCount + " not cacheable: " + (iMax - hitCount - missCount));
+        }
+    }
+
+    /**
+     * Test if block can be cached and add its definitions to the document signature
+     *
+     * @param block                   top level block
+     * @param sourcePositionAttribute source position attribute name
+     * @param signature               document signature
+     *
+     * @return true if block rendering does not depend on its position in the document
+     */
+    private static boolean isCacheable(@NotNull Node block, @NotNull String sourcePositionAttribute, @NotNull StringBuilder signature) {
+        // all nodes are visited to add all definitions to the signature
+        boolean cacheable = isPositionIndependent(block, signature);
+        for (Node node : block.getDescendants()) {
+            if (!isPositionIndependent(node, signature)) cacheable = false;
+        }
+
+        if (cacheable) {
+            // offset attributes in the source, ie. in raw html, would be shifted with the block's
+            BasedSequence text = block.getChars();
+            if (!sourcePositionAttribute.isEmpty() && text.indexOf(sourcePositionAttribute) != -1 || text.indexOf(FlexmarkAttributeProvider.TASK_ITEM_OFFSET_ATTRIBUTE) != -1) {
+                cacheable = false;
+            }
+        }
+        return cacheable;
+    }
+
+    private static boolean isPositionIndependent(@NotNull Node node, @NotNull StringBuilder signature) {
+        if (node instanceof ReferenceNode) {
+            signature.append(node.getChars()).append('\n');
+            return false;
+        }
+
+        return !(node instanceof AnchorRefTarget
+                || node instanceof Footnote
+                || node instanceof EnumeratedReferenceText
+                || node instanceof EnumeratedReferenceLink
+                || node instanceof TocBlock
+                || node instanceof SimTocBlock);
+    }
+
+    /**
+     * Shift source offsets in source position and task item offset attributes
+     *
+     * @param html                    html of a rendered block
+     * @param sourcePositionAttribute source position attribute name, empty if none
+     * @param delta                   amount to add to offsets
+     *
+     * @return html with shifted offsets
+     */
+    @NotNull
+    public static String shiftOffsets(@NotNull String html, @NotNull String sourcePositionAttribute, int delta) {
+        if (delta == 0) return html;
+
+        String attributes = sourcePositionAttribute.isEmpty() ? FlexmarkAttributeProvider.TASK_ITEM_OFFSET_ATTRIBUTE
+                : Pattern.quote(sourcePositionAttribute) + "|" + FlexmarkAttributeProvider.TASK_ITEM_OFFSET_ATTRIBUTE;
+        Matcher matcher = Pattern.compile("\\b(" + attributes + ")=\"(\\d+)(?:-(\\d+))?\"").matcher(html);
+
+        StringBuffer sb = new StringBuffer(html.length() + 64);
+        while (matcher.find()) {
+            StringBuilder replacement = new StringBuilder();
+            replacement.append(matcher.group(1)).append("=\"").append(Integer.parseInt(matcher.group(2)) + delta);
+            if (matcher.group(3) != null) {
+                replacement.append('-').append(Integer.parseInt(matcher.group(3)) + delta);
+            }
+            replacement.append('"');
+            matcher.appendReplacement(sb, Matcher.quoteReplacement(replacement.toString()));
+        }
+        matcher.appendTail(sb);
+        return sb.toString();
+    }
+}
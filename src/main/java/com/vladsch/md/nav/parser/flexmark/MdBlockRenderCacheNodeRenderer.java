@@ -0,0 +1,51 @@
+// Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+
+package com.vladsch.md.nav.parser.flexmark;
+
+import com.vladsch.flexmark.html.HtmlWriter;
+import com.vladsch.flexmark.html.renderer.NodeRenderer;
+import com.vladsch.flexmark.html.renderer.NodeRendererContext;
+import com.vladsch.flexmark.html.renderer.NodeRendererFactory;
+import com.vladsch.flexmark.html.renderer.NodeRenderingHandler;
+import com.vladsch.flexmark.util.ast.Document;
+import com.vladsch.flexmark.util.data.DataHolder;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Renders document body using the document's {@link MdBlockRenderCache}, if it has one.
+ * <p>
+ * Replaces the core document rendering, which only renders the document's children.
+ * Highlight ranges change with the selection, so documents with highlight ranges are not cached.
+ */
+public class MdBlockRenderCacheNodeRenderer implements NodeRenderer {
+    public MdBlockRenderCacheNodeRenderer(DataHolder options) {
+
+    }
+
+    @Override
+    public Set<NodeRenderingHandler<?>> getNodeRenderingHandlers() {
+        return new HashSet<>(Collections.singletonList(new NodeRenderingHandler<>(Document.class, this::render)));
+    }
+
+    private void render(Document node, NodeRendererContext context, HtmlWriter html) {
+        MdBlockRenderCache blockRenderCache = MdBlockRenderCache.BLOCK_RENDER_CACHE.get(node);
+
+        if (blockRenderCache == null || MdNavigatorExtension.HIGHLIGHT_RANGES.get(context.getOptions()) != null) {
+            context.renderChildren(node);
+        } else {
+            blockRenderCache.renderChildren(node, context, html);
+        }
+    }
+
+    public static class Factory implements NodeRendererFactory {
+        @NotNull
+        @Override
+        public NodeRenderer apply(@NotNull final DataHolder options) {
+            return new MdBlockRenderCacheNodeRenderer(options);
+        }
+    }
+}
@@ -3,25 +3,23 @@
 package com.vladsch.md.nav.parser.flexmark;
 
 import com.intellij.openapi.util.io.FileUtil;
+import com.vladsch.flexmark.util.data.DataHolder;
 import com.vladsch.flexmark.util.html.Attributes;
 import com.vladsch.flexmark.util.sequence.BasedSequence;
 import com.vladsch.flexmark.util.sequence.Escaping;
 import com.vladsch.md.nav.MdBundle;
-import com.vladsch.md.nav.MdImageCache;
 import com.vladsch.md.nav.parser.api.MdFencedCodeImage;
 import com.vladsch.md.nav.parser.api.MdFencedCodeImageConverter;
 import com.vladsch.md.nav.parser.api.MdImageFencedCode;
+import com.vladsch.md.nav.settings.MdApplicationSettings;
 import com.vladsch.md.nav.settings.MdRenderingProfile;
 import com.vladsch.md.nav.settings.PlantUmlConversionType;
 import com.vladsch.md.nav.util.Md5Utils;
-import com.vladsch.md.nav.util.PathInfo;
 import com.vladsch.md.nav.vcs.MdLinkResolver;
-import net.sourceforge.plantuml.SourceStringReader;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
-import java.io.IOException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -53,8 +51,6 @@ public class MdFencedCodePlantUmlConverter implements MdFencedCodeImageConverter
             MdBundle.message("plant-uml.conversion.gravizo-svg.description"),
     };
 
-    private static final Pattern UML_INCLUDE_PATTERN = Pattern.compile("^\\s*!include\\s+(.+)\\s*$", Pattern.MULTILINE);
-
     @NotNull
     @Override
     public String[] getInfoStrings() {
@@ -141,6 +137,18 @@ public class MdFencedCodePlantUmlConverter implements MdFencedCodeImageConverter
     @Nullable
     @Override
     public MdFencedCodeImage imageUrl(@NotNull String content, @NotNull String info, @NotNull String variant, @NotNull MdRenderingProfile renderingProfile, @NotNull MdLinkResolver resolver) {
+        return imageUrl(content, info, variant, resolver, false);
+    }
+
+    @Nullable
+    @Override
+    public MdFencedCodeImage imageUrl(@NotNull String content, @NotNull String info, @NotNull String variant, @NotNull MdRenderingProfile renderingProfile, @NotNull MdLinkResolver resolver, @NotNull DataHolder options) {
+        boolean asyncRendering = MdNavigatorExtension.ASYNC_IMAGE_RENDERING.get(options) && MdApplicationSettings.getInstance().getDebugSettings().getUseAsyncPlantUmlRendering();
+        return imageUrl(content, info, variant, resolver, asyncRendering);
+    }
+
+    @Nullable
+    private MdFencedCodeImage imageUrl(@NotNull String content, @NotNull String info, @NotNull String variant, @NotNull MdLinkResolver resolver, boolean asyncRendering) {
         PlantUmlConversionType conversionType = PlantUmlConversionType.ADAPTER.findEnumNameOrNull(variant);
         if (conversionType == null) {
             conversionType = PlantUmlConversionType.NONE;
@@ -150,18 +158,20 @@ public class MdFencedCodePlantUmlConverter implements MdFencedCodeImageConverter
             boolean embedded = conversionType.isEmbedded();
 
             if ((info.equals(PUML_LANGUAGE_INFO))) {
-                String url = getUrl(content, resolver, conversionType, true, !embedded);
+                String url = getUrl(content, resolver, conversionType, true, !embedded, asyncRendering);
+                if (url == null) return null;
                 return new MdFencedCodeImage(url, conversionType.extension, true, null, null);
             } else if (info.equals(PLANTUML_LANGUAGE_INFO)) {
-                String url = getUrl(content, resolver, conversionType, true, !embedded);
+                String url = getUrl(content, resolver, conversionType, true, !embedded, asyncRendering);
+                if (url == null) return null;
                 return new MdFencedCodeImage(url, conversionType.extension, true, null, null);
             }
         }
         return null;
     }
 
-    @NotNull
-    private String getUrl(@NotNull String content, @NotNull MdLinkResolver resolver, PlantUmlConversionType plantUmlFencedCode, boolean wrapInStartEnd, boolean suffixSemi) {
+    @Nullable
+    private String getUrl(@NotNull String content, @NotNull MdLinkResolver resolver, PlantUmlConversionType plantUmlFencedCode, boolean wrapInStartEnd, boolean suffixSemi, boolean asyncRendering) {
         StringBuilder contentText = new StringBuilder();
         CharSequence[] contentLines = content.split("\n");
         int iMax = contentLines.length;
@@ -226,47 +236,21 @@ public class MdFencedCodePlantUmlConverter implements MdFencedCodeImageConverter
             url = plantUmlFencedCode.urlPrefix() + contentUml;
         } else {
             Md5Utils md5 = new Md5Utils();
-            CharSequence contentUml = contentText.toString();
-
-            md5.add(contentText);
-
-            Matcher matcher = UML_INCLUDE_PATTERN.matcher(contentText);
-            while (matcher.find()) {
-                String path = matcher.group(1);
-                if (!path.startsWith("<") && !path.endsWith(">")) {
-                    File file = PathInfo.isAbsolute(path) ? new File(path) : new File(resolver.getContainingFile().getPath(), path);
-                    if (file.exists() && file.isFile()) {
-                        md5.add(file);
-                    }
-                }
-            }
+            File parentDir = new File(resolver.getContainingFile().getFilePath()).getParentFile();
+            File baseDir = parentDir != null && parentDir.isDirectory() ? parentDir : null;
+            String contentUml = MdPlantUmlRenderPool.resolveIncludes(contentText.toString(), baseDir);
 
-            String contentMd5 = md5.getMd5();
+            md5.add(contentUml);
 
-            File imageFile = MdImageCache.getInstance().getImageFile(PLANT_UML_CACHE_SIGNATURE + contentMd5, plantUmlFencedCode.extension, file -> {
-                File parentDir = new File(resolver.getContainingFile().getFilePath()).getParentFile();
-                String savedDir = null;
+            for (File file : MdPlantUmlRenderPool.getIncludedFiles(contentUml)) {
+                md5.add(file);
+            }
 
-                if (parentDir != null && parentDir.exists() && parentDir.isDirectory()) {
-                    savedDir = System.getProperty("user.dir");
-                    String absolutePath = parentDir.getAbsolutePath();
-                    System.setProperty("user.dir", absolutePath);
-                }
+            String contentMd5 = md5.getMd5();
 
-                try {
-                    SourceStringReader planUmlReader = new SourceStringReader(contentUml.toString());
-                    try {
-                        planUmlReader.outputImage(file);
-                    } catch (IOException | IllegalArgumentException e) {
-                        e.printStackTrace();
-                    }
-                } finally {
-                    if (savedDir != null) {
-                        System.setProperty("user.dir", savedDir);
-                    }
-                }
-            });
+            File imageFile = MdPlantUmlRenderPool.getInstance().getImageFile(PLANT_UML_CACHE_SIGNATURE + contentMd5, plantUmlFencedCode.extension, contentUml, baseDir, asyncRendering ? resolver.getProject() : null);
 
+            if (imageFile == null) return null;
             url = "file://" + FileUtil.toSystemIndependentName(imageFile.getPath());
         }
         return url;
@@ -95,7 +95,7 @@ public class MdNavigatorDiagramNodeRenderer implements NodeRenderer {
                 MdFencedCodeImageConverter converter = imageConversionManager.getImageConverter(infoString, conversionVariant);
                 if (converter != null) {
                     String content = nodeInfo.getBuilder().addAll(node.getContentLines()).toString();
-                    MdFencedCodeImage codeImage = converter.imageUrl(content, infoString, conversionVariant, renderingProfile, linkResolver);
+                    MdFencedCodeImage codeImage = converter.imageUrl(content, infoString, conversionVariant, renderingProfile, linkResolver, context.getOptions());
                     if (codeImage != null) {
                         renderImageUrl(codeImage.url, node.getChars(), context, html, codeImage.imageAttributes, codeImage.isBlock, codeImage.blockAttributes);
                     } else {
@@ -123,7 +123,7 @@ public class MdNavigatorDiagramNodeRenderer implements NodeRenderer {
                 MdFencedCodeImageConverter converter = imageConversionManager.getImageConverter(infoString, conversionVariant);
                 if (converter != null) {
                     String content = node.getText().toString();
-                    MdFencedCodeImage codeImage = converter.imageUrl(content, infoString, conversionVariant, renderingProfile, linkResolver);
+                    MdFencedCodeImage codeImage = converter.imageUrl(content, infoString, conversionVariant, renderingProfile, linkResolver, context.getOptions());
                     if (codeImage != null) {
                         renderImageUrl(codeImage.url, node.getChars(), context, html, codeImage.imageAttributes, false, null);
                         return;
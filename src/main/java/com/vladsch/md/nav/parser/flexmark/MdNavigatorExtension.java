@@ -13,6 +13,7 @@ import com.vladsch.md.nav.vcs.MdLinkResolver;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Map;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 public class MdNavigatorExtension implements /*Parser.ParserExtension,*/ HtmlRenderer.HtmlRendererExtension {
@@ -20,6 +21,9 @@ public class MdNavigatorExtension implements /*Parser.ParserExtension,*/ HtmlRen
     final static public DataKey<Supplier<? extends MdRenderingProfile>> RENDERING_PROFILE = new DataKey<>("RENDERING_PROFILE", (Supplier<? extends MdRenderingProfile>) () -> null);
     final static public NullableDataKey<Map<String, String>> HTML_IMAGE_FILE_MAP = new NullableDataKey<>("HTML_IMAGE_FILE_MAP");
     final static public NullableDataKey<String> HTML_EXPORT_PATH = new NullableDataKey<>("HTML_EXPORT_PATH");
+    // exported html path by markdown file path and exported image path by image file path, null if not exported, used by batch export
+    final static public NullableDataKey<Map<String, String>> HTML_EXPORT_FILE_MAP = new NullableDataKey<>("HTML_EXPORT_FILE_MAP");
+    final static public NullableDataKey<Function<String, String>> HTML_EXPORT_IMAGE_MAPPER = new NullableDataKey<>("HTML_EXPORT_IMAGE_MAPPER");
     final static public DataKey<String> LOCAL_ONLY_TARGET_CLASS = new DataKey<>("LOCAL_ONLY_TARGET_CLASS", "local-only");
     final static public DataKey<String> MISSING_TARGET_CLASS = new DataKey<>("MISSING_TARGET_CLASS", "absent");
     final static public DataKey<Boolean> USE_IMAGE_SERIALS = new DataKey<>("USE_IMAGE_SERIALS", true);
@@ -31,6 +35,10 @@ public class MdNavigatorExtension implements /*Parser.ParserExtension,*/ HtmlRen
     final static public String FILE_URI_PREFIX = "file://";
     final public static String SOURCE_POSITION_ATTRIBUTE_NAME = "md-pos";
     final static public NullableDataKey<Map<Range, String>> HIGHLIGHT_RANGES = new NullableDataKey<>("HIGHLIGHT_RANGES");
+    // highlight ranges are provided in the document instead of renderer options, used by cached renderers
+    final static public DataKey<Boolean> USE_HIGHLIGHT_RANGES = new DataKey<>("USE_HIGHLIGHT_RANGES", false);
+    // generated images can be rendered in the background and use a placeholder until they are done, used by preview
+    final static public DataKey<Boolean> ASYNC_IMAGE_RENDERING = new DataKey<>("ASYNC_IMAGE_RENDERING", false);
 
     static public MdNavigatorExtension create() {
         return new MdNavigatorExtension();
@@ -49,9 +57,15 @@ public class MdNavigatorExtension implements /*Parser.ParserExtension,*/ HtmlRen
             case "YOUTRACK":
                 rendererBuilder.linkResolverFactory(new FlexmarkLinkResolver.Factory());
                 rendererBuilder.attributeProviderFactory(new FlexmarkAttributeProvider.Factory());
-                if (HIGHLIGHT_RANGES.get(rendererBuilder) != null) {
+                if (HIGHLIGHT_RANGES.get(rendererBuilder) != null || USE_HIGHLIGHT_RANGES.get(rendererBuilder)) {
                     rendererBuilder.nodeRendererFactory(new MdNavigatorNodeRenderer.Factory());
                 }
+                if (rendererType.equals("HTML")) {
+                    rendererBuilder.nodeRendererFactory(new MdBlockRenderCacheNodeRenderer.Factory());
+                    if (USE_SWING_ATTRIBUTES.get(rendererBuilder) && !HTML_EXPORT.get(rendererBuilder)) {
+                        rendererBuilder.nodeRendererFactory(new MdSwingHtmlImageNodeRenderer.Factory());
+                    }
+                }
                 break;
         }
     }
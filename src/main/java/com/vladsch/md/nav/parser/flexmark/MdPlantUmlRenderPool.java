@@ -0,0 +1,270 @@
+// Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+
+package com.vladsch.md.nav.parser.flexmark;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.vladsch.md.nav.MdImageCache;
+import com.vladsch.md.nav.MdProjectComponent;
+import net.sourceforge.plantuml.FileFormat;
+import net.sourceforge.plantuml.FileFormatOption;
+import net.sourceforge.plantuml.FileSystem;
+import net.sourceforge.plantuml.SourceStringReader;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Renders embedded PlantUML diagrams into the image cache on a bounded pool of worker threads.
+ * <p>
+ * Asynchronous requests return a placeholder image until the diagram is rendered, then the
+ * project's {@link MdProjectComponent.FileChangedListener} is notified so the preview is updated
+ * with the cached image. Rendering does not change the working directory, relative {@code !include},
+ * {@code !import} and {@code <img:>} paths of the source are resolved against the markdown file's directory
+ * and the directory is set as PlantUML's current directory for the rendering thread, so paths in included
+ * files are resolved against it too.
+ */
+public class MdPlantUmlRenderPool {
+    private static final Logger LOG = Logger.getInstance("com.vladsch.md.nav.parser.plantuml");
+
+    public static final String PLACEHOLDER_FILE_PREFIX = "placeholder_plantuml";
+    private static final Pattern UML_INCLUDE_PATTERN = Pattern.compile("^([ \\t]*!(?:include(_many|_once|sub)?|import)[ \\t]+)(.+?)[ \\t]*$", Pattern.MULTILINE);
+    private static final Pattern UML_IMG_PATTERN = Pattern.compile("(<img:)([^>{}]+?)([ \\t]*(?:\\{[^}]*})?>)");
+
+    private static final MdPlantUmlRenderPool ourInstance = new MdPlantUmlRenderPool();
+
+    public static MdPlantUmlRenderPool getInstance() {
+        return ourInstance;
+    }
+
+    private final Set<String> myPendingImages = ConcurrentHashMap.newKeySet();
+    private final Set<Project> myPendingNotifications = ConcurrentHashMap.newKeySet();
+    private @Nullable ExecutorService myExecutor;
+
+    private MdPlantUmlRenderPool() {
+
+    }
+
+    @NotNull
+    private synchronized ExecutorService getExecutor() {
+        if (myExecutor == null) {
+            myExecutor = AppExecutorUtil.createBoundedApplicationPoolExecutor("MarkdownNavigator.PlantUmlRenderPool", Runtime.getRuntime().availableProcessors());
+        }
+        return myExecutor;
+    }
+
+    /**
+     * Get rendered diagram image file
+     *
+     * @param imageKey  image cache key of the diagram
+     * @param extension image file extension
+     * @param source    PlantUML source with include paths resolved
+     * @param baseDir   directory against which paths in included files are resolved, null for the working directory
+     * @param project   project to notify when asynchronous rendering is done, null to render synchronously
+     * @return image file, placeholder image file if the diagram is being rendered or null if it could not be rendered
+     */
+    @Nullable
+    public File getImageFile(@NotNull String imageKey, @NotNull String extension, @NotNull String source, @Nullable File baseDir, @Nullable Project project) {
+        MdImageCache imageCache = MdImageCache.getInstance();
+        File imageFile = imageCache.getCachedImageFile(imageKey, extension);
+        if (imageFile != null) return imageFile;
+
+        if (project == null || ApplicationManager.getApplication() == null || ApplicationManager.getApplication().isUnitTestMode()) {
+            return imageCache.getImageFile(imageKey, extension, file -> renderImage(source, baseDir, file));
+        }
+
+        if (myPendingImages.add(imageKey + extension)) {
+            getExecutor().execute(() -> {
+                try {
+                    imageCache.getImageFile(imageKey, extension, file -> renderImage(source, baseDir, file));
+                } finally {
+                    myPendingImages.remove(imageKey + extension);
+                    notifyRendered(project);
+                }
+            });
+        }
+
+        return getPlaceholderFile(imageCache);
+    }
+
+    private void notifyRendered(@NotNull Project project) {
+        // diagrams rendered before the notification runs are all updated by it
+        if (myPendingNotifications.add(project)) {
+            ApplicationManager.getApplication().invokeLater(() -> {
+                myPendingNotifications.remove(project);
+                if (!project.isDisposed()) {
+                    project.getMessageBus().syncPublisher(MdProjectComponent.FileChangedListener.Companion.getTOPIC()).onFilesChanged();
+                }
+            });
+        }
+    }
+
+    private interface Renderer {
+        void render(@NotNull SourceStringReader reader) throws IOException;
+    }
+
+    private static void renderImage(@NotNull String source, @Nullable File baseDir, @NotNull File file) {
+        render(source, baseDir, reader -> reader.outputImage(file));
+    }
+
+    @TestOnly
+    @NotNull
+    static String renderString(@NotNull String source, @Nullable File baseDir, @NotNull FileFormat fileFormat) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        render(source, baseDir, reader -> reader.outputImage(out, new FileFormatOption(fileFormat)));
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void render(@NotNull String source, @Nullable File baseDir, @NotNull Renderer renderer) {
+        // PlantUML's current directory is per thread
+        FileSystem fileSystem = FileSystem.getInstance();
+        if (baseDir != null) fileSystem.setCurrentDir(baseDir);
+        try {
+            renderer.render(new SourceStringReader(source));
+        } catch (IOException | IllegalArgumentException e) {
+            LOG.warn(e);
+        } finally {
+            if (baseDir != null) fileSystem.reset();
+        }
+    }
+
+    public static boolean isPlaceholder(@NotNull CharSequence html) {
+        return html.toString().contains(PLACEHOLDER_FILE_PREFIX);
+    }
+
+    @NotNull
+    private static synchronized File getPlaceholderFile(@NotNull MdImageCache imageCache) {
+        File file = new File(imageCache.getTempDirPath(), PLACEHOLDER_FILE_PREFIX + ".png");
+        if (!file.isFile()) {
+            BufferedImage image = new BufferedImage(160, 40, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D graphics = image.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+                graphics.setColor(new Color(0x80808080, true));
+                graphics.drawRect(0, 0, image.getWidth() - 1, image.getHeight() - 1);
+                graphics.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 12));
+                graphics.drawString("Rendering diagram...", 12, 25);
+            } finally {
+                graphics.dispose();
+            }
+
+            try {
+                ImageIO.write(image, "png", file);
+            } catch (IOException e) {
+                LOG.warn(e);
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Replace relative {@code !include}, {@code !import} and {@code <img:>} paths with absolute paths
+     *
+     * @param source  PlantUML source
+     * @param baseDir directory against which relative paths are resolved, null to leave source unchanged
+     * @return source with absolute paths
+     */
+    @NotNull
+    public static String resolveIncludes(@NotNull String source, @Nullable File baseDir) {
+        if (baseDir == null) return source;
+
+        Matcher matcher = UML_INCLUDE_PATTERN.matcher(source);
+        StringBuffer sb = null;
+
+        while (matcher.find()) {
+            String path = getIncludePath(matcher);
+            if (path == null || new File(path).isAbsolute()) continue;
+
+            // includesub path is followed by !SUB_NAME
+            String suffix = matcher.group(3).substring(path.length());
+            if (sb == null) sb = new StringBuffer(source.length() + 64);
+            String resolved = new File(baseDir, path).getPath() + suffix;
+            matcher.appendReplacement(sb, Matcher.quoteReplacement(matcher.group(1) + resolved));
+        }
+
+        if (sb != null) {
+            matcher.appendTail(sb);
+            source = sb.toString();
+            sb = null;
+        }
+
+        matcher = UML_IMG_PATTERN.matcher(source);
+        while (matcher.find()) {
+            String path = getImagePath(matcher);
+            if (path == null || new File(path).isAbsolute()) continue;
+
+            if (sb == null) sb = new StringBuffer(source.length() + 64);
+            matcher.appendReplacement(sb, Matcher.quoteReplacement(matcher.group(1) + new File(baseDir, path).getPath() + matcher.group(3)));
+        }
+
+        if (sb == null) return source;
+        matcher.appendTail(sb);
+        return sb.toString();
+    }
+
+    /**
+     * Get files included or used as images by source
+     *
+     * @param source PlantUML source with resolved paths
+     * @return absolute paths of included and image files
+     */
+    @NotNull
+    public static Set<File> getIncludedFiles(@NotNull String source) {
+        Set<File> files = new LinkedHashSet<>();
+        Matcher matcher = UML_INCLUDE_PATTERN.matcher(source);
+
+        while (matcher.find()) {
+            addFile(files, getIncludePath(matcher));
+        }
+
+        matcher = UML_IMG_PATTERN.matcher(source);
+        while (matcher.find()) {
+            addFile(files, getImagePath(matcher));
+        }
+        return files;
+    }
+
+    private static void addFile(@NotNull Set<File> files, @Nullable String path) {
+        if (path == null) return;
+
+        File file = new File(path);
+        if (file.isAbsolute() && file.isFile()) files.add(file);
+    }
+
+    @Nullable
+    private static String getImagePath(@NotNull Matcher matcher) {
+        String path = matcher.group(2).trim();
+        return path.isEmpty() || path.contains("://") ? null : path;
+    }
+
+    @Nullable
+    private static String getIncludePath(@NotNull Matcher matcher) {
+        String path = matcher.group(3);
+        if (path.startsWith("<") || path.contains("://")) return null;
+
+        if ("sub".equals(matcher.group(2))) {
+            int pos = path.lastIndexOf('!');
+            if (pos > 0) path = path.substring(0, pos);
+        }
+        return path;
+    }
+}
@@ -0,0 +1,115 @@
+// Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+
+package com.vladsch.md.nav.parser.flexmark;
+
+import com.vladsch.flexmark.ast.HtmlBlock;
+import com.vladsch.flexmark.ast.HtmlInline;
+import com.vladsch.flexmark.html.HtmlRenderer;
+import com.vladsch.flexmark.html.HtmlWriter;
+import com.vladsch.flexmark.html.renderer.LinkType;
+import com.vladsch.flexmark.html.renderer.NodeRenderer;
+import com.vladsch.flexmark.html.renderer.NodeRendererContext;
+import com.vladsch.flexmark.html.renderer.NodeRendererFactory;
+import com.vladsch.flexmark.html.renderer.NodeRenderingHandler;
+import com.vladsch.flexmark.util.data.DataHolder;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Resolves image urls of html blocks and inline html for the Swing preview.
+ * <p>
+ * Markdown images are resolved by {@link FlexmarkLinkResolver}, raw html is output as is by the core renderer
+ * so its {@code img} src urls are passed through the same link resolver here. Html without images is left to the core renderer.
+ */
+public class MdSwingHtmlImageNodeRenderer implements NodeRenderer {
+    private static final Pattern IMAGE_SRC_PATTERN = Pattern.compile("(<img\\s[^>]*?(?<![\\w-])src\\s*=\\s*)(?:\"([^\"]*)\"|'([^']*)')", Pattern.CASE_INSENSITIVE);
+
+    public MdSwingHtmlImageNodeRenderer(DataHolder options) {
+
+    }
+
+    @Override
+    public Set<NodeRenderingHandler<?>> getNodeRenderingHandlers() {
+        return new HashSet<>(Arrays.asList(
+                new NodeRenderingHandler<>(HtmlBlock.class, this::render),
+                new NodeRenderingHandler<>(HtmlInline.class, this::render)
+        ));
+    }
+
+    static boolean hasImage(@NotNull CharSequence html) {
+        return html.toString().toLowerCase().contains("<img");
+    }
+
+    /**
+     * Replace src urls of {@code img} tags
+     *
+     * @param html        html text
+     * @param urlResolver maps image url to url to use
+     * @return html with image urls replaced
+     */
+    @NotNull
+    static String resolveImages(@NotNull CharSequence html, @NotNull Function<String, String> urlResolver) {
+        Matcher matcher = IMAGE_SRC_PATTERN.matcher(html);
+        StringBuilder sb = new StringBuilder(html.length() + 64);
+        int lastEnd = 0;
+
+        while (matcher.find()) {
+            boolean doubleQuoted = matcher.group(2) != null;
+            int group = doubleQuoted ? 2 : 3;
+            String url = matcher.group(group);
+            String useUrl = urlResolver.apply(url);
+
+            sb.append(html, lastEnd, matcher.start(group));
+            sb.append(useUrl);
+            lastEnd = matcher.end(group);
+        }
+
+        sb.append(html, lastEnd, html.length());
+        return sb.toString();
+    }
+
+    @NotNull
+    private static String resolveImageLinks(@NotNull CharSequence html, @NotNull NodeRendererContext context) {
+        return resolveImages(html, url -> context.resolveLink(LinkType.IMAGE, url, false).getUrl());
+    }
+
+    private void render(HtmlBlock node, NodeRendererContext context, HtmlWriter html) {
+        if (!hasImage(node.getChars())) {
+            context.delegateRender();
+            return;
+        }
+
+        NodeRendererContext subContext = context.getDelegatedSubContext(false);
+        subContext.delegateRender();
+        String blockHtml = subContext.getHtmlWriter().toString(HtmlRenderer.MAX_BLANK_LINES.get(context.getOptions()), 0);
+
+        // output is complete html lines, keep them as is
+        html.line();
+        html.openPre();
+        html.raw(resolveImageLinks(blockHtml, context));
+        html.closePre();
+    }
+
+    private void render(HtmlInline node, NodeRendererContext context, HtmlWriter html) {
+        if (context.getHtmlOptions().suppressInlineHtml || context.getHtmlOptions().escapeInlineHtml || !hasImage(node.getChars())) {
+            context.delegateRender();
+            return;
+        }
+
+        html.rawPre(resolveImageLinks(node.getChars().normalizeEOL(), context));
+    }
+
+    public static class Factory implements NodeRendererFactory {
+        @NotNull
+        @Override
+        public NodeRenderer apply(@NotNull final DataHolder options) {
+            return new MdSwingHtmlImageNodeRenderer(options);
+        }
+    }
+}
@@ -11,6 +11,7 @@ import com.intellij.psi.tree.IElementType
 import com.intellij.util.CharTable
 import com.vladsch.md.nav.MdLanguage
 import com.vladsch.md.nav.psi.index.MdLinkElementIndex
+import com.vladsch.md.nav.psi.index.MdLinkFileNameIndex
 import java.io.IOException
 
 abstract class MdLinkElementStubElementType<Elem : MdLinkElement<*>, Stub : MdLinkElementStub<Elem>>(debugName: String) :
@@ -41,6 +42,9 @@ abstract class MdLinkElementStubElementType<Elem : MdLinkElement<*>, Stub : MdLi
 
     override fun indexStub(stub: Stub, sink: IndexSink) {
         sink.occurrence(MdLinkElementIndex.KEY, stub.linkRefWithAnchorText)
+        for (key in MdLinkFileNameIndex.linkKeys(stub.linkRefWithAnchorText)) {
+            sink.occurrence(MdLinkFileNameIndex.KEY, key)
+        }
     }
 
     override fun createStub(tree: LighterAST, node: LighterASTNode, parentStub: StubElement<PsiElement>): Stub {
@@ -0,0 +1,177 @@
+// Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+
+package com.vladsch.md.nav.psi.index;
+
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.IndexNotReadyException;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.util.indexing.DataIndexer;
+import com.intellij.util.indexing.DefaultFileTypeSpecificInputFilter;
+import com.intellij.util.indexing.FileBasedIndex;
+import com.intellij.util.indexing.FileContent;
+import com.intellij.util.indexing.ID;
+import com.intellij.util.indexing.ScalarIndexExtension;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.KeyDescriptor;
+import com.vladsch.flexmark.html.renderer.HeaderIdGenerator;
+import com.vladsch.md.nav.MdFileType;
+import com.vladsch.md.nav.parser.MdFileElementType;
+import com.vladsch.md.nav.psi.element.MdAttributeIdValue;
+import com.vladsch.md.nav.psi.element.MdFile;
+import com.vladsch.md.nav.psi.element.MdHeaderElement;
+import com.vladsch.md.nav.psi.element.MdHeaderText;
+import com.vladsch.md.nav.psi.element.MdJekyllInclude;
+import com.vladsch.md.nav.psi.element.MdRefAnchor;
+import com.vladsch.md.nav.psi.util.MdPsiImplUtil;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Anchor ids defined in each file: headers, explicit id attributes and anchor references.
+ * <p>
+ * Header ids depend on the rendering profile's header id options, which cannot be used by the indexer,
+ * so keys are normalized with {@link #anchorKey(String)} to the same value for all option combinations.
+ * Index lookups give files which may have the anchor, exact matching is done on the file's elements.
+ */
+public class MdAnchorIdIndex extends ScalarIndexExtension<String> {
+    @NonNls public static final ID<String, Void> NAME = ID.create("markdown.anchor-id.index");
+    private final MyDataIndexer myDataIndexer = new MyDataIndexer();
+
+    @Override
+    @NotNull
+    public ID<String, Void> getName() {
+        return NAME;
+    }
+
+    @Override
+    @NotNull
+    public DataIndexer<String, Void, FileContent> getIndexer() {
+        return myDataIndexer;
+    }
+
+    @NotNull
+    @Override
+    public KeyDescriptor<String> getKeyDescriptor() {
+        return EnumeratorStringDescriptor.INSTANCE;
+    }
+
+    @NotNull
+    @Override
+    public FileBasedIndex.InputFilter getInputFilter() {
+        return new DefaultFileTypeSpecificInputFilter(MdFileType.INSTANCE);
+    }
+
+    @Override
+    public boolean dependsOnFileContent() {
+        return true;
+    }
+
+    @Override
+    public int getVersion() {
+        return MdFileElementType.MD_INDEX_VERSION;
+    }
+
+    /**
+     * Normalize anchor id to index key
+     * <p>
+     * Lower case, runs of dashes replaced by a single dash and trailing dashes removed, which makes
+     * the key independent of header id generation's non-ascii to lowercase, no duped dashes and
+     * trim trailing spaces options.
+     *
+     * @param anchorId anchor id
+     * @return index key
+     */
+    @NotNull
+    public static String anchorKey(@NotNull String anchorId) {
+        int iMax = anchorId.length();
+        StringBuilder key = new StringBuilder(iMax);
+
+        for (int i = 0; i < iMax; i++) {
+            char c = anchorId.charAt(i);
+            if (c == '-') {
+                if (key.length() == 0 || key.charAt(key.length() - 1) != '-') key.append(c);
+            } else {
+                key.append(Character.toLowerCase(c));
+            }
+        }
+
+        int length = key.length();
+        while (length > 0 && key.charAt(length - 1) == '-') length--;
+        key.setLength(length);
+        return key.toString();
+    }
+
+    /**
+     * Index key of header with given header id text
+     *
+     * @param headerText header text used for id generation
+     * @return index key
+     */
+    @NotNull
+    public static String headerKey(@NotNull CharSequence headerText) {
+        return anchorKey(HeaderIdGenerator.generateId(headerText, " -", "_", true, true));
+    }
+
+    private static class MyDataIndexer implements DataIndexer<String, Void, FileContent> {
+        MyDataIndexer() {}
+
+        @Override
+        @NotNull
+        public Map<String, Void> map(@NotNull final FileContent inputData) {
+            PsiFile psiFile = inputData.getPsiFile();
+            if (!(psiFile instanceof MdFile)) return Collections.emptyMap();
+
+            HashMap<String, Void> keys = new HashMap<>();
+            PsiTreeUtil.processElements(psiFile, element -> {
+                if (element instanceof MdHeaderElement) {
+                    MdHeaderText headerTextElement = ((MdHeaderElement) element).getHeaderTextElement();
+                    if (headerTextElement != null) {
+                        keys.put(headerKey(MdPsiImplUtil.getNodeText(headerTextElement, true, true)), null);
+                    }
+                } else if (element instanceof MdAttributeIdValue) {
+                    keys.put(anchorKey(element.getText()), null);
+                } else if (element instanceof MdRefAnchor) {
+                    keys.put(anchorKey(((MdRefAnchor) element).getReferenceId()), null);
+                }
+                return true;
+            });
+            return keys;
+        }
+    }
+
+    /**
+     * Test if file may have an anchor target for anchor id
+     * <p>
+     * Files with Jekyll includes get anchors from included files and are always assumed to have the anchor.
+     *
+     * @param file     file
+     * @param anchorId anchor id
+     * @return false if file definitely does not have the anchor
+     */
+    public static boolean mayHaveAnchor(@NotNull MdFile file, @NotNull String anchorId) {
+        VirtualFile virtualFile = file.getOriginalFile().getVirtualFile();
+        Project project = file.getProject();
+
+        if (virtualFile == null || !virtualFile.isInLocalFileSystem() || DumbService.isDumb(project)) return true;
+
+        // unsaved changes may have anchors which the index does not
+        if (FileDocumentManager.getInstance().isFileModified(virtualFile)) return true;
+
+        if (!MdPsiImplUtil.listChildrenOfAnyType(file, false, false, false, MdJekyllInclude.class).isEmpty()) return true;
+
+        try {
+            return FileBasedIndex.getInstance().getContainingFiles(NAME, anchorKey(anchorId), GlobalSearchScope.fileScope(project, virtualFile)).contains(virtualFile);
+        } catch (IndexNotReadyException e) {
+            return true;
+        }
+    }
+}
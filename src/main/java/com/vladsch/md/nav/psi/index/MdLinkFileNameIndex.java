@@ -0,0 +1,83 @@
+// Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+
+package com.vladsch.md.nav.psi.index;
+
+import com.intellij.psi.stubs.StubIndexKey;
+import com.vladsch.md.nav.psi.element.MdLinkElement;
+import com.vladsch.md.nav.util.LinkRef;
+import com.vladsch.md.nav.util.PathInfo;
+import com.vladsch.md.nav.util.WikiLinkRef;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Link elements by normalized target file name, used to find links to a file without testing all link keys in the project.
+ * <p>
+ * Each link is indexed under its file name without extension and under its wiki page file name,
+ * with characters wiki links treat as equivalent mapped to {@code -}. Keys only select candidate links,
+ * links still have to be resolved to test if they refer to the file.
+ */
+public class MdLinkFileNameIndex extends MdStubIndexExtension<MdLinkElement> {
+    public static final StubIndexKey<String, MdLinkElement> KEY = StubIndexKey.createIndexKey("markdown.link-file-name.index");
+    private static final MdLinkFileNameIndex ourInstance = new MdLinkFileNameIndex();
+
+    public static MdLinkFileNameIndex getInstance() {
+        return ourInstance;
+    }
+
+    @NotNull
+    public StubIndexKey<String, MdLinkElement> getKey() {
+        return KEY;
+    }
+
+    /**
+     * Normalize file name to index key, wiki link space equivalent characters are mapped to {@code -}
+     *
+     * @param fileName file name or wiki link file name
+     * @return index key
+     */
+    @NotNull
+    public static String fileNameKey(@NotNull String fileName) {
+        return WikiLinkRef.Companion.getWikiLinkMatchRegex().replace(fileName, "-");
+    }
+
+    /**
+     * Index keys of link
+     *
+     * @param linkRefWithAnchorText link address with anchor, as stored in link element stub
+     * @return index keys
+     */
+    @NotNull
+    public static Set<String> linkKeys(@NotNull String linkRefWithAnchorText) {
+        LinkedHashSet<String> keys = new LinkedHashSet<>();
+        int pos = linkRefWithAnchorText.indexOf('#');
+        String linkAddress = pos >= 0 ? linkRefWithAnchorText.substring(0, pos) : linkRefWithAnchorText;
+
+        keys.add(fileNameKey(new PathInfo(LinkRef.urlDecode(linkAddress)).getFileNameNoExt()));
+
+        String wikiFileName = WikiLinkRef.linkAsFile(linkAddress);
+        keys.add(fileNameKey(wikiFileName));
+        if (pos >= 0) {
+            // wiki page file names can have anchor looking text in them
+            keys.add(fileNameKey(wikiFileName + linkRefWithAnchorText.substring(pos)));
+        }
+        return keys;
+    }
+
+    /**
+     * Index keys of links which could refer to file
+     *
+     * @param fileName file name with extension
+     * @return index keys
+     */
+    @NotNull
+    public static Set<String> fileKeys(@NotNull String fileName) {
+        LinkedHashSet<String> keys = new LinkedHashSet<>();
+        PathInfo pathInfo = new PathInfo(fileName);
+        keys.add(fileNameKey(pathInfo.getFileNameNoExt()));
+        keys.add(fileNameKey(pathInfo.getFileName()));
+        return keys;
+    }
+}
@@ -12,9 +12,11 @@ import com.intellij.psi.search.GlobalSearchScope
 import com.intellij.util.Processor
 import com.vladsch.md.nav.psi.element.*
 import com.vladsch.md.nav.psi.index.MdLinkElementIndex
+import com.vladsch.md.nav.psi.index.MdLinkFileNameIndex
 import com.vladsch.md.nav.psi.index.MdReferenceableTextIndex
 import com.vladsch.md.nav.psi.text.MdPlainTextElementImpl
 import com.vladsch.md.nav.psi.text.MdPlainTextElementPsiReference
+import com.vladsch.md.nav.settings.MdApplicationSettings
 import com.vladsch.md.nav.util.*
 import com.vladsch.md.nav.vcs.GitHubLinkResolver
 import java.util.regex.PatternSyntaxException
@@ -46,79 +48,93 @@ class MdIndexUtil {
             val fileNameNoExt = pathInfo.fileNameNoExt
             val fileName = pathInfo.fileName
             val keys = ArrayList<String>()
+            val regexCache = MdRegexCache.instance
 
-            MdLinkElementIndex.getInstance().processAllKeys(project) { key ->
-                //                System.out.println("Key: $key")
-                val linkRefAddress: String
-                var linkAnchor: String? = null
-                val pos = key.indexOf('#')
-                if (pos >= 0) {
-                    // chop off at last # and use that
-                    if (matchLinkAnchor) linkAnchor = "#" + key.substring(pos + 1)
-                    linkRefAddress = linkAsFileName(key.substring(0, pos))
-                } else {
-                    linkRefAddress = linkAsFileName(key)
-                }
+            // same link can be found under several file name keys
+            val links = LinkedHashSet<MdLinkElement<*>>()
 
-                if (useWikiPageMatching) {
-                    // have to match several characters for spaces
-                    var handled = false
-                    try {
-                        val regex = WikiLinkRef.linkAsFileRegex(linkRefAddress).toRegex()
-                        if (fileNameNoExt.matches(regex) || fileName.matches(regex)) {
-                            // have possible match, we process this key now
-                            keys.add(key)
-                            handled = true
-                        }
-                    } catch (e: PatternSyntaxException) {
-                        // invalid link address, happens when url is wrapped in ()
-                        handled = true
+            if (MdApplicationSettings.instance.debugSettings.useLinkFileNameIndex) {
+                for (key in MdLinkFileNameIndex.fileKeys(refElement.name)) {
+                    for (link in MdLinkFileNameIndex.getInstance().get(key, project, effectiveSearchScope)) {
+                        // diagnostic/3117, ClassCastException: cannot be cast to MdLinkElement
+                        if (link is MdLinkElement<*>) links.add(link)
+                    }
+                }
+            } else {
+                MdLinkElementIndex.getInstance().processAllKeys(project) { key ->
+                    //                System.out.println("Key: $key")
+                    val linkRefAddress: String
+                    var linkAnchor: String? = null
+                    val pos = key.indexOf('#')
+                    if (pos >= 0) {
+                        // chop off at last # and use that
+                        if (matchLinkAnchor) linkAnchor = "#" + key.substring(pos + 1)
+                        linkRefAddress = linkAsFileName(key.substring(0, pos))
+                    } else {
+                        linkRefAddress = linkAsFileName(key)
                     }
 
-                    if (linkAnchor != null && !handled) {
-                        // wiki pages can have anchor looking text embedded in them, include matches just in case
+                    if (useWikiPageMatching) {
+                        // have to match several characters for spaces
+                        var handled = false
                         try {
-                            val regex1 = "$linkRefAddress\\Q$linkAnchor\\E".toRegex()
-                            if (fileNameNoExt.matches(regex1) || fileName.matches(regex1)) {
+                            val regex = regexCache.getRegex(WikiLinkRef.linkAsFileRegex(linkRefAddress))
+                            if (fileNameNoExt.matches(regex) || fileName.matches(regex)) {
                                 // have possible match, we process this key now
                                 keys.add(key)
+                                handled = true
                             }
                         } catch (e: PatternSyntaxException) {
                             // invalid link address, happens when url is wrapped in ()
+                            handled = true
+                        }
+
+                        if (linkAnchor != null && !handled) {
+                            // wiki pages can have anchor looking text embedded in them, include matches just in case
+                            try {
+                                val regex1 = regexCache.getRegex("$linkRefAddress\\Q$linkAnchor\\E")
+                                if (fileNameNoExt.matches(regex1) || fileName.matches(regex1)) {
+                                    // have possible match, we process this key now
+                                    keys.add(key)
+                                }
+                            } catch (e: PatternSyntaxException) {
+                                // invalid link address, happens when url is wrapped in ()
+                            }
+                        }
+                    } else {
+                        if (fileNameNoExt == linkRefAddress) {
+                            // have possible match, we process this key now
+                            keys.add(key)
                         }
                     }
-                } else {
-                    if (fileNameNoExt == linkRefAddress) {
-                        // have possible match, we process this key now
-                        keys.add(key)
-                    }
+
+                    true
                 }
 
-                true
+                for (key in keys) {
+                    for (link in MdLinkElementIndex.getInstance().get(key, project, effectiveSearchScope)) {
+                        // diagnostic/3117, ClassCastException: cannot be cast to MdLinkElement
+                        if (link is MdLinkElement<*>) links.add(link)
+                    }
+                }
             }
 
-            for (key in keys) {
-                try {
-                    val links: MutableCollection<*> = MdLinkElementIndex.getInstance().get(key, project, effectiveSearchScope)
-                    for (link in links) {
-                        // diagnostic/3117, ClassCastException: cannot be cast to MdLinkElement
-                        if (link !is MdLinkElement<*>) continue
-                        assert(MdPsiImplUtil.inScope(effectiveSearchScope, link.containingFile))
+            try {
+                for (link in links) {
+                    assert(MdPsiImplUtil.inScope(effectiveSearchScope, link.containingFile))
 
-                        val reference = link.linkRefElement?.reference ?: continue
-                        val resolve = reference.resolve() ?: continue
-                        if (resolve === refElement) {
-                            if (!consumer.process(reference)) return false
-                        }
-                    }
-                } catch (e: Throwable) {
-                    if (e is ControlFlowException) {
-                        throw e
-                    } else {
-                        LOG.error(e)
-                        break
+                    val reference = link.linkRefElement?.reference ?: continue
+                    val resolve = reference.resolve() ?: continue
+                    if (resolve === refElement) {
+                        if (!consumer.process(reference)) return false
                     }
                 }
+            } catch (e: Throwable) {
+                if (e is ControlFlowException) {
+                    throw e
+                } else {
+                    LOG.error(e)
+                }
             }
 
             keys.clear()
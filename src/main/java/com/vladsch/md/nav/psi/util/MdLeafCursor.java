@@ -0,0 +1,115 @@
+// Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+
+package com.vladsch.md.nav.psi.util;
+
+import com.intellij.lang.ASTNode;
+import com.intellij.psi.tree.IElementType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.function.Predicate;
+
+/**
+ * Cursor over leaf nodes of an AST node, in document order
+ * <p>
+ * Leaves are nodes without children, found by walking first child, next sibling and parent links of the tree,
+ * so iteration does not allocate. Leading and trailing leaves can be left out with {@link #trim(Predicate)}.
+ */
+public class MdLeafCursor {
+    private final @NotNull ASTNode myRoot;
+    private @Nullable ASTNode myFirst;
+    private @Nullable ASTNode myLast;
+    private @Nullable ASTNode myNext;
+
+    public MdLeafCursor(@NotNull ASTNode root) {
+        myRoot = root;
+        myFirst = firstLeaf(root);
+        myLast = lastLeaf(root);
+        myNext = myFirst;
+    }
+
+    /**
+     * Leave out leading and trailing leaves whose element type is not accepted, and restart the cursor
+     *
+     * @param accepted predicate for element types of leaves to keep at start and end
+     */
+    public void trim(@NotNull Predicate<IElementType> accepted) {
+        while (myFirst != null && !accepted.test(myFirst.getElementType())) {
+            if (myFirst == myLast) {
+                myFirst = null;
+                myLast = null;
+                break;
+            }
+            myFirst = nextLeaf(myFirst);
+        }
+
+        // first leaf is accepted so this stops at it at the latest
+        while (myLast != null && !accepted.test(myLast.getElementType())) {
+            myLast = previousLeaf(myLast);
+        }
+
+        myNext = myFirst;
+    }
+
+    public boolean isEmpty() {
+        return myFirst == null;
+    }
+
+    @Nullable
+    public ASTNode getFirst() {
+        return myFirst;
+    }
+
+    @Nullable
+    public ASTNode getLast() {
+        return myLast;
+    }
+
+    /**
+     * @return next leaf or null if no more leaves
+     */
+    @Nullable
+    public ASTNode next() {
+        ASTNode node = myNext;
+        if (node != null) {
+            myNext = node == myLast ? null : nextLeaf(node);
+        }
+        return node;
+    }
+
+    @NotNull
+    private static ASTNode firstLeaf(@NotNull ASTNode node) {
+        ASTNode child;
+        while ((child = node.getFirstChildNode()) != null) node = child;
+        return node;
+    }
+
+    @NotNull
+    private static ASTNode lastLeaf(@NotNull ASTNode node) {
+        ASTNode child;
+        while ((child = node.getLastChildNode()) != null) node = child;
+        return node;
+    }
+
+    @Nullable
+    private ASTNode nextLeaf(@NotNull ASTNode node) {
+        while (node != myRoot) {
+            ASTNode next = node.getTreeNext();
+            if (next != null) return firstLeaf(next);
+            node = node.getTreeParent();
+            if (node == null) break;
+        }
+        return null;
+    }
+
+    @Nullable
+    private ASTNode previousLeaf(@NotNull ASTNode node) {
+        while (node != myRoot) {
+            ASTNode previous = node.getTreePrev();
+            if (previous != null) return lastLeaf(previous);
+            node = node.getTreeParent();
+            if (node == null) break;
+        }
+        return null;
+    }
+}
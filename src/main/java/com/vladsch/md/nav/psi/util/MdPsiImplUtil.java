@@ -32,7 +32,9 @@ import com.vladsch.md.nav.parser.MdFactoryContext;
 import com.vladsch.md.nav.parser.cache.MdCachedFileElements;
 import com.vladsch.md.nav.parser.cache.SourcedElementConsumer;
 import com.vladsch.md.nav.psi.element.*;
+import com.vladsch.md.nav.psi.index.MdAnchorIdIndex;
 import com.vladsch.md.nav.settings.ListIndentationType;
+import com.vladsch.md.nav.settings.MdApplicationSettings;
 import com.vladsch.md.nav.settings.MdParserSettings;
 import com.vladsch.md.nav.util.FileRef;
 import com.vladsch.md.nav.util.LinkRef;
@@ -760,6 +762,26 @@ public class MdPsiImplUtil {
             boolean wantOuterElements
     ) {
 
+        if (referenceId != null && MdApplicationSettings.getInstance().getDebugSettings().getUseAnchorIdIndex()) {
+            ArrayList<MdAnchorTarget> elements = new ArrayList<>();
+            if (!MdAnchorIdIndex.mayHaveAnchor(containingFile, referenceId)) return elements;
+
+            // anchor target map keys match all anchor ids equal to reference id, exact match is still needed
+            for (MdAnchorTarget anchorTarget : MdCachedFileElements.getAnchorTargets(containingFile, referenceId, wantOuterElements)) {
+                boolean isTarget;
+                if (anchorTarget instanceof MdRefAnchor) {
+                    isTarget = anchorTarget.isReferenceFor(referenceId);
+                } else if (anchorTarget instanceof MdAttributeIdValue) {
+                    isTarget = referenceId.equals(anchorTarget.getText());
+                } else {
+                    isTarget = referenceId.equals(anchorTarget.getAnchorReferenceId());
+                }
+
+                if (isTarget) elements.add(anchorTarget);
+            }
+            return elements;
+        }
+
         List<MdRefAnchor> anchors = getRefAnchorElements(containingFile, referenceId, wantOuterElements);
         ArrayList<MdAnchorTarget> elements = new ArrayList<>(anchors);
 
@@ -998,9 +1020,9 @@ public class MdPsiImplUtil {
                 } else {
                     if (PsiUtils.isTypeOf(type, myLexParserState.TYPOGRAPHIC_MARKER_SET)) {
                         charOut.append(node.getChars());
-                    } else if (myLexParserState.INLINE_SPECIAL_TEXT.contains(type)) {
+                    } else if (PsiUtils.isTypeOf(type, myLexParserState.INLINE_SPECIAL_TEXT_SET)) {
                         charOut.append(node.getChars().subSequence(1, node.getTextLength()));
-                    } else if (myLexParserState.INLINE_PLAIN_TEXT.contains(type) || type == TEXT || type == HEADER_TEXT) {
+                    } else if (PsiUtils.isTypeOf(type, myLexParserState.INLINE_PLAIN_TEXT_SET) || type == TEXT || type == HEADER_TEXT) {
                         charOut.append(node.getChars());
                     }
                 }
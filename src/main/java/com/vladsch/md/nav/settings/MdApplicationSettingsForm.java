@@ -65,6 +65,7 @@ public class MdApplicationSettingsForm extends ApplicationSettingsContainer {
     JComboBox<String> myDocumentIcon;
     JComboBox<String> myWikiIcon;
     private JLabel myImageCacheUse;
+    JSpinner myImageCacheMaxSize;
     private JButton myClearImageCache;
     private JPanel myAddToCopyPathPanel;
 
@@ -88,6 +89,7 @@ public class MdApplicationSettingsForm extends ApplicationSettingsContainer {
                         component(myCopyUpsourcePathWithLineNumbers, i::getCopyUpsourcePathWithLineNumbers, i::setCopyUpsourcePathWithLineNumbers),
                         component(myUseUpsourceURL, i::getUseUpsourceURL, i::setUseUpsourceURL),
                         component(myZoomFactor, i::getZoomFactor, i::setZoomFactor),
+                        component(myImageCacheMaxSize, i::getImageCacheMaxSize, i::setImageCacheMaxSize),
                         component(DocumentIconTypes.ADAPTER, myDocumentIcon, i::getDocumentIcon, i::setDocumentIcon),
                         component(DocumentIconTypes.ADAPTER, myWikiIcon, i::getWikiIcon, i::setWikiIcon),
                 };
@@ -107,24 +109,34 @@ public class MdApplicationSettingsForm extends ApplicationSettingsContainer {
 
         myClearImageCache.addActionListener(e -> clearImageCache());
 
-        String imageCacheSizeType;
-        long imageCacheUse = MdImageCache.getInstance().fileSize();
-        int cachedFiles = MdImageCache.getInstance().fileCount();
-        if (imageCacheUse < 1024000) {
-            imageCacheSizeType = "B";
-        } else if (imageCacheUse < 1024 * 1024 * 1000) {
-            imageCacheSizeType = "KB";
-            imageCacheUse /= 1024;
+        updateImageCacheUse();
+    }
+
+    void updateImageCacheUse() {
+        MdImageCache imageCache = MdImageCache.getInstance();
+        myImageCacheUse.setText(MdBundle.message("settings.image-cache.use.label"
+                , String.format("%,d", imageCache.fileCount())
+                , formatSize(imageCache.fileSize())
+                , String.format("%,d", imageCache.hits())
+                , String.format("%,d", imageCache.misses())
+                , String.format("%,d", imageCache.evictions())
+        ));
+    }
+
+    @NotNull
+    private static String formatSize(long size) {
+        if (size < 1024000) {
+            return String.format("%,d B", size);
+        } else if (size < 1024 * 1024 * 1000) {
+            return String.format("%,d KB", size / 1024);
         } else {
-            imageCacheSizeType = "MB";
-            imageCacheUse /= 1024 * 1024;
+            return String.format("%,d MB", size / (1024 * 1024));
         }
-        myImageCacheUse.setText(String.format("%,d: %,d %s", cachedFiles, imageCacheUse, imageCacheSizeType));
     }
 
     void clearImageCache() {
         MdImageCache.getInstance().clearCache();
-        myImageCacheUse.setText("0: 0 B");
+        updateImageCacheUse();
     }
 
     private void createUIComponents() {
@@ -146,6 +158,9 @@ public class MdApplicationSettingsForm extends ApplicationSettingsContainer {
         JSpinner.NumberEditor decimalFormat = new JSpinner.NumberEditor(myZoomFactor, "0.00");
         myZoomFactor.setEditor(decimalFormat);
 
+        final SpinnerNumberModel imageCacheModel = new SpinnerNumberModel(MdDocumentSettings.DEFAULT_IMAGE_CACHE_MAX_SIZE, MdDocumentSettings.MIN_IMAGE_CACHE_MAX_SIZE, MdDocumentSettings.MAX_IMAGE_CACHE_MAX_SIZE, 8);
+        myImageCacheMaxSize = new JSpinner(imageCacheModel);
+
         myPopupMenuActions = new JBPopupMenu("Actions");
         final JBMenuItem copyToProjectDefaults = new JBMenuItem(MdBundle.message("settings.actions.popup.copy-to-project-defaults.label"));
         final JBMenuItem copyFromProjectDefaults = new JBMenuItem(MdBundle.message("settings.actions.popup.copy-from-project-defaults.label"));
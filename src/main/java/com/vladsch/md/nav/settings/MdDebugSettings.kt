@@ -26,6 +26,16 @@ class MdDebugSettings(private val mySettingsExtensions: MdExtendableSettingsImpl
     var showSizePreferencesDialog: Boolean = false
     var showTextHexDialog: Boolean = false
     var useFileLinkCache: Boolean = true
+    var useIncrementalLexer: Boolean = true
+    var usePreviewBlockPatching: Boolean = true
+    var useBlockRenderCache: Boolean = true
+    var useFileNameIndex: Boolean = true
+    var useAnchorIdIndex: Boolean = true
+    var useLinkFileNameIndex: Boolean = true
+    var useAsyncPlantUmlRendering: Boolean = true
+    var useTargetedHighlighterRestart: Boolean = true
+    var useIncrementalSwingPreview: Boolean = true
+    var useRangeFormatting: Boolean = true
 
     @Deprecated("Use DocumentSettings instead")
     var yandexFromLanguage: String = "de"
@@ -61,6 +71,16 @@ class MdDebugSettings(private val mySettingsExtensions: MdExtendableSettingsImpl
         this.showSizePreferencesDialog = other.showSizePreferencesDialog
         this.showTextHexDialog = other.showTextHexDialog
         this.useFileLinkCache = other.useFileLinkCache
+        this.useIncrementalLexer = other.useIncrementalLexer
+        this.usePreviewBlockPatching = other.usePreviewBlockPatching
+        this.useBlockRenderCache = other.useBlockRenderCache
+        this.useFileNameIndex = other.useFileNameIndex
+        this.useAnchorIdIndex = other.useAnchorIdIndex
+        this.useLinkFileNameIndex = other.useLinkFileNameIndex
+        this.useAsyncPlantUmlRendering = other.useAsyncPlantUmlRendering
+        this.useTargetedHighlighterRestart = other.useTargetedHighlighterRestart
+        this.useIncrementalSwingPreview = other.useIncrementalSwingPreview
+        this.useRangeFormatting = other.useRangeFormatting
 
         if (withExtensions) mySettingsExtensions.copyFrom(other)
     }
@@ -89,7 +109,17 @@ class MdDebugSettings(private val mySettingsExtensions: MdExtendableSettingsImpl
         StringAttribute("translateTo", true, { yandexToLanguage }, { yandexToLanguage = it }),
         StringAttribute("translateKey", true, { yandexKey }, { yandexKey = it }),
         BooleanAttribute("showTextHexDialog", { showTextHexDialog }, { showTextHexDialog = it }),
-        BooleanAttribute("useFileLinkCache", { useFileLinkCache }, { useFileLinkCache = it })
+        BooleanAttribute("useFileLinkCache", { useFileLinkCache }, { useFileLinkCache = it }),
+        BooleanAttribute("useIncrementalLexer", { useIncrementalLexer }, { useIncrementalLexer = it }),
+        BooleanAttribute("usePreviewBlockPatching", { usePreviewBlockPatching }, { usePreviewBlockPatching = it }),
+        BooleanAttribute("useBlockRenderCache", { useBlockRenderCache }, { useBlockRenderCache = it }),
+        BooleanAttribute("useFileNameIndex", { useFileNameIndex }, { useFileNameIndex = it }),
+        BooleanAttribute("useAnchorIdIndex", { useAnchorIdIndex }, { useAnchorIdIndex = it }),
+        BooleanAttribute("useLinkFileNameIndex", { useLinkFileNameIndex }, { useLinkFileNameIndex = it }),
+        BooleanAttribute("useAsyncPlantUmlRendering", { useAsyncPlantUmlRendering }, { useAsyncPlantUmlRendering = it }),
+        BooleanAttribute("useTargetedHighlighterRestart", { useTargetedHighlighterRestart }, { useTargetedHighlighterRestart = it }),
+        BooleanAttribute("useIncrementalSwingPreview", { useIncrementalSwingPreview }, { useIncrementalSwingPreview = it }),
+        BooleanAttribute("useRangeFormatting", { useRangeFormatting }, { useRangeFormatting = it })
     ))
 
     companion object {
@@ -116,6 +146,16 @@ class MdDebugSettings(private val mySettingsExtensions: MdExtendableSettingsImpl
         if (showSizePreferencesDialog != other.showSizePreferencesDialog) return false
         if (showTextHexDialog != other.showTextHexDialog) return false
         if (useFileLinkCache != other.useFileLinkCache) return false
+        if (useIncrementalLexer != other.useIncrementalLexer) return false
+        if (usePreviewBlockPatching != other.usePreviewBlockPatching) return false
+        if (useBlockRenderCache != other.useBlockRenderCache) return false
+        if (useFileNameIndex != other.useFileNameIndex) return false
+        if (useAnchorIdIndex != other.useAnchorIdIndex) return false
+        if (useLinkFileNameIndex != other.useLinkFileNameIndex) return false
+        if (useAsyncPlantUmlRendering != other.useAsyncPlantUmlRendering) return false
+        if (useTargetedHighlighterRestart != other.useTargetedHighlighterRestart) return false
+        if (useIncrementalSwingPreview != other.useIncrementalSwingPreview) return false
+        if (useRangeFormatting != other.useRangeFormatting) return false
 
         return mySettingsExtensions == other
     }
@@ -138,6 +178,16 @@ class MdDebugSettings(private val mySettingsExtensions: MdExtendableSettingsImpl
         result += 31 * result + showSizePreferencesDialog.hashCode()
         result += 31 * result + showTextHexDialog.hashCode()
         result += 31 * result + useFileLinkCache.hashCode()
+        result += 31 * result + useIncrementalLexer.hashCode()
+        result += 31 * result + usePreviewBlockPatching.hashCode()
+        result += 31 * result + useBlockRenderCache.hashCode()
+        result += 31 * result + useFileNameIndex.hashCode()
+        result += 31 * result + useAnchorIdIndex.hashCode()
+        result += 31 * result + useLinkFileNameIndex.hashCode()
+        result += 31 * result + useAsyncPlantUmlRendering.hashCode()
+        result += 31 * result + useTargetedHighlighterRestart.hashCode()
+        result += 31 * result + useIncrementalSwingPreview.hashCode()
+        result += 31 * result + useRangeFormatting.hashCode()
         return result
     }
 }
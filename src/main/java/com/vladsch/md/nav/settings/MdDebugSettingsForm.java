@@ -4,16 +4,20 @@ package com.vladsch.md.nav.settings;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.ModalityState;
 import com.intellij.ui.components.JBCheckBox;
+import com.vladsch.md.nav.parser.cache.data.CachedDataStatistics;
 import com.vladsch.md.nav.settings.api.ApplicationSettingsContainer;
+import com.vladsch.md.nav.util.MdRegexCache;
 import com.vladsch.plugin.util.ui.Settable;
 import com.vladsch.plugin.util.ui.SettingsComponents;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import javax.swing.JButton;
 import javax.swing.JComponent;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JSpinner;
+import javax.swing.JTextArea;
 import javax.swing.SpinnerNumberModel;
 import java.awt.event.ActionListener;
 
@@ -36,6 +40,8 @@ public class MdDebugSettingsForm extends ApplicationSettingsContainer {
     JBCheckBox myShowSizePreferencesDialog;
     JBCheckBox myShowTextHexDialog;
     JBCheckBox myUseFileLinkCache;
+    JTextArea myCachedDataStatistics;
+    JButton myResetCachedDataStatistics;
     private JPanel myExtensionsPanel;
 
     @Nullable private ActionListener myUpdateListener;
@@ -74,6 +80,11 @@ public class MdDebugSettingsForm extends ApplicationSettingsContainer {
         };
 
         myShowSizePreferencesDialog.addActionListener((event) -> updateOptionalSettings());
+        myResetCachedDataStatistics.addActionListener((event) -> {
+            CachedDataStatistics.clear();
+            MdRegexCache.getInstance().resetStatistics();
+            updateFormOnReshow(false);
+        });
 
         onFormCreated();
 
@@ -98,7 +109,8 @@ public class MdDebugSettingsForm extends ApplicationSettingsContainer {
     }
 
     public void updateFormOnReshow(boolean isInitialShow) {
-
+        myCachedDataStatistics.setText(CachedDataStatistics.getReport() + "\n" + MdRegexCache.getInstance().getReport());
+        myCachedDataStatistics.setCaretPosition(0);
     }
 
     @Override
@@ -21,6 +21,7 @@ class MdDocumentSettings(private val mySettingsExtensions: MdExtendableSettingsI
     var hideToolbar: Boolean = false
     var htmlLangInjections: Boolean = true
     var iconGutters: Boolean = true
+    var imageCacheMaxSize: Int = DEFAULT_IMAGE_CACHE_MAX_SIZE
     var joinStripPrefix: Boolean = false
     var maxBreadcrumbText: Int = DEFAULT_MAX_BREADCRUMB_TEXT
     var multiLineImageUrlInjections: Boolean = true
@@ -109,6 +110,7 @@ class MdDocumentSettings(private val mySettingsExtensions: MdExtendableSettingsI
         this.hideToolbar = other.hideToolbar
         this.htmlLangInjections = other.htmlLangInjections
         this.iconGutters = other.iconGutters
+        this.imageCacheMaxSize = other.imageCacheMaxSize
         this.joinStripPrefix = other.joinStripPrefix
         this.maxBreadcrumbText = other.maxBreadcrumbText
         this.multiLineImageUrlInjections = other.multiLineImageUrlInjections
@@ -159,6 +161,7 @@ class MdDocumentSettings(private val mySettingsExtensions: MdExtendableSettingsI
             BooleanAttribute("hideToolbar", { hideToolbar }, { hideToolbar = it }),
             BooleanAttribute("htmlLangInjections", { htmlLangInjections }, { htmlLangInjections = it }),
             BooleanAttribute("iconGutters", { iconGutters }, { iconGutters = it }),
+            IntAttribute("imageCacheMaxSize", { imageCacheMaxSize }, { imageCacheMaxSize = if (it in MIN_IMAGE_CACHE_MAX_SIZE..MAX_IMAGE_CACHE_MAX_SIZE) it else DEFAULT_IMAGE_CACHE_MAX_SIZE }),
             BooleanAttribute("joinStripPrefix", { joinStripPrefix }, { joinStripPrefix = it }),
             IntAttribute("maxBreadcrumbText", { maxBreadcrumbText }, { maxBreadcrumbText = it }),
             BooleanAttribute("multiLineImageUrlInjections", { multiLineImageUrlInjections }, { multiLineImageUrlInjections = it }),
@@ -209,6 +212,9 @@ class MdDocumentSettings(private val mySettingsExtensions: MdExtendableSettingsI
         const val DEFAULT_PREVIEW_DELAY: Int = 500
         const val MIN_PREVIEW_DELAY: Int = 50
         const val MAX_PREVIEW_DELAY: Int = 1000
+        const val DEFAULT_IMAGE_CACHE_MAX_SIZE: Int = 256 // MB
+        const val MIN_IMAGE_CACHE_MAX_SIZE: Int = 8
+        const val MAX_IMAGE_CACHE_MAX_SIZE: Int = 8192
     }
 
     override fun equals(other: Any?): Boolean {
@@ -225,6 +231,7 @@ class MdDocumentSettings(private val mySettingsExtensions: MdExtendableSettingsI
         if (hideToolbar != other.hideToolbar) return false
         if (htmlLangInjections != other.htmlLangInjections) return false
         if (iconGutters != other.iconGutters) return false
+        if (imageCacheMaxSize != other.imageCacheMaxSize) return false
         if (joinStripPrefix != other.joinStripPrefix) return false
         if (maxBreadcrumbText != other.maxBreadcrumbText) return false
         if (multiLineImageUrlInjections != other.multiLineImageUrlInjections) return false
@@ -268,6 +275,7 @@ class MdDocumentSettings(private val mySettingsExtensions: MdExtendableSettingsI
         result += 31 * result + hideToolbar.hashCode()
         result += 31 * result + htmlLangInjections.hashCode()
         result += 31 * result + iconGutters.hashCode()
+        result += 31 * result + imageCacheMaxSize.hashCode()
         result += 31 * result + joinStripPrefix.hashCode()
         result += 31 * result + maxBreadcrumbText.hashCode()
         result += 31 * result + multiLineImageUrlInjections.hashCode()
@@ -26,7 +26,7 @@ class MdGrammarCheckingStrategy : GrammarCheckingStrategy {
         MdTokenSets.HEADER_TEXT_SET
     )
 
-    private val inlineNonText: TokenSet = TokenSet.create(*lexerState.INLINE_NON_PLAIN_TEXT.toTypedArray())
+    private val inlineNonText: TokenSet = lexerState.INLINE_NON_PLAIN_TEXT_SET
 
     override fun isMyContextRoot(element: PsiElement): Boolean {
         val isRoot = element.node.isTypeIn(contextRoots)
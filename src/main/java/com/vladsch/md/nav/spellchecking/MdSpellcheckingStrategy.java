@@ -24,7 +24,6 @@ import org.jetbrains.annotations.NotNull;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.List;
 import java.util.function.Function;
 
 import static com.vladsch.md.nav.psi.util.MdTypes.*;
@@ -235,19 +234,19 @@ public class MdSpellcheckingStrategy extends SpellcheckingStrategy {
     );
 
     protected static Tokenizer<?> TEXT_BLOCK_TOKENIZER = new MdTextTokenizer();
-    private final List<IElementType> INLINE_NON_PLAIN_TEXT;
+    private final TokenSet INLINE_NON_PLAIN_TEXT_SET;
     private final TokenSet TYPOGRAPHIC_MARKER_SET;
     private final TokenSet TEXT_SET;
-    private final List<IElementType> INLINE_PLAIN_TEXT;
+    private final TokenSet INLINE_PLAIN_TEXT_SET;
     private final MdApplicationSettings myApplicationSettings;
 
     public MdSpellcheckingStrategy() {
         LexParserState.State lexParserState = LexParserState.getInstance().getState();
 
-        INLINE_NON_PLAIN_TEXT = lexParserState.INLINE_NON_PLAIN_TEXT;
+        INLINE_NON_PLAIN_TEXT_SET = lexParserState.INLINE_NON_PLAIN_TEXT_SET;
         TYPOGRAPHIC_MARKER_SET = lexParserState.TYPOGRAPHIC_MARKER_SET;
         TEXT_SET = lexParserState.TEXT_SET;
-        INLINE_PLAIN_TEXT = lexParserState.INLINE_PLAIN_TEXT;
+        INLINE_PLAIN_TEXT_SET = lexParserState.INLINE_PLAIN_TEXT_SET;
         myApplicationSettings = MdApplicationSettings.getInstance();
     }
 
@@ -261,9 +260,9 @@ public class MdSpellcheckingStrategy extends SpellcheckingStrategy {
             if (elementType != COMMENT_TEXT
                     && elementType != BLOCK_COMMENT_TEXT
                     && elementType != CODE
-                    && !(isTypeOf(elementType, TEXT_SET) || INLINE_PLAIN_TEXT.contains(elementType))
+                    && !(isTypeOf(elementType, TEXT_SET) || isTypeOf(elementType, INLINE_PLAIN_TEXT_SET))
                     &&
-                    (INLINE_NON_PLAIN_TEXT.contains(elementType)
+                    (isTypeOf(elementType, INLINE_NON_PLAIN_TEXT_SET)
                             || isTypeOf(elementType, TYPOGRAPHIC_MARKER_SET) // these are markers
                             || isTypeOf(elementType, NO_SPELL_CHECK_SET)
                             || isTypeOf(elementType, PARENT_SPELL_CHECK_SET))) {
@@ -6,78 +6,62 @@ import com.intellij.lang.ASTNode;
 import com.intellij.openapi.util.TextRange;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.tree.TokenSet;
 import com.intellij.spellchecker.inspections.TextSplitter;
 import com.intellij.spellchecker.tokenizer.TokenConsumer;
 import com.intellij.spellchecker.tokenizer.Tokenizer;
-import com.vladsch.flexmark.util.sequence.RepeatedSequence;
 import com.vladsch.md.nav.parser.LexParserState;
+import com.vladsch.md.nav.psi.util.MdLeafCursor;
 import com.vladsch.md.nav.psi.util.MdTypes;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Predicate;
 
 import static com.vladsch.md.nav.spellchecking.MdSpellcheckingStrategy.NO_SPELL_CHECK_SET;
 import static com.vladsch.plugin.util.psi.PsiUtils.isTypeOf;
 
 public class MdTextTokenizer extends Tokenizer<PsiElement> {
 
-    private final List<IElementType> INLINE_NON_PLAIN_TEXT;
+    private final TokenSet INLINE_NON_PLAIN_TEXT_SET;
+    private final Predicate<IElementType> mySpellCheckedType;
 
     public MdTextTokenizer() {
-        INLINE_NON_PLAIN_TEXT = LexParserState.getInstance().getState().INLINE_NON_PLAIN_TEXT;
-    }
-
-    void flatLeafNodes(ASTNode node, List<ASTNode> leafElements) {
-        ASTNode astNode = node.getFirstChildNode();
-        if (astNode == null) {
-            // must be leaf
-            leafElements.add(node);
-        } else {
-            do {
-                flatLeafNodes(astNode, leafElements);
-                astNode = astNode.getTreeNext();
-            } while (astNode != null);
-        }
+        INLINE_NON_PLAIN_TEXT_SET = LexParserState.getInstance().getState().INLINE_NON_PLAIN_TEXT_SET;
+        mySpellCheckedType = this::spellCheckedType;
     }
 
     protected boolean spellCheckedType(IElementType elementType) {
         return elementType == MdTypes.COMMENT_TEXT || elementType == MdTypes.BLOCK_COMMENT_TEXT
-                || !(isTypeOf(elementType, NO_SPELL_CHECK_SET) || INLINE_NON_PLAIN_TEXT.contains(elementType));
-    }
-
-    protected List<ASTNode> getFlatNodes(@NotNull PsiElement element) {
-        ArrayList<ASTNode> leafNodes = new ArrayList<>();
-        flatLeafNodes(element.getNode(), leafNodes);
-        return leafNodes;
+                || !(isTypeOf(elementType, NO_SPELL_CHECK_SET) || isTypeOf(elementType, INLINE_NON_PLAIN_TEXT_SET));
     }
 
     protected boolean useRename() {
         return false;
     }
 
-    protected List<ASTNode> getSpellCheckableNodes(@NotNull PsiElement element) {
-        // need a flat list of leaf elements, not combination nodes
-        List<ASTNode> leafNodes = getFlatNodes(element);
-
-        int iMax = leafNodes.size();
-        int i = 0;
-
-        // remove leading non-spellchecking nodes
-        while (i < iMax) {
-            IElementType elementType = leafNodes.get(i).getElementType();
-            if (spellCheckedType(elementType)) break;
-            i++;
-        }
+    /**
+     * Get cursor over leaf nodes of element without leading and trailing non-spellchecking nodes
+     *
+     * @param element element
+     * @return leaf cursor
+     */
+    @NotNull
+    protected MdLeafCursor getSpellCheckableLeaves(@NotNull PsiElement element) {
+        // need leaf elements, not combination nodes
+        MdLeafCursor cursor = new MdLeafCursor(element.getNode());
+        cursor.trim(mySpellCheckedType);
+        return cursor;
+    }
 
-        // remove trailing non-spellchecking nodes
-        while (i < iMax) {
-            IElementType elementType = leafNodes.get(i).getElementType();
-            if (spellCheckedType(elementType)) break;
-            iMax--;
+    protected List<ASTNode> getSpellCheckableNodes(@NotNull PsiElement element) {
+        MdLeafCursor cursor = getSpellCheckableLeaves(element);
+        ArrayList<ASTNode> leafNodes = new ArrayList<>();
+        for (ASTNode astNode = cursor.next(); astNode != null; astNode = cursor.next()) {
+            leafNodes.add(astNode);
         }
-
-        return leafNodes.subList(i, iMax);
+        return leafNodes;
     }
 
     @Override
@@ -89,23 +73,23 @@ public class MdTextTokenizer extends Tokenizer<PsiElement> {
         // to make the spelling error underline align with the text add skipped characters before
         // a new spell-checkable span to compensate for skipped characters
         // FIX: implementing a check for new spellchecking span that matches TextSplitter rules would be best
-        List<ASTNode> leafNodes = getSpellCheckableNodes(element);
+        MdLeafCursor leafNodes = getSpellCheckableLeaves(element);
+        ASTNode firstNode = leafNodes.getFirst();
 
-        if (!leafNodes.isEmpty()) {
-            int firstOffset = leafNodes.get(0).getStartOffset();
+        if (firstNode != null) {
+            int firstOffset = firstNode.getStartOffset();
             int lastOffset = firstOffset;
-            int iMax = leafNodes.size();
             int skippedChars = 0;
             boolean newSpellCheckingSpan = true;
-            for (ASTNode astNode : leafNodes) {
+            for (ASTNode astNode = leafNodes.next(); astNode != null; astNode = leafNodes.next()) {
                 IElementType elementType = astNode.getElementType();
                 int textLength = astNode.getTextLength();
 
                 // INLINE_NON_PLAIN_TEXT are inline markers
-                if (elementType == MdTypes.COMMENT_TEXT || !INLINE_NON_PLAIN_TEXT.contains(elementType)) {
+                if (elementType == MdTypes.COMMENT_TEXT || !isTypeOf(elementType, INLINE_NON_PLAIN_TEXT_SET)) {
                     if (isTypeOf(elementType, NO_SPELL_CHECK_SET)) {
                         // not spell checked. put spaces for these
-                        text.append(RepeatedSequence.repeatOf(' ', textLength + skippedChars));
+                        appendSpaces(text, textLength + skippedChars);
                         lastOffset += skippedChars;
                         skippedChars = 0;
                         newSpellCheckingSpan = true;
@@ -119,7 +103,7 @@ public class MdTextTokenizer extends Tokenizer<PsiElement> {
                         }
                         if (newSpellCheckingSpan && skippedChars > 0) {
                             // can insert skipped characters before our run
-                            text.append(RepeatedSequence.repeatOf(' ', skippedChars));
+                            appendSpaces(text, skippedChars);
                             lastOffset += skippedChars;
                             skippedChars = 0;
                         }
@@ -141,4 +125,10 @@ public class MdTextTokenizer extends Tokenizer<PsiElement> {
             consumer.consumeToken(element, text.toString(), useRename(), firstOffset - element.getNode().getStartOffset(), TextRange.create(0, lastOffset - firstOffset), TextSplitter.getInstance());
         }
     }
+
+    private static void appendSpaces(@NotNull StringBuilder text, int count) {
+        for (int i = 0; i < count; i++) {
+            text.append(' ');
+        }
+    }
 }
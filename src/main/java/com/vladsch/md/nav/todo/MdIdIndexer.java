@@ -4,13 +4,20 @@ package com.vladsch.md.nav.todo;
 import com.intellij.lexer.Lexer;
 import com.intellij.psi.impl.cache.impl.OccurrenceConsumer;
 import com.intellij.psi.impl.cache.impl.id.LexerBasedIdIndexer;
-import com.vladsch.md.nav.parser.MdLexParser;
 import org.jetbrains.annotations.NotNull;
 
 public class MdIdIndexer extends LexerBasedIdIndexer {
 
     public static Lexer createIndexingLexer(OccurrenceConsumer consumer) {
-        return new MdFilterLexer(MdLexParser.createLexer(null), consumer);
+        return new MdFilterLexer(new MdIndexingLexer(), consumer);
+    }
+
+    // increment when indexing lexer tokens change
+    public static final int INDEXER_VERSION = 2;
+
+    @Override
+    public int getVersion() {
+        return INDEXER_VERSION;
     }
 
     @NotNull
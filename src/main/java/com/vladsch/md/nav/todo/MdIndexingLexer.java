@@ -0,0 +1,432 @@
+// Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.todo;
+
+import com.intellij.lexer.LexerBase;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.util.ArrayUtil;
+import com.vladsch.md.nav.psi.util.MdTypes;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Lexer for id and todo indexing, splits text into comment, code, link address and text tokens in one pass
+ * over the text without parsing it.
+ * <p>
+ * Recognizes fenced and indented code, code spans, block and inline HTML comments, inline link addresses and
+ * autolinks. Other markdown elements are lexed as text. Tokens are produced for one block at a time: a line or
+ * a paragraph.
+ */
+public class MdIndexingLexer extends LexerBase {
+    private CharSequence myBuffer = ArrayUtil.EMPTY_CHAR_SEQUENCE;
+    private int myBufferEnd;
+
+    // block scanning state
+    private int myPos;
+    private boolean myInFencedCode;
+    private char myFenceChar;
+    private int myFenceLength;
+    private boolean myInBlockComment;
+    private boolean myAfterBlank;
+    private boolean myInList;
+    private int myIndentColumn;
+
+    // tokens of the current block
+    private IElementType[] myTypes = new IElementType[16];
+    private int[] myEnds = new int[16];
+    private int myTokenCount;
+    private int myTokenIndex;
+    private int myTokenStart;
+
+    @Override
+    public void start(@NotNull CharSequence buffer, int startOffset, int endOffset, int initialState) {
+        myBuffer = buffer;
+        myBufferEnd = endOffset;
+        myPos = startOffset;
+        myInFencedCode = false;
+        myInBlockComment = false;
+        myAfterBlank = true;
+        myInList = false;
+        myTokenCount = 0;
+        myTokenIndex = 0;
+        myTokenStart = startOffset;
+        scanBlock();
+    }
+
+    @Override
+    public int getState() {
+        return 0;
+    }
+
+    @Nullable
+    @Override
+    public IElementType getTokenType() {
+        return myTokenIndex < myTokenCount ? myTypes[myTokenIndex] : null;
+    }
+
+    @Override
+    public int getTokenStart() {
+        return myTokenStart;
+    }
+
+    @Override
+    public int getTokenEnd() {
+        return myTokenIndex < myTokenCount ? myEnds[myTokenIndex] : myBufferEnd;
+    }
+
+    @Override
+    public void advance() {
+        if (myTokenIndex >= myTokenCount) return;
+
+        myTokenStart = myEnds[myTokenIndex++];
+        if (myTokenIndex >= myTokenCount) {
+            myTokenCount = 0;
+            myTokenIndex = 0;
+            scanBlock();
+        }
+    }
+
+    @NotNull
+    @Override
+    public CharSequence getBufferSequence() {
+        return myBuffer;
+    }
+
+    @Override
+    public int getBufferEnd() {
+        return myBufferEnd;
+    }
+
+    private void addToken(@NotNull IElementType type, int end) {
+        if (end <= (myTokenCount == 0 ? myTokenStart : myEnds[myTokenCount - 1])) return;
+
+        if (myTokenCount > 0 && myTypes[myTokenCount - 1] == type) {
+            myEnds[myTokenCount - 1] = end;
+            return;
+        }
+
+        if (myTokenCount == myTypes.length) {
+            myTypes = ArrayUtil.realloc(myTypes, myTokenCount * 2, IElementType[]::new);
+            myEnds = ArrayUtil.realloc(myEnds, myTokenCount * 2);
+        }
+
+        myTypes[myTokenCount] = type;
+        myEnds[myTokenCount++] = end;
+    }
+
+    /**
+     * Add tokens of the next non-empty block, a single line or a paragraph
+     */
+    private void scanBlock() {
+        while (myTokenCount == 0 && myPos < myBufferEnd) {
+            int lineEnd = lineEnd(myPos);
+            int nextLine = lineEnd < myBufferEnd ? lineEnd + 1 : lineEnd;
+
+            if (myInFencedCode) {
+                if (isFenceClose(myPos, lineEnd)) {
+                    myInFencedCode = false;
+                    addToken(MdTypes.TEXT, nextLine);
+                } else {
+                    addToken(MdTypes.CODE_TEXT, nextLine);
+                }
+                myPos = nextLine;
+            } else if (myInBlockComment) {
+                scanBlockComment(myPos, lineEnd, nextLine);
+                myPos = nextLine;
+            } else {
+                int contentStart = myPos + indent(myPos, lineEnd);
+                int indent = myIndentColumn;
+
+                if (contentStart >= lineEnd) {
+                    addToken(MdTypes.TEXT, nextLine);
+                    myAfterBlank = true;
+                    myPos = nextLine;
+                    continue;
+                }
+
+                if (indent >= 4 && myAfterBlank && !myInList) {
+                    addToken(MdTypes.CODE_TEXT, nextLine);
+                    myPos = nextLine;
+                    continue;
+                }
+
+                if (indent < 4 && isListItem(contentStart, lineEnd)) {
+                    myInList = true;
+                } else if (indent == 0 && myAfterBlank) {
+                    myInList = false;
+                }
+                myAfterBlank = false;
+
+                if (indent < 4 && isFenceOpen(contentStart, lineEnd)) {
+                    myInFencedCode = true;
+                    addToken(MdTypes.TEXT, nextLine);
+                    myPos = nextLine;
+                } else if (indent < 4 && startsWith(contentStart, lineEnd, "<!--")) {
+                    addToken(MdTypes.TEXT, contentStart);
+                    addToken(MdTypes.BLOCK_COMMENT_OPEN, contentStart + 4);
+                    myInBlockComment = true;
+                    scanBlockComment(contentStart + 4, lineEnd, nextLine);
+                    myPos = nextLine;
+                } else {
+                    int paragraphEnd = paragraphEnd(nextLine);
+                    scanInline(myPos, paragraphEnd);
+                    myPos = paragraphEnd;
+                }
+            }
+        }
+    }
+
+    private void scanBlockComment(int start, int lineEnd, int nextLine) {
+        int close = indexOf("-->", start, lineEnd);
+        if (close >= 0) {
+            myInBlockComment = false;
+            addToken(MdTypes.BLOCK_COMMENT_TEXT, close);
+            addToken(MdTypes.BLOCK_COMMENT_CLOSE, close + 3);
+            addToken(MdTypes.TEXT, nextLine);
+        } else {
+            addToken(MdTypes.BLOCK_COMMENT_TEXT, nextLine);
+        }
+    }
+
+    /**
+     * Add tokens of paragraph text
+     *
+     * @param start paragraph start
+     * @param end   paragraph end, including its last EOL
+     */
+    private void scanInline(int start, int end) {
+        int pos = start;
+        while (pos < end) {
+            char c = myBuffer.charAt(pos);
+            switch (c) {
+                case '\\':
+                    pos = Math.min(pos + 2, end);
+                    break;
+
+                case '`': {
+                    int runEnd = runEnd(pos, end, '`');
+                    int close = findBacktickRun(runEnd, end, runEnd - pos);
+                    if (close >= 0) {
+                        addToken(MdTypes.TEXT, runEnd);
+                        addToken(MdTypes.CODE_TEXT, close);
+                        pos = close + (runEnd - pos);
+                        addToken(MdTypes.TEXT, pos);
+                    } else {
+                        pos = runEnd;
+                    }
+                    break;
+                }
+
+                case '<': {
+                    if (startsWith(pos, end, "<!--")) {
+                        int close = indexOf("-->", pos + 4, end);
+                        if (close >= 0) {
+                            addToken(MdTypes.TEXT, pos);
+                            addToken(MdTypes.COMMENT_OPEN, pos + 4);
+                            addToken(MdTypes.COMMENT_TEXT, close);
+                            addToken(MdTypes.COMMENT_CLOSE, close + 3);
+                            pos = close + 3;
+                            break;
+                        }
+                    } else {
+                        int close = autoLinkEnd(pos + 1, end);
+                        if (close >= 0) {
+                            addToken(MdTypes.TEXT, pos + 1);
+                            addToken(MdTypes.LINK_REF, close);
+                            pos = close;
+                            break;
+                        }
+                    }
+                    pos++;
+                    break;
+                }
+
+                case ']': {
+                    if (pos + 1 < end && myBuffer.charAt(pos + 1) == '(') {
+                        int addressStart = pos + 2;
+                        int addressEnd = linkAddressEnd(addressStart, end);
+                        if (addressEnd > addressStart) {
+                            addToken(MdTypes.TEXT, addressStart);
+                            addToken(MdTypes.LINK_REF, addressEnd);
+                            pos = addressEnd;
+                            break;
+                        }
+                    }
+                    pos++;
+                    break;
+                }
+
+                default:
+                    pos++;
+                    break;
+            }
+        }
+        addToken(MdTypes.TEXT, end);
+    }
+
+    private int lineEnd(int pos) {
+        while (pos < myBufferEnd && myBuffer.charAt(pos) != '\n') pos++;
+        return pos;
+    }
+
+    /**
+     * Leading white space of line, sets {@link #myIndentColumn}
+     *
+     * @param start line start
+     * @param end   line end
+     * @return number of leading white space characters, line length if the line is blank
+     */
+    private int indent(int start, int end) {
+        int column = 0;
+        int pos = start;
+        while (pos < end) {
+            char c = myBuffer.charAt(pos);
+            if (c == ' ') column++;
+            else if (c == '\t') column += 4 - column % 4;
+            else if (c != '\r') break;
+            pos++;
+        }
+        myIndentColumn = column;
+        return pos - start;
+    }
+
+    /**
+     * End of paragraph starting on the line before nextLine
+     *
+     * @param nextLine start of the paragraph's second line
+     * @return start of the blank line, fenced code or block comment following the paragraph
+     */
+    private int paragraphEnd(int nextLine) {
+        int pos = nextLine;
+        while (pos < myBufferEnd) {
+            int lineEnd = lineEnd(pos);
+            int contentStart = pos + indent(pos, lineEnd);
+            int indent = myIndentColumn;
+
+            if (contentStart >= lineEnd) break;
+            if (indent < 4 && (isFenceOpen(contentStart, lineEnd) || startsWith(contentStart, lineEnd, "<!--"))) break;
+            if (indent < 4 && isListItem(contentStart, lineEnd)) myInList = true;
+
+            pos = lineEnd < myBufferEnd ? lineEnd + 1 : lineEnd;
+        }
+        return pos;
+    }
+
+    private boolean isFenceOpen(int start, int end) {
+        char c = myBuffer.charAt(start);
+        if (c != '`' && c != '~') return false;
+
+        int runEnd = runEnd(start, end, c);
+        if (runEnd - start < 3) return false;
+        if (c == '`' && indexOf("`", runEnd, end) >= 0) return false;
+
+        myFenceChar = c;
+        myFenceLength = runEnd - start;
+        return true;
+    }
+
+    private boolean isFenceClose(int start, int end) {
+        int contentStart = start + indent(start, end);
+        if (myIndentColumn >= 4 || contentStart >= end || myBuffer.charAt(contentStart) != myFenceChar) return false;
+
+        int runEnd = runEnd(contentStart, end, myFenceChar);
+        return runEnd - contentStart >= myFenceLength && isBlank(runEnd, end);
+    }
+
+    private boolean isListItem(int start, int end) {
+        char c = myBuffer.charAt(start);
+        int pos = start;
+
+        if (c == '-' || c == '*' || c == '+') {
+            pos++;
+        } else if (c >= '0' && c <= '9') {
+            while (pos < end && pos - start < 9 && Character.isDigit(myBuffer.charAt(pos))) pos++;
+            if (pos >= end || (myBuffer.charAt(pos) != '.' && myBuffer.charAt(pos) != ')')) return false;
+            pos++;
+        } else {
+            return false;
+        }
+        return pos >= end || myBuffer.charAt(pos) == ' ' || myBuffer.charAt(pos) == '\t' || myBuffer.charAt(pos) == '\r';
+    }
+
+    private int findBacktickRun(int start, int end, int length) {
+        int pos = start;
+        while (pos < end) {
+            if (myBuffer.charAt(pos) == '`') {
+                int runEnd = runEnd(pos, end, '`');
+                if (runEnd - pos == length) return pos;
+                pos = runEnd;
+            } else {
+                pos++;
+            }
+        }
+        return -1;
+    }
+
+    private int autoLinkEnd(int start, int end) {
+        // scheme followed by : and no spaces or < up to >
+        int pos = start;
+        while (pos < end && (Character.isLetterOrDigit(myBuffer.charAt(pos)) || "+.-".indexOf(myBuffer.charAt(pos)) >= 0)) pos++;
+        if (pos - start < 2 || pos >= end || myBuffer.charAt(pos) != ':') return -1;
+
+        while (pos < end) {
+            char c = myBuffer.charAt(pos);
+            if (c == '>') return pos;
+            if (c == '<' || Character.isWhitespace(c)) return -1;
+            pos++;
+        }
+        return -1;
+    }
+
+    private int linkAddressEnd(int start, int end) {
+        int pos = start;
+        if (pos < end && myBuffer.charAt(pos) == '<') {
+            int close = indexOf(">", pos + 1, end);
+            return close >= 0 ? close + 1 : -1;
+        }
+
+        int parens = 0;
+        while (pos < end) {
+            char c = myBuffer.charAt(pos);
+            if (c == '\\') {
+                pos += 2;
+                continue;
+            }
+            if (Character.isWhitespace(c)) break;
+            if (c == '(') parens++;
+            else if (c == ')' && parens-- == 0) break;
+            pos++;
+        }
+        return Math.min(pos, end);
+    }
+
+    private int runEnd(int start, int end, char c) {
+        int pos = start;
+        while (pos < end && myBuffer.charAt(pos) == c) pos++;
+        return pos;
+    }
+
+    private boolean isBlank(int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!Character.isWhitespace(myBuffer.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    private boolean startsWith(int start, int end, @NotNull String text) {
+        int length = text.length();
+        if (end - start < length) return false;
+
+        for (int i = 0; i < length; i++) {
+            if (myBuffer.charAt(start + i) != text.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private int indexOf(@NotNull String text, int start, int end) {
+        int last = end - text.length();
+        for (int i = start; i <= last; i++) {
+            if (startsWith(i, end, text)) return i;
+        }
+        return -1;
+    }
+}
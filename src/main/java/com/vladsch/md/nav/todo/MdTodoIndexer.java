@@ -12,4 +12,9 @@ public class MdTodoIndexer extends LexerBasedTodoIndexer {
     public Lexer createLexer(@NotNull OccurrenceConsumer consumer) {
         return MdIdIndexer.createIndexingLexer(consumer);
     }
+
+    @Override
+    public int getVersion() {
+        return MdIdIndexer.INDEXER_VERSION;
+    }
 }
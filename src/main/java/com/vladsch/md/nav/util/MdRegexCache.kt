@@ -0,0 +1,96 @@
+// Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.vladsch.md.nav.util
+
+import java.util.*
+
+/**
+ * Bounded LRU cache of compiled regular expressions keyed by pattern text and options.
+ *
+ * Link matching builds the same patterns for every resolve of a link to the same target,
+ * compiling them dominates the matching cost for short lists of candidate files.
+ * Invalid patterns are not cached, their [java.util.regex.PatternSyntaxException] is thrown on every call.
+ */
+class MdRegexCache(val maxSize: Int) {
+    private data class Key(val pattern: String, val options: Set<RegexOption>)
+
+    private val regexMap = object : LinkedHashMap<Key, Regex>(64, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Key, Regex>?): Boolean {
+            return size > maxSize
+        }
+    }
+
+    private var hitCount: Long = 0
+    private var missCount: Long = 0
+
+    val size: Int
+        get() = synchronized(regexMap) { regexMap.size }
+
+    val hits: Long
+        get() = synchronized(regexMap) { hitCount }
+
+    val misses: Long
+        get() = synchronized(regexMap) { missCount }
+
+    fun getRegex(pattern: String): Regex = getRegex(pattern, emptySet())
+
+    fun getRegex(pattern: String, option: RegexOption): Regex = getRegex(pattern, setOf(option))
+
+    fun getRegex(pattern: String, options: Set<RegexOption>): Regex {
+        val key = Key(pattern, options)
+
+        synchronized(regexMap) {
+            val regex = regexMap[key]
+            if (regex != null) {
+                hitCount++
+                return regex
+            }
+            missCount++
+        }
+
+        // compile outside the lock, concurrent misses for the same pattern compile their own copy
+        val regex = pattern.toRegex(options)
+
+        synchronized(regexMap) {
+            regexMap[key] = regex
+        }
+        return regex
+    }
+
+    fun clear() {
+        synchronized(regexMap) {
+            regexMap.clear()
+            hitCount = 0
+            missCount = 0
+        }
+    }
+
+    fun resetStatistics() {
+        synchronized(regexMap) {
+            hitCount = 0
+            missCount = 0
+        }
+    }
+
+    /**
+     * Statistics as text table, same layout as [com.vladsch.md.nav.parser.cache.data.CachedDataStatistics.getReport]
+     */
+    fun getReport(): String {
+        synchronized(regexMap) {
+            return String.format("%-40s %10s %10s %10s\n", "Regex Cache", "Hits", "Misses", "Size") +
+                String.format("%-40s %,10d %,10d %,10d\n", "", hitCount, missCount, regexMap.size)
+        }
+    }
+
+    override fun toString(): String {
+        synchronized(regexMap) {
+            return "MdRegexCache(size=${regexMap.size}, maxSize=$maxSize, hits=$hitCount, misses=$missCount)"
+        }
+    }
+
+    companion object {
+        const val MAX_CACHED_PATTERNS = 512
+
+        @JvmStatic
+        val instance: MdRegexCache = MdRegexCache(MAX_CACHED_PATTERNS)
+    }
+}
@@ -4,11 +4,21 @@ package com.vladsch.md.nav.util.format
 
 import com.intellij.openapi.diagnostic.Logger
 import com.intellij.openapi.editor.Editor
+import com.intellij.psi.PsiDocumentManager
+import com.intellij.psi.PsiElement
 import com.intellij.psi.PsiFile
+import com.intellij.psi.PsiWhiteSpace
+import com.intellij.psi.impl.source.tree.LeafPsiElement
+import com.intellij.psi.util.PsiTreeUtil
 import com.vladsch.flexmark.formatter.Formatter
 import com.vladsch.flexmark.parser.Parser
+import com.vladsch.flexmark.util.ast.Document
 import com.vladsch.flexmark.util.data.DataHolder
+import com.vladsch.flexmark.util.data.MutableDataSet
 import com.vladsch.flexmark.util.format.TrackedOffset
+import com.vladsch.flexmark.util.format.options.ElementPlacement
+import com.vladsch.flexmark.util.format.options.ElementPlacementSort
+import com.vladsch.flexmark.util.misc.CharPredicate
 import com.vladsch.flexmark.util.misc.CharPredicate.HASH
 import com.vladsch.flexmark.util.misc.CharPredicate.SPACE
 import com.vladsch.flexmark.util.sequence.BasedSequence
@@ -20,44 +30,213 @@ import com.vladsch.md.nav.editor.api.MdPreviewCustomizationProvider
 import com.vladsch.md.nav.language.DiscretionaryText
 import com.vladsch.md.nav.language.MdCodeStyleSettings
 import com.vladsch.md.nav.language.TrailingMarkerEqualizeOptions
+import com.vladsch.md.nav.parser.MdFlexmarkCache
 import com.vladsch.md.nav.parser.PegdownOptionsAdapter
 import com.vladsch.md.nav.parser.api.HtmlPurpose
 import com.vladsch.md.nav.parser.api.ParserPurpose
+import com.vladsch.md.nav.parser.flexmark.MdNavigatorExtension
 import com.vladsch.md.nav.psi.element.*
 import com.vladsch.md.nav.psi.util.MdPsiImplUtil
+import com.vladsch.md.nav.psi.util.MdTypes
 import com.vladsch.md.nav.settings.ListIndentationType
+import com.vladsch.md.nav.settings.MdRenderingProfile
 import com.vladsch.md.nav.settings.MdRenderingProfileManager
 import com.vladsch.md.nav.vcs.GitHubLinkResolver
+import com.vladsch.plugin.util.suffixWith
 import com.vladsch.plugin.util.toBased
+import java.util.function.Supplier
 
 class MdFormatter {
+    /**
+     * Formatted text of a document range
+     *
+     * @param startOffset start offset of range in document
+     * @param endOffset   end offset of range in document
+     * @param text        formatted text to replace the range
+     */
+    class RangeFormat(val startOffset: Int, val endOffset: Int, val text: String)
+
     companion object {
         private val LOG = Logger.getInstance("com.vladsch.md.nav.util.format")
+        private const val FORMAT_PARSER_VARIANT = "FORMAT"
 
         @JvmStatic
         fun formatFile(mdFile: MdFile): SequenceBuilder {
             val charSequence = BasedSequence.of(mdFile.text)
             val editContext = PsiEditAdjustment(mdFile, charSequence)
-
-            val resolver = GitHubLinkResolver(mdFile)
-            val parserOptions = PegdownOptionsAdapter().getFlexmarkOptions(ParserPurpose.PARSER, HtmlPurpose.RENDER, resolver, editContext.renderingProfile)
-
-            val formatOptionsAdapter = FlexmarkFormatOptionsAdapter(editContext, editContext.charSequence.startOffset, editContext.charSequence.endOffset)
-            val formatOptions = formatOptionsAdapter.formatOptions
-            return formatFile(null, parserOptions, formatOptions, charSequence, null)
+            return formatFile(mdFile, editContext, charSequence, null)
         }
 
         @JvmStatic
         fun formatFile(mdFile: MdFile, editor: Editor, charSequence: CharSequence?, trackedOffsets: List<TrackedOffset>?): SequenceBuilder {
             val useCharSequence = if (charSequence != null) BasedSequence.of(charSequence) else BasedSequence.of(editor.document.immutableCharSequence)
             val editContext = PsiEditAdjustment(mdFile, useCharSequence, editor)
+            return formatFile(mdFile, editContext, useCharSequence, trackedOffsets)
+        }
 
+        private fun formatFile(mdFile: MdFile, editContext: PsiEditAdjustment, charSequence: BasedSequence, trackedOffsets: List<TrackedOffset>?): SequenceBuilder {
             val resolver = GitHubLinkResolver(mdFile)
-            val parserOptions = PegdownOptionsAdapter().getFlexmarkOptions(ParserPurpose.PARSER, HtmlPurpose.RENDER, resolver, editContext.renderingProfile)
+            val renderingProfile = editContext.renderingProfile
+
+            // parser options only depend on the rendering profile, formatter options depend on edit context and are not cached
+            val parserOptions = linkResolverOptions(resolver)
+            val cacheEntry = formatParserEntry(resolver, renderingProfile)
 
             val formatOptionsAdapter = FlexmarkFormatOptionsAdapter(editContext, editContext.charSequence.startOffset, editContext.charSequence.endOffset)
             val formatOptions = formatOptionsAdapter.formatOptions
-            return formatFile(null, parserOptions, formatOptions, useCharSequence, trackedOffsets)
+            val parseSequence = charSequence.toString().toBased()
+            return formatDocument(cacheEntry.parse(parseSequence, parserOptions), parseSequence, null, formatOptions, charSequence, trackedOffsets)
+        }
+
+        /**
+         * Format top level blocks enclosing a range of the file
+         *
+         * Only the enclosing blocks are parsed and formatted. Definitions outside these blocks which are used by references in them
+         * are added after the blocks for the parser and removed from the result. References placement and sort are left as is because
+         * definitions can only be moved within the formatted blocks.
+         *
+         * @param mdFile         file
+         * @param editor         editor of the file
+         * @param startOffset    start offset of range
+         * @param endOffset      end offset of range
+         * @param trackedOffsets tracked offsets in the document, resolved indices are in the formatted text of the range,
+         *                       offsets outside the formatted range are not resolved
+         * @return formatted range or null if the document is not committed or the range has no blocks
+         */
+        @JvmStatic
+        fun formatRange(mdFile: MdFile, editor: Editor, startOffset: Int, endOffset: Int, trackedOffsets: List<TrackedOffset>?): RangeFormat? {
+            val document = editor.document
+            if (!PsiDocumentManager.getInstance(mdFile.project).isCommitted(document)) return null
+
+            val blocks = rangeBlocks(mdFile, startOffset, endOffset)
+            if (blocks.isEmpty()) return null
+
+            val charSequence = BasedSequence.of(document.immutableCharSequence)
+            val rangeStart = charSequence.startOfLine(blocks[0].textRange.startOffset)
+            val rangeEnd = charSequence.endOfLine(blocks[blocks.size - 1].textRange.endOffset - 1).let { if (it < charSequence.length) it + 1 else it }
+            val slice = charSequence.subSequence(rangeStart, rangeEnd)
+
+            val parseText = StringBuilder(slice.length + 1)
+            parseText.append(slice)
+            if (!slice.endsWith("\n")) parseText.append('\n')
+
+            var definitionsStart = parseText.length
+            val definitions = rangeDefinitions(mdFile, blocks, rangeStart, rangeEnd)
+            if (definitions.isNotEmpty()) {
+                parseText.append('\n')
+                definitionsStart = parseText.length
+                for (definition in definitions) {
+                    parseText.append(definition.text.suffixWith('\n'))
+                }
+            }
+
+            val resolver = GitHubLinkResolver(mdFile)
+            val editContext = PsiEditAdjustment(mdFile, charSequence, editor)
+            val renderingProfile = editContext.renderingProfile
+            val parserOptions = linkResolverOptions(resolver)
+            val cacheEntry = formatParserEntry(resolver, renderingProfile)
+
+            val formatOptions = FlexmarkFormatOptionsAdapter(editContext, rangeStart, rangeEnd).formatOptions
+                .set(Formatter.REFERENCE_PLACEMENT, ElementPlacement.AS_IS)
+                .set(Formatter.REFERENCE_SORT, ElementPlacementSort.AS_IS)
+
+            // formatter offsets are in the parsed text which starts at the range start
+            val sliceOffsets = trackedOffsets?.filter { it.offset in rangeStart..rangeEnd }?.map { Pair(it, it.plusOffsetDelta(-rangeStart)) }
+
+            val parseSequence = parseText.toString().toBased()
+            val builder = formatDocument(cacheEntry.parse(parseSequence, parserOptions), parseSequence, null, formatOptions, parseSequence, sliceOffsets?.map { it.second })
+
+            sliceOffsets?.forEach { (trackedOffset, sliceOffset) ->
+                if (sliceOffset.isResolved) trackedOffset.index = sliceOffset.index
+            }
+
+            return RangeFormat(rangeStart, rangeEnd, rangeFormattedText(builder.toSequence(), definitionsStart, slice.endsWith("\n")))
+        }
+
+        /**
+         * Get cached parser entry for formatting, options are only built if there is no entry for the rendering profile settings
+         */
+        private fun formatParserEntry(resolver: GitHubLinkResolver, renderingProfile: MdRenderingProfile): MdFlexmarkCache.Entry {
+            return MdFlexmarkCache.getInstance(renderingProfile).getEntry(renderingProfile, ParserPurpose.PARSER, HtmlPurpose.RENDER, listOf(FORMAT_PARSER_VARIANT, MdFlexmarkCache.isInjectedFile(resolver)), Supplier {
+                formatParserOptions(PegdownOptionsAdapter().getFlexmarkOptions(ParserPurpose.PARSER, HtmlPurpose.RENDER, resolver, renderingProfile))
+            })
+        }
+
+        /**
+         * Per call options set on the parsed document
+         */
+        private fun linkResolverOptions(resolver: GitHubLinkResolver): DataHolder {
+            return MutableDataSet().set(MdNavigatorExtension.LINK_RESOLVER, Supplier { resolver })
+        }
+
+        /**
+         * Get top level blocks which contain or are between offsets, blank lines are not included
+         */
+        private fun rangeBlocks(mdFile: MdFile, startOffset: Int, endOffset: Int): List<PsiElement> {
+            val textLength = mdFile.textLength
+            if (textLength == 0) return listOf()
+
+            var element: PsiElement? = mdFile.findElementAt(startOffset.coerceIn(0, textLength - 1)) ?: return listOf()
+            while (element != null && element.parent !is MdFile) element = element.parent
+
+            val blocks = ArrayList<PsiElement>()
+            val rangeEnd = maxOf(endOffset, startOffset + 1)
+            while (element != null) {
+                if (element.textRange.startOffset >= rangeEnd) break
+                if (isRangeBlock(element)) blocks.add(element)
+                element = element.nextSibling
+            }
+            return blocks
+        }
+
+        private fun isRangeBlock(element: PsiElement): Boolean {
+            return when {
+                element is PsiWhiteSpace || element is MdBlankLine -> false
+                element is LeafPsiElement -> element.node.elementType != MdTypes.EOL && element.text.isNotBlank()
+                else -> element.textLength > 0
+            }
+        }
+
+        /**
+         * Get definitions outside the range which are used by references in the range blocks
+         */
+        private fun rangeDefinitions(mdFile: MdFile, blocks: List<PsiElement>, rangeStart: Int, rangeEnd: Int): List<MdReferenceElement> {
+            val referencingElements = ArrayList<MdReferencingElement>()
+            for (block in blocks) {
+                if (block is MdReferencingElement) referencingElements.add(block)
+                referencingElements.addAll(PsiTreeUtil.findChildrenOfType(block, MdReferencingElement::class.java))
+            }
+
+            if (referencingElements.isEmpty()) return listOf()
+
+            return mdFile.referenceElements.filter { definition ->
+                val textRange = definition.textRange
+                (textRange.endOffset <= rangeStart || textRange.startOffset >= rangeEnd) && referencingElements.any { definition.isReferenceFor(it) }
+            }
+        }
+
+        /**
+         * Get formatted text of range blocks from formatted range and definitions
+         *
+         * @param formatted        formatted text based on the parsed text
+         * @param definitionsStart offset of definitions in parsed text
+         * @param endsWithEOL      true if the range ends with an EOL
+         * @return formatted text of range blocks
+         */
+        @JvmStatic
+        fun rangeFormattedText(formatted: BasedSequence, definitionsStart: Int, endsWithEOL: Boolean): String {
+            var end = formatted.length
+            if (definitionsStart < formatted.baseSequence.length) {
+                for (i in 0 until formatted.length) {
+                    if (formatted.getIndexOffset(i) >= definitionsStart) {
+                        end = i
+                        break
+                    }
+                }
+            }
+
+            val text = formatted.subSequence(0, end).trimEnd(CharPredicate.ANY_EOL).toString()
+            return if (endsWithEOL) text + "\n" else text
         }
 
         /**
@@ -65,20 +244,23 @@ class MdFormatter {
          */
         @JvmStatic
         fun formatFile(documentOptions: DataHolder?, parserOptions: DataHolder, formatOptions: DataHolder, charSequence: BasedSequence, trackedOffsets: List<TrackedOffset>?): SequenceBuilder {
+            val parseSequence = charSequence.toString().toBased()
+            val document = Parser.builder(formatParserOptions(parserOptions)).build().parse(parseSequence)
+            return formatDocument(document, parseSequence, documentOptions, formatOptions, charSequence, trackedOffsets)
+        }
 
+        private fun formatParserOptions(parserOptions: DataHolder): DataHolder {
             val useParserOptions = parserOptions.toMutable()
             useParserOptions.set(Parser.BLANK_LINES_IN_AST, true)
 
-            // Allow customizations
-
             // Allow customizations
             for (provider in MdFormatCustomizationProvider.EXTENSIONS.value) {
                 provider.customizeParserOptions(useParserOptions)
             }
+            return useParserOptions
+        }
 
-            val parseSequence = charSequence.toString().toBased()
-            val document = Parser.builder(useParserOptions).build().parse(parseSequence)
-
+        private fun formatDocument(document: Document, parseSequence: BasedSequence, documentOptions: DataHolder?, formatOptions: DataHolder, charSequence: BasedSequence, trackedOffsets: List<TrackedOffset>?): SequenceBuilder {
             if (trackedOffsets != null) {
                 document.set(Formatter.TRACKED_OFFSETS, trackedOffsets)
                 document.set(Formatter.TRACKED_SEQUENCE, charSequence)
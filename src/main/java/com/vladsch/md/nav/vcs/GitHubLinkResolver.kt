@@ -24,6 +24,7 @@ import com.vladsch.md.nav.parser.cache.data.transaction.IndentingLogger
 import com.vladsch.md.nav.psi.element.MdFile
 import com.vladsch.md.nav.psi.element.MdLinkElement
 import com.vladsch.md.nav.psi.util.MdPsiImplUtil
+import com.vladsch.md.nav.settings.MdApplicationSettings
 import com.vladsch.md.nav.settings.MdRenderingProfile
 import com.vladsch.md.nav.settings.MdRenderingProfileManager
 import com.vladsch.md.nav.util.*
@@ -768,17 +769,19 @@ class GitHubLinkResolver(projectResolver: ProjectResolver
         val linkAllMatch = linkMatcher.linkAllMatch
         if (linkLooseMatch == null || linkAllMatch == null || linkCompletionMatch == null) return matches
 
+        val regexCache = MdRegexCache.instance
+
         // FIX: need to have a flag or to modify the regex to exclude wiki matches when exact matching in the repo
         val allMatchWiki =
-            if (wantLooseMatch(options)) linkLooseMatch.toRegex(RegexOption.IGNORE_CASE)
-            else if (wantCompletionMatch(options)) linkCompletionMatch.toRegex(RegexOption.IGNORE_CASE)
-            else if (linkMatcher.wikiMatchingRules) linkAllMatch.toRegex(RegexOption.IGNORE_CASE)
-            else linkMatcher.linkFileMatch!!.toRegex()
+            if (wantLooseMatch(options)) regexCache.getRegex(linkLooseMatch, RegexOption.IGNORE_CASE)
+            else if (wantCompletionMatch(options)) regexCache.getRegex(linkCompletionMatch, RegexOption.IGNORE_CASE)
+            else if (linkMatcher.wikiMatchingRules) regexCache.getRegex(linkAllMatch, RegexOption.IGNORE_CASE)
+            else regexCache.getRegex(linkMatcher.linkFileMatch!!)
 
         val allMatchNonWiki =
             if (wantLooseMatch(options)) allMatchWiki
             else if (wantCompletionMatch(options)) allMatchWiki
-            else if (linkMatcher.wikiMatchingRules) linkAllMatch.toRegex()
+            else if (linkMatcher.wikiMatchingRules) regexCache.getRegex(linkAllMatch)
             else allMatchWiki
 
         val fixedPrefix = linkMatcher.fixedPrefix
@@ -830,8 +833,37 @@ class GitHubLinkResolver(projectResolver: ProjectResolver
                     var triedQuickMatch: Long = 0
                     var triedPrefixMatch: Long = 0
                     var triedMatch: Long = 0
+
+                    // candidates by name or by wiki directory from the project file name index, null if all files of target types need to be checked
+                    val candidateFiles: List<VirtualFile>? =
+                        if (completionMatch || !MdApplicationSettings.instance.debugSettings.useFileNameIndex) null
+                        else if (!linkMatcher.wikiMatchingRules) MdLinkResolverManager.getInstance(project).fileNameIndex.getFilesByName(fileNameNoDot)
+                        else if (fixedPrefix.isNotEmpty()) MdLinkResolverManager.getInstance(project).fileNameIndex.getFilesByPathPrefix(fixedPrefix)
+                        else null
+
+                    if (candidateFiles != null) {
+                        // files marked as plain text are handled with the plain text file type below
+                        val plainTextFiles: Set<VirtualFile> =
+                            if (includeNoExtFiles && targetFileTypes.contains(PlainTextFileType.INSTANCE)) ProjectPlainTextFileTypeManager.getInstance(project)?.files?.toHashSet() ?: emptySet()
+                            else emptySet()
+
+                        for (virtualFile in candidateFiles) {
+                            triedQuickMatch++
+                            triedPrefixMatch++
+                            if (virtualFile.isValid && virtualFile.path.startsWith(fixedPrefix) && targetFileTypes.contains(virtualFile.fileType) && !plainTextFiles.contains(virtualFile) && projectScope.contains(virtualFile)) {
+                                triedMatch++
+                                if (virtualFile.path.matches(matchPattern)) {
+                                    val fileRef = ProjectFileRef(virtualFile, project)
+                                    val newFileRef = if (rawGitHubLink) FileRef(fileRef) else fileRef
+                                    if (rawGitHubLink) newFileRef.isRawFile = true
+                                    matches.add(newFileRef)
+                                }
+                            }
+                        }
+                    }
+
                     for (type in targetFileTypes) {
-                        FileTypeIndex.processFiles(type, { virtualFile ->
+                        if (candidateFiles == null) FileTypeIndex.processFiles(type, { virtualFile ->
                             //println("checking file type: $type, path: ${virtualFile.path}")
                             val fileName = virtualFile.name
                             triedQuickMatch++
@@ -946,7 +978,7 @@ class GitHubLinkResolver(projectResolver: ProjectResolver
                     // these match raw file content
                     // case sensitive: linkFileMatch = "^$fixedPrefix$filenamePattern$"
                     // case sensitive: linkFileAnchorMatch = "^$fixedPrefix$filenamePattern$anchorPattern$"
-                    val fileOrAnchorMatch = (if (linkMatcher.linkFileAnchorMatch == null) linkMatcher.linkFileMatch else linkMatcher.linkFileMatch + "|" + linkMatcher.linkFileAnchorMatch)?.toRegex()
+                    val fileOrAnchorMatch = (if (linkMatcher.linkFileAnchorMatch == null) linkMatcher.linkFileMatch else linkMatcher.linkFileMatch + "|" + linkMatcher.linkFileAnchorMatch)?.let { regexCache.getRegex(it) }
                     if (fileOrAnchorMatch != null) {
                         for (fileRef in matches) {
                             if (fileRef is FileRef && fileRef.filePath.matches(fileOrAnchorMatch)) {
@@ -961,7 +993,7 @@ class GitHubLinkResolver(projectResolver: ProjectResolver
 
                     // these match raw file content and images
                     // case sensitive: linkFileMatch = "^$fixedPrefix$filenamePattern$"
-                    val fileMatch = linkMatcher.linkFileMatch?.toRegex()
+                    val fileMatch = linkMatcher.linkFileMatch?.let { regexCache.getRegex(it) }
                     if (fileMatch != null) {
                         for (fileRef in matches) {
                             if (fileRef is FileRef) {
@@ -1002,7 +1034,7 @@ class GitHubLinkResolver(projectResolver: ProjectResolver
                     }
                 }
 
-                val linkFileMatchRegex = linkMatcher.linkFileMatch?.toRegex() ?: linkAllMatch.toRegex()
+                val linkFileMatchRegex = regexCache.getRegex(linkMatcher.linkFileMatch ?: linkAllMatch)
                 resolved.sortWith(Comparator { self, other ->
                     val selfMatch = self.filePath.matches(linkFileMatchRegex)
                     val otherMatch = other.filePath.matches(linkFileMatchRegex)
@@ -0,0 +1,159 @@
+// Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+
+package com.vladsch.md.nav.vcs
+
+import com.intellij.openapi.application.ApplicationManager
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.roots.ProjectFileIndex
+import com.intellij.openapi.vfs.VirtualFile
+import java.util.*
+import java.util.concurrent.ConcurrentLinkedQueue
+
+/**
+ * Project content files by file name and by path, used to get link target candidates
+ * without iterating over all files of the target file types.
+ *
+ * Built on first use and updated from VFS events. Event handlers only queue the change, changes
+ * are applied on next lookup so VFS listeners never wait for an index lookup in progress.
+ * Directory creation, move and rename invalidate the index since their content is not in the event.
+ */
+class MdFileNameIndex(private val project: Project) {
+    private val lock = Object()
+    private val pendingChanges = ConcurrentLinkedQueue<() -> Unit>()
+
+    @Volatile
+    private var isValid = false
+
+    // path under which file was indexed, needed to remove files after they are moved or renamed
+    private val filePaths = HashMap<VirtualFile, String>()
+    private val nameFiles = TreeMap<String, ArrayList<VirtualFile>>()
+    private val pathFiles = TreeMap<String, VirtualFile>()
+
+    fun invalidate() {
+        isValid = false
+    }
+
+    fun fileCreated(file: VirtualFile) {
+        if (file.isDirectory) invalidateForDirectory(file)
+        else pendingChanges.add { addFile(file) }
+    }
+
+    fun fileMoved(file: VirtualFile) {
+        if (file.isDirectory) invalidateForDirectory(file)
+        else pendingChanges.add {
+            removeFile(file)
+            addFile(file)
+        }
+    }
+
+    private fun invalidateForDirectory(directory: VirtualFile) {
+        // directories outside of content, ie. excluded output directories, do not affect the index
+        if (isValid && !project.isDisposed && directory.isValid && ProjectFileIndex.getInstance(project).isInContent(directory)) {
+            invalidate()
+        }
+    }
+
+    fun fileDeleted(path: String) {
+        pendingChanges.add { removePath(path) }
+    }
+
+    /**
+     * Get files named [fileName] or named [fileName] followed by an extension
+     *
+     * @param fileName file name, without extension
+     * @return list of files
+     */
+    fun getFilesByName(fileName: String): List<VirtualFile> {
+        synchronized(lock) {
+            update()
+
+            val result = ArrayList<VirtualFile>()
+            nameFiles[fileName]?.let { result.addAll(it) }
+            for (files in nameFiles.subMap("$fileName.", "$fileName.\uFFFF").values) {
+                result.addAll(files)
+            }
+            return result
+        }
+    }
+
+    /**
+     * Get files whose path starts with [prefix]
+     *
+     * @param prefix path prefix, usually a directory path ending in /
+     * @return list of files
+     */
+    fun getFilesByPathPrefix(prefix: String): List<VirtualFile> {
+        synchronized(lock) {
+            update()
+            return ArrayList(pathFiles.subMap(prefix, "$prefix\uFFFF").values)
+        }
+    }
+
+    private fun update() {
+        ApplicationManager.getApplication().runReadAction {
+            if (!isValid) {
+                // changes queued before the rebuild are included in it
+                isValid = true
+                pendingChanges.clear()
+                rebuild()
+            } else {
+                while (true) {
+                    val change = pendingChanges.poll() ?: break
+                    change()
+                }
+            }
+        }
+    }
+
+    private fun rebuild() {
+        filePaths.clear()
+        nameFiles.clear()
+        pathFiles.clear()
+
+        if (project.isDisposed) return
+
+        ProjectFileIndex.getInstance(project).iterateContent { file ->
+            if (!file.isDirectory) addIndexedFile(file)
+            true
+        }
+    }
+
+    private fun addFile(file: VirtualFile) {
+        if (project.isDisposed || !file.isValid || file.isDirectory || filePaths.containsKey(file)) return
+        if (!ProjectFileIndex.getInstance(project).isInContent(file)) return
+        addIndexedFile(file)
+    }
+
+    private fun addIndexedFile(file: VirtualFile) {
+        val path = file.path
+        filePaths[file] = path
+        nameFiles.computeIfAbsent(file.name) { ArrayList(1) }.add(file)
+        pathFiles[path] = file
+    }
+
+    private fun removeFile(file: VirtualFile) {
+        val path = filePaths.remove(file) ?: return
+        pathFiles.remove(path)
+        removeName(path, file)
+    }
+
+    private fun removePath(path: String) {
+        // deleted directory removes all files under it
+        val removedPaths = ArrayList<String>()
+        removedPaths.add(path)
+        removedPaths.addAll(pathFiles.subMap("$path/", "$path/\uFFFF").keys)
+
+        for (filePath in removedPaths) {
+            val file = pathFiles.remove(filePath) ?: continue
+            filePaths.remove(file)
+            removeName(filePath, file)
+        }
+    }
+
+    private fun removeName(path: String, file: VirtualFile) {
+        val name = path.substring(path.lastIndexOf('/') + 1)
+        val files = nameFiles[name] ?: return
+        files.remove(file)
+        if (files.isEmpty()) nameFiles.remove(name)
+    }
+}
@@ -0,0 +1,167 @@
+// Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+
+package com.vladsch.md.nav.vcs
+
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.psi.util.PsiTreeUtil
+import com.vladsch.md.nav.parser.cache.MdCachedResolvedLinks
+import com.vladsch.md.nav.psi.element.MdFile
+import com.vladsch.md.nav.psi.element.MdLinkElement
+import com.vladsch.md.nav.psi.index.MdLinkFileNameIndex
+import java.util.*
+
+/**
+ * Reverse link graph of markdown files: link target file name keys to files with links using them.
+ *
+ * Used to find files whose links can resolve differently after files are created, deleted, moved or renamed.
+ * Keys are [MdLinkFileNameIndex] keys in lower case so links differing from the target file name by case are included.
+ * Links of a file are updated when its modification stamp changes, links already resolved to a target are
+ * tested with the file's cached resolved links.
+ *
+ * Changed paths are accumulated with [pathsChanged] until taken by [takeChangedPaths], a directory change
+ * affects all files and clears the graph.
+ */
+class MdLinkGraph {
+    private class FileLinks(val file: MdFile, val modificationStamp: Long, val keys: Set<String>)
+
+    private val lock = Object()
+    private val fileLinks = HashMap<VirtualFile, FileLinks>()
+    private val keyFiles = HashMap<String, HashSet<VirtualFile>>()
+    private val changedPaths = LinkedHashSet<String>()
+    private var changedAll = false
+
+    val size: Int get() = synchronized(lock) { fileLinks.size }
+
+    /**
+     * Add changed paths
+     *
+     * @param allFiles true if all files are affected, ie. for directory changes
+     * @param paths    paths of created, deleted, moved or renamed files
+     */
+    fun pathsChanged(allFiles: Boolean, vararg paths: String) {
+        synchronized(lock) {
+            if (allFiles) {
+                changedAll = true
+                changedPaths.clear()
+            } else if (!changedAll) {
+                changedPaths.addAll(paths)
+            }
+        }
+    }
+
+    /**
+     * Get and reset changed paths added since the last call, the graph is cleared if all files are affected
+     *
+     * @return changed paths or null if all files are affected
+     */
+    fun takeChangedPaths(): List<String>? {
+        synchronized(lock) {
+            if (changedAll) {
+                changedAll = false
+                clear()
+                return null
+            }
+
+            val paths = ArrayList(changedPaths)
+            changedPaths.clear()
+            return paths
+        }
+    }
+
+    /**
+     * Get files whose links can resolve differently after change of given paths, must be called in a read action
+     *
+     * @param files markdown files to test
+     * @param paths paths of created, deleted, moved or renamed files, old and new paths for moves and renames
+     * @return files which can be affected
+     */
+    fun getAffectedFiles(files: Collection<MdFile>, paths: Collection<String>): Set<MdFile> {
+        synchronized(lock) {
+            update(files)
+
+            val affected = LinkedHashSet<MdFile>()
+            for (path in paths) {
+                val fileName = path.substring(path.lastIndexOf('/') + 1)
+                for (key in fileKeys(fileName)) {
+                    val keyFiles = keyFiles[key] ?: continue
+                    for (virtualFile in keyFiles) {
+                        fileLinks[virtualFile]?.let { affected.add(it.file) }
+                    }
+                }
+            }
+
+            // links resolved to a target without a matching key, ie. wiki links with different spacing
+            for (links in fileLinks.values) {
+                if (affected.contains(links.file)) continue
+
+                for (path in paths) {
+                    if (MdCachedResolvedLinks.hasCachedLinkTarget(links.file, "file://$path")) {
+                        affected.add(links.file)
+                        break
+                    }
+                }
+            }
+            return affected
+        }
+    }
+
+    fun clear() {
+        synchronized(lock) {
+            fileLinks.clear()
+            keyFiles.clear()
+        }
+    }
+
+    private fun update(files: Collection<MdFile>) {
+        val virtualFiles = HashSet<VirtualFile>()
+
+        for (file in files) {
+            val virtualFile = file.originalFile.virtualFile ?: continue
+            if (!file.isValid) continue
+
+            virtualFiles.add(virtualFile)
+
+            val links = fileLinks[virtualFile]
+            if (links == null || links.file != file || links.modificationStamp != file.modificationStamp) {
+                if (links != null) removeFile(virtualFile, links)
+                addFile(virtualFile, file)
+            }
+        }
+
+        // files no longer tracked
+        val removed = fileLinks.keys.filter { !virtualFiles.contains(it) }
+        for (virtualFile in removed) {
+            removeFile(virtualFile, fileLinks[virtualFile] ?: continue)
+        }
+    }
+
+    private fun addFile(virtualFile: VirtualFile, file: MdFile) {
+        val keys = HashSet<String>()
+        for (link in PsiTreeUtil.findChildrenOfType(file, MdLinkElement::class.java)) {
+            for (key in MdLinkFileNameIndex.linkKeys(link.linkRefWithAnchorText)) {
+                keys.add(key.toLowerCase())
+            }
+        }
+
+        fileLinks[virtualFile] = FileLinks(file, file.modificationStamp, keys)
+        for (key in keys) {
+            keyFiles.computeIfAbsent(key) { HashSet() }.add(virtualFile)
+        }
+    }
+
+    private fun removeFile(virtualFile: VirtualFile, links: FileLinks) {
+        fileLinks.remove(virtualFile)
+        for (key in links.keys) {
+            val files = keyFiles[key] ?: continue
+            files.remove(virtualFile)
+            if (files.isEmpty()) keyFiles.remove(key)
+        }
+    }
+
+    companion object {
+        @JvmStatic
+        fun fileKeys(fileName: String): Set<String> {
+            return MdLinkFileNameIndex.fileKeys(fileName).mapTo(HashSet()) { it.toLowerCase() }
+        }
+    }
+}
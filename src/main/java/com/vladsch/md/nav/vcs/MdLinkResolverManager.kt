@@ -2,10 +2,13 @@
 
 package com.vladsch.md.nav.vcs
 
+import com.intellij.ProjectTopics
 import com.intellij.openapi.Disposable
 import com.intellij.openapi.application.ApplicationManager
 import com.intellij.openapi.application.ModalityState
 import com.intellij.openapi.project.Project
+import com.intellij.openapi.roots.ModuleRootEvent
+import com.intellij.openapi.roots.ModuleRootListener
 import com.intellij.openapi.util.Disposer
 import com.intellij.openapi.vcs.FileStatus
 import com.intellij.openapi.vcs.FileStatusManager
@@ -24,7 +27,6 @@ import com.vladsch.md.nav.settings.ProfileManagerChangeListener
 import com.vladsch.md.nav.settings.ProjectSettingsChangedListener
 import com.vladsch.md.nav.settings.RenderingProfileManager
 import com.vladsch.md.nav.util.FileRef
-import com.vladsch.md.nav.util.PathInfo
 import com.vladsch.md.nav.vcs.MdLinkResolver.ProjectResolver
 import com.vladsch.md.nav.vcs.api.MdOnProjectSettingsChangedActivity
 import com.vladsch.md.nav.vcs.api.MdOnProjectSettingsChangedActivityProvider
@@ -44,6 +46,7 @@ class MdLinkResolverManager(override val project: Project) : Disposable, Project
         private val LOG = com.intellij.openapi.diagnostic.Logger.getInstance("com.vladsch.md.nav.vcs")
         private val NULL = LazyFunction<Project, MdLinkResolverManager>(Function { t -> MdLinkResolverManager(t) })
         private val DUMMY_REPO = Object()
+        private const val MAX_CACHED_PATHS = 4096
 
         @JvmStatic
         fun getInstance(project: Project): MdLinkResolverManager {
@@ -57,23 +60,65 @@ class MdLinkResolverManager(override val project: Project) : Disposable, Project
     private val onProjectSettingsChangedActivities: ArrayList<MdOnProjectSettingsChangedActivity> = ArrayList()
     private val inProjectSettingsChangedActivity = ConcurrentHashMap<MdOnProjectSettingsChangedActivity, Long>()
     private val projectSettingsChangedAlarm = Alarm(this)
+    val fileNameIndex = MdFileNameIndex(project)
+
+    /**
+     * VCS roots with prefix indices of their base paths and urls, and bounded caches of repos for
+     * directories looked up since last update. A root only contains a path under its base path
+     * so the repo is the same for all files of a directory.
+     */
+    private class VcsRoots(val roots: Map<String, GitHubVcsRoot>) {
+        private val pathIndex = MdPathPrefixIndex<GitHubVcsRoot>()
+        private val urlIndex = MdPathPrefixIndex<GitHubVcsRoot>()
+        private val pathRepos = cachedRepos()
+        private val urlRepos = cachedRepos()
+
+        init {
+            for (gitHubVcs in roots.values) {
+                pathIndex.add(gitHubVcs.basePath, gitHubVcs, gitHubVcs.basePath.length)
+
+                val baseUrl = gitHubVcs.baseUrl ?: continue
+                val urlPrefix = baseUrl.removeAnyPrefix("http://", "https://").suffixWith('/') + (if (gitHubVcs.isWiki) "wiki/" else "")
+                urlIndex.add(urlPrefix, gitHubVcs, gitHubVcs.basePath.length)
+            }
+        }
+
+        fun findByPath(path: String): GitHubVcsRoot? = find(pathRepos, pathIndex, path)
 
-    @Suppress("PrivatePropertyName")
-    private val VCS_MAPS_LOCK = Object()
+        fun findByUrl(url: String): GitHubVcsRoot? = find(urlRepos, urlIndex, url)
 
-    // this one has real roots
-    private var gitHubVcsRoots = ConcurrentHashMap<String, GitHubVcsRoot>()
+        private fun find(cachedRepos: LinkedHashMap<String, Any>, index: MdPathPrefixIndex<GitHubVcsRoot>, path: String): GitHubVcsRoot? {
+            val directory = path.substring(0, path.lastIndexOf('/') + 1)
 
-    // this has all paths inquired for vcs since last update
-    private var gitHubVcsRepos = ConcurrentHashMap<String, Any>()
+            synchronized(cachedRepos) {
+                val cached = cachedRepos[directory]
+                if (cached != null) return cached as? GitHubVcsRoot
+            }
+
+            val gitHubVcsRoot = index.find(directory)
 
-    private fun clearVcsMaps(newVcsMap: ConcurrentHashMap<String, GitHubVcsRoot>) {
-        synchronized(VCS_MAPS_LOCK) {
-            gitHubVcsRoots = newVcsMap
-            gitHubVcsRepos = ConcurrentHashMap()
+            synchronized(cachedRepos) {
+                cachedRepos[directory] = gitHubVcsRoot ?: DUMMY_REPO
+            }
+            return gitHubVcsRoot
+        }
+
+        private fun cachedRepos(): LinkedHashMap<String, Any> {
+            return object : LinkedHashMap<String, Any>(64, 0.75f, true) {
+                override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, Any>?): Boolean {
+                    return size > MAX_CACHED_PATHS
+                }
+            }
         }
     }
 
+    @Volatile
+    private var vcsRoots = VcsRoots(emptyMap())
+
+    private fun clearVcsMaps(newVcsMap: Map<String, GitHubVcsRoot>) {
+        vcsRoots = VcsRoots(newVcsMap)
+    }
+
     fun <T : MdOnProjectSettingsChangedActivity> getActivity(klass: Class<out T>): T? {
         @Suppress("UNCHECKED_CAST")
         return onProjectSettingsChangedActivities.find { klass.isInstance(it) } as? T
@@ -123,34 +168,9 @@ class MdLinkResolverManager(override val project: Project) : Disposable, Project
         if (project.isDisposed) return null
         val projectBasePath: String = project.basePath ?: return null
 
-        var vcsRoots: ConcurrentHashMap<String, GitHubVcsRoot>?
-        var vcsRepos: ConcurrentHashMap<String, Any>?
-
-        synchronized(VCS_MAPS_LOCK) {
-            vcsRoots = gitHubVcsRoots
-            vcsRepos = gitHubVcsRepos
-        }
-
-        val vcsRootMap = vcsRoots ?: return null
-        val vcsRepoMap = vcsRepos ?: return null
-
         val findPath = path ?: projectBasePath
-        var gitHubVcsRoot: GitHubVcsRoot? = null
-
-        val cached = vcsRepoMap[findPath]
+        val gitHubVcsRoot = vcsRoots.findByPath(findPath)
 
-        if (cached != null) {
-            return cached as? GitHubVcsRoot
-        }
-
-        for (gitHubVcs in vcsRootMap.values) {
-            if ((gitHubVcsRoot == null || gitHubVcs.basePath.length > gitHubVcsRoot.basePath.length) && findPath.startsWith(gitHubVcs.basePath.suffixWith('/'))) {
-                MdProjectComponent.LOG.debug { "tentative gitHubRepo ${gitHubVcs.basePath} for $findPath" }
-                gitHubVcsRoot = gitHubVcs
-            }
-        }
-
-        vcsRepoMap[findPath] = gitHubVcsRoot ?: DUMMY_REPO
         MdProjectComponent.LOG.debug { "gitHubRepo $path for ${gitHubVcsRoot?.basePath}" }
         return gitHubVcsRoot
     }
@@ -158,44 +178,9 @@ class MdLinkResolverManager(override val project: Project) : Disposable, Project
     private fun getGitHubRepoFromURL(url: String): GitHubVcsRoot? {
         if (project.isDisposed) return null
 
-        var vcsRoots: ConcurrentHashMap<String, GitHubVcsRoot>?
-        var vcsRepos: ConcurrentHashMap<String, Any>?
-
-        synchronized(VCS_MAPS_LOCK) {
-            vcsRoots = gitHubVcsRoots
-            vcsRepos = gitHubVcsRepos
-        }
-
-        val vcsRootMap = vcsRoots ?: return null
-        val vcsRepoMap = vcsRepos ?: return null
-
         val useUrl = url.removeAnyPrefix("http://", "https://")
-        val findPath = PathInfo(useUrl).path
-        val cached = vcsRepoMap[findPath]
-        if (cached != null) {
-            return cached as? GitHubVcsRoot
-        }
-
-        var gitHubVcsRoot: GitHubVcsRoot? = null
-        for (gitHubVcs in vcsRootMap.values) {
-            if (gitHubVcs.baseUrl != null && (gitHubVcsRoot == null || gitHubVcs.basePath.length > gitHubVcsRoot.basePath.length)) {
-                val suffixWith = gitHubVcs.baseUrl.removeAnyPrefix("http://", "https://").suffixWith('/')
-
-                if (gitHubVcs.isWiki) {
-                    if (useUrl.startsWith(suffixWith + "wiki/")) {
-                        MdProjectComponent.LOG.debug { "tentative gitHubRepo ${gitHubVcs.basePath} for URL $url" }
-                        gitHubVcsRoot = gitHubVcs
-                    }
-                } else {
-                    if (useUrl.startsWith(suffixWith)) {
-                        MdProjectComponent.LOG.debug { "tentative gitHubRepo ${gitHubVcs.basePath} for URL $url" }
-                        gitHubVcsRoot = gitHubVcs
-                    }
-                }
-            }
-        }
+        val gitHubVcsRoot = vcsRoots.findByUrl(useUrl)
 
-        vcsRepoMap[findPath] = gitHubVcsRoot ?: DUMMY_REPO
         MdProjectComponent.LOG.debug { "gitHubRepo $url for ${gitHubVcsRoot?.basePath}" }
         return gitHubVcsRoot
     }
@@ -259,7 +244,7 @@ class MdLinkResolverManager(override val project: Project) : Disposable, Project
         if (project.isDisposed) return
 
         // this should really be the place that creates gitHubVcsRoots
-        val gitHubVcsMap = ConcurrentHashMap<String, GitHubVcsRoot>()
+        val gitHubVcsMap = LinkedHashMap<String, GitHubVcsRoot>()
         val repoManager: GitRepositoryManager = project.getService(GitRepositoryManager::class.java)
         for (gitRepository in repoManager.repositories) {
             // create our GitHubVcsRoot
@@ -294,22 +279,30 @@ class MdLinkResolverManager(override val project: Project) : Disposable, Project
                 val copy = event.newParent.findChild(event.newChildName)
                 if (copy != null) {
                     fileSystemChanged(original)
+                    fileNameIndex.fileCreated(copy)
                 }
             }
             is VFileCreateEvent -> {
                 val newChild = event.file
                 if (newChild != null) {
                     fileSystemChanged(newChild)
+                    fileNameIndex.fileCreated(newChild)
                 }
             }
             is VFileDeleteEvent -> {
                 // issue #776, JavaFx Preview displays cached image for deleted file
                 fileSystemChanged(event.file)
+                fileNameIndex.fileDeleted(event.path)
             }
             is VFileMoveEvent -> {
                 fileSystemChanged(event.file)
+                fileNameIndex.fileMoved(event.file)
             }
             is VFilePropertyChangeEvent -> {
+                if (event.propertyName == VirtualFile.PROP_NAME) {
+                    fileNameIndex.fileMoved(event.file)
+                }
+
                 // NOTE: this one fires often when document is modified with writeable property changing
                 // fileSystemChanged(event.file)
                 //            val pce = event
@@ -335,25 +328,39 @@ class MdLinkResolverManager(override val project: Project) : Disposable, Project
             if (project.isDisposed) return@GitRepositoryChangeListener
 
             // repository changed
+            val roots = vcsRoots.roots
             val repoSet = HashSet<GitHubVcsRoot>()
-            repoSet.addAll(gitHubVcsRoots.values)
+            repoSet.addAll(roots.values)
 
             MdProjectComponent.LOG.debug { "gitRepositoryChanged: $repository" }
 
-            var needReparse = false
+            var changedRoot: GitHubVcsRoot? = null
             for (gitRepo in repoSet) {
                 if (gitRepo.onRepositoryChange(repository)) {
-                    needReparse = true
+                    changedRoot = gitRepo
                     break
                 }
             }
 
-            if (needReparse) {
+            if (changedRoot != null) {
+                // remote url can change and a root's base url is fixed when it is created, so create this root again
+                val newRoot = GitHubVcsRoot.create(repository)
+                if (newRoot?.baseUrl != changedRoot.baseUrl) {
+                    val newVcsMap = LinkedHashMap(roots)
+                    newVcsMap.remove(changedRoot.basePath)
+                    if (newRoot != null) newVcsMap[newRoot.basePath] = newRoot
+                    clearVcsMaps(newVcsMap)
+                }
                 project.messageBus.syncPublisher(MdRepoChangeListener.TOPIC).onRepoChanged()
             }
         })
 
         messageBusConnection.subscribe(ProjectLevelVcsManager.VCS_CONFIGURATION_CHANGED, VcsListener { updateVcsRoots() })
+        messageBusConnection.subscribe(ProjectTopics.PROJECT_ROOTS, object : ModuleRootListener {
+            override fun rootsChanged(event: ModuleRootEvent) {
+                fileNameIndex.invalidate()
+            }
+        })
         messageBusConnection.subscribe(ProjectLevelVcsManager.VCS_CONFIGURATION_CHANGED_IN_PLUGIN, VcsListener { updateVcsRoots() })
 
         ApplicationManager.getApplication().invokeLater({
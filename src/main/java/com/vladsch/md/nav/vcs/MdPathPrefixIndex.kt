@@ -0,0 +1,79 @@
+// Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com> Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+
+package com.vladsch.md.nav.vcs
+
+/**
+ * Trie of `/` separated path prefixes for finding values whose prefix contains a path.
+ *
+ * A value's prefix contains a path when the path starts with the prefix followed by `/`, so only the
+ * directory part of a path is walked and a lookup takes one child map access per directory level.
+ * When several prefixes contain a path the value with the highest priority is used, for equal
+ * priorities the first one added.
+ */
+class MdPathPrefixIndex<T : Any> {
+    private class Node<T : Any> {
+        var children: HashMap<String, Node<T>>? = null
+        var value: T? = null
+        var priority: Int = 0
+    }
+
+    private val root = Node<T>()
+
+    var size: Int = 0
+        private set
+
+    /**
+     * Add value for prefix
+     *
+     * @param prefix   path prefix, a trailing `/` is ignored
+     * @param value    value
+     * @param priority priority of value when more than one prefix contains a path
+     */
+    fun add(prefix: String, value: T, priority: Int) {
+        val path = prefix.removeSuffix("/")
+        var node = root
+        var start = 0
+
+        while (true) {
+            val pos = path.indexOf('/', start)
+            val segment = if (pos < 0) path.substring(start) else path.substring(start, pos)
+            val children = node.children ?: HashMap<String, Node<T>>().also { node.children = it }
+            node = children.getOrPut(segment) { Node() }
+            if (pos < 0) break
+            start = pos + 1
+        }
+
+        if (node.value == null || priority > node.priority) {
+            if (node.value == null) size++
+            node.value = value
+            node.priority = priority
+        }
+    }
+
+    /**
+     * Find value with highest priority whose prefix contains path
+     *
+     * @param path path
+     * @return value or null if no prefix contains the path
+     */
+    fun find(path: String): T? {
+        var node = root
+        var start = 0
+        var found: T? = null
+        var foundPriority = 0
+
+        while (true) {
+            val pos = path.indexOf('/', start)
+            if (pos < 0) break
+
+            node = node.children?.get(path.substring(start, pos)) ?: break
+            val value = node.value
+            if (value != null && (found == null || node.priority > foundPriority)) {
+                found = value
+                foundPriority = node.priority
+            }
+            start = pos + 1
+        }
+        return found
+    }
+}
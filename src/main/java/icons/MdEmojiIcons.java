@@ -5,45 +5,77 @@ package icons;
 import com.intellij.openapi.util.IconLoader;
 import com.vladsch.flexmark.ext.emoji.internal.EmojiReference;
 import com.vladsch.flexmark.ext.emoji.internal.EmojiShortcuts;
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import javax.swing.Icon;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class MdEmojiIcons {
     static Icon load(String path) {
         return IconLoader.getIcon(path, MdEmojiIcons.class);
     }
 
-    static HashMap<String, Icon> emojiMap = new HashMap<>();
-    static HashMap<Icon, String> emojiIconNameMap = new HashMap<>();
+    // icons are lazy, the image resource is only found and loaded when the icon is first shown
+    static final int MAX_CACHED_ICONS = 512;
+    static final LinkedHashMap<String, Icon> emojiMap = new LinkedHashMap<String, Icon>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Icon> eldest) {
+            return size() > MAX_CACHED_ICONS;
+        }
+    };
     //public static final Icon MultiMarkdown = load("/icons/emojis/8ball.png"); // 16x16
 
     public static HashMap<Icon, String> getIconNamesMap() {
-        return emojiIconNameMap;
+        HashMap<Icon, String> iconNameMap = new HashMap<>();
+        synchronized (emojiMap) {
+            for (Map.Entry<String, Icon> entry : emojiMap.entrySet()) {
+                iconNameMap.put(entry.getValue(), "Emoji: " + entry.getKey());
+            }
+        }
+        return iconNameMap;
     }
 
     @Nullable
     public static Icon getEmojiIcon(@Nullable String emojiShortcut) {
         if (emojiShortcut == null) return null;
-        Icon icon = emojiMap.get(emojiShortcut);
-        if (icon != null) return icon;
+
+        synchronized (emojiMap) {
+            Icon icon = emojiMap.get(emojiShortcut);
+            if (icon != null) return icon;
+        }
 
         EmojiReference.Emoji shortcut = EmojiShortcuts.getEmojiFromShortcut(emojiShortcut);
         if (shortcut == null) return null;
 
+        String iconFilename = getIconFilename(shortcut);
+        if (iconFilename == null) return null;
+
+        Icon icon = new IconLoader.LazyIcon() {
+            @NotNull
+            @Override
+            protected Icon compute() {
+                return load("/icons/emojis/" + iconFilename);
+            }
+        };
+
+        synchronized (emojiMap) {
+            Icon cached = emojiMap.putIfAbsent(emojiShortcut, icon);
+            return cached != null ? cached : icon;
+        }
+    }
+
+    @Nullable
+    static String getIconFilename(@NotNull EmojiReference.Emoji shortcut) {
         String iconFilename = shortcut.emojiCheatSheetFile;
         if (iconFilename == null) {
-            iconFilename = shortcut.githubFile;
-            if (iconFilename == null) {
+            if (shortcut.githubFile == null) {
                 return null;
             }
             iconFilename = shortcut.shortcut + ".png";
         }
-
-        icon = load("/icons/emojis/" + iconFilename);
-        emojiMap.put(emojiShortcut, icon);
-        emojiIconNameMap.put(icon, "Emoji: " + emojiShortcut);
-        return icon;
+        return iconFilename;
     }
 }
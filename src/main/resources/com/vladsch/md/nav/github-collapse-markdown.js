@@ -345,6 +345,18 @@ var firstCollapsedHeading;
         }
     }
 
+    // hide blocks under collapsed headings after blocks were patched into the page, inserted headings get their saved state
+    function hideCollapsed() {
+        for (const md of $$(".markdown-body, .wiki-body, .markdown-format ")) {
+            for (const el of $$(HEADERS.join(","), md)) {
+                const ids = headerIds(el);
+                if (el.classList.contains(COLLAPSED) || collapsedHeadings.hasOwnProperty(ids) && collapsedHeadings[ids]) {
+                    nextHeader(el, parseInt(el.nodeName.replace(/[^\d]/, ""), 10), true);
+                }
+            }
+        }
+    }
+
     function checkColors() {
         if (!colors || colors.length !== 6) {
             colors = [].concat(defaultColors);
@@ -374,5 +386,6 @@ var firstCollapsedHeading;
     addColors();
     addBinding();
     checkHash();
+    document.addEventListener("markdown-navigator-patched", hideCollapsed);
 })();
 
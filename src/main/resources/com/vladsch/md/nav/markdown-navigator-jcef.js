@@ -45,6 +45,7 @@ var markdownNavigator;
         toggleTask: function(pos) { },
         openLinkInBrowser: function(href) { },
         synchronizeCaretPos: function(sourceOffset) { },
+        patchFailed: function() { },
         
         // not used
         pageLoadComplete: function() { },
@@ -99,8 +100,14 @@ var markdownNavigator;
         },
     }, markdownNavigator || {});
     
-    window.addEventListener("load", function() {
-       const aTags = document.getElementsByTagName('a');
+    function elementsByTagName(root, tagName) {
+       const elements = Array.from(root.getElementsByTagName(tagName));
+       if (root.tagName && root.tagName.toLowerCase() === tagName) elements.unshift(root);
+       return elements;
+    }
+
+    function prepareElements(root) {
+       const aTags = elementsByTagName(root, 'a');
        for (let aTag of aTags) {
          try {
            let href = aTag.getAttribute('href');
@@ -120,26 +127,90 @@ var markdownNavigator;
          }
        }
        
-       const spans = document.getElementsByTagName('span');
+       const spans = elementsByTagName(root, 'span');
        for (let span of spans) {
          try {
            let spanClass = span.getAttribute("class")
            if (spanClass == "task-item-closed" || spanClass == "task-item-open") {
-             let taskOffset = listItem.getAttribute("task-offset")
-             if (taskOffset) {
-               span.addEventListener("click", function(evt) { 
-               if (markdownNavigator) {
-                   evt.stopPropagation();
-                   evt.preventDefault();
-                   markdownNavigator.toggleTask(taskOffset);
-                 }
-               }, false);
-             }
+             span.addEventListener("click", function(evt) { 
+               // offset is read on click, patched pages shift it in place
+               let taskOffset = span.parentNode.getAttribute("task-offset")
+               if (markdownNavigator && taskOffset) {
+                 evt.stopPropagation();
+                 evt.preventDefault();
+                 markdownNavigator.toggleTask(taskOffset);
+               }
+             }, false);
            }
          } catch(e) {
          
          }
        }
+    }
+    
+    // replace removeCount top level article blocks at start with blocks from html and shift source offsets
+    // of blocks after them by shiftDelta, page is reloaded if it does not match
+    markdownNavigator.patchBlocks = function(start, removeCount, html, shiftDelta) {
+       const article = document.querySelector("article.markdown-body, article.wiki-body");
+       const isBlock = node => node.nodeType !== Node.TEXT_NODE || node.textContent.trim() !== "";
+       const blocks = article ? Array.prototype.filter.call(article.childNodes, isBlock) : [];
+       
+       if (!article || start + removeCount > blocks.length) {
+         markdownNavigator.patchFailed();
+         return;
+       }
+
+       const next = start + removeCount < blocks.length ? blocks[start + removeCount] : null;
+       for (let i = start; i < start + removeCount; i++) {
+         article.removeChild(blocks[i]);
+       }
+
+       const holder = document.createElement("div");
+       holder.innerHTML = html;
+       const inserted = Array.prototype.filter.call(holder.childNodes, isBlock);
+       for (const node of inserted) {
+         article.insertBefore(node, next);
+       }
+
+       if (shiftDelta) {
+         const shiftOffsets = (element, name) => {
+           const value = element.getAttribute(name);
+           if (value) element.setAttribute(name, value.replace(/\d+/g, offset => +offset + shiftDelta));
+         };
+
+         for (let i = start + removeCount; i < blocks.length; i++) {
+           const block = blocks[i];
+           if (block.nodeType !== Node.ELEMENT_NODE) continue;
+
+           for (const element of [block].concat(Array.prototype.slice.call(block.querySelectorAll("[md-pos], [task-offset]")))) {
+             shiftOffsets(element, "md-pos");
+             shiftOffsets(element, "task-offset");
+           }
+         }
+       }
+
+       for (const node of inserted) {
+         if (node.nodeType !== Node.ELEMENT_NODE) continue;
+         
+         prepareElements(node);
+
+         if (typeof hljs !== "undefined") {
+           for (const code of Array.prototype.slice.call(node.querySelectorAll("pre code"))) {
+             hljs.highlightBlock(code);
+           }
+         }
+
+         if (typeof Prism !== "undefined") {
+           Prism.highlightAllUnder(node);
+         }
+       }
+
+       // page scripts which process the article on load, process inserted blocks on this event
+       document.dispatchEvent(new CustomEvent("markdown-navigator-patched", {detail: {blocks: inserted}}));
+    };
+    
+    window.addEventListener("load", function() {
+       prepareElements(document);
        
        window.document.addEventListener("click", function(evt) {
           // scroll source to preview element
@@ -239,6 +239,67 @@ markdownNavigator = (function () {
             }
         },
 
+        // replace removeCount top level article blocks at start with blocks from html and shift source offsets
+        // of blocks after them by shiftDelta, returns number of inserted blocks or -1 if page does not match
+        patchBlocks: (start, removeCount, html, shiftDelta) => {
+            const article = document.querySelector("article.markdown-body, article.wiki-body");
+            if (!article) return -1;
+
+            const isBlock = node => node.nodeType !== Node.TEXT_NODE || node.textContent.trim() !== "";
+            const blocks = Array.prototype.filter.call(article.childNodes, isBlock);
+            if (start + removeCount > blocks.length) return -1;
+
+            const next = start + removeCount < blocks.length ? blocks[start + removeCount] : null;
+            for (let i = start; i < start + removeCount; i++) {
+                if (__lastHighlight && blocks[i].contains(__lastHighlight)) {
+                    __lastHighlight = null;
+                }
+                article.removeChild(blocks[i]);
+            }
+
+            const holder = document.createElement("div");
+            holder.innerHTML = html;
+            const inserted = Array.prototype.filter.call(holder.childNodes, isBlock);
+            for (const node of inserted) {
+                article.insertBefore(node, next);
+            }
+
+            if (shiftDelta) {
+                const shiftOffsets = (element, name) => {
+                    const value = element.getAttribute(name);
+                    if (value) element.setAttribute(name, value.replace(/\d+/g, offset => +offset + shiftDelta));
+                };
+
+                for (let i = start + removeCount; i < blocks.length; i++) {
+                    const block = blocks[i];
+                    if (block.nodeType !== Node.ELEMENT_NODE) continue;
+
+                    for (const element of [block].concat(Array.prototype.slice.call(block.querySelectorAll("[md-pos], [task-offset]")))) {
+                        shiftOffsets(element, "md-pos");
+                        shiftOffsets(element, "task-offset");
+                    }
+                }
+            }
+
+            for (const node of inserted) {
+                if (node.nodeType !== Node.ELEMENT_NODE) continue;
+
+                if (typeof hljs !== "undefined") {
+                    for (const code of Array.prototype.slice.call(node.querySelectorAll("pre code"))) {
+                        hljs.highlightBlock(code);
+                    }
+                }
+
+                if (typeof Prism !== "undefined") {
+                    Prism.highlightAllUnder(node);
+                }
+            }
+
+            // page scripts which process the article on load, process inserted blocks on this event
+            document.dispatchEvent(new CustomEvent("markdown-navigator-patched", {detail: {blocks: inserted}}));
+            return inserted.length;
+        },
+
         setJsBridge: jsBridge => {
             // map to real JsBridge
             __consoleLog = __tmp.__consoleSetJsBridge(jsBridge);
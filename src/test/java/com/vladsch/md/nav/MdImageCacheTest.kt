@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com>, all rights reserved.
+ *
+ * This code is private property of the copyright holder and cannot be used without
+ * having obtained a license or prior written permission of the copyright holder.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.vladsch.md.nav
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.util.function.Consumer
+
+class MdImageCacheTest {
+    @get:Rule
+    val tempFolder = TemporaryFolder()
+
+    private var renders = 0
+
+    private fun writer(size: Int): Consumer<File> = Consumer { file ->
+        renders++
+        file.writeBytes(ByteArray(size))
+    }
+
+    @Test
+    fun test_fileSize() {
+        val cache = MdImageCache(tempFolder.root) { 1024L * 1024L }
+        cache.getImageFile("a", ".svg", writer(100))
+        cache.getImageFile("b", ".svg", writer(250))
+
+        assertEquals(2, cache.fileCount())
+        assertEquals(350L, cache.fileSize())
+    }
+
+    @Test
+    fun test_contentAddressed() {
+        val cache = MdImageCache(tempFolder.root) { 1024L * 1024L }
+        val file = cache.getImageFile("PlantUML:abc", ".png", writer(10))!!
+
+        assertEquals(MdImageCache.imageFileName("PlantUML:abc", ".png"), file.name)
+        assertTrue(cache.isCachedFile(file.path))
+        assertEquals(file, cache.getImageFile("PlantUML:abc", ".png", writer(10)))
+        assertEquals(1, renders)
+        assertEquals(1L, cache.hits())
+        assertEquals(1L, cache.misses())
+    }
+
+    @Test
+    fun test_persistent() {
+        val cache = MdImageCache(tempFolder.root) { 1024L * 1024L }
+        val file = cache.getImageFile("a", ".svg", writer(100))!!
+        cache.dispose()
+
+        val reloaded = MdImageCache(tempFolder.root) { 1024L * 1024L }
+        assertEquals(1, reloaded.fileCount())
+        assertEquals(100L, reloaded.fileSize())
+        assertEquals(file, reloaded.getImageFile("a", ".svg", writer(100)))
+        assertEquals(1, renders)
+    }
+
+    @Test
+    fun test_missingFileDropped() {
+        val cache = MdImageCache(tempFolder.root) { 1024L * 1024L }
+        val file = cache.getImageFile("a", ".svg", writer(100))!!
+        cache.dispose()
+        file.delete()
+
+        val reloaded = MdImageCache(tempFolder.root) { 1024L * 1024L }
+        assertEquals(0, reloaded.fileCount())
+        assertEquals(0L, reloaded.fileSize())
+    }
+
+    @Test
+    fun test_orphanDeleted() {
+        val orphan = File(tempFolder.root, "image_123456.svg")
+        orphan.writeText("<svg/>")
+
+        MdImageCache(tempFolder.root) { 1024L * 1024L }
+        assertFalse(orphan.exists())
+    }
+
+    @Test
+    fun test_evictLeastRecentlyUsed() {
+        val cache = MdImageCache(tempFolder.root) { 250L }
+        val a = cache.getImageFile("a", ".svg", writer(100))!!
+        val b = cache.getImageFile("b", ".svg", writer(100))!!
+
+        // a is now more recently used than b
+        cache.getImageFile("a", ".svg", writer(100))
+        val c = cache.getImageFile("c", ".svg", writer(100))!!
+
+        assertTrue(a.exists())
+        assertFalse(b.exists())
+        assertTrue(c.exists())
+        assertEquals(2, cache.fileCount())
+        assertEquals(200L, cache.fileSize())
+        assertEquals(1L, cache.evictions())
+        assertNull(cache.getCachedImageFile("b", ".svg"))
+    }
+
+    @Test
+    fun test_evictOnLoad() {
+        val cache = MdImageCache(tempFolder.root) { 1024L }
+        cache.getImageFile("a", ".svg", writer(100))
+        cache.getImageFile("b", ".svg", writer(100))
+        cache.dispose()
+
+        val reloaded = MdImageCache(tempFolder.root) { 150L }
+        assertEquals(1, reloaded.fileCount())
+        assertNotNull(reloaded.getCachedImageFile("b", ".svg"))
+    }
+
+    @Test
+    fun test_clearCache() {
+        val cache = MdImageCache(tempFolder.root) { 1024L }
+        val a = cache.getImageFile("a", ".svg", writer(100))!!
+        cache.clearCache()
+
+        assertFalse(a.exists())
+        assertEquals(0, cache.fileCount())
+        assertEquals(0L, cache.fileSize())
+        assertEquals(0, MdImageCache(tempFolder.root) { 1024L }.fileCount())
+    }
+
+    @Test
+    fun test_emptyWriteNotCached() {
+        val cache = MdImageCache(tempFolder.root) { 1024L }
+        assertNull(cache.getImageFile("a", ".svg", writer(0)))
+
+        assertFalse(File(tempFolder.root, MdImageCache.imageFileName("a", ".svg")).exists())
+        assertEquals(0, cache.fileCount())
+        assertNull(cache.getCachedImageFile("a", ".svg"))
+        assertNotNull(cache.getImageFile("a", ".svg", writer(100)))
+        assertEquals(2, renders)
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com>, all rights reserved.
+ *
+ * This code is private property of the copyright holder and cannot be used without
+ * having obtained a license or prior written permission of the copyright holder.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.vladsch.md.nav.editor.swing
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import javax.swing.JEditorPane
+import javax.swing.text.html.HTMLDocument
+import javax.swing.text.html.HTMLEditorKit
+
+class SwingHtmlDocumentUpdaterTest {
+    private fun page(vararg blocks: String): String {
+        return "<html>\n<head>\n<meta charset=\"UTF-8\">\n</head>\n<body class=\"multimarkdown-preview\">\n${blocks.joinToString("\n")}\n</body>\n</html>\n"
+    }
+
+    private fun editorPane(html: String): JEditorPane {
+        val editorPane = JEditorPane()
+        editorPane.editorKit = HTMLEditorKit()
+        editorPane.text = html
+        return editorPane
+    }
+
+    private fun bodyText(editorPane: JEditorPane): String {
+        val document = editorPane.document
+        return document.getText(0, document.length).trim().replace(Regex("\\s+"), " ")
+    }
+
+    @Test
+    fun test_splitPage() {
+        val blocks = SwingHtmlDocumentUpdater.splitPage(page("<h1 id=\"title\">Title</h1>", "<p>text <img src=\"a.png\"/> <code>&lt;b&gt;</code></p>", "<ul>\n<li>item</li>\n</ul>"))
+        assertNotNull(blocks)
+        assertEquals(listOf("h1", "p", "ul"), blocks!!.blocks.map { it.tag })
+        assertEquals(0, blocks.wrappers)
+    }
+
+    @Test
+    fun test_splitPageWrapper() {
+        val blocks = SwingHtmlDocumentUpdater.splitPage(page("<div class=\"content\">\n<h1>Title</h1>\n<p>text</p>\n</div>"))
+        assertNotNull(blocks)
+        assertEquals(listOf("h1", "p"), blocks!!.blocks.map { it.tag })
+        assertEquals(1, blocks.wrappers)
+    }
+
+    @Test
+    fun test_splitPageText() {
+        assertNull(SwingHtmlDocumentUpdater.splitPage(page("text", "<p>text</p>")))
+    }
+
+    @Test
+    fun test_updateChanged() {
+        val oldHtml = page("<h1>Title</h1>", "<p>first</p>", "<p>second</p>", "<p>third</p>")
+        val newHtml = page("<h1>Title</h1>", "<p>first</p>", "<p>changed</p>", "<p>added</p>", "<p>third</p>")
+        val editorPane = editorPane(oldHtml)
+
+        assertTrue(SwingHtmlDocumentUpdater.update(editorPane.document as HTMLDocument, oldHtml, newHtml))
+        assertEquals("Title first changed added third", bodyText(editorPane))
+    }
+
+    @Test
+    fun test_updateRemoved() {
+        val oldHtml = page("<h1>Title</h1>", "<p>first</p>", "<p>second</p>", "<p>third</p>")
+        val newHtml = page("<h1>Title</h1>", "<p>third</p>")
+        val editorPane = editorPane(oldHtml)
+
+        assertTrue(SwingHtmlDocumentUpdater.update(editorPane.document as HTMLDocument, oldHtml, newHtml))
+        assertEquals("Title third", bodyText(editorPane))
+    }
+
+    @Test
+    fun test_updateLast() {
+        val oldHtml = page("<h1>Title</h1>", "<p>first</p>")
+        val newHtml = page("<h1>Title</h1>", "<p>first</p>", "<pre><code>code\n</code></pre>")
+        val editorPane = editorPane(oldHtml)
+
+        assertTrue(SwingHtmlDocumentUpdater.update(editorPane.document as HTMLDocument, oldHtml, newHtml))
+        assertEquals("Title first code", bodyText(editorPane))
+    }
+
+    @Test
+    fun test_updateHeadChanged() {
+        val oldHtml = page("<p>first</p>")
+        val newHtml = oldHtml.replace("<meta charset=\"UTF-8\">", "<meta charset=\"UTF-8\">\n<title>Title</title>")
+        val editorPane = editorPane(oldHtml)
+
+        assertFalse(SwingHtmlDocumentUpdater.update(editorPane.document as HTMLDocument, oldHtml, newHtml))
+    }
+}
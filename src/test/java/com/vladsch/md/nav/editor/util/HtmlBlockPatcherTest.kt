@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2015-2019 Vladimir Schneider <vladimir.schneider@gmail.com>
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.vladsch.md.nav.editor.util
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class HtmlBlockPatcherTest {
+    private fun page(vararg blocks: String): String {
+        return "<html>\n<head>\n<title>test</title>\n</head>\n<body>\n<article class=\"markdown-body\">\n${blocks.joinToString("\n")}\n</article>\n</body>\n</html>\n"
+    }
+
+    private fun blocks(vararg blocks: String): List<HtmlBlockPatcher.Block> {
+        return blocks.map { HtmlBlockPatcher.Block(it) }
+    }
+
+    @Test
+    fun test_parsePage() {
+        val page = HtmlBlockPatcher.parsePage(page("<h1 md-pos=\"0-5\">Title</h1>", "<p md-pos=\"7-12\">text</p>"), "")
+        assertNotNull(page)
+        assertEquals(listOf("<h1 md-pos=\"0-5\">Title</h1>", "<p md-pos=\"7-12\">text</p>"), page!!.blocks.map { it.html })
+        assertEquals(page.shell, HtmlBlockPatcher.parsePage(page("<p md-pos=\"0-4\">other</p>"), "")!!.shell)
+    }
+
+    @Test
+    fun test_parsePageNoArticle() {
+        assertNull(HtmlBlockPatcher.parsePage("<html><body><p>text</p></body></html>", ""))
+    }
+
+    @Test
+    fun test_shellKey() {
+        val html = page("<p md-pos=\"0-4\">text</p>")
+        assertNotEquals(HtmlBlockPatcher.parsePage(html, "a")!!.shell, HtmlBlockPatcher.parsePage(html, "b")!!.shell)
+    }
+
+    @Test
+    fun test_blockOffsets() {
+        val block = HtmlBlockPatcher.Block("<ul md-pos=\"0-20\"><li md-pos=\"0-10\" task-offset=\"2\"><span class=\"task-item-open\"></span>task</li></ul>")
+        assertEquals(listOf(0, 20, 0, 10, 2), block.offsets.toList())
+        assertEquals("<ul md-pos=\"\"><li md-pos=\"\" task-offset=\"\"><span class=\"task-item-open\"></span>task</li></ul>", block.normalized)
+    }
+
+    @Test
+    fun test_diffSame() {
+        val patch = HtmlBlockPatcher.diff(blocks("<p md-pos=\"0-4\">a</p>", "<p md-pos=\"6-10\">b</p>"), blocks("<p md-pos=\"0-4\">a</p>", "<p md-pos=\"6-10\">b</p>"))
+        assertTrue(patch.isEmpty)
+    }
+
+    @Test
+    fun test_diffChangedWithShift() {
+        val oldBlocks = blocks("<p md-pos=\"0-4\">a</p>", "<p md-pos=\"6-10\">b</p>", "<p md-pos=\"12-16\">c</p>", "<p md-pos=\"18-22\">d</p>")
+        val newBlocks = blocks("<p md-pos=\"0-4\">a</p>", "<p md-pos=\"6-13\">b typed</p>", "<p md-pos=\"15-19\">c</p>", "<p md-pos=\"21-25\">d</p>")
+        val patch = HtmlBlockPatcher.diff(oldBlocks, newBlocks)
+
+        assertEquals(1, patch.start)
+        assertEquals(1, patch.removeCount)
+        assertEquals(listOf("<p md-pos=\"6-13\">b typed</p>"), patch.blocks.map { it.html })
+        assertEquals(3, patch.shiftDelta)
+    }
+
+    @Test
+    fun test_diffInsertAtEnd() {
+        val patch = HtmlBlockPatcher.diff(blocks("<p md-pos=\"0-4\">a</p>"), blocks("<p md-pos=\"0-4\">a</p>", "<p md-pos=\"6-10\">b</p>"))
+
+        assertEquals(1, patch.start)
+        assertEquals(0, patch.removeCount)
+        assertEquals(1, patch.blocks.size)
+        assertEquals(0, patch.shiftDelta)
+    }
+
+    @Test
+    fun test_diffRemoveBlock() {
+        val oldBlocks = blocks("<p md-pos=\"0-4\">a</p>", "<p md-pos=\"6-10\">b</p>", "<p md-pos=\"12-16\">c</p>")
+        val newBlocks = blocks("<p md-pos=\"0-4\">a</p>", "<p md-pos=\"6-10\">c</p>")
+        val patch = HtmlBlockPatcher.diff(oldBlocks, newBlocks)
+
+        assertEquals(1, patch.start)
+        assertEquals(1, patch.removeCount)
+        assertEquals(0, patch.blocks.size)
+        assertEquals(-6, patch.shiftDelta)
+    }
+
+    @Test
+    fun test_diffUnevenShift() {
+        // offsets after the edit which do not all move by the same amount are replaced
+        val oldBlocks = blocks("<p md-pos=\"0-4\">a</p>", "<p md-pos=\"6-10\">b</p>", "<p md-pos=\"12-16\">c</p>")
+        val newBlocks = blocks("<p md-pos=\"0-5\">a</p>", "<p md-pos=\"7-12\">b</p>", "<p md-pos=\"14-18\">c</p>")
+        val patch = HtmlBlockPatcher.diff(oldBlocks, newBlocks)
+
+        assertEquals(0, patch.start)
+        assertEquals(2, patch.removeCount)
+        assertEquals(2, patch.blocks.size)
+        assertEquals(2, patch.shiftDelta)
+    }
+
+    @Test
+    fun test_patchNeedsSameShell() {
+        val patcher = HtmlBlockPatcher()
+        val page1 = HtmlBlockPatcher.parsePage(page("<p md-pos=\"0-4\">a</p>"), "key")!!
+        val page2 = HtmlBlockPatcher.parsePage(page("<p md-pos=\"0-4\">b</p>"), "key")!!
+        val page3 = HtmlBlockPatcher.parsePage(page("<p md-pos=\"0-4\">b</p>"), "other")!!
+
+        assertEquals(false, patcher.canPatch(page1))
+        patcher.load(page1)
+        assertEquals(true, patcher.canPatch(page2))
+        assertEquals(false, patcher.canPatch(page3))
+
+        val patch = patcher.patch(page2)
+        assertNotNull(patch)
+        assertEquals(0, patch!!.start)
+        assertEquals(1, patch.removeCount)
+
+        assertNull(patcher.patch(page3))
+        patcher.reset()
+        assertEquals(false, patcher.canPatch(page2))
+    }
+
+    @Test
+    fun test_jsStringLiteral() {
+        assertEquals("\"a\\\"b\\\\c\\nd\\u2028\"", HtmlBlockPatcher.jsStringLiteral("a\"b\\c\nd\u2028"))
+    }
+}
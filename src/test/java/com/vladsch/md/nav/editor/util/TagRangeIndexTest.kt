@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com>, all rights reserved.
+ *
+ * This code is private property of the copyright holder and cannot be used without
+ * having obtained a license or prior written permission of the copyright holder.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.vladsch.md.nav.editor.util
+
+import com.vladsch.flexmark.util.sequence.Range
+import com.vladsch.flexmark.util.sequence.TagRange
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Test
+
+class TagRangeIndexTest {
+    private val tagRanges = listOf(
+        TagRange("p", 0, 40),
+        TagRange("a", 10, 20),
+        TagRange("span", 10, 20),
+        TagRange("em", 12, 16),
+        TagRange("h1", 50, 60),
+        TagRange("ul", 70, 100),
+        TagRange("li", 70, 85),
+        TagRange("li", 85, 100)
+    )
+
+    private fun linearBest(offset: Int, lineOffsets: Range?): TagRange? {
+        var best: TagRange? = null
+        for (tagRange in tagRanges) {
+            if (tagRange.doesContain(offset)) {
+                if (best == null || tagRange.span < best.span || tagRange.span == best.span && (TagRangeIndex.TAG_PRIORITIES[tagRange.tag] ?: 0) > (TagRangeIndex.TAG_PRIORITIES[best.tag] ?: 0)) {
+                    best = tagRange
+                }
+            }
+        }
+
+        if (best == null && lineOffsets != null) {
+            best = tagRanges.firstOrNull { lineOffsets.doesOverlap(it) }
+        }
+        return best
+    }
+
+    @Test
+    fun test_smallestContaining() {
+        val index = TagRangeIndex.of(tagRanges)
+        assertSame(tagRanges[3], index.findBestTagRange(13, null))
+        assertSame(tagRanges[0], index.findBestTagRange(5, null))
+        assertSame(tagRanges[6], index.findBestTagRange(70, null))
+        assertSame(tagRanges[7], index.findBestTagRange(85, null))
+    }
+
+    @Test
+    fun test_priority() {
+        val index = TagRangeIndex.of(tagRanges)
+        assertSame(tagRanges[2], index.findBestTagRange(18, null))
+    }
+
+    @Test
+    fun test_lineOverlap() {
+        val index = TagRangeIndex.of(tagRanges)
+        assertNull(index.findBestTagRange(45, null))
+        assertSame(tagRanges[4], index.findBestTagRange(45, Range.of(42, 55)))
+        assertNull(index.findBestTagRange(45, Range.of(42, 48)))
+    }
+
+    @Test
+    fun test_matchesLinearSearch() {
+        val index = TagRangeIndex.of(tagRanges)
+        for (offset in -1..101) {
+            assertEquals("offset $offset", linearBest(offset, null), index.findBestTagRange(offset, null))
+            val lineOffsets = Range.of(maxOf(0, offset - 5), offset + 5)
+            assertEquals("offset $offset", linearBest(offset, lineOffsets), index.findBestTagRange(offset, lineOffsets))
+        }
+    }
+
+    @Test
+    fun test_of() {
+        val index = TagRangeIndex.of(tagRanges)
+        assertSame(index, TagRangeIndex.of(index))
+        assertSame(TagRangeIndex.EMPTY, TagRangeIndex.of(null))
+        assertEquals(tagRanges, index)
+    }
+}
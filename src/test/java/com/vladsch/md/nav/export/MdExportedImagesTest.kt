@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com>, all rights reserved.
+ *
+ * This code is private property of the copyright holder and cannot be used without
+ * having obtained a license or prior written permission of the copyright holder.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.vladsch.md.nav.export
+
+import com.intellij.openapi.util.io.FileUtil
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+
+class MdExportedImagesTest {
+    @get:Rule
+    val tempFolder = TemporaryFolder()
+
+    private fun path(file: File): String = FileUtil.toSystemIndependentName(file.path)
+
+    private fun image(file: File, content: String): File {
+        file.parentFile.mkdirs()
+        file.writeText(content)
+        return file
+    }
+
+    @Test
+    fun test_underSourceDirectory() {
+        val source = tempFolder.newFolder("source")
+        val export = tempFolder.newFolder("export")
+        val image = image(File(source, "images/logo.png"), "logo")
+        val images = MdExportedImages(source.toPath(), export.toPath())
+
+        val exported = images.apply(path(image))
+        assertEquals(path(File(export, "images/logo.png")), exported)
+        assertEquals("logo", File(exported).readText())
+        assertEquals(exported, images.apply(path(image)))
+        assertEquals(1, images.copiedCount)
+        assertTrue(images.errors.isEmpty())
+    }
+
+    @Test
+    fun test_outsideSourceDirectory() {
+        val source = tempFolder.newFolder("source")
+        val export = tempFolder.newFolder("export")
+        val image1 = image(File(tempFolder.root, "assets/a/logo.png"), "logo")
+        val image2 = image(File(tempFolder.root, "assets/b/logo.png"), "logo")
+        val image3 = image(File(tempFolder.root, "assets/c/logo.png"), "other logo")
+        val images = MdExportedImages(source.toPath(), export.toPath())
+
+        val exported1 = images.apply(path(image1))!!
+        val exported2 = images.apply(path(image2))
+        val exported3 = images.apply(path(image3))!!
+
+        // same content shares one copy
+        assertEquals(exported1, exported2)
+        assertTrue(exported1 != exported3)
+        assertEquals(path(File(export, MdExportedImages.IMAGES_DIRECTORY)), File(exported1).parent.replace('\\', '/'))
+        assertTrue(File(exported1).name.matches(Regex("logo-[0-9a-f]{8}\\.png")))
+        assertEquals("other logo", File(exported3).readText())
+        assertEquals(2, images.copiedCount)
+    }
+
+    @Test
+    fun test_notFile() {
+        val source = tempFolder.newFolder("source")
+        val export = tempFolder.newFolder("export")
+        val images = MdExportedImages(source.toPath(), export.toPath())
+
+        assertNull(images.apply(path(File(source, "missing.png"))))
+        assertNull(images.apply(path(source)))
+        assertEquals(0, images.copiedCount)
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com>, all rights reserved.
+ *
+ * This code is private property of the copyright holder and cannot be used without
+ * having obtained a license or prior written permission of the copyright holder.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.vladsch.md.nav.export
+
+import com.intellij.openapi.util.io.FileUtil
+import com.intellij.testFramework.fixtures.LightPlatformCodeInsightFixtureTestCase
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertTrue
+import java.nio.file.Paths
+import java.util.function.Function
+
+class MdHtmlBatchExporterTest : LightPlatformCodeInsightFixtureTestCase() {
+    private val exportDirectory = Paths.get("/export").toAbsolutePath().normalize()
+
+    private fun exportPath(relativePath: String): String {
+        return FileUtil.toSystemIndependentName(exportDirectory.resolve(relativePath).toString())
+    }
+
+    fun test_exportFileMap() {
+        val readme = myFixture.addFileToProject("docs/readme.md", "").virtualFile
+        val intro = myFixture.addFileToProject("docs/guide/intro.md", "").virtualFile
+        val exporter = MdHtmlBatchExporter(project, readme.parent.parent, exportDirectory, 1)
+
+        val exportFileMap = exporter.getExportFileMap(listOf(readme, intro))
+        assertEquals(exportPath("docs/readme.html"), exportFileMap[readme.path])
+        assertEquals(exportPath("docs/guide/intro.html"), exportFileMap[intro.path])
+    }
+
+    fun test_exportedLinksRelative() {
+        val readme = myFixture.addFileToProject("docs/readme.md", "# Readme\n\n[Setup](guide/intro.md#setup)\n\n![logo](../images/logo.png)\n").virtualFile
+        val intro = myFixture.addFileToProject("docs/guide/intro.md", "# Intro\n\n## Setup\n").virtualFile
+        val image = myFixture.addFileToProject("images/logo.png", "").virtualFile
+        val exporter = MdHtmlBatchExporter(project, readme.parent.parent, exportDirectory, 1)
+
+        val exportFileMap = exporter.getExportFileMap(listOf(readme, intro))
+        val mappedImages = ArrayList<String>()
+        val exportedImages = Function<String, String> { filePath ->
+            mappedImages.add(filePath)
+            // copied images can be renamed
+            if (filePath == image.path) exportPath("images/logo-0123abcd.png") else null
+        }
+
+        val html = exporter.renderFile(readme, exportFileMap.getValue(readme.path), exportFileMap, exportedImages)
+        assertNotNull(html)
+        assertTrue(html, html!!.contains("href=\"guide/intro.html#setup\""))
+        assertTrue(html, html.contains("src=\"../images/logo-0123abcd.png\""))
+        assertEquals(listOf(image.path), mappedImages)
+    }
+}
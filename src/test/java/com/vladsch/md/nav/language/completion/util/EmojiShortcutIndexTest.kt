@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com>, all rights reserved.
+ *
+ * This code is private property of the copyright holder and cannot be used without
+ * having obtained a license or prior written permission of the copyright holder.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.vladsch.md.nav.language.completion.util
+
+import com.intellij.psi.codeStyle.NameUtil
+import com.vladsch.flexmark.ext.emoji.internal.EmojiShortcuts
+import com.vladsch.md.nav.settings.EmojiShortcutsType
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class EmojiShortcutIndexTest {
+    private fun shortcuts(index: EmojiShortcutIndex, prefix: String): List<String> {
+        val result = ArrayList<String>()
+        index.forPrefix(prefix) { shortcut, _ -> result.add(shortcut) }
+        return result
+    }
+
+    @Test
+    fun test_all() {
+        for (shortcutsType in EmojiShortcutsType.values()) {
+            val expected = EmojiShortcuts.getEmojiShortcuts().filter { shortcutsType.flexmarkType.getPreferred(it.value.emojiCheatSheetFile, it.value.githubFile) != null }.keys
+            val index = EmojiShortcutIndex.getIndex(shortcutsType)
+
+            assertSame(index, EmojiShortcutIndex.getIndex(shortcutsType))
+            assertEquals(expected.size, index.size)
+            assertEquals(expected.toList(), shortcuts(index, ""))
+        }
+    }
+
+    @Test
+    fun test_prefix() {
+        val shortcutsType = EmojiShortcutsType.ANY_GITHUB_PREFERRED
+        val index = EmojiShortcutIndex.getIndex(shortcutsType)
+        val expected = EmojiShortcuts.getEmojiShortcuts()
+            .filter { shortcutsType.flexmarkType.getPreferred(it.value.emojiCheatSheetFile, it.value.githubFile) != null }.keys
+            .filter { shortcut -> shortcut.split(Regex("[^A-Za-z0-9]+")).any { it.toLowerCase().startsWith("s") } }
+            .sorted()
+
+        val result = shortcuts(index, "smi")
+        assertTrue(result.contains("smile"))
+        assertEquals(expected, result.sorted())
+        assertEquals(result.toSet().size, result.size)
+    }
+
+    @Test
+    fun test_prefixCase() {
+        val index = EmojiShortcutIndex.getIndex(EmojiShortcutsType.ANY_GITHUB_PREFERRED)
+        assertEquals(shortcuts(index, "heart").sorted(), shortcuts(index, "Heart").sorted())
+    }
+
+    @Test
+    fun test_hyphenWords() {
+        val index = EmojiShortcutIndex.getIndex(EmojiShortcutsType.ANY_GITHUB_PREFERRED)
+        assertTrue(shortcuts(index, "mail").contains("e-mail"))
+        assertTrue(shortcuts(index, "rex").contains("t-rex"))
+        assertTrue(shortcuts(index, "t-r").contains("t-rex"))
+    }
+
+    @Test
+    fun test_camelHumps() {
+        val index = EmojiShortcutIndex.getIndex(EmojiShortcutsType.ANY_GITHUB_PREFERRED)
+        val heye = NameUtil.buildMatcher("heye", NameUtil.MatchingCaseSensitivity.NONE)
+        val scat = NameUtil.buildMatcher("scat", NameUtil.MatchingCaseSensitivity.NONE)
+
+        assertTrue(shortcuts(index, "heye").filter { heye.matches(it) }.contains("heart_eyes"))
+        assertTrue(shortcuts(index, "scat").filter { scat.matches(it) }.contains("smile_cat"))
+    }
+
+    @Test
+    fun test_wordStart() {
+        assertTrue(EmojiShortcutIndex.isWordStart("e-mail", 0))
+        assertFalse(EmojiShortcutIndex.isWordStart("e-mail", 1))
+        assertTrue(EmojiShortcutIndex.isWordStart("e-mail", 2))
+        assertTrue(EmojiShortcutIndex.isWordStart("smile_cat", 6))
+        assertTrue(EmojiShortcutIndex.isWordStart("+1", 0))
+        assertTrue(EmojiShortcutIndex.isWordStart("+1", 1))
+        assertTrue(EmojiShortcutIndex.isWordStart("heartEyes", 5))
+        assertFalse(EmojiShortcutIndex.isWordStart("heartEyes", 6))
+        assertFalse(EmojiShortcutIndex.isWordStart("NG", 1))
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com>, all rights reserved.
+ *
+ * This code is private property of the copyright holder and cannot be used without
+ * having obtained a license or prior written permission of the copyright holder.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.vladsch.md.nav.language.injection
+
+import com.intellij.lang.Language
+import com.intellij.lexer.EmbeddedTokenTypesProvider
+import com.intellij.openapi.fileTypes.PlainTextLanguage
+import com.intellij.psi.tree.IElementType
+import com.intellij.psi.tree.PlainTextTokenTypes
+import com.intellij.testFramework.PlatformTestUtil
+import com.intellij.testFramework.fixtures.LightPlatformCodeInsightFixtureTestCase
+import com.vladsch.md.nav.language.api.MdLanguageProvider
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+
+class LanguageGuesserTest : LightPlatformCodeInsightFixtureTestCase() {
+    private val guesser = LanguageGuesser.INSTANCE
+
+    override fun setUp() {
+        super.setUp()
+        guesser.clearCache()
+    }
+
+    override fun tearDown() {
+        try {
+            guesser.clearCache()
+        } finally {
+            super.tearDown()
+        }
+    }
+
+    fun test_cached() {
+        assertFalse(guesser.isCached("text"))
+        assertSame(PlainTextLanguage.INSTANCE, guesser.guessLanguage("text"))
+        assertTrue(guesser.isCached("text"))
+        assertSame(PlainTextLanguage.INSTANCE, guesser.guessLanguage("text"))
+    }
+
+    fun test_unknownCached() {
+        assertNull(guesser.guessLanguage("no-such-language"))
+        assertTrue(guesser.isCached("no-such-language"))
+        assertNull(guesser.guessLanguage("no-such-language"))
+    }
+
+    fun test_clearCache() {
+        guesser.guessLanguage("text")
+        guesser.guessLanguage("no-such-language")
+
+        guesser.clearCache()
+        assertFalse(guesser.isCached("text"))
+        assertFalse(guesser.isCached("no-such-language"))
+    }
+
+    fun test_embeddedProviderChange() {
+        guesser.listenForChanges(testRootDisposable)
+
+        assertNull(guesser.guessLanguage("test-embedded"))
+        assertTrue(guesser.isCached("test-embedded"))
+
+        val provider = object : EmbeddedTokenTypesProvider {
+            override fun getName(): String = "test-embedded"
+            override fun getElementType(): IElementType = PlainTextTokenTypes.PLAIN_TEXT
+        }
+        PlatformTestUtil.registerExtension(EmbeddedTokenTypesProvider.EXTENSION_POINT_NAME, provider, testRootDisposable)
+
+        assertFalse(guesser.isCached("test-embedded"))
+        assertSame(PlainTextLanguage.INSTANCE, guesser.guessLanguage("test-embedded"))
+    }
+
+    fun test_languageProviderChange() {
+        guesser.listenForChanges(testRootDisposable)
+
+        assertNull(guesser.guessLanguage("test-provided"))
+        assertTrue(guesser.isCached("test-provided"))
+
+        val provider = object : MdLanguageProvider {
+            override fun adjustLanguages(result: MutableMap<String, Language>) {
+                result["test-provided"] = PlainTextLanguage.INSTANCE
+            }
+        }
+        PlatformTestUtil.registerExtension(MdLanguageProvider.EP_NAME, provider, testRootDisposable)
+
+        assertFalse(guesser.isCached("test-provided"))
+        assertSame(PlainTextLanguage.INSTANCE, guesser.guessLanguage("test-provided"))
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com>, all rights reserved.
+ *
+ * This code is private property of the copyright holder and cannot be used without
+ * having obtained a license or prior written permission of the copyright holder.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.vladsch.md.nav.parser
+
+import com.intellij.psi.tree.IElementType
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.*
+
+class LexerTokenBufferTest {
+    companion object {
+        private val TYPE_A = IElementType("LEXER_TOKEN_BUFFER_TEST_A", null)
+        private val TYPE_B = IElementType("LEXER_TOKEN_BUFFER_TEST_B", null)
+        private val TYPE_C = IElementType("LEXER_TOKEN_BUFFER_TEST_C", null)
+    }
+
+    @Test
+    fun test_addGrows() {
+        val buffer = LexerTokenBuffer(1)
+        assertTrue(buffer.isEmpty)
+
+        for (i in 0 until 100) {
+            buffer.add(i, i + 1, if (i % 2 == 0) TYPE_A else TYPE_B, i)
+        }
+
+        assertEquals(100, buffer.size())
+        for (i in 0 until 100) {
+            assertEquals(i, buffer.getStart(i))
+            assertEquals(i + 1, buffer.getEnd(i))
+            assertEquals(i, buffer.getNesting(i))
+            assertSame(if (i % 2 == 0) TYPE_A else TYPE_B, buffer.getElementType(i))
+        }
+    }
+
+    @Test
+    fun test_addNoNesting() {
+        val buffer = LexerTokenBuffer()
+        buffer.add(0, 5, TYPE_C)
+        assertEquals(LexerTokenBuffer.NO_NESTING, buffer.getNesting(0))
+        assertEquals(LexerToken(0, 5, TYPE_C), buffer.getToken(0))
+    }
+
+    @Test
+    fun test_sortedOrder() {
+        val buffer = LexerTokenBuffer()
+        buffer.add(5, 10, TYPE_A, 1)
+        buffer.add(0, 3, TYPE_B, 2)
+        buffer.add(0, 8, TYPE_C, 1)
+        buffer.add(0, 3, TYPE_A, 1)
+
+        val sorted = buffer.sorted()
+
+        // start ascending, end descending, nesting ascending
+        assertEquals(LexerToken(0, 8, TYPE_C, 1), sorted.getToken(0))
+        assertEquals(LexerToken(0, 3, TYPE_A, 1), sorted.getToken(1))
+        assertEquals(LexerToken(0, 3, TYPE_B, 2), sorted.getToken(2))
+        assertEquals(LexerToken(5, 10, TYPE_A, 1), sorted.getToken(3))
+    }
+
+    @Test
+    fun test_sortedMatchesLexerTokenSort() {
+        val random = Random(1)
+        val types = arrayOf(TYPE_A, TYPE_B, TYPE_C)
+
+        for (iteration in 0 until 500) {
+            val buffer = LexerTokenBuffer()
+            val tokens = ArrayList<LexerToken>()
+            for (i in 0 until random.nextInt(100)) {
+                val start = random.nextInt(30)
+                val end = start + random.nextInt(6)
+                val type = types[random.nextInt(types.size)]
+                val nesting = random.nextInt(4)
+                buffer.add(start, end, type, nesting)
+                tokens.add(LexerToken(start, end, type, nesting))
+            }
+
+            // both sorts are stable so equal tokens of different types keep their order
+            tokens.sort()
+            val sorted = buffer.sorted()
+
+            assertEquals(tokens.size, sorted.size())
+            for (i in tokens.indices) {
+                assertEquals("iteration $iteration index $i", tokens[i], sorted.getToken(i))
+            }
+        }
+    }
+}
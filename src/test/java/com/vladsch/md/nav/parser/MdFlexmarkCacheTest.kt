@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com>, all rights reserved.
+ *
+ * This code is private property of the copyright holder and cannot be used without
+ * having obtained a license or prior written permission of the copyright holder.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.vladsch.md.nav.parser
+
+import com.intellij.openapi.application.ApplicationManager
+import com.intellij.testFramework.fixtures.LightPlatformCodeInsightFixtureTestCase
+import com.vladsch.flexmark.util.data.DataHolder
+import com.vladsch.flexmark.util.data.MutableDataSet
+import com.vladsch.md.nav.parser.api.HtmlPurpose
+import com.vladsch.md.nav.parser.api.ParserPurpose
+import com.vladsch.md.nav.settings.MdApplicationSettings
+import com.vladsch.md.nav.settings.MdRenderingProfile
+import com.vladsch.md.nav.settings.MdRenderingProfileManager
+import com.vladsch.md.nav.settings.ProfileManagerChangeListener
+import com.vladsch.md.nav.settings.SettingsChangedListener
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertSame
+import java.util.function.Supplier
+
+class MdFlexmarkCacheTest : LightPlatformCodeInsightFixtureTestCase() {
+    private var built = 0
+
+    private val options = Supplier<DataHolder> {
+        built++
+        MutableDataSet()
+    }
+
+    private fun cache(): MdFlexmarkCache {
+        val cache = MdFlexmarkCache.getInstance(project)
+        cache.clear()
+        return cache
+    }
+
+    private fun profile(): MdRenderingProfile {
+        val profile = MdRenderingProfile()
+        profile.setProject(project)
+        return profile
+    }
+
+    fun test_hit() {
+        val cache = cache()
+        val profile = profile()
+        val entry = cache.getEntry(profile, ParserPurpose.JAVAFX, HtmlPurpose.RENDER, null, options)
+
+        assertSame(entry, cache.getEntry(profile, ParserPurpose.JAVAFX, HtmlPurpose.RENDER, null, options))
+        assertEquals(1, built)
+    }
+
+    fun test_hitEqualProfile() {
+        val cache = cache()
+        val entry = cache.getEntry(profile(), ParserPurpose.JAVAFX, HtmlPurpose.RENDER, listOf(false, null), options)
+
+        // profiles of different files with the same settings share the entry
+        assertSame(entry, cache.getEntry(MdRenderingProfile(profile()), ParserPurpose.JAVAFX, HtmlPurpose.RENDER, listOf(false, null), options))
+        assertEquals(1, built)
+    }
+
+    fun test_missPurpose() {
+        val cache = cache()
+        val profile = profile()
+        val entry = cache.getEntry(profile, ParserPurpose.JAVAFX, HtmlPurpose.RENDER, null, options)
+
+        assertNotSame(entry, cache.getEntry(profile, ParserPurpose.SWING, HtmlPurpose.RENDER, null, options))
+        assertNotSame(entry, cache.getEntry(profile, ParserPurpose.JAVAFX, HtmlPurpose.EXPORT, null, options))
+        assertEquals(3, built)
+    }
+
+    fun test_missVariant() {
+        val cache = cache()
+        val profile = profile()
+        val entry = cache.getEntry(profile, ParserPurpose.JAVAFX, HtmlPurpose.RENDER, listOf(false, null), options)
+
+        assertNotSame(entry, cache.getEntry(profile, ParserPurpose.JAVAFX, HtmlPurpose.RENDER, listOf(true, null), options))
+        assertEquals(2, built)
+    }
+
+    fun test_missProfileSettings() {
+        val cache = cache()
+        val profile = profile()
+        val pegdownFlags = profile.parserSettings.pegdownFlags
+        val entry = cache.getEntry(profile, ParserPurpose.JAVAFX, HtmlPurpose.RENDER, null, options)
+
+        profile.parserSettings.pegdownFlags = pegdownFlags xor Extensions.ABBREVIATIONS
+        val changedEntry = cache.getEntry(profile, ParserPurpose.JAVAFX, HtmlPurpose.RENDER, null, options)
+        assertNotSame(entry, changedEntry)
+
+        // entry keys are not affected by changes to live profile settings
+        profile.parserSettings.pegdownFlags = pegdownFlags
+        assertSame(entry, cache.getEntry(profile, ParserPurpose.JAVAFX, HtmlPurpose.RENDER, null, options))
+        assertEquals(2, built)
+    }
+
+    fun test_missProfileName() {
+        val cache = cache()
+        val profile = profile()
+        val entry = cache.getEntry(profile, ParserPurpose.JAVAFX, HtmlPurpose.RENDER, null, options)
+
+        val otherProfile = profile()
+        otherProfile.profileName = "other"
+        assertNotSame(entry, cache.getEntry(otherProfile, ParserPurpose.JAVAFX, HtmlPurpose.RENDER, null, options))
+        assertEquals(2, built)
+    }
+
+    fun test_clearedOnApplicationSettingsChange() {
+        val cache = cache()
+        val profile = profile()
+        val entry = cache.getEntry(profile, ParserPurpose.JAVAFX, HtmlPurpose.RENDER, null, options)
+
+        ApplicationManager.getApplication().messageBus.syncPublisher(SettingsChangedListener.TOPIC).onSettingsChange(MdApplicationSettings.instance)
+
+        assertNotSame(entry, cache.getEntry(profile, ParserPurpose.JAVAFX, HtmlPurpose.RENDER, null, options))
+        assertEquals(2, built)
+    }
+
+    fun test_clearedOnProfileChange() {
+        val cache = cache()
+        val profile = profile()
+        val entry = cache.getEntry(profile, ParserPurpose.JAVAFX, HtmlPurpose.RENDER, null, options)
+
+        project.messageBus.syncPublisher(ProfileManagerChangeListener.TOPIC).onSettingsChange(MdRenderingProfileManager.getInstance(project))
+
+        assertNotSame(entry, cache.getEntry(profile, ParserPurpose.JAVAFX, HtmlPurpose.RENDER, null, options))
+        assertEquals(2, built)
+    }
+
+    fun test_evictEldest() {
+        val cache = cache()
+        val profile = profile()
+        val entry = cache.getEntry(profile, ParserPurpose.JAVAFX, HtmlPurpose.RENDER, 0, options)
+
+        for (i in 1..MdFlexmarkCache.MAX_CACHED_ENTRIES) {
+            cache.getEntry(profile, ParserPurpose.JAVAFX, HtmlPurpose.RENDER, i, options)
+        }
+
+        assertNotSame(entry, cache.getEntry(profile, ParserPurpose.JAVAFX, HtmlPurpose.RENDER, 0, options))
+        assertEquals(MdFlexmarkCache.MAX_CACHED_ENTRIES + 2, built)
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com>, all rights reserved.
+ *
+ * This code is private property of the copyright holder and cannot be used without
+ * having obtained a license or prior written permission of the copyright holder.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.vladsch.md.nav.parser
+
+import com.intellij.testFramework.fixtures.LightPlatformCodeInsightFixtureTestCase
+import com.vladsch.md.nav.parser.ast.MdASTNode
+import com.vladsch.md.nav.settings.MdRenderingProfile
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import java.io.File
+import java.util.*
+
+/**
+ * Incremental reparse must give the same tokens and AST as a full parse of the edited text
+ */
+class MdIncrementalLexParserTest : LightPlatformCodeInsightFixtureTestCase() {
+    companion object {
+        private const val GENERATED_EDITS = 200
+        private const val FILE_EDITS = 50
+
+        private val BLOCKS = arrayOf(
+            "# Heading\n",
+            "Paragraph with [link][ref] and ![image][img] and *emphasis*.\n",
+            "Lazy paragraph\ncontinuation line\n",
+            "```java\nclass Test {\n\n    int x;\n}\n```\n",
+            "~~~\nunterminated tilde fence\n",
+            "    indented code\n\n    more code\n",
+            "- item 1\n- item 2\n\n  continuation\n\n- [ ] task\n",
+            "1. first\n2. second\n   - nested\n",
+            "> quote\n> - list in quote\n",
+            "[ref]: https://example.com \"Title\"\n",
+            "[img]: images/test.png\n",
+            "*[ABBR]: abbreviation\n",
+            "Footnote reference[^1].\n",
+            "[^1]: footnote text\n",
+            "| a | b |\n|---|---|\n| 1 | 2 |\n",
+            "<div>\nhtml block\n</div>\n",
+            "---\n"
+        )
+
+        private val INSERTS = arrayOf(
+            "\n", "\n\n", "x", " ", "```", "```\n", "~~~\n", "- ", "1. ", "    ", "> ",
+            "[ref]: https://changed.com\n", "[new]: new.md\n", "[ref]", "[new]", "*[ABBR]: other\n",
+            "[^1]: changed\n", "# ", "<div>\n", "|---|\n", "---\n"
+        )
+    }
+
+    private val renderingProfile = MdRenderingProfile()
+
+    private fun generatedText(random: Random, blocks: Int): String {
+        val sb = StringBuilder()
+        for (i in 0 until blocks) {
+            sb.append(BLOCKS[random.nextInt(BLOCKS.size)])
+            if (random.nextInt(4) != 0) sb.append('\n')
+        }
+        return sb.toString()
+    }
+
+    private fun lineStarts(text: String): IntArray {
+        val starts = ArrayList<Int>()
+        starts.add(0)
+        for (i in text.indices) {
+            if (text[i] == '\n' && i + 1 < text.length) starts.add(i + 1)
+        }
+        return starts.toIntArray()
+    }
+
+    private fun edit(random: Random, text: String): String {
+        val lineStarts = lineStarts(text)
+        // half of the edits start at a line start to hit block boundaries, fence and list markers
+        val start = if (random.nextBoolean()) lineStarts[random.nextInt(lineStarts.size)] else random.nextInt(text.length + 1)
+        val maxDelete = minOf(text.length - start, 64)
+
+        return when (random.nextInt(3)) {
+            0 -> text.substring(0, start) + INSERTS[random.nextInt(INSERTS.size)] + text.substring(start)
+            1 -> text.substring(0, start) + text.substring(start + random.nextInt(maxDelete + 1))
+            else -> {
+                val end = start + random.nextInt(maxDelete + 1)
+                text.substring(0, start) + INSERTS[random.nextInt(INSERTS.size)] + text.substring(end)
+            }
+        }
+    }
+
+    private fun assertSameTokens(message: String, expected: LexerTokenBuffer, actual: LexerTokenBuffer) {
+        assertEquals(message, expected.toString(), actual.toString())
+        assertEquals(message, expected.size(), actual.size())
+        for (i in 0 until expected.size()) {
+            assertEquals("$message token[$i] start", expected.getStart(i), actual.getStart(i))
+            assertEquals("$message token[$i] end", expected.getEnd(i), actual.getEnd(i))
+            assertEquals("$message token[$i] type", expected.getTypeIndex(i), actual.getTypeIndex(i))
+        }
+    }
+
+    private fun astText(node: MdASTNode, out: StringBuilder, indent: Int) {
+        for (i in 0 until indent) out.append("  ")
+        out.append(node.elementType).append('[').append(node.startOffset).append(", ").append(node.endOffset).append(")\n")
+        for (child in node.children) {
+            astText(child, out, indent + 1)
+        }
+    }
+
+    private fun ast(node: MdASTNode): String {
+        val sb = StringBuilder()
+        astText(node, sb, 0)
+        return sb.toString()
+    }
+
+    private fun assertRandomEdits(name: String, initialText: String, seed: Long, edits: Int) {
+        val random = Random(seed)
+        var text = initialText
+        var data = MdLexParserManager.parseMarkdown(renderingProfile, text)
+        var incremental = 0
+
+        for (i in 0 until edits) {
+            val newText = edit(random, text)
+            val expected = MdLexParserManager.parseMarkdown(renderingProfile, newText)
+            val actual = MdIncrementalLexParser.reparseMarkdown(renderingProfile, text, data, newText)
+            val message = "$name seed: $seed edit: $i"
+
+            if (actual != null) {
+                incremental++
+                assertEquals(message, ast(expected.rootNode), ast(actual.rootNode))
+                assertSameTokens(message, expected.lexerTokens, actual.lexerTokens)
+                // continue from incremental result so errors accumulate the way they would in the editor
+                data = actual
+            } else {
+                data = expected
+            }
+            text = newText
+        }
+
+        assertTrue("$name seed: $seed no incremental reparse", incremental > 0)
+    }
+
+    fun test_unchangedText() {
+        val text = generatedText(Random(1), 40)
+        val data = MdLexParserManager.parseMarkdown(renderingProfile, text)
+        assertSame(data, MdIncrementalLexParser.reparseMarkdown(renderingProfile, text, data, text))
+    }
+
+    fun test_blockBoundary() {
+        val text = "Paragraph 1\n\nParagraph 2\n\nParagraph 3\n"
+        val newText = "Paragraph 1\n\nParagraph 2\ncontinued\nParagraph 3\n"
+        val data = MdLexParserManager.parseMarkdown(renderingProfile, text)
+        val actual = MdIncrementalLexParser.reparseMarkdown(renderingProfile, text, data, newText)
+        val expected = MdLexParserManager.parseMarkdown(renderingProfile, newText)
+
+        assertNotNull(actual)
+        assertEquals(ast(expected.rootNode), ast(actual!!.rootNode))
+        assertSameTokens("", expected.lexerTokens, actual.lexerTokens)
+    }
+
+    fun test_openingFence() {
+        val text = "Paragraph 1\n\nParagraph 2\n\n# Heading\n\nParagraph 3\n"
+        val newText = "Paragraph 1\n\n```\nParagraph 2\n\n# Heading\n\nParagraph 3\n"
+        val data = MdLexParserManager.parseMarkdown(renderingProfile, text)
+
+        // unterminated fence swallows the heading after the edit, which must be fully parsed
+        assertNull(MdIncrementalLexParser.reparseMarkdown(renderingProfile, text, data, newText))
+    }
+
+    fun test_closingFence() {
+        val text = "Paragraph 1\n\n```\ncode\n```\n\nParagraph 2\n"
+        val newText = "Paragraph 1\n\n```\ncode\nmore code\n```\n\nParagraph 2\n"
+        val data = MdLexParserManager.parseMarkdown(renderingProfile, text)
+        val actual = MdIncrementalLexParser.reparseMarkdown(renderingProfile, text, data, newText)
+        val expected = MdLexParserManager.parseMarkdown(renderingProfile, newText)
+
+        assertNotNull(actual)
+        assertEquals(ast(expected.rootNode), ast(actual!!.rootNode))
+        assertSameTokens("", expected.lexerTokens, actual.lexerTokens)
+    }
+
+    fun test_referenceDefinition() {
+        val text = "Paragraph [link][ref]\n\nParagraph 2\n\n[ref]: https://example.com\n"
+        val newText = "Paragraph [link][ref]\n\nParagraph 2\n\n[ref2]: https://example.com\n"
+        val data = MdLexParserManager.parseMarkdown(renderingProfile, text)
+
+        // changed definition affects the reference in the first paragraph, which must be fully parsed
+        assertNull(MdIncrementalLexParser.reparseMarkdown(renderingProfile, text, data, newText))
+    }
+
+    fun test_referenceDefinitionUnchanged() {
+        val text = "Paragraph [link][ref]\n\nParagraph 2\n\n[ref]: https://example.com\n"
+        val newText = "Paragraph [link][ref]\n\nParagraph 2 changed\n\n[ref]: https://example.com\n"
+        val data = MdLexParserManager.parseMarkdown(renderingProfile, text)
+        val actual = MdIncrementalLexParser.reparseMarkdown(renderingProfile, text, data, newText)
+        val expected = MdLexParserManager.parseMarkdown(renderingProfile, newText)
+
+        assertNotNull(actual)
+        assertEquals(ast(expected.rootNode), ast(actual!!.rootNode))
+        assertSameTokens("", expected.lexerTokens, actual.lexerTokens)
+    }
+
+    fun test_randomEditsGenerated() {
+        for (seed in 1L..20L) {
+            assertRandomEdits("generated", generatedText(Random(seed), 60), seed, GENERATED_EDITS)
+        }
+    }
+
+    fun test_randomEditsPerformanceFiles() {
+        val files = File("test-data/performance").walk().filter { it.isFile && it.extension == "md" }.toList()
+        assertTrue(files.isNotEmpty())
+
+        for (file in files) {
+            assertRandomEdits(file.name, file.readText(), file.name.hashCode().toLong(), FILE_EDITS)
+        }
+    }
+}
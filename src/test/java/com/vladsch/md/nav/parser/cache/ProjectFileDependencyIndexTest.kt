@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com>, all rights reserved.
+ *
+ * This code is private property of the copyright holder and cannot be used without
+ * having obtained a license or prior written permission of the copyright holder.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.vladsch.md.nav.parser.cache
+
+import com.intellij.openapi.fileTypes.PlainTextFileType
+import com.intellij.psi.PsiFile
+import com.vladsch.md.nav.parser.cache.data.CachedDataKey
+import com.vladsch.md.nav.parser.cache.data.CachedDataOwner
+import com.vladsch.md.nav.parser.cache.data.CachedDataSet
+import com.vladsch.md.nav.parser.cache.data.dependency.DataKeyDependency
+import com.vladsch.md.nav.parser.cache.data.dependency.ProjectFileDependency
+import com.vladsch.md.nav.parser.cache.data.dependency.ProjectFileFilter
+import com.vladsch.md.nav.parser.cache.data.dependency.ProjectFilePredicate
+import com.vladsch.md.nav.parser.cache.data.transaction.CachedTransactionContext
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class ProjectFileDependencyIndexTest {
+    private val dataSet = CachedDataSet("test")
+
+    private class TestKey(name: String) : CachedDataKey<CachedDataOwner, String>(name) {
+        override fun isValid(value: String): Boolean = true
+        override fun compute(context: CachedTransactionContext<CachedDataOwner>): String = name
+    }
+
+    private class TestPredicate(var filter: ProjectFileFilter) : ProjectFilePredicate {
+        override fun test(psiFile: PsiFile): Boolean = true
+        override fun getFileFilter(): ProjectFileFilter = filter
+    }
+
+    private fun dependency(name: String, filter: ProjectFileFilter): ProjectFileDependency {
+        return ProjectFileDependency(DataKeyDependency(dataSet, TestKey(name)), TestPredicate(filter))
+    }
+
+    private fun names(dependencies: List<ProjectFileDependency>): Set<String> {
+        return dependencies.map { it.dataKeyDependency.dataKey.name }.toSet()
+    }
+
+    @Test
+    fun test_keys() {
+        val index = ProjectFileDependencyIndex()
+        index.add(dependency("path", ProjectFileFilter().addPath("/project/docs/readme.md")))
+        index.add(dependency("name", ProjectFileFilter().addFileName("readme.md")))
+        index.add(dependency("ext", ProjectFileFilter().addExtension("png")))
+        index.add(dependency("dir", ProjectFileFilter().addDirectory("/project/docs/")))
+        index.add(dependency("type", ProjectFileFilter().addFileType(PlainTextFileType.INSTANCE)))
+        index.add(dependency("none", ProjectFileFilter()))
+        index.add(dependency("any", ProjectFileFilter.ANY_FILE))
+
+        assertEquals(7, index.size())
+        assertEquals(setOf("path", "name", "dir", "any"), names(index.getDependencies("/project/docs/readme.md", "md", "Markdown")))
+        assertEquals(setOf("name", "any"), names(index.getDependencies("/project/readme.md", "md", "Markdown")))
+        assertEquals(setOf("ext", "dir", "any"), names(index.getDependencies("/project/docs/images/logo.png", "png", "Image")))
+        assertEquals(setOf("type", "any"), names(index.getDependencies("/project/LICENSE", null, "PLAIN_TEXT")))
+    }
+
+    @Test
+    fun test_rootDirectory() {
+        val index = ProjectFileDependencyIndex()
+        index.add(dependency("root", ProjectFileFilter().addDirectory("/")))
+
+        assertEquals(setOf("root"), names(index.getDependencies("/readme.md", "md", "Markdown")))
+    }
+
+    @Test
+    fun test_remove() {
+        val index = ProjectFileDependencyIndex()
+        val dependency = dependency("ext", ProjectFileFilter().addExtension("png"))
+        index.add(dependency)
+
+        assertTrue(index.remove(dependency))
+        assertFalse(index.remove(dependency))
+        assertEquals(0, index.size())
+        assertTrue(index.getDependencies("/logo.png", "png", "Image").isEmpty())
+    }
+
+    @Test
+    fun test_replace() {
+        val index = ProjectFileDependencyIndex()
+        val key = TestKey("key")
+        index.add(ProjectFileDependency(DataKeyDependency(dataSet, key), TestPredicate(ProjectFileFilter().addExtension("png"))))
+        index.add(ProjectFileDependency(DataKeyDependency(dataSet, key), TestPredicate(ProjectFileFilter().addExtension("jpg"))))
+
+        assertEquals(1, index.size())
+        assertTrue(index.getDependencies("/logo.png", "png", "Image").isEmpty())
+        assertEquals(setOf("key"), names(index.getDependencies("/logo.jpg", "jpg", "Image")))
+    }
+
+    @Test
+    fun test_update() {
+        val index = ProjectFileDependencyIndex()
+        val predicate = TestPredicate(ProjectFileFilter())
+        index.add(ProjectFileDependency(DataKeyDependency(dataSet, TestKey("key")), predicate))
+        assertTrue(index.getDependencies("/logo.png", "png", "Image").isEmpty())
+
+        predicate.filter = ProjectFileFilter.ANY_FILE
+        assertTrue(index.update(predicate))
+        assertEquals(setOf("key"), names(index.getDependencies("/logo.png", "png", "Image")))
+        assertFalse(index.update(TestPredicate(ProjectFileFilter.ANY_FILE)))
+    }
+}
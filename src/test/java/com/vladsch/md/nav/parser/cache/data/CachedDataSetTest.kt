@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com>, all rights reserved.
+ *
+ * This code is private property of the copyright holder and cannot be used without
+ * having obtained a license or prior written permission of the copyright holder.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.vladsch.md.nav.parser.cache.data
+
+import com.vladsch.md.nav.parser.cache.data.transaction.CachedTransactionContext
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class CachedDataSetTest {
+    private class TestKey(name: String, private val weight: Int = 1) : CachedDataKey<CachedDataOwner, String>(name) {
+        override fun isValid(value: String): Boolean = true
+        override fun compute(context: CachedTransactionContext<CachedDataOwner>): String = name
+        override fun getWeight(value: String): Int = weight
+    }
+
+    @Test
+    fun test_setGet() {
+        val dataSet = CachedDataSet("test")
+        val key = TestKey("a")
+
+        assertNull(dataSet.getOrNull(key))
+        dataSet.setValue(key, "a", arrayOf(), longArrayOf())
+
+        assertEquals("a", dataSet.getOrNull(key))
+        assertTrue(dataSet.getVersion(key) > 0)
+        assertTrue(dataSet.remove(key))
+        assertFalse(dataSet.remove(key))
+        assertEquals(-1, dataSet.getVersion(key))
+        assertTrue(dataSet.isEmpty)
+    }
+
+    @Test
+    fun test_versionChanges() {
+        val dataSet = CachedDataSet("test")
+        val key = TestKey("a")
+
+        dataSet.setValue(key, "a", arrayOf(), longArrayOf())
+        val version = dataSet.getVersion(key)
+        dataSet.setValue(key, "b", arrayOf(), longArrayOf())
+
+        assertTrue(dataSet.getVersion(key) > version)
+    }
+
+    @Test
+    fun test_keyLock() {
+        val dataSet = CachedDataSet("test")
+        val key = TestKey("a")
+
+        assertSame(dataSet.getKeyLock(key), dataSet.getKeyLock(key))
+        dataSet.clearCachedData()
+        assertSame(dataSet.getKeyLock(key), dataSet.getKeyLock(key))
+    }
+
+    @Test
+    fun test_weight() {
+        val dataSet = CachedDataSet("test")
+        val key1 = TestKey("a", 5)
+        val key2 = TestKey("b", 7)
+
+        dataSet.setValue(key1, "a", arrayOf(), longArrayOf())
+        dataSet.setValue(key2, "b", arrayOf(), longArrayOf())
+        assertEquals(12, dataSet.weight)
+
+        dataSet.setValue(key1, "a", arrayOf(), longArrayOf())
+        assertEquals(12, dataSet.weight)
+
+        dataSet.remove(key2)
+        assertEquals(5, dataSet.weight)
+
+        dataSet.clearCachedData()
+        assertEquals(0, dataSet.weight)
+    }
+
+    @Test
+    fun test_evictLeastRecentlyUsed() {
+        val dataSet = CachedDataSet("test", 2)
+        val key1 = TestKey("evict-a")
+        val key2 = TestKey("evict-b")
+        val key3 = TestKey("evict-c")
+
+        dataSet.setValue(key1, "a", arrayOf(), longArrayOf())
+        dataSet.setValue(key2, "b", arrayOf(), longArrayOf())
+
+        // key1 is now more recently used than key2
+        dataSet.getOrNull(key1)
+        dataSet.setValue(key3, "c", arrayOf(), longArrayOf())
+
+        assertEquals("a", dataSet.getOrNull(key1))
+        assertNull(dataSet.getOrNull(key2))
+        assertEquals("c", dataSet.getOrNull(key3))
+        assertEquals(2, dataSet.weight)
+        assertEquals(1, CachedDataStatistics.getStatistics().first { it.name == "evict-b" }.evictions)
+    }
+
+    @Test
+    fun test_keepNewValue() {
+        val dataSet = CachedDataSet("test", 2)
+        val key1 = TestKey("a")
+        val key2 = TestKey("b", 5)
+
+        dataSet.setValue(key1, "a", arrayOf(), longArrayOf())
+        dataSet.setValue(key2, "b", arrayOf(), longArrayOf())
+
+        assertNull(dataSet.getOrNull(key1))
+        assertEquals("b", dataSet.getOrNull(key2))
+    }
+}
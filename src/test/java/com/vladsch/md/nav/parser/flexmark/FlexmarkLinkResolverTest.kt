@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com>, all rights reserved.
+ *
+ * This code is private property of the copyright holder and cannot be used without
+ * having obtained a license or prior written permission of the copyright holder.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.vladsch.md.nav.parser.flexmark
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class FlexmarkLinkResolverTest {
+    private val documentUri = "file:///docs/"
+
+    private fun swingImages(html: String, disableGifImages: Boolean): String {
+        return MdSwingHtmlImageNodeRenderer.resolveImages(html) { FlexmarkLinkResolver.getSwingImageUrl(it, documentUri, disableGifImages) }
+    }
+
+    @Test
+    fun test_swingDocumentUri() {
+        assertEquals("file:///docs/", FlexmarkLinkResolver.getSwingDocumentUri("/docs/"))
+        assertNull(FlexmarkLinkResolver.getSwingDocumentUri(""))
+    }
+
+    @Test
+    fun test_swingImageUrl() {
+        assertEquals("file:///docs/images/logo.png", FlexmarkLinkResolver.getSwingImageUrl("images/logo.png", documentUri, false))
+        assertEquals("https://example.com/a.png", FlexmarkLinkResolver.getSwingImageUrl("https://example.com/a.png", documentUri, false))
+        assertEquals("#anchor", FlexmarkLinkResolver.getSwingImageUrl("#anchor", documentUri, false))
+        assertEquals("images/logo.png", FlexmarkLinkResolver.getSwingImageUrl("images/logo.png", null, false))
+    }
+
+    @Test
+    fun test_swingGifImageUrl() {
+        assertEquals("file:///docs/anim._gif_", FlexmarkLinkResolver.getSwingImageUrl("anim.gif", documentUri, true))
+        assertEquals("https://example.com/anim._gif_?raw=true", FlexmarkLinkResolver.getSwingImageUrl("https://example.com/anim.gif?raw=true", documentUri, true))
+        assertEquals("https://example.com/anim.gif?raw=true", FlexmarkLinkResolver.getSwingImageUrl("https://example.com/anim.gif?raw=true", documentUri, false))
+    }
+
+    @Test
+    fun test_hasImage() {
+        assertTrue(MdSwingHtmlImageNodeRenderer.hasImage("<div>\n<IMG src=\"a.png\">\n</div>\n"))
+        assertFalse(MdSwingHtmlImageNodeRenderer.hasImage("<div>\n<a href=\"a.png\">a</a>\n</div>\n"))
+    }
+
+    @Test
+    fun test_htmlBlockImage() {
+        val html = "<div>\n<img src=\"images/logo.png\" alt=\"logo\">\n</div>\n"
+        assertEquals("<div>\n<img src=\"file:///docs/images/logo.png\" alt=\"logo\">\n</div>\n", swingImages(html, false))
+    }
+
+    @Test
+    fun test_inlineHtmlImages() {
+        val html = "<img width=\"10\" src=\"../icon.png\"> and <img src='https://example.com/a.png'>"
+        assertEquals("<img width=\"10\" src=\"file:///docs/../icon.png\"> and <img src='https://example.com/a.png'>", swingImages(html, false))
+    }
+
+    @Test
+    fun test_htmlGifImages() {
+        val html = "<div>\n<img src=\"images/anim.gif\">\n<img src=\"https://example.com/anim.gif?raw=true\">\n</div>\n"
+        assertEquals("<div>\n<img src=\"file:///docs/images/anim._gif_\">\n<img src=\"https://example.com/anim._gif_?raw=true\">\n</div>\n", swingImages(html, true))
+    }
+
+    @Test
+    fun test_htmlWithoutImageSrc() {
+        val html = "<div data-src=\"a.png\">\n<image src=\"b.png\">\n</div>\n"
+        assertEquals(html, swingImages(html, true))
+    }
+
+    @Test
+    fun test_htmlImageDataSrc() {
+        val html = "<img data-src=\"c.png\" src=\"d.png\">"
+        assertEquals("<img data-src=\"c.png\" src=\"file:///docs/d.png\">", swingImages(html, false))
+    }
+}
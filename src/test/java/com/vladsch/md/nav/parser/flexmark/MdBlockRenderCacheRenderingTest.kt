@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com>, all rights reserved.
+ *
+ * This code is private property of the copyright holder and cannot be used without
+ * having obtained a license or prior written permission of the copyright holder.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.vladsch.md.nav.parser.flexmark
+
+import com.intellij.testFramework.fixtures.LightPlatformCodeInsightFixtureTestCase
+import com.vladsch.flexmark.html.HtmlRenderer
+import com.vladsch.flexmark.parser.Parser
+import com.vladsch.flexmark.util.data.MutableDataSet
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+
+class MdBlockRenderCacheRenderingTest : LightPlatformCodeInsightFixtureTestCase() {
+    private val options = MutableDataSet().set(HtmlRenderer.SOURCE_POSITION_ATTRIBUTE, "md-pos").toImmutable()
+    private val parser = Parser.builder(options).build()
+    private val renderer = HtmlRenderer.builder(options).nodeRendererFactory(MdBlockRenderCacheNodeRenderer.Factory()).build()
+
+    /**
+     * @return rendered html followed by tag ranges
+     */
+    private fun render(cache: MdBlockRenderCache?, text: String): String {
+        val document = parser.parse(text)
+        if (cache != null) document.set(MdBlockRenderCache.BLOCK_RENDER_CACHE, cache)
+        val html = renderer.render(document)
+
+        val sb = StringBuilder(html)
+        sb.append("---\n")
+        for (tagRange in HtmlRenderer.TAG_RANGES[document]) {
+            sb.append(tagRange.tag).append(" [").append(tagRange.start).append(", ").append(tagRange.end).append(")\n")
+        }
+        return sb.toString()
+    }
+
+    private fun assertRendering(cache: MdBlockRenderCache, text: String, hitCount: Int, missCount: Int) {
+        assertEquals(render(null, text), render(cache, text))
+        assertEquals("hits", hitCount, cache.hitCount)
+        assertEquals("misses", missCount, cache.missCount)
+    }
+
+    fun test_firstRendering() {
+        val cache = MdBlockRenderCache()
+        assertRendering(cache, "Paragraph 1\n\nParagraph 2\n\nParagraph 3\n", 0, 3)
+    }
+
+    fun test_reuseUnchanged() {
+        val cache = MdBlockRenderCache()
+        render(cache, "Paragraph 1\n\nParagraph 2\n\nParagraph 3\n")
+        assertRendering(cache, "Paragraph 1\n\nParagraph 2 changed\n\nParagraph 3\n", 2, 1)
+    }
+
+    fun test_reuseShifted() {
+        val cache = MdBlockRenderCache()
+        render(cache, "Paragraph 1\n\n* item 1\n* item 2\n\nParagraph 3 `code`\n")
+
+        // source positions and tag ranges of reused blocks are shifted by the inserted text
+        assertRendering(cache, "Inserted\n\nParagraph 1\n\n* item 1\n* item 2\n\nParagraph 3 `code`\n", 3, 1)
+    }
+
+    fun test_reuseDeleted() {
+        val cache = MdBlockRenderCache()
+        render(cache, "Paragraph 1\n\nParagraph 2\n\nParagraph 3\n")
+        assertRendering(cache, "Paragraph 1\n\nParagraph 3\n", 2, 0)
+    }
+
+    fun test_tagRanges() {
+        val cache = MdBlockRenderCache()
+        render(cache, "Paragraph 1\n\nParagraph *2*\n")
+
+        val rendering = render(cache, "Changed\n\nParagraph 1\n\nParagraph *2*\n")
+        assertEquals(render(null, "Changed\n\nParagraph 1\n\nParagraph *2*\n"), rendering)
+        assertTrue(rendering.substring(rendering.indexOf("---\n")).contains("em [32, 35)"))
+    }
+
+    fun test_positionDependentNotCached() {
+        val cache = MdBlockRenderCache()
+        render(cache, "# Heading\n\nParagraph 1\n")
+
+        // headings have generated ids and are always rendered
+        assertRendering(cache, "# Heading\n\nParagraph 1\n", 1, 0)
+    }
+
+    fun test_definitionChangeDiscards() {
+        val cache = MdBlockRenderCache()
+        render(cache, "Paragraph [ref]\n\nParagraph 2\n\n[ref]: /url1\n")
+        assertRendering(cache, "Paragraph [ref]\n\nParagraph 2\n\n[ref]: /url2\n", 0, 2)
+    }
+
+    fun test_rendererChangeDiscards() {
+        val cache = MdBlockRenderCache()
+        cache.setRenderer(parser)
+        render(cache, "Paragraph 1\n\nParagraph 2\n")
+
+        cache.setRenderer(renderer)
+        assertRendering(cache, "Paragraph 1\n\nParagraph 2\n", 0, 2)
+    }
+}
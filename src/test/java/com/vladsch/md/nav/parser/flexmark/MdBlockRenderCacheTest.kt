@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com>, all rights reserved.
+ *
+ * This code is private property of the copyright holder and cannot be used without
+ * having obtained a license or prior written permission of the copyright holder.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.vladsch.md.nav.parser.flexmark
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Test
+
+class MdBlockRenderCacheTest {
+    @Test
+    fun test_shiftNone() {
+        val html = "<p md-pos=\"0-5\">text</p>\n"
+        assertSame(html, MdBlockRenderCache.shiftOffsets(html, "md-pos", 0))
+    }
+
+    @Test
+    fun test_shiftSourcePosition() {
+        assertEquals("<p md-pos=\"10-15\">text <code md-pos=\"11-13\">x</code></p>\n",
+            MdBlockRenderCache.shiftOffsets("<p md-pos=\"0-5\">text <code md-pos=\"1-3\">x</code></p>\n", "md-pos", 10))
+    }
+
+    @Test
+    fun test_shiftNegative() {
+        assertEquals("<p md-pos=\"2-7\">text</p>\n", MdBlockRenderCache.shiftOffsets("<p md-pos=\"12-17\">text</p>\n", "md-pos", -10))
+    }
+
+    @Test
+    fun test_shiftTaskOffset() {
+        assertEquals("<li md-pos=\"20-30\" task-offset=\"23\">item</li>\n",
+            MdBlockRenderCache.shiftOffsets("<li md-pos=\"0-10\" task-offset=\"3\">item</li>\n", "md-pos", 20))
+    }
+
+    @Test
+    fun test_shiftNoSourcePosition() {
+        assertEquals("<li md-pos=\"0-10\" task-offset=\"23\">item</li>\n",
+            MdBlockRenderCache.shiftOffsets("<li md-pos=\"0-10\" task-offset=\"3\">item</li>\n", "", 20))
+    }
+
+    @Test
+    fun test_shiftText() {
+        // attribute text in content is escaped and not shifted
+        assertEquals("<p md-pos=\"5-30\">md-pos=&quot;1-2&quot;</p>\n",
+            MdBlockRenderCache.shiftOffsets("<p md-pos=\"0-25\">md-pos=&quot;1-2&quot;</p>\n", "md-pos", 5))
+    }
+}
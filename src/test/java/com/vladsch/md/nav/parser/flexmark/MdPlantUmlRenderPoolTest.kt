@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com>, all rights reserved.
+ *
+ * This code is private property of the copyright holder and cannot be used without
+ * having obtained a license or prior written permission of the copyright holder.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.vladsch.md.nav.parser.flexmark
+
+import net.sourceforge.plantuml.FileFormat
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.awt.image.BufferedImage
+import java.io.File
+import javax.imageio.ImageIO
+
+class MdPlantUmlRenderPoolTest {
+    @get:Rule
+    val tempFolder = TemporaryFolder()
+
+    private val baseDir = File("/docs/diagrams")
+
+    @Test
+    fun test_noIncludes() {
+        val source = "@startuml\nA -> B\n@enduml\n"
+        assertSame(source, MdPlantUmlRenderPool.resolveIncludes(source, baseDir))
+    }
+
+    @Test
+    fun test_noBaseDir() {
+        val source = "@startuml\n!include common.puml\n@enduml\n"
+        assertSame(source, MdPlantUmlRenderPool.resolveIncludes(source, null))
+    }
+
+    @Test
+    fun test_relativeInclude() {
+        assertEquals("@startuml\n!include ${File(baseDir, "common.puml").path}\nA -> B\n@enduml\n",
+            MdPlantUmlRenderPool.resolveIncludes("@startuml\n!include common.puml  \nA -> B\n@enduml\n", baseDir))
+    }
+
+    @Test
+    fun test_includeVariants() {
+        assertEquals("  !include_many ${File(baseDir, "a.puml").path}\n!include_once ${File(baseDir, "../b.puml").path}\n",
+            MdPlantUmlRenderPool.resolveIncludes("  !include_many a.puml\n!include_once ../b.puml\n", baseDir))
+    }
+
+    @Test
+    fun test_includeSub() {
+        assertEquals("!includesub ${File(baseDir, "lib.puml").path}!PART\n",
+            MdPlantUmlRenderPool.resolveIncludes("!includesub lib.puml!PART\n", baseDir))
+    }
+
+    @Test
+    fun test_notResolved() {
+        val source = "!include <tupadr3/common>\n!include https://example.com/a.puml\n!include /abs/a.puml\n"
+        assertSame(source, MdPlantUmlRenderPool.resolveIncludes(source, baseDir))
+    }
+
+    @Test
+    fun test_import() {
+        assertEquals("!import ${File(baseDir, "lib/sprites.zip").path}\n",
+            MdPlantUmlRenderPool.resolveIncludes("!import lib/sprites.zip\n", baseDir))
+    }
+
+    @Test
+    fun test_relativeImage() {
+        assertEquals("A -> B : <img:${File(baseDir, "icon.png").path}> and <img:${File(baseDir, "../big.png").path}{scale=0.5}>\n",
+            MdPlantUmlRenderPool.resolveIncludes("A -> B : <img:icon.png> and <img:../big.png{scale=0.5}>\n", baseDir))
+    }
+
+    @Test
+    fun test_imageNotResolved() {
+        val source = "A -> B : <img:https://example.com/a.png> <img:/abs/a.png>\n"
+        assertSame(source, MdPlantUmlRenderPool.resolveIncludes(source, baseDir))
+    }
+
+    @Test
+    fun test_includedFiles() {
+        val dir = tempFolder.newFolder("docs")
+        File(dir, "common.puml").writeText("Alice -> Bob\n")
+        writeImage(File(dir, "icon.png"))
+
+        val source = MdPlantUmlRenderPool.resolveIncludes("@startuml\n!include common.puml\n!include missing.puml\nA -> B : <img:icon.png>\n@enduml\n", dir)
+        assertEquals(setOf(File(dir, "common.puml"), File(dir, "icon.png")), MdPlantUmlRenderPool.getIncludedFiles(source))
+    }
+
+    @Test
+    fun test_renderNestedInclude() {
+        val dir = tempFolder.newFolder("docs")
+        File(dir, "inc").mkdir()
+        File(dir, "parts").mkdir()
+        // nested include path is relative to the markdown file's directory, not the including file's
+        File(dir, "inc/outer.puml").writeText("!include parts/inner.puml\n")
+        File(dir, "parts/inner.puml").writeText("Alice -> Bob : nestedMessage\n")
+
+        val source = MdPlantUmlRenderPool.resolveIncludes("@startuml\n!include inc/outer.puml\n@enduml\n", dir)
+        val text = MdPlantUmlRenderPool.renderString(source, dir, FileFormat.UTXT)
+        assertTrue(text, text.contains("nestedMessage"))
+    }
+
+    @Test
+    fun test_renderNestedImage() {
+        val dir = tempFolder.newFolder("docs")
+        File(dir, "inc").mkdir()
+        writeImage(File(dir, "icon.png"))
+        File(dir, "inc/outer.puml").writeText("Alice -> Bob : <img:icon.png>\n")
+
+        val source = MdPlantUmlRenderPool.resolveIncludes("@startuml\n!include inc/outer.puml\n@enduml\n", dir)
+        val svg = MdPlantUmlRenderPool.renderString(source, dir, FileFormat.SVG)
+        assertTrue(svg, svg.contains("data:image/png;base64,"))
+
+        val missing = MdPlantUmlRenderPool.renderString(source, File(dir, "inc"), FileFormat.SVG)
+        assertFalse(missing, missing.contains("data:image/png;base64,"))
+    }
+
+    private fun writeImage(file: File) {
+        val image = BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB)
+        ImageIO.write(image, "png", file)
+    }
+}
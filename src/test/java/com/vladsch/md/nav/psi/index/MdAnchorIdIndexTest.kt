@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com>, all rights reserved.
+ *
+ * This code is private property of the copyright holder and cannot be used without
+ * having obtained a license or prior written permission of the copyright holder.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.vladsch.md.nav.psi.index
+
+import com.vladsch.flexmark.html.renderer.HeaderIdGenerator
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class MdAnchorIdIndexTest {
+    @Test
+    fun test_anchorKeyPlain() {
+        assertEquals("header-text", MdAnchorIdIndex.anchorKey("header-text"))
+    }
+
+    @Test
+    fun test_anchorKeyCase() {
+        assertEquals("header-text", MdAnchorIdIndex.anchorKey("Header-Text"))
+    }
+
+    @Test
+    fun test_anchorKeyDupedDashes() {
+        assertEquals("header-text", MdAnchorIdIndex.anchorKey("header---text"))
+        assertEquals("-header", MdAnchorIdIndex.anchorKey("--header"))
+    }
+
+    @Test
+    fun test_anchorKeyTrailingDashes() {
+        assertEquals("header", MdAnchorIdIndex.anchorKey("header--"))
+        assertEquals("", MdAnchorIdIndex.anchorKey("-"))
+    }
+
+    @Test
+    fun test_headerKeyOptions() {
+        // all header id option combinations give the same key
+        val text = "Ünïcode  Header - Text "
+        val key = MdAnchorIdIndex.headerKey(text)
+        for (noDupedDashes in listOf(false, true)) {
+            for (nonAsciiToLowercase in listOf(false, true)) {
+                for (trimmedText in listOf(text, text.trimEnd())) {
+                    assertEquals(key, MdAnchorIdIndex.anchorKey(HeaderIdGenerator.generateId(trimmedText, " -", "_", noDupedDashes, nonAsciiToLowercase)))
+                }
+            }
+        }
+    }
+}
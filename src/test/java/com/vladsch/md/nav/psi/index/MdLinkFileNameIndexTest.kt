@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com>, all rights reserved.
+ *
+ * This code is private property of the copyright holder and cannot be used without
+ * having obtained a license or prior written permission of the copyright holder.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.vladsch.md.nav.psi.index
+
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class MdLinkFileNameIndexTest {
+    private fun assertLinkMatches(link: String, fileName: String) {
+        val linkKeys = MdLinkFileNameIndex.linkKeys(link)
+        assertTrue("$link -> $fileName", MdLinkFileNameIndex.fileKeys(fileName).any { linkKeys.contains(it) })
+    }
+
+    @Test
+    fun test_link() {
+        assertLinkMatches("docs/Readme.md", "Readme.md")
+    }
+
+    @Test
+    fun test_linkNoExtension() {
+        assertLinkMatches("../docs/Readme", "Readme.md")
+    }
+
+    @Test
+    fun test_linkAnchor() {
+        assertLinkMatches("docs/Readme.md#header", "Readme.md")
+    }
+
+    @Test
+    fun test_linkUrlEncoded() {
+        assertLinkMatches("docs/Read%20Me.md", "Read Me.md")
+    }
+
+    @Test
+    fun test_wikiLink() {
+        assertLinkMatches("Wiki Page", "Wiki-Page.md")
+        assertLinkMatches("Wiki-Page", "Wiki Page.md")
+        assertLinkMatches("Wiki+Page", "Wiki-Page.md")
+    }
+
+    @Test
+    fun test_wikiLinkPath() {
+        assertLinkMatches("Wiki/Page", "Wiki-Page.md")
+    }
+
+    @Test
+    fun test_wikiLinkExtension() {
+        assertLinkMatches("Wiki Page.md", "Wiki-Page.md")
+    }
+
+    @Test
+    fun test_wikiLinkAnchorInName() {
+        assertLinkMatches("Wiki Page#1", "Wiki Page#1.md")
+    }
+}
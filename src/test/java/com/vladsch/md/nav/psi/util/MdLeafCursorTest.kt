@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com>, all rights reserved.
+ *
+ * This code is private property of the copyright holder and cannot be used without
+ * having obtained a license or prior written permission of the copyright holder.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.vladsch.md.nav.psi.util
+
+import com.intellij.lang.ASTFactory
+import com.intellij.lang.ASTNode
+import com.intellij.psi.tree.IElementType
+import com.intellij.testFramework.fixtures.LightPlatformCodeInsightFixtureTestCase
+import com.vladsch.md.nav.spellchecking.MdTextTokenizer
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import java.io.File
+import java.util.function.Predicate
+
+class MdLeafCursorTest : LightPlatformCodeInsightFixtureTestCase() {
+    private class Tokenizer : MdTextTokenizer() {
+        fun isSpellChecked(elementType: IElementType): Boolean = spellCheckedType(elementType)
+    }
+
+    /**
+     * Leaves of node by recursive flattening with leading and trailing leaves which are not accepted removed
+     */
+    private fun flatTrimmedLeaves(root: ASTNode, accepted: (IElementType) -> Boolean): List<ASTNode> {
+        val leaves = ArrayList<ASTNode>()
+        flatLeaves(root, leaves)
+
+        var start = 0
+        var end = leaves.size
+        while (start < end && !accepted(leaves[start].elementType)) start++
+        while (end > start && !accepted(leaves[end - 1].elementType)) end--
+        return leaves.subList(start, end)
+    }
+
+    private fun flatLeaves(node: ASTNode, leaves: MutableList<ASTNode>) {
+        var child = node.firstChildNode
+        if (child == null) {
+            leaves.add(node)
+        } else {
+            while (child != null) {
+                flatLeaves(child, leaves)
+                child = child.treeNext
+            }
+        }
+    }
+
+    private fun cursorLeaves(root: ASTNode, accepted: (IElementType) -> Boolean): List<ASTNode> {
+        val cursor = MdLeafCursor(root)
+        cursor.trim(Predicate { accepted(it) })
+
+        val leaves = ArrayList<ASTNode>()
+        var node = cursor.next()
+        while (node != null) {
+            leaves.add(node)
+            node = cursor.next()
+        }
+
+        assertNull(cursor.next())
+        assertEquals(leaves.isEmpty(), cursor.isEmpty)
+        assertSame(leaves.firstOrNull(), cursor.first)
+        assertSame(leaves.lastOrNull(), cursor.last)
+        return leaves
+    }
+
+    private fun assertSameLeaves(root: ASTNode, accepted: (IElementType) -> Boolean) {
+        val expected = flatTrimmedLeaves(root, accepted)
+        val actual = cursorLeaves(root, accepted)
+        assertEquals(root.elementType.toString(), expected.size, actual.size)
+        for (i in expected.indices) {
+            assertSame(expected[i], actual[i])
+        }
+    }
+
+    private fun assertAllNodes(node: ASTNode, accepted: (IElementType) -> Boolean) {
+        assertSameLeaves(node, accepted)
+
+        var child = node.firstChildNode
+        while (child != null) {
+            assertAllNodes(child, accepted)
+            child = child.treeNext
+        }
+    }
+
+    fun test_performanceFiles() {
+        val files = File("test-data/performance").walk().filter { it.isFile && it.extension == "md" }.toList()
+        assertTrue(files.isNotEmpty())
+
+        val tokenizer = Tokenizer()
+        for (file in files) {
+            val root = myFixture.configureByText(file.name, file.readText()).node
+            assertAllNodes(root) { tokenizer.isSpellChecked(it) }
+            assertAllNodes(root) { it == MdTypes.TEXT }
+            assertAllNodes(root) { true }
+        }
+    }
+
+    fun test_allTrimmed() {
+        val root = myFixture.configureByText("test.md", "# Heading\n\nParagraph *text*\n").node
+
+        val cursor = MdLeafCursor(root)
+        cursor.trim(Predicate { false })
+        assertTrue(cursor.isEmpty)
+        assertNull(cursor.first)
+        assertNull(cursor.last)
+        assertNull(cursor.next())
+
+        assertSameLeaves(root) { false }
+    }
+
+    fun test_singleLeafRoot() {
+        val root = myFixture.configureByText("test.md", "Paragraph text\n").node
+        var leaf = root
+        while (leaf.firstChildNode != null) leaf = leaf.firstChildNode
+
+        val cursor = MdLeafCursor(leaf)
+        assertSame(leaf, cursor.first)
+        assertSame(leaf, cursor.last)
+        assertSame(leaf, cursor.next())
+        assertNull(cursor.next())
+
+        // siblings of the root leaf are not included
+        assertSameLeaves(leaf) { true }
+        assertSameLeaves(leaf) { false }
+    }
+
+    fun test_emptyComposite() {
+        val root = ASTFactory.composite(MdTypes.TEXT_BLOCK)
+
+        val cursor = MdLeafCursor(root)
+        assertSame(root, cursor.next())
+        assertNull(cursor.next())
+
+        assertSameLeaves(root) { true }
+        assertSameLeaves(root) { false }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com>, all rights reserved.
+ *
+ * This code is private property of the copyright holder and cannot be used without
+ * having obtained a license or prior written permission of the copyright holder.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.vladsch.md.nav.todo
+
+import com.intellij.lexer.Lexer
+import com.intellij.testFramework.fixtures.LightPlatformCodeInsightFixtureTestCase
+import com.vladsch.md.nav.parser.MdLexParser
+import com.vladsch.md.nav.psi.util.MdTokenSets
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import java.io.File
+
+class MdIndexingLexerEquivalenceTest : LightPlatformCodeInsightFixtureTestCase() {
+    private fun commentTokens(lexer: Lexer, text: String): List<String> {
+        val tokens = ArrayList<String>()
+        lexer.start(text, 0, text.length, 0)
+        while (lexer.tokenType != null) {
+            if (MdTokenSets.COMMENT_FOR_TODO_SET.contains(lexer.tokenType)) {
+                tokens.add("${lexer.tokenType}[${lexer.tokenStart}, ${lexer.tokenEnd})")
+            }
+            lexer.advance()
+        }
+        return tokens
+    }
+
+    fun test_performanceFilesCommentTokens() {
+        val files = File("test-data/performance").walk().filter { it.isFile && it.extension == "md" }.toList()
+        assertTrue(files.isNotEmpty())
+
+        for (file in files) {
+            val text = file.readText()
+            assertEquals(file.name, commentTokens(MdLexParser.createLexer(null), text), commentTokens(MdIndexingLexer(), text))
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com>, all rights reserved.
+ *
+ * This code is private property of the copyright holder and cannot be used without
+ * having obtained a license or prior written permission of the copyright holder.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.vladsch.md.nav.todo
+
+import com.vladsch.md.nav.psi.util.MdTypes
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.File
+
+class MdIndexingLexerTest {
+    private fun tokens(text: String): List<String> {
+        val lexer = MdIndexingLexer()
+        val tokens = ArrayList<String>()
+        lexer.start(text, 0, text.length, 0)
+        while (lexer.tokenType != null) {
+            if (lexer.tokenType != MdTypes.TEXT) {
+                tokens.add("${lexer.tokenType}:${text.substring(lexer.tokenStart, lexer.tokenEnd)}")
+            }
+            lexer.advance()
+        }
+        return tokens
+    }
+
+    @Test
+    fun test_inlineComment() {
+        assertEquals(listOf("COMMENT_OPEN:<!--", "COMMENT_TEXT: TODO: fix ", "COMMENT_CLOSE:-->"), tokens("Text <!-- TODO: fix --> more\n"))
+    }
+
+    @Test
+    fun test_blockComment() {
+        assertEquals(listOf("BLOCK_COMMENT_OPEN:<!--", "BLOCK_COMMENT_TEXT: TODO: fix\nsecond ", "BLOCK_COMMENT_CLOSE:-->"), tokens("<!-- TODO: fix\nsecond -->\n"))
+    }
+
+    @Test
+    fun test_codeSpan() {
+        assertEquals(listOf("CODE_TEXT:<!-- TODO -->"), tokens("Text `<!-- TODO -->` more\n"))
+    }
+
+    @Test
+    fun test_fencedCode() {
+        assertEquals(listOf("CODE_TEXT:<!-- TODO -->\n"), tokens("```html\n<!-- TODO -->\n```\n"))
+    }
+
+    @Test
+    fun test_indentedCode() {
+        assertEquals(listOf("CODE_TEXT:    <!-- TODO -->\n"), tokens("Text\n\n    <!-- TODO -->\n"))
+    }
+
+    @Test
+    fun test_listItemContinuation() {
+        assertEquals(listOf("COMMENT_OPEN:<!--", "COMMENT_TEXT: TODO ", "COMMENT_CLOSE:-->"), tokens("- item\n\n    <!-- TODO -->\n"))
+    }
+
+    @Test
+    fun test_linkAddress() {
+        assertEquals(listOf("LINK_REF:docs/file.md", "LINK_REF:https://example.com"), tokens("[link](docs/file.md) <https://example.com>\n"))
+    }
+
+    @Test
+    fun test_escapedComment() {
+        assertEquals(listOf<String>(), tokens("Text \\<!-- TODO --> more\n"))
+    }
+
+    @Test
+    fun test_performanceFilesCovered() {
+        val files = File("test-data/performance").walk().filter { it.isFile && it.extension == "md" }.toList()
+        assertTrue(files.isNotEmpty())
+
+        for (file in files) {
+            val text = file.readText()
+            val lexer = MdIndexingLexer()
+            lexer.start(text, 0, text.length, 0)
+
+            var offset = 0
+            while (lexer.tokenType != null) {
+                assertEquals(file.name, offset, lexer.tokenStart)
+                assertTrue(file.name, lexer.tokenEnd > offset)
+                offset = lexer.tokenEnd
+                lexer.advance()
+            }
+            assertEquals(file.name, text.length, offset)
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com>, all rights reserved.
+ *
+ * This code is private property of the copyright holder and cannot be used without
+ * having obtained a license or prior written permission of the copyright holder.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.vladsch.md.nav.util
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.regex.PatternSyntaxException
+
+class MdRegexCacheTest {
+    @Test
+    fun test_hitMiss() {
+        val cache = MdRegexCache(4)
+        val regex = cache.getRegex("^a.*b$")
+
+        assertSame(regex, cache.getRegex("^a.*b$"))
+        assertEquals(1, cache.hits)
+        assertEquals(1, cache.misses)
+        assertEquals(1, cache.size)
+    }
+
+    @Test
+    fun test_options() {
+        val cache = MdRegexCache(4)
+        val regex = cache.getRegex("^ab$")
+        val ignoreCase = cache.getRegex("^ab$", RegexOption.IGNORE_CASE)
+
+        assertNotSame(regex, ignoreCase)
+        assertFalse("AB".matches(regex))
+        assertTrue("AB".matches(ignoreCase))
+        assertSame(ignoreCase, cache.getRegex("^ab$", setOf(RegexOption.IGNORE_CASE)))
+        assertEquals(2, cache.misses)
+        assertEquals(1, cache.hits)
+    }
+
+    @Test
+    fun test_resetStatistics() {
+        val cache = MdRegexCache(4)
+        val regex = cache.getRegex("a")
+        cache.getRegex("a")
+        cache.resetStatistics()
+
+        assertEquals(0, cache.hits)
+        assertEquals(0, cache.misses)
+        assertSame(regex, cache.getRegex("a"))
+        assertEquals(1, cache.hits)
+    }
+
+    @Test
+    fun test_leastRecentlyUsedRemoved() {
+        val cache = MdRegexCache(2)
+        val a = cache.getRegex("a")
+        cache.getRegex("b")
+        cache.getRegex("a")
+        cache.getRegex("c")
+
+        assertEquals(2, cache.size)
+        assertSame(a, cache.getRegex("a"))
+        cache.getRegex("b")
+        assertEquals(4, cache.misses)
+    }
+
+    @Test(expected = PatternSyntaxException::class)
+    fun test_invalidPattern() {
+        MdRegexCache(2).getRegex("(a")
+    }
+
+    @Test
+    fun test_clear() {
+        val cache = MdRegexCache(2)
+        cache.getRegex("a")
+        cache.getRegex("a")
+        cache.clear()
+
+        assertEquals(0, cache.size)
+        assertEquals(0, cache.hits)
+        assertEquals(0, cache.misses)
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com>, all rights reserved.
+ *
+ * This code is private property of the copyright holder and cannot be used without
+ * having obtained a license or prior written permission of the copyright holder.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.vladsch.md.nav.util.format
+
+import com.intellij.testFramework.fixtures.LightPlatformCodeInsightFixtureTestCase
+import com.vladsch.flexmark.util.format.TrackedOffset
+import com.vladsch.md.nav.psi.element.MdFile
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertTrue
+
+class MdFormatterFormatRangeTest : LightPlatformCodeInsightFixtureTestCase() {
+    private val firstParagraph = "First paragraph is not formatted.\n"
+    private val rangeParagraph = "Selected paragraph with a [reference][1] and the car<caret>et after it.\n"
+
+    private fun configure(): MdFile {
+        val text = "# Heading\n\n$firstParagraph\n<selection>$rangeParagraph</selection>\nLast paragraph.\n\n[1]: https://example.com\n"
+        return myFixture.configureByText("test.md", text) as MdFile
+    }
+
+    fun test_caretInRange() {
+        val mdFile = configure()
+        val editor = myFixture.editor
+        val caretOffset = editor.caretModel.offset
+        val trackedOffset = TrackedOffset.track(caretOffset, null, false)
+
+        val rangeFormat = MdFormatter.formatRange(mdFile, editor, editor.selectionModel.selectionStart, editor.selectionModel.selectionEnd, listOf(trackedOffset))
+        assertNotNull(rangeFormat)
+        rangeFormat!!
+
+        val rangeStart = "# Heading\n\n$firstParagraph\n".length
+        assertEquals(rangeStart, rangeFormat.startOffset)
+        assertEquals(rangeStart + rangeParagraph.length - "<caret>".length, rangeFormat.endOffset)
+
+        // definition outside the range is used for parsing and not part of the formatted text
+        assertFalse(rangeFormat.text, rangeFormat.text.contains("https://example.com"))
+        assertTrue(rangeFormat.text, rangeFormat.text.contains("[reference][1]"))
+
+        assertTrue(trackedOffset.isResolved)
+        assertEquals(caretOffset - rangeStart, trackedOffset.index)
+        assertTrue(rangeFormat.text.substring(trackedOffset.index).startsWith("et after it."))
+    }
+
+    fun test_offsetOutsideRange() {
+        val mdFile = configure()
+        val editor = myFixture.editor
+        val trackedOffset = TrackedOffset.track("# Heading\n\nFirst".length, null, false)
+
+        val rangeFormat = MdFormatter.formatRange(mdFile, editor, editor.selectionModel.selectionStart, editor.selectionModel.selectionEnd, listOf(trackedOffset))
+        assertNotNull(rangeFormat)
+        assertFalse(trackedOffset.isResolved)
+    }
+}
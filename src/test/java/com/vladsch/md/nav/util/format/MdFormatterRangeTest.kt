@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com>, all rights reserved.
+ *
+ * This code is private property of the copyright holder and cannot be used without
+ * having obtained a license or prior written permission of the copyright holder.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.vladsch.md.nav.util.format
+
+import com.vladsch.flexmark.util.sequence.BasedSequence
+import com.vladsch.flexmark.util.sequence.builder.SequenceBuilder
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class MdFormatterRangeTest {
+    @Test
+    fun test_noDefinitions() {
+        val parsed = BasedSequence.of("Paragraph text\n")
+        val formatted = parsed.getBuilder<SequenceBuilder>().append(parsed.subSequence(0, 9)).append("\n").append(parsed.subSequence(10, 15)).toSequence()
+
+        assertEquals("Paragraph\ntext\n", MdFormatter.rangeFormattedText(formatted, parsed.length, true))
+        assertEquals("Paragraph\ntext", MdFormatter.rangeFormattedText(formatted, parsed.length, false))
+    }
+
+    @Test
+    fun test_definitionsRemoved() {
+        val parsed = BasedSequence.of("Text [ref]\n\n[ref]: /url\n")
+        val definitionsStart = "Text [ref]\n\n".length
+        val formatted = parsed.getBuilder<SequenceBuilder>().append(parsed.subSequence(0, definitionsStart)).append(parsed.subSequence(definitionsStart, parsed.length)).toSequence()
+
+        assertEquals("Text [ref]\n", MdFormatter.rangeFormattedText(formatted, definitionsStart, true))
+    }
+
+    @Test
+    fun test_definitionsRemovedExtraBlankLines() {
+        val parsed = BasedSequence.of("Text [ref]\n\n[ref]: /url\n")
+        val definitionsStart = "Text [ref]\n\n".length
+        val formatted = parsed.getBuilder<SequenceBuilder>().append(parsed.subSequence(0, definitionsStart)).append("\n").append(parsed.subSequence(definitionsStart, parsed.length)).toSequence()
+
+        assertEquals("Text [ref]", MdFormatter.rangeFormattedText(formatted, definitionsStart, false))
+    }
+}
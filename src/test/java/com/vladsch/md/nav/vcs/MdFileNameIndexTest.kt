@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com>, all rights reserved.
+ *
+ * This code is private property of the copyright holder and cannot be used without
+ * having obtained a license or prior written permission of the copyright holder.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.vladsch.md.nav.vcs
+
+import com.intellij.openapi.application.WriteAction
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.testFramework.fixtures.LightPlatformCodeInsightFixtureTestCase
+import org.junit.Assert.assertEquals
+
+/**
+ * VFS changes are made on the fixture's files and passed to the index the way the link resolver manager's listener does
+ */
+class MdFileNameIndexTest : LightPlatformCodeInsightFixtureTestCase() {
+    private lateinit var index: MdFileNameIndex
+
+    override fun setUp() {
+        super.setUp()
+        index = MdFileNameIndex(project)
+    }
+
+    private fun addFile(path: String): VirtualFile {
+        return myFixture.addFileToProject(path, "").virtualFile
+    }
+
+    private fun names(files: List<VirtualFile>): List<String> {
+        return files.map { it.path.substring(it.path.indexOf("/docs/") + 1) }.sorted()
+    }
+
+    fun test_filesByName() {
+        addFile("docs/file.md")
+        addFile("docs/file.txt")
+        addFile("docs/sub/file.md")
+        addFile("docs/file-name.md")
+        addFile("docs/other.md")
+
+        assertEquals(listOf("docs/file.md", "docs/file.txt", "docs/sub/file.md"), names(index.getFilesByName("file")))
+        assertEquals(listOf("docs/file.md", "docs/sub/file.md"), names(index.getFilesByName("file.md")))
+        assertEquals(listOf<String>(), names(index.getFilesByName("missing")))
+    }
+
+    fun test_filesByPathPrefix() {
+        val file = addFile("docs/file.md")
+        addFile("docs/sub/file.md")
+        addFile("docs/sub/other.md")
+
+        val root = file.parent.path
+        assertEquals(listOf("docs/file.md", "docs/sub/file.md", "docs/sub/other.md"), names(index.getFilesByPathPrefix("$root/")))
+        assertEquals(listOf("docs/sub/file.md", "docs/sub/other.md"), names(index.getFilesByPathPrefix("$root/sub/")))
+    }
+
+    fun test_fileCreated() {
+        addFile("docs/file.md")
+        assertEquals(listOf<String>(), names(index.getFilesByName("created")))
+
+        val created = addFile("docs/created.md")
+        index.fileCreated(created)
+        assertEquals(listOf("docs/created.md"), names(index.getFilesByName("created")))
+
+        // already indexed file is not added twice
+        index.fileCreated(created)
+        assertEquals(listOf("docs/created.md"), names(index.getFilesByName("created")))
+    }
+
+    fun test_fileRenamed() {
+        val file = addFile("docs/file.md")
+        assertEquals(listOf("docs/file.md"), names(index.getFilesByName("file")))
+
+        WriteAction.run<Throwable> { file.rename(this, "renamed.md") }
+        index.fileMoved(file)
+
+        assertEquals(listOf<String>(), names(index.getFilesByName("file")))
+        assertEquals(listOf("docs/renamed.md"), names(index.getFilesByName("renamed")))
+    }
+
+    fun test_fileMoved() {
+        val file = addFile("docs/file.md")
+        val target = addFile("docs/sub/other.md").parent
+        val root = file.parent.path
+        assertEquals(listOf("docs/file.md"), names(index.getFilesByName("file")))
+
+        WriteAction.run<Throwable> { file.move(this, target) }
+        index.fileMoved(file)
+
+        assertEquals(listOf("docs/sub/file.md"), names(index.getFilesByName("file")))
+        assertEquals(listOf("docs/sub/file.md", "docs/sub/other.md"), names(index.getFilesByPathPrefix("$root/sub/")))
+    }
+
+    fun test_fileDeleted() {
+        val file = addFile("docs/file.md")
+        addFile("docs/other.md")
+        assertEquals(listOf("docs/file.md"), names(index.getFilesByName("file")))
+
+        val path = file.path
+        WriteAction.run<Throwable> { file.delete(this) }
+        index.fileDeleted(path)
+
+        assertEquals(listOf<String>(), names(index.getFilesByName("file")))
+        assertEquals(listOf("docs/other.md"), names(index.getFilesByName("other")))
+    }
+
+    fun test_directoryDeleted() {
+        val file = addFile("docs/sub/file.md")
+        addFile("docs/sub/other.md")
+        addFile("docs/file.md")
+        assertEquals(listOf("docs/file.md", "docs/sub/file.md"), names(index.getFilesByName("file")))
+
+        val directory = file.parent
+        val path = directory.path
+        WriteAction.run<Throwable> { directory.delete(this) }
+        index.fileDeleted(path)
+
+        assertEquals(listOf("docs/file.md"), names(index.getFilesByName("file")))
+        assertEquals(listOf<String>(), names(index.getFilesByName("other")))
+    }
+
+    fun test_directoryMovedRebuilds() {
+        val file = addFile("docs/sub/file.md")
+        val target = addFile("docs/target/other.md").parent
+        assertEquals(listOf("docs/sub/file.md"), names(index.getFilesByName("file")))
+
+        val directory = file.parent
+        WriteAction.run<Throwable> { directory.move(this, target) }
+        index.fileMoved(directory)
+
+        assertEquals(listOf("docs/target/sub/file.md"), names(index.getFilesByName("file")))
+    }
+
+    fun test_directoryCreatedRebuilds() {
+        addFile("docs/file.md")
+        assertEquals(listOf("docs/file.md"), names(index.getFilesByName("file")))
+
+        // files of a created directory are not in its event
+        val file = addFile("docs/created/file.md")
+        index.fileCreated(file.parent)
+
+        assertEquals(listOf("docs/created/file.md", "docs/file.md"), names(index.getFilesByName("file")))
+    }
+}
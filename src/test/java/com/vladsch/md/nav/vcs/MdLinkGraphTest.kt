@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com>, all rights reserved.
+ *
+ * This code is private property of the copyright holder and cannot be used without
+ * having obtained a license or prior written permission of the copyright holder.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.vladsch.md.nav.vcs
+
+import com.intellij.openapi.command.WriteCommandAction
+import com.intellij.psi.PsiDocumentManager
+import com.intellij.testFramework.fixtures.LightPlatformCodeInsightFixtureTestCase
+import com.vladsch.md.nav.psi.element.MdFile
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+
+class MdLinkGraphTest : LightPlatformCodeInsightFixtureTestCase() {
+    private lateinit var graph: MdLinkGraph
+
+    override fun setUp() {
+        super.setUp()
+        graph = MdLinkGraph()
+    }
+
+    private fun addFile(path: String, text: String): MdFile {
+        return myFixture.addFileToProject(path, text) as MdFile
+    }
+
+    private fun path(file: MdFile, fileName: String): String {
+        return "${file.virtualFile.parent.path}/$fileName"
+    }
+
+    private fun affected(files: List<MdFile>, vararg paths: String): Set<MdFile> {
+        return graph.getAffectedFiles(files, paths.toList())
+    }
+
+    fun test_affectedByLinkedFileName() {
+        val readme = addFile("docs/readme.md", "[other](other.md)\n")
+        val index = addFile("docs/index.md", "[third](sub/third.md#anchor)\n")
+        val files = listOf(readme, index)
+
+        assertEquals(setOf(readme), affected(files, path(readme, "other.md")))
+        assertEquals(setOf(index), affected(files, path(readme, "moved/third.md")))
+        assertEquals(setOf(readme, index), affected(files, path(readme, "other.md"), path(readme, "third.md")))
+        assertEquals(setOf<MdFile>(), affected(files, path(readme, "unrelated.md")))
+    }
+
+    fun test_affectedByDifferentCase() {
+        val readme = addFile("docs/index.md", "[readme](docs/readme.md)\n")
+        val wiki = addFile("docs/home.md", "[[wiki page]]\n")
+        val files = listOf(readme, wiki)
+
+        assertEquals(setOf(readme), affected(files, path(readme, "README.md")))
+        assertEquals(setOf(wiki), affected(files, path(wiki, "Wiki-Page.md")))
+    }
+
+    fun test_refreshedOnModification() {
+        val readme = addFile("docs/readme.md", "[other](other.md)\n")
+        val files = listOf(readme)
+        assertEquals(setOf(readme), affected(files, path(readme, "other.md")))
+
+        WriteCommandAction.runWriteCommandAction(project) {
+            val documentManager = PsiDocumentManager.getInstance(project)
+            val document = documentManager.getDocument(readme)!!
+            document.setText("[changed](changed.md)\n")
+            documentManager.commitDocument(document)
+        }
+
+        assertEquals(setOf<MdFile>(), affected(files, path(readme, "other.md")))
+        assertEquals(setOf(readme), affected(files, path(readme, "changed.md")))
+    }
+
+    fun test_closedFilesRemoved() {
+        val readme = addFile("docs/readme.md", "[other](other.md)\n")
+        val index = addFile("docs/index.md", "[other](other.md)\n")
+
+        assertEquals(setOf(readme, index), affected(listOf(readme, index), path(readme, "other.md")))
+        assertEquals(2, graph.size)
+
+        assertEquals(setOf(readme), affected(listOf(readme), path(readme, "other.md")))
+        assertEquals(1, graph.size)
+
+        assertEquals(setOf<MdFile>(), affected(listOf(), path(readme, "other.md")))
+        assertEquals(0, graph.size)
+    }
+
+    fun test_changedPaths() {
+        graph.pathsChanged(false, "/docs/a.md")
+        graph.pathsChanged(false, "/docs/b.md", "/docs/c.md", "/docs/a.md")
+
+        assertEquals(listOf("/docs/a.md", "/docs/b.md", "/docs/c.md"), graph.takeChangedPaths())
+        assertEquals(listOf<String>(), graph.takeChangedPaths())
+    }
+
+    fun test_directoryChangeAffectsAll() {
+        val readme = addFile("docs/readme.md", "[other](other.md)\n")
+        affected(listOf(readme), path(readme, "other.md"))
+        assertEquals(1, graph.size)
+
+        graph.pathsChanged(false, "/docs/a.md")
+        graph.pathsChanged(true, "/docs/dir")
+        graph.pathsChanged(false, "/docs/b.md")
+
+        assertNull(graph.takeChangedPaths())
+        assertEquals(0, graph.size)
+        assertEquals(listOf<String>(), graph.takeChangedPaths())
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2015-2020 Vladimir Schneider <vladimir.schneider@gmail.com>, all rights reserved.
+ *
+ * This code is private property of the copyright holder and cannot be used without
+ * having obtained a license or prior written permission of the copyright holder.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.vladsch.md.nav.vcs
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+
+class MdPathPrefixIndexTest {
+    private fun index(vararg prefixes: String): MdPathPrefixIndex<String> {
+        val index = MdPathPrefixIndex<String>()
+        for (prefix in prefixes) {
+            index.add(prefix, prefix, prefix.length)
+        }
+        return index
+    }
+
+    @Test
+    fun test_longestPrefix() {
+        val index = index("/projects/repo", "/projects/repo/modules/sub", "/projects/other")
+
+        assertEquals("/projects/repo", index.find("/projects/repo/README.md"))
+        assertEquals("/projects/repo", index.find("/projects/repo/modules/README.md"))
+        assertEquals("/projects/repo/modules/sub", index.find("/projects/repo/modules/sub/docs/README.md"))
+        assertEquals("/projects/other", index.find("/projects/other/"))
+        assertEquals(3, index.size)
+    }
+
+    @Test
+    fun test_notContained() {
+        val index = index("/projects/repo")
+
+        assertNull(index.find("/projects/repo"))
+        assertNull(index.find("/projects/repository/README.md"))
+        assertNull(index.find("/projects/README.md"))
+        assertNull(index.find(""))
+    }
+
+    @Test
+    fun test_trailingSlash() {
+        val index = index("github.com/user/repo/", "github.com/user/repo/wiki/")
+
+        assertEquals("github.com/user/repo/", index.find("github.com/user/repo/blob/master/README.md"))
+        assertEquals("github.com/user/repo/wiki/", index.find("github.com/user/repo/wiki/Home"))
+        assertNull(index.find("github.com/user/repo"))
+    }
+
+    @Test
+    fun test_priority() {
+        val index = MdPathPrefixIndex<String>()
+        index.add("github.com/user/repo", "short", 10)
+        index.add("github.com/user/repo", "long", 20)
+        index.add("github.com/user/repo", "same", 20)
+        index.add("github.com/user/repo/wiki", "wiki", 5)
+
+        assertEquals("long", index.find("github.com/user/repo/README.md"))
+        assertEquals("long", index.find("github.com/user/repo/wiki/Home"))
+        assertEquals(2, index.size)
+    }
+}